@@ -5,10 +5,13 @@ package com.android.tools.r8;
 
 import com.android.tools.r8.utils.AndroidApiLevel;
 import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.DefaultCompilationListener;
 import com.android.tools.r8.utils.DefaultDiagnosticsHandler;
 import com.android.tools.r8.utils.FileUtils;
 import com.android.tools.r8.utils.OutputMode;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
 
 /**
  * Base class for commands and command builders for compiler applications/tools which besides an
@@ -22,6 +25,7 @@ abstract class BaseCompilerCommand extends BaseCommand {
   private final CompilationMode mode;
   private final int minApiLevel;
   private final DiagnosticsHandler diagnosticsHandler;
+  private final CompilationListener compilationListener;
 
   BaseCompilerCommand(boolean printHelp, boolean printVersion) {
     super(printHelp, printVersion);
@@ -30,6 +34,7 @@ abstract class BaseCompilerCommand extends BaseCommand {
     mode = null;
     minApiLevel = 0;
     diagnosticsHandler = new DefaultDiagnosticsHandler();
+    compilationListener = new DefaultCompilationListener();
   }
 
   BaseCompilerCommand(
@@ -38,7 +43,8 @@ abstract class BaseCompilerCommand extends BaseCommand {
       OutputMode outputMode,
       CompilationMode mode,
       int minApiLevel,
-      DiagnosticsHandler diagnosticsHandler) {
+      DiagnosticsHandler diagnosticsHandler,
+      CompilationListener compilationListener) {
     super(app);
     assert mode != null;
     assert minApiLevel > 0;
@@ -47,6 +53,7 @@ abstract class BaseCompilerCommand extends BaseCommand {
     this.mode = mode;
     this.minApiLevel = minApiLevel;
     this.diagnosticsHandler = diagnosticsHandler;
+    this.compilationListener = compilationListener;
   }
 
   public Path getOutputPath() {
@@ -69,6 +76,10 @@ abstract class BaseCompilerCommand extends BaseCommand {
     return diagnosticsHandler;
   }
 
+  public CompilationListener getCompilationListener() {
+    return compilationListener;
+  }
+
   abstract public static class Builder<C extends BaseCompilerCommand, B extends Builder<C, B>>
       extends BaseCommand.Builder<C, B> {
 
@@ -77,6 +88,7 @@ abstract class BaseCompilerCommand extends BaseCommand {
     private CompilationMode mode;
     private int minApiLevel = AndroidApiLevel.getDefault().getLevel();
     private DiagnosticsHandler diagnosticsHandler = new DefaultDiagnosticsHandler();
+    private CompilationListener compilationListener = new DefaultCompilationListener();
 
     protected Builder(CompilationMode mode) {
       this(AndroidApp.builder(), mode, false);
@@ -152,12 +164,54 @@ abstract class BaseCompilerCommand extends BaseCommand {
       return self();
     }
 
+    public CompilationListener getCompilationListener() {
+      return compilationListener;
+    }
+
+    /** Set a listener for observing the progress of the compilation and for canceling it. */
+    public B setCompilationListener(CompilationListener compilationListener) {
+      this.compilationListener = compilationListener;
+      return self();
+    }
+
+    /**
+     * Add startup profile files.
+     *
+     * Each line in each of the files specifies a class or a method used during application
+     * startup, in the order they are first used. Startup classes are placed in the primary dex
+     * file when there is room for them, and their code and data are laid out together at the
+     * start of the data section.
+     *
+     * A class is specified by its descriptor, e.g. "Lcom/example/MyClass;", and a method by its
+     * holder descriptor, name and method descriptor, e.g. "Lcom/example/MyClass;->run(I)V".
+     * Flags in front of an entry, as in ART profiles (e.g. "HSPLcom/example/MyClass;->run(I)V"),
+     * and lines starting with '#' are ignored.
+     */
+    public B addStartupProfileFiles(Path... files) throws IOException {
+      getAppBuilder().addStartupProfileFiles(files);
+      return self();
+    }
+
+    /**
+     * Add startup profile files.
+     *
+     * @see #addStartupProfileFiles(Path...)
+     */
+    public B addStartupProfileFiles(Collection<Path> files) throws IOException {
+      getAppBuilder().addStartupProfileFiles(files);
+      return self();
+    }
+
     protected void validate() throws CompilationException {
       super.validate();
       if (getAppBuilder().hasMainDexList() && outputMode == OutputMode.FilePerInputClass) {
         throw new CompilationException(
             "Option --main-dex-list cannot be used with --file-per-class");
       }
+      if (getAppBuilder().hasStartupProfile() && outputMode == OutputMode.FilePerInputClass) {
+        throw new CompilationException(
+            "Option --startup-profile cannot be used with --file-per-class");
+      }
       FileUtils.validateOutputFile(outputPath);
     }
   }
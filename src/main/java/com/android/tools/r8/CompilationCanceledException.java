@@ -0,0 +1,16 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8;
+
+/**
+ * Exception thrown when a compilation is canceled by its {@link CompilationListener}.
+ */
+public class CompilationCanceledException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public CompilationCanceledException() {
+    super("Compilation canceled");
+  }
+}
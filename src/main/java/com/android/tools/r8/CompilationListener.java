@@ -0,0 +1,65 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8;
+
+/**
+ * A CompilationListener can be provided to observe the progress of a compilation and to cancel it.
+ *
+ * <p>The methods of a listener can be called concurrently from the threads used for compilation,
+ * so implementations must be thread safe and should return quickly.
+ */
+public interface CompilationListener {
+
+  /**
+   * Counters reported periodically during compilation.
+   */
+  enum Counter {
+    /** The number of methods converted to IR and optimized so far. */
+    METHODS_PROCESSED,
+    /** The number of invokes inlined so far. */
+    METHODS_INLINED,
+    /** The number of methods in the call graph not yet optimized. */
+    METHODS_REMAINING,
+    /** The number of instructions of the hot call site inlining budget used so far. */
+    HOT_INLINING_BUDGET_USED,
+    /** The number of outline methods created, reported once the outlines are selected. */
+    OUTLINES_CREATED
+  }
+
+  /**
+   * Called when a compilation phase begins. The phases are the same as the ones recorded for the
+   * timing report, and phases are nested.
+   *
+   * @param phase name of the phase.
+   */
+  default void phaseBegin(String phase) {
+  }
+
+  /**
+   * Called when a compilation phase ends.
+   *
+   * @param phase name of the phase.
+   */
+  default void phaseEnd(String phase) {
+  }
+
+  /**
+   * Called with the current value of a counter.
+   *
+   * @param counter the counter.
+   * @param value the current value of the counter.
+   */
+  default void counter(Counter counter, long value) {
+  }
+
+  /**
+   * Polled during compilation. When this returns true the compilation is stopped as soon as
+   * possible, and the compiler throws a {@link CompilationCanceledException}.
+   *
+   * <p>By default the compilation is never canceled.
+   */
+  default boolean isCanceled() {
+    return false;
+  }
+}
@@ -187,7 +187,7 @@ public final class D8 {
       options.inlineAccessors = false;
       options.outline.enabled = false;
 
-      Timing timing = new Timing("DX timer");
+      Timing timing = new Timing("DX timer", options.compilationListener);
       DexApplication app = new ApplicationReader(inputApp, options, timing).read(executor);
       AppInfo appInfo = new AppInfo(app);
       app = optimize(app, appInfo, options, timing, executor);
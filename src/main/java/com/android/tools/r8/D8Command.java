@@ -99,6 +99,7 @@ public class D8Command extends BaseCompilerCommand {
           getMode(),
           getMinApiLevel(),
           getDiagnosticsHandler(),
+          getCompilationListener(),
           intermediate);
     }
   }
@@ -118,6 +119,8 @@ public class D8Command extends BaseCompilerCommand {
       "                          # merging.",
       "  --file-per-class        # Produce a separate dex file per class",
       "  --main-dex-list <file>  # List of classes to place in the primary dex file.",
+      "  --startup-profile <file>",
+      "                          # List of classes and methods used at startup.",
       "  --version               # Print the version of d8.",
       "  --help                  # Print this message."));
 
@@ -172,6 +175,8 @@ public class D8Command extends BaseCompilerCommand {
           builder.addClasspathFiles(Paths.get(args[++i]));
         } else if (arg.equals("--main-dex-list")) {
           builder.addMainDexListFiles(Paths.get(args[++i]));
+        } else if (arg.equals("--startup-profile")) {
+          builder.addStartupProfileFiles(Paths.get(args[++i]));
         } else if (arg.equals("--min-api")) {
           builder.setMinApiLevel(Integer.valueOf(args[++i]));
         } else if (arg.equals("--intermediate")) {
@@ -196,8 +201,10 @@ public class D8Command extends BaseCompilerCommand {
       CompilationMode mode,
       int minApiLevel,
       DiagnosticsHandler diagnosticsHandler,
+      CompilationListener compilationListener,
       boolean intermediate) {
-    super(inputApp, outputPath, outputMode, mode, minApiLevel, diagnosticsHandler);
+    super(inputApp, outputPath, outputMode, mode, minApiLevel, diagnosticsHandler,
+        compilationListener);
     this.intermediate = intermediate;
   }
 
@@ -226,6 +233,7 @@ public class D8Command extends BaseCompilerCommand {
     internal.outline.enabled = false;
     internal.outputMode = getOutputMode();
     internal.diagnosticsHandler = getDiagnosticsHandler();
+    internal.compilationListener = getCompilationListener();
     return internal;
   }
 }
@@ -171,9 +171,9 @@ public class Disassemble {
           ? new SmaliWriter(application, options)
           : new AssemblyWriter(application, options);
       if (command.getOutputPath() != null) {
-        writer.write(command.getOutputPath());
+        writer.write(command.getOutputPath(), executor);
       } else {
-        writer.write(System.out);
+        writer.write(System.out, executor);
       }
     } finally {
       executor.shutdown();
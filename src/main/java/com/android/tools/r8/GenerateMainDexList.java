@@ -35,15 +35,18 @@ public class GenerateMainDexList {
     this.options = options;
   }
 
-  private List<String> run(AndroidApp app) throws IOException, ExecutionException {
-    ExecutorService executor = ThreadUtils.getExecutorService(options);
+  private List<String> run(AndroidApp app, ExecutorService executor)
+      throws IOException, ExecutionException {
     DexApplication application =
         new ApplicationReader(app, options, timing).read(executor).toDirect();
     AppInfoWithSubtyping appInfo = new AppInfoWithSubtyping(application);
     RootSet mainDexRootSet =
         new RootSetBuilder(application, appInfo, options.mainDexKeepRules).run(executor);
     Set<DexType> mainDexBaseClasses = new Enqueuer(appInfo).traceMainDex(mainDexRootSet, timing);
-    Set<DexType> mainDexClasses = new MainDexListBuilder(mainDexBaseClasses, application).run();
+    timing.begin("Trace direct dependencies");
+    Set<DexType> mainDexClasses =
+        new MainDexListBuilder(mainDexBaseClasses, application).run(executor);
+    timing.end();
 
     List<String> result = mainDexClasses.stream()
         .map(c -> c.toSourceString().replace('.', '/') + ".class")
@@ -101,7 +104,7 @@ public class GenerateMainDexList {
       throws IOException, ExecutionException {
     AndroidApp app = command.getInputApp();
     InternalOptions options = command.getInternalOptions();
-    return new GenerateMainDexList(options).run(app);
+    return new GenerateMainDexList(options).run(app, executor);
   }
 
   public static void main(String[] args)
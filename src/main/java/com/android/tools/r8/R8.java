@@ -18,7 +18,10 @@ import com.android.tools.r8.graph.DexApplication;
 import com.android.tools.r8.graph.DexType;
 import com.android.tools.r8.graph.GraphLense;
 import com.android.tools.r8.ir.conversion.IRConverter;
+import com.android.tools.r8.ir.optimize.ConstantFieldCollector;
 import com.android.tools.r8.ir.optimize.EnumOrdinalMapCollector;
+import com.android.tools.r8.ir.optimize.EnumUnboxer;
+import com.android.tools.r8.ir.optimize.MethodStaticizer;
 import com.android.tools.r8.ir.optimize.SwitchMapCollector;
 import com.android.tools.r8.naming.Minifier;
 import com.android.tools.r8.naming.NamingLens;
@@ -69,11 +72,12 @@ import java.util.concurrent.Executors;
 
 public class R8 {
 
-  private final Timing timing = new Timing("R8");
+  private final Timing timing;
   private final InternalOptions options;
 
   private R8(InternalOptions options) {
     this.options = options;
+    this.timing = new Timing("R8", options.compilationListener);
     options.itemFactory.resetSortedIndices();
   }
 
@@ -230,22 +234,30 @@ public class R8 {
         }
         if (options.useTreeShaking) {
           TreePruner pruner = new TreePruner(application, appInfo.withLiveness(), options);
-          application = pruner.run();
+          application = pruner.run(executorService);
           // Recompute the subtyping information.
           appInfo = appInfo.withLiveness().prunedCopyFrom(application, pruner.getRemovedClasses());
-          new AbstractMethodRemover(appInfo).run();
-          new AnnotationRemover(appInfo.withLiveness(), options).run();
+          timing.begin("Remove abstract methods");
+          new AbstractMethodRemover(appInfo).run(executorService);
+          timing.end();
+          timing.begin("Remove annotations");
+          new AnnotationRemover(appInfo.withLiveness(), options).run(executorService);
+          timing.end();
         }
       } finally {
         timing.end();
       }
 
       if (options.proguardConfiguration.isAccessModificationAllowed()) {
-        ClassAndMemberPublicizer.run(application);
+        timing.begin("Publicize classes and members");
+        ClassAndMemberPublicizer.run(application, executorService);
+        timing.end();
         // We can now remove visibility bridges. Note that we do not need to update the
         // invoke-targets here, as the existing invokes will simply dispatch to the now
         // visible super-method. MemberRebinding, if run, will then dispatch it correctly.
-        application = new VisibilityBridgeRemover(appInfo, application).run();
+        timing.begin("Remove visibility bridges");
+        application = new VisibilityBridgeRemover(appInfo, application).run(executorService);
+        timing.end();
       }
 
       GraphLense graphLense = GraphLense.getIdentityLense();
@@ -270,11 +282,34 @@ public class R8 {
 
       graphLense = new BridgeMethodAnalysis(graphLense, appInfo.withSubtyping()).run();
 
+      if (appInfo.hasLiveness() && options.enableEnumUnboxing) {
+        timing.begin("Unbox enums");
+        EnumUnboxer enumUnboxer =
+            new EnumUnboxer(application, appInfo.withLiveness(), graphLense, options);
+        appInfo = enumUnboxer.run(executorService);
+        graphLense = enumUnboxer.getGraphLense();
+        timing.end();
+      }
+
+      if (appInfo.hasLiveness() && options.enableDevirtualization) {
+        timing.begin("Make methods static");
+        new MethodStaticizer(application, appInfo.withLiveness(), graphLense, options)
+            .run(executorService);
+        timing.end();
+      }
+
+      if (appInfo.hasLiveness() && options.enableConstantFieldPropagation) {
+        timing.begin("Collect constant fields");
+        new ConstantFieldCollector(application, appInfo.withLiveness(), graphLense, options)
+            .run(executorService);
+        timing.end();
+      }
+
       application = optimize(application, appInfo, graphLense, executorService);
 
       // Overwrite SourceFile if specified. This step should be done after IR conversion.
       timing.begin("Rename SourceFile");
-      new SourceFileRewriter(appInfo, options).run();
+      new SourceFileRewriter(appInfo, options).run(executorService);
       timing.end();
 
       if (!options.mainDexKeepRules.isEmpty()) {
@@ -288,7 +323,8 @@ public class R8 {
         // Calculate the automatic main dex list according to legacy multidex constraints.
         // Add those classes to an eventual manual list of classes.
         application = application.builder()
-            .addToMainDexList(new MainDexListBuilder(mainDexBaseClasses, application).run())
+            .addToMainDexList(
+                new MainDexListBuilder(mainDexBaseClasses, application).run(executorService))
             .build();
       }
 
@@ -301,7 +337,7 @@ public class R8 {
           appInfo = enqueuer.traceApplication(rootSet, timing);
           if (options.useTreeShaking) {
             TreePruner pruner = new TreePruner(application, appInfo.withLiveness(), options);
-            application = pruner.run();
+            application = pruner.run(executorService);
             appInfo = appInfo.withLiveness()
                 .prunedCopyFrom(application, pruner.getRemovedClasses());
             // Print reasons on the application after pruning, so that we reflect the actual result.
@@ -15,17 +15,22 @@ import com.android.tools.r8.utils.AndroidApp;
 import com.android.tools.r8.utils.FileUtils;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.OutputMode;
+import com.android.tools.r8.utils.ThreadUtils;
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
 
 public class R8Command extends BaseCompilerCommand {
 
+  private static final int DEFAULT_HOT_INLINING_BUDGET = 20000;
+
   public static class Builder extends BaseCompilerCommand.Builder<R8Command, Builder> {
 
     private final List<ProguardConfigurationSource> mainDexRules = new ArrayList<>();
@@ -37,6 +42,11 @@ public class R8Command extends BaseCompilerCommand {
     private Optional<Boolean> minification = Optional.empty();
     private boolean ignoreMissingClasses = false;
     private Path proguardMapOutput = null;
+    private boolean lambdaMerging = false;
+    private boolean enumUnboxing = false;
+    private boolean devirtualization = false;
+    private boolean constantFieldPropagation = false;
+    private int hotInliningBudget = DEFAULT_HOT_INLINING_BUDGET;
 
     private Builder() {
       super(CompilationMode.RELEASE);
@@ -75,6 +85,78 @@ public class R8Command extends BaseCompilerCommand {
       return self();
     }
 
+    /**
+     * Enable/disable merging of stateless lambda classes. When enabled, the desugared classes of
+     * stateless lambdas that implement the same interface method in the same package are merged
+     * into a shared class, which dispatches on the id of its instances.
+     */
+    public Builder setLambdaMerging(boolean useLambdaMerging) {
+      lambdaMerging = useLambdaMerging;
+      return self();
+    }
+
+    /**
+     * Enable/disable unboxing of enums. When enabled, enums that are only used through their
+     * constants, ordinals and switches are replaced by int values.
+     */
+    public Builder setEnumUnboxing(boolean useEnumUnboxing) {
+      enumUnboxing = useEnumUnboxing;
+      return self();
+    }
+
+    /**
+     * Enable/disable devirtualization. When enabled, interface calls with a single target are
+     * rewritten to virtual calls, and methods that do not use their receiver and are not
+     * overriding or overridden are made static.
+     */
+    public Builder setDevirtualization(boolean useDevirtualization) {
+      devirtualization = useDevirtualization;
+      return self();
+    }
+
+    /**
+     * Enable/disable constant field propagation. When enabled, reads of fields that always hold
+     * the same constant are replaced by the constant, and the writes of such fields are removed.
+     */
+    public Builder setConstantFieldPropagation(boolean useConstantFieldPropagation) {
+      constantFieldPropagation = useConstantFieldPropagation;
+      return self();
+    }
+
+    /**
+     * Add inlining profile files.
+     *
+     * Each line in each of the files specifies a hot method, e.g.
+     * "Lcom/example/MyClass;->run(I)V", or a hot call site, given as the calling method followed
+     * by the called method. Methods called from hot call sites are inlined even if they are larger
+     * than the methods otherwise inlined, within the budget set by
+     * {@link #setHotInliningBudget(int)}. Flags in front of an entry, as in ART profiles, are
+     * allowed, and such entries are only used if the flags include 'H'.
+     */
+    public Builder addInliningProfileFiles(Path... files) throws IOException {
+      getAppBuilder().addInliningProfileFiles(files);
+      return self();
+    }
+
+    /**
+     * Add inlining profile files.
+     *
+     * @see #addInliningProfileFiles(Path...)
+     */
+    public Builder addInliningProfileFiles(Collection<Path> files) throws IOException {
+      getAppBuilder().addInliningProfileFiles(files);
+      return self();
+    }
+
+    /**
+     * Set the number of instructions that inlining at hot call sites of the inlining profile may
+     * add to the program in total.
+     */
+    public Builder setHotInliningBudget(int instructions) {
+      hotInliningBudget = instructions;
+      return self();
+    }
+
     /**
      * Add proguard configuration file resources for automatic main dex list calculation.
      */
@@ -192,34 +274,41 @@ public class R8Command extends BaseCompilerCommand {
       validate();
       DexItemFactory factory = new DexItemFactory();
       ImmutableList<ProguardConfigurationRule> mainDexKeepRules;
-      if (this.mainDexRules.isEmpty()) {
-        mainDexKeepRules = ImmutableList.of();
-      } else {
-        ProguardConfigurationParser parser = new ProguardConfigurationParser(factory);
-        try {
-          parser.parse(mainDexRules);
-          mainDexKeepRules = parser.getConfig().getRules();
-        } catch (ProguardRuleParserException e) {
-          throw new CompilationException(e.getMessage(), e.getCause());
-        }
-      }
       ProguardConfiguration configuration;
-      if (proguardConfigs.isEmpty()) {
-        configuration = ProguardConfiguration.defaultConfiguration(factory);
-      } else {
-        ProguardConfigurationParser parser = new ProguardConfigurationParser(factory);
-        try {
-          parser.parse(proguardConfigs);
-        } catch (ProguardRuleParserException e) {
-          throw new CompilationException(e.getMessage(), e.getCause());
+      // The main-dex rules and the configuration share the threads parsing them.
+      ExecutorService executorService =
+          ThreadUtils.getExecutorService(Runtime.getRuntime().availableProcessors());
+      try {
+        if (this.mainDexRules.isEmpty()) {
+          mainDexKeepRules = ImmutableList.of();
+        } else {
+          ProguardConfigurationParser parser = new ProguardConfigurationParser(factory);
+          try {
+            parser.parse(mainDexRules, executorService);
+            mainDexKeepRules = parser.getConfig().getRules();
+          } catch (ProguardRuleParserException e) {
+            throw new CompilationException(e.getMessage(), e.getCause());
+          }
         }
-        ProguardConfiguration.Builder configurationBuilder = parser.getConfigurationBuilder();
-        if (proguardConfigurationConsumer != null) {
-          proguardConfigurationConsumer.accept(configurationBuilder);
+        if (proguardConfigs.isEmpty()) {
+          configuration = ProguardConfiguration.defaultConfiguration(factory);
+        } else {
+          ProguardConfigurationParser parser = new ProguardConfigurationParser(factory);
+          try {
+            parser.parse(proguardConfigs, executorService);
+          } catch (ProguardRuleParserException e) {
+            throw new CompilationException(e.getMessage(), e.getCause());
+          }
+          ProguardConfiguration.Builder configurationBuilder = parser.getConfigurationBuilder();
+          if (proguardConfigurationConsumer != null) {
+            proguardConfigurationConsumer.accept(configurationBuilder);
+          }
+          configuration = configurationBuilder.build();
+          getAppBuilder().addProgramFiles(configuration.getInjars());
+          getAppBuilder().addLibraryFiles(configuration.getLibraryjars());
         }
-        configuration = configurationBuilder.build();
-        getAppBuilder().addProgramFiles(configuration.getInjars());
-        getAppBuilder().addLibraryFiles(configuration.getLibraryjars());
+      } finally {
+        executorService.shutdown();
       }
 
       // TODO(b/64802420): setProguardMapFile if configuration.hasApplyMappingFile
@@ -238,11 +327,17 @@ public class R8Command extends BaseCompilerCommand {
           getMode(),
           getMinApiLevel(),
           getDiagnosticsHandler(),
+          getCompilationListener(),
           useTreeShaking,
           useDiscardedChecker,
           useMinification,
           ignoreMissingClasses,
-          proguardMapOutput);
+          proguardMapOutput,
+          lambdaMerging,
+          enumUnboxing,
+          devirtualization,
+          constantFieldPropagation,
+          hotInliningBudget);
     }
   }
 
@@ -268,10 +363,20 @@ public class R8Command extends BaseCompilerCommand {
       "  --no-tree-shaking        # Force disable tree shaking of unreachable classes.",
       "  --no-discarded-checker   # Force disable the discarded checker (when tree shaking).",
       "  --no-minification        # Force disable minification of names.",
+      "  --merge-lambdas          # Merge stateless lambda classes into shared classes.",
+      "  --unbox-enums            # Replace enums only used through ordinals by int values.",
+      "  --devirtualize           # Call single interface method targets directly and make",
+      "                           # methods not using 'this' static.",
+      "  --propagate-constant-fields  # Replace reads of fields always holding the same",
+      "                           # constant by the constant.",
       "  --main-dex-rules <file>  # Proguard keep rules for classes to place in the",
       "                           # primary dex file.",
       "  --main-dex-list <file>   # List of classes to place in the primary dex file.",
       "  --main-dex-list-output <file>  # Output the full main-dex list in <file>.",
+      "  --startup-profile <file> # List of classes and methods used at startup.",
+      "  --inlining-profile <file>  # List of hot methods and call sites.",
+      "  --hot-inlining-budget <n>  # Instructions that inlining at hot call sites may",
+      "                           # add in total (default " + DEFAULT_HOT_INLINING_BUDGET + ").",
       "  --version                # Print the version of r8.",
       "  --help                   # Print this message."));
 
@@ -283,6 +388,11 @@ public class R8Command extends BaseCompilerCommand {
   private final boolean useMinification;
   private final boolean ignoreMissingClasses;
   private final Path proguardMapOutput;
+  private final boolean useLambdaMerging;
+  private final boolean useEnumUnboxing;
+  private final boolean useDevirtualization;
+  private final boolean useConstantFieldPropagation;
+  private final int hotInliningBudget;
 
   public static Builder builder() {
     return new Builder();
@@ -342,12 +452,26 @@ public class R8Command extends BaseCompilerCommand {
         builder.setDiscardedChecker(false);
       } else if (arg.equals("--no-minification")) {
         builder.setMinification(false);
+      } else if (arg.equals("--merge-lambdas")) {
+        builder.setLambdaMerging(true);
+      } else if (arg.equals("--unbox-enums")) {
+        builder.setEnumUnboxing(true);
+      } else if (arg.equals("--devirtualize")) {
+        builder.setDevirtualization(true);
+      } else if (arg.equals("--propagate-constant-fields")) {
+        builder.setConstantFieldPropagation(true);
       } else if (arg.equals("--main-dex-rules")) {
         builder.addMainDexRulesFiles(Paths.get(args[++i]));
       } else if (arg.equals("--main-dex-list")) {
         builder.addMainDexListFiles(Paths.get(args[++i]));
       } else if (arg.equals("--main-dex-list-output")) {
         builder.setMainDexListOutputPath(Paths.get(args[++i]));
+      } else if (arg.equals("--startup-profile")) {
+        builder.addStartupProfileFiles(Paths.get(args[++i]));
+      } else if (arg.equals("--inlining-profile")) {
+        builder.addInliningProfileFiles(Paths.get(args[++i]));
+      } else if (arg.equals("--hot-inlining-budget")) {
+        builder.setHotInliningBudget(Integer.valueOf(args[++i]));
       } else if (arg.equals("--pg-conf")) {
         builder.addProguardConfigurationFiles(Paths.get(args[++i]));
       } else if (arg.equals("--ignore-missing-classes")) {
@@ -394,12 +518,19 @@ public class R8Command extends BaseCompilerCommand {
       CompilationMode mode,
       int minApiLevel,
       DiagnosticsHandler diagnosticsHandler,
+      CompilationListener compilationListener,
       boolean useTreeShaking,
       boolean useDiscardedChecker,
       boolean useMinification,
       boolean ignoreMissingClasses,
-      Path proguardMapOutput) {
-    super(inputApp, outputPath, outputMode, mode, minApiLevel, diagnosticsHandler);
+      Path proguardMapOutput,
+      boolean useLambdaMerging,
+      boolean useEnumUnboxing,
+      boolean useDevirtualization,
+      boolean useConstantFieldPropagation,
+      int hotInliningBudget) {
+    super(inputApp, outputPath, outputMode, mode, minApiLevel, diagnosticsHandler,
+        compilationListener);
     assert proguardConfiguration != null;
     assert mainDexKeepRules != null;
     assert getOutputMode() == OutputMode.Indexed : "Only regular mode is supported in R8";
@@ -411,6 +542,11 @@ public class R8Command extends BaseCompilerCommand {
     this.useMinification = useMinification;
     this.ignoreMissingClasses = ignoreMissingClasses;
     this.proguardMapOutput = proguardMapOutput;
+    this.useLambdaMerging = useLambdaMerging;
+    this.useEnumUnboxing = useEnumUnboxing;
+    this.useDevirtualization = useDevirtualization;
+    this.useConstantFieldPropagation = useConstantFieldPropagation;
+    this.hotInliningBudget = hotInliningBudget;
   }
 
   private R8Command(boolean printHelp, boolean printVersion) {
@@ -423,6 +559,11 @@ public class R8Command extends BaseCompilerCommand {
     useMinification = false;
     ignoreMissingClasses = false;
     proguardMapOutput = null;
+    useLambdaMerging = false;
+    useEnumUnboxing = false;
+    useDevirtualization = false;
+    useConstantFieldPropagation = false;
+    hotInliningBudget = 0;
   }
   public boolean useTreeShaking() {
     return useTreeShaking;
@@ -436,18 +577,51 @@ public class R8Command extends BaseCompilerCommand {
     return useMinification;
   }
 
+  public boolean useLambdaMerging() {
+    return useLambdaMerging;
+  }
+
+  public boolean useEnumUnboxing() {
+    return useEnumUnboxing;
+  }
+
+  public boolean useDevirtualization() {
+    return useDevirtualization;
+  }
+
+  public boolean useConstantFieldPropagation() {
+    return useConstantFieldPropagation;
+  }
+
+  public int getHotInliningBudget() {
+    return hotInliningBudget;
+  }
+
   @Override
   InternalOptions getInternalOptions() {
     InternalOptions internal = new InternalOptions(proguardConfiguration);
     assert !internal.debug;
     internal.debug = getMode() == CompilationMode.DEBUG;
     internal.minApiLevel = getMinApiLevel();
+    assert !internal.mergeLambdaClasses;
+    internal.mergeLambdaClasses = useLambdaMerging();
+    assert !internal.enableEnumUnboxing;
+    internal.enableEnumUnboxing = useEnumUnboxing();
+    assert !internal.enableDevirtualization;
+    internal.enableDevirtualization = useDevirtualization();
+    assert !internal.enableConstantFieldPropagation;
+    internal.enableConstantFieldPropagation = useConstantFieldPropagation();
+    internal.hotInliningBudget = getHotInliningBudget();
     // -dontoptimize disables optimizations by flipping related flags.
     if (!proguardConfiguration.isOptimizing()) {
       internal.skipDebugLineNumberOpt = true;
       internal.skipClassMerging = true;
       internal.inlineAccessors = false;
       internal.removeSwitchMaps = false;
+      internal.mergeLambdaClasses = false;
+      internal.enableEnumUnboxing = false;
+      internal.enableDevirtualization = false;
+      internal.enableConstantFieldPropagation = false;
       internal.outline.enabled = false;
     }
     assert !internal.skipMinification;
@@ -473,8 +647,13 @@ public class R8Command extends BaseCompilerCommand {
       internal.removeSwitchMaps = false;
       // TODO(zerny): Should we support inlining in debug mode? b/62937285
       internal.inlineAccessors = false;
+      internal.mergeLambdaClasses = false;
+      internal.enableEnumUnboxing = false;
+      internal.enableDevirtualization = false;
+      internal.enableConstantFieldPropagation = false;
     }
     internal.proguardMapOutput = proguardMapOutput;
+    internal.compilationListener = getCompilationListener();
     return internal;
   }
 }
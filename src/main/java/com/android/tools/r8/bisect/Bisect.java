@@ -21,12 +21,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class Bisect {
 
@@ -38,6 +44,16 @@ public class Bisect {
     Result apply(DexApplication application) throws Exception;
   }
 
+  /**
+   * Check of the candidate applications of a round of concurrent runs. The candidates are
+   * prepared one after another, as writing applications sharing an item factory is not thread
+   * safe, and the returned checks are then run concurrently.
+   */
+  public interface ConcurrentCommand {
+
+    Callable<Result> prepare(DexApplication application, int candidate) throws Exception;
+  }
+
   private static class StreamReader implements Runnable {
 
     private InputStream stream;
@@ -87,6 +103,46 @@ public class Bisect {
     }
   }
 
+  /**
+   * Run the bisection checking up to {@code jobs} applications concurrently in each round, see
+   * {@link BisectState#bisect(int)}. The checks of a round are prepared one after another and then
+   * run concurrently. A round ends on the first conclusive result, and the checks still running
+   * are interrupted and have stopped before the next round is prepared.
+   */
+  public static DexProgramClass run(BisectState state, ConcurrentCommand command, int jobs)
+      throws Exception {
+    while (true) {
+      List<DexApplication> applications = state.bisect(jobs);
+      if (applications == null) {
+        state.write();
+        return state.getFinalClass();
+      }
+      List<Callable<Result>> checks = new ArrayList<>(applications.size());
+      for (int i = 0; i < applications.size(); i++) {
+        checks.add(command.prepare(applications.get(i), i));
+      }
+      ExecutorService commandExecutor = Executors.newFixedThreadPool(jobs);
+      try {
+        CompletionService<Result> completionService =
+            new ExecutorCompletionService<>(commandExecutor);
+        List<Future<Result>> futures = new ArrayList<>(checks.size());
+        for (Callable<Result> check : checks) {
+          futures.add(completionService.submit(check));
+        }
+        boolean conclusive = false;
+        while (!conclusive) {
+          Future<Result> future = completionService.take();
+          conclusive = state.setCandidateResult(futures.indexOf(future), future.get());
+        }
+      } finally {
+        commandExecutor.shutdownNow();
+        commandExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      }
+      state.finishRound();
+      state.write();
+    }
+  }
+
   public DexProgramClass run() throws Exception {
     // Setup output directory (or write to a temp dir).
     Path output;
@@ -101,8 +157,11 @@ public class Bisect {
 
     ExecutorService executor = Executors.newWorkStealingPool();
     try {
-      DexApplication goodApp = readApp(options.goodBuild, executor);
-      DexApplication badApp = readApp(options.badBuild, executor);
+      // Both applications are read with the same item factory, so that their classes can be
+      // mixed in a single application.
+      InternalOptions readOptions = new InternalOptions();
+      DexApplication goodApp = readApp(options.goodBuild, readOptions, executor);
+      DexApplication badApp = readApp(options.badBuild, readOptions, executor);
 
       File stateFile = options.stateFile != null
           ? options.stateFile
@@ -121,7 +180,15 @@ public class Bisect {
 
       // Setup post-build command.
       Command command = null;
-      if (options.command != null) {
+      ConcurrentCommand concurrentCommand = null;
+      if (options.command != null && options.jobs > 1) {
+        // Each concurrent command gets its own directory.
+        concurrentCommand = (application, candidate) -> {
+          Path directory = Files.createDirectories(output.resolve("candidate" + candidate));
+          writeApp(application, directory, executor);
+          return () -> runCommand(directory);
+        };
+      } else if (options.command != null) {
         command = (application) -> {
           writeApp(application, output, executor);
           return runCommand(output);
@@ -129,6 +196,9 @@ public class Bisect {
       }
 
       // Run bisection.
+      if (options.jobs > 1) {
+        return run(state, concurrentCommand, options.jobs);
+      }
       return run(state, command, output, executor);
     } finally {
       executor.shutdown();
@@ -153,6 +223,8 @@ public class Bisect {
       stdoutThread.join();
       stderrThread.join();
     } catch (InterruptedException e) {
+      // The result of the command is no longer needed when running commands concurrently.
+      process.destroyForcibly();
       throw new RuntimeException("Execution interrupted", e);
     }
     int result = process.exitValue();
@@ -168,13 +240,13 @@ public class Bisect {
     throw new CompilationError("Failed to run command " + args);
   }
 
-  private DexApplication readApp(File apk, ExecutorService executor)
+  private DexApplication readApp(File apk, InternalOptions options, ExecutorService executor)
       throws IOException, ExecutionException {
     AndroidApp app = AndroidApp.fromProgramFiles(apk.toPath());
-    return new ApplicationReader(app, new InternalOptions(), timing).read(executor);
+    return new ApplicationReader(app, options, timing).read(executor);
   }
 
-  private static void writeApp(DexApplication app, Path output, ExecutorService executor)
+  static void writeApp(DexApplication app, Path output, ExecutorService executor)
       throws IOException, ExecutionException, DexOverflowException {
     InternalOptions options = new InternalOptions();
     AppInfo appInfo = new AppInfo(app);
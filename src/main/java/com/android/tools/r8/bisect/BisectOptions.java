@@ -20,6 +20,7 @@ public class BisectOptions {
   public static final String STATE_FLAG = "state";
   public static final String OUTPUT_FLAG = "output";
   public static final String COMMAND_FLAG = "command";
+  public static final String JOBS_FLAG = "jobs";
 
   public final File goodBuild;
   public final File badBuild;
@@ -27,6 +28,7 @@ public class BisectOptions {
   public final File command;
   public final File output;
   public final Result result;
+  public final int jobs;
 
   public enum Result { UNKNOWN, GOOD, BAD }
 
@@ -36,6 +38,7 @@ public class BisectOptions {
     OptionSpec<String> command;
     OptionSpec<String> stateFile;
     OptionSpec<String> output;
+    OptionSpec<Integer> jobs;
     OptionSpec<Void> resultGood;
     OptionSpec<Void> resultBad;
     OptionSpec<Void> help;
@@ -61,6 +64,11 @@ public class BisectOptions {
           .requiredUnless(stateFile)
           .withRequiredArg()
           .describedAs("file");
+      jobs = parser.accepts(JOBS_FLAG, "Number of commands to run concurrently.")
+          .withRequiredArg()
+          .ofType(Integer.class)
+          .defaultsTo(1)
+          .describedAs("n");
     }
 
     OptionSet parse(String[] args) {
@@ -77,13 +85,14 @@ public class BisectOptions {
   }
 
   private BisectOptions(File goodBuild, File badBuild, File stateFile, File command, File output,
-      Result result) {
+      Result result, int jobs) {
     this.goodBuild = goodBuild;
     this.badBuild = badBuild;
     this.stateFile = stateFile;
     this.command = command;
     this.output = output;
     this.result = result;
+    this.jobs = jobs;
   }
 
   public static BisectOptions parse(String[] args) throws IOException {
@@ -118,7 +127,14 @@ public class BisectOptions {
       }
       result = Result.BAD;
     }
-    return new BisectOptions(goodBuild, badBuild, stateFile, command, output, result);
+    int jobs = options.valueOf(parser.jobs);
+    if (jobs < 1) {
+      throw new CompilationError("Invalid --" + JOBS_FLAG + ": " + jobs);
+    }
+    if (jobs > 1 && command == null) {
+      throw new CompilationError("Option --" + JOBS_FLAG + " requires --" + COMMAND_FLAG);
+    }
+    return new BisectOptions(goodBuild, badBuild, stateFile, command, output, result, jobs);
   }
 
   private static <T> T require(OptionSet options, OptionSpec<T> option, String flag) {
@@ -22,9 +22,11 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 public class BisectState {
 
@@ -87,6 +89,15 @@ public class BisectState {
       return new Range(start, start + length);
     }
 
+    // Returns part {@code index} of this range split into {@code parts} parts of almost equal
+    // size. Splitting into two parts gives split() as the first part.
+    public Range part(int index, int parts) {
+      assert 0 <= index && index < parts && parts <= size();
+      long size = size();
+      return new Range(start + (int) (size * index / parts),
+          start + (int) (size * (index + 1) / parts));
+    }
+
     public boolean contains(int index) {
       return start <= index && index < end;
     }
@@ -153,6 +164,12 @@ public class BisectState {
   // Computed data
   private Range nextRange = null;
 
+  // Candidate ranges and their results when checking several ranges concurrently, see
+  // bisect(int).
+  private List<Range> candidateRanges = null;
+  private Result[] candidateResults = null;
+  private boolean candidatesAreSanityChecks = false;
+
   public BisectState(DexApplication goodApp, DexApplication badApp, File stateFile) {
     this.badApp = badApp;
     this.stateFile = stateFile;
@@ -191,7 +208,13 @@ public class BisectState {
     for (int i = 0; i < data.size() - 1; i++) {
       runs.add(new Run(data.get(i)));
     }
-    nextRange = new Range(data.get(data.size() - 1));
+    // The state is written without a next range after a round of concurrent runs, see write().
+    String last = data.get(data.size() - 1);
+    if (last.indexOf(':') >= 0) {
+      runs.add(new Run(last));
+    } else {
+      nextRange = new Range(last);
+    }
   }
 
   public void setPreviousResult(Result result) {
@@ -255,17 +278,111 @@ public class BisectState {
       nextRange = badRange.split();
     }
     System.out.println("Next bisection range: " + nextRange);
+    return buildApplication(nextRange);
+  }
+
+  /**
+   * Compute the applications for the next round of checks to run concurrently. The currently
+   * known bad range is split into {@code candidates + 1} parts and an application is returned for
+   * each part but the last, as the last part is known to be bad if all others are good. With a
+   * single candidate this is the same as {@link #bisect()}.
+   *
+   * <p>The first round checks the reference application and the full input application. A next
+   * range read from a state file is discarded and checked again. Returns null when the bisection
+   * is complete.
+   */
+  public List<DexApplication> bisect(int candidates) {
+    assert candidates > 0;
+    nextRange = null;
+    List<Range> ranges = new ArrayList<>();
+    candidatesAreSanityChecks = runs.size() < 2;
+    if (runs.isEmpty()) {
+      ranges.add(new Range(0, 0));
+    }
+    if (runs.size() < 2) {
+      ranges.add(new Range(0, sortedGoodClasses.size()));
+    } else {
+      Range badRange = getLastBadRange();
+      if (badRange.isEmpty()) {
+        throw new CompilationError("Bad range is empty. Cannot continue bisecting :-(");
+      }
+      if (badRange.size() == 1) {
+        nextRange = badRange;
+        return null;
+      }
+      System.out.println("Last bad range: " + badRange);
+      int parts = Integer.min(candidates + 1, badRange.size());
+      for (int i = 0; i < parts - 1; i++) {
+        ranges.add(badRange.part(i, parts));
+      }
+    }
+    candidateRanges = ranges;
+    candidateResults = new Result[ranges.size()];
+    List<DexApplication> applications = new ArrayList<>(ranges.size());
+    for (Range range : ranges) {
+      System.out.println("Next bisection range: " + range);
+      applications.add(buildApplication(range));
+    }
+    return applications;
+  }
+
+  /**
+   * Record the result for one of the applications returned by {@link #bisect(int)}. Returns
+   * true if the round is conclusive, that is, if the results of the candidates still running are
+   * not needed to continue.
+   */
+  public boolean setCandidateResult(int candidate, Result result) {
+    assert result != Result.UNKNOWN;
+    assert candidateResults[candidate] == null;
+    candidateResults[candidate] = result;
+    if (candidatesAreSanityChecks || result == Result.GOOD) {
+      return Arrays.stream(candidateResults).allMatch(Objects::nonNull);
+    }
+    return true;
+  }
+
+  /**
+   * Record the results of a conclusive round of concurrent runs. Results of candidates that were
+   * not needed to continue are discarded.
+   */
+  public void finishRound() {
+    assert candidateRanges != null;
+    Range badRange = null;
+    for (int i = 0; i < candidateRanges.size(); i++) {
+      Result result = candidateResults[i];
+      if (result == null) {
+        continue;
+      }
+      if (result == Result.BAD && !candidatesAreSanityChecks) {
+        // Record a bad range last, the next round continues from the last bad range.
+        if (badRange == null) {
+          badRange = candidateRanges.get(i);
+        }
+        continue;
+      }
+      nextRange = candidateRanges.get(i);
+      setPreviousResult(result);
+    }
+    if (badRange != null) {
+      nextRange = badRange;
+      setPreviousResult(Result.BAD);
+    }
+    candidateRanges = null;
+    candidateResults = null;
+  }
+
+  private DexApplication buildApplication(Range range) {
     int goodClasses = 0;
     int badClasses = 0;
     List<DexProgramClass> programClasses = new ArrayList<>();
     for (DexProgramClass clazz : badApp.classes()) {
-      DexProgramClass goodClass = getGoodClass(clazz);
+      DexProgramClass goodClass = getGoodClass(clazz, range);
       if (goodClass != null) {
         programClasses.add(goodClass);
         ++goodClasses;
       } else {
         programClasses.add(clazz);
-        assert !nextRange.isEmpty();
+        assert !range.isEmpty();
         ++badClasses;
       }
     }
@@ -273,9 +390,9 @@ public class BisectState {
     return badApp.builder().replaceProgramClasses(programClasses).build();
   }
 
-  private DexProgramClass getGoodClass(DexProgramClass clazz) {
+  private DexProgramClass getGoodClass(DexProgramClass clazz, Range range) {
     Integer index = indexMap.get(clazz.type);
-    if (index != null && !nextRange.contains(index)) {
+    if (index != null && !range.contains(index)) {
       return sortedGoodClasses.get(index);
     }
     return null;
@@ -312,8 +429,10 @@ public class BisectState {
         run.write(writer);
         writer.write("\n");
       }
-      nextRange.write(writer);
-      writer.write("\n");
+      if (nextRange != null) {
+        nextRange.write(writer);
+        writer.write("\n");
+      }
       writer.flush();
     }
   }
@@ -0,0 +1,225 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.code;
+
+import com.android.tools.r8.dex.IndexedItemCollection;
+import com.android.tools.r8.graph.DexString;
+import com.android.tools.r8.graph.IndexedDexItem;
+import com.android.tools.r8.graph.ObjectToOffsetMapping;
+import com.android.tools.r8.graph.OffsetToObjectMapping;
+import java.nio.ShortBuffer;
+
+/**
+ * Operations on instructions in their encoded form as read from a dex file.
+ *
+ * <p>Only the size of each instruction and the position and kind of its item references are
+ * looked at, so code that is just passed through to the output does not have to be decoded into
+ * {@link Instruction} objects. The references are resolved through the index mapping of the dex
+ * file that the code units were read from.
+ */
+public class CodeUnits {
+
+  private static final byte NONE = 0;
+  private static final byte STRING = 1;
+  private static final byte STRING_JUMBO = 2;
+  private static final byte TYPE = 3;
+  private static final byte FIELD = 4;
+  private static final byte METHOD = 5;
+  private static final byte METHOD_AND_PROTO = 6;
+  private static final byte CALL_SITE = 7;
+
+  // Size in code units for each opcode, 0 for unused opcodes.
+  private static final byte[] SIZES = new byte[256];
+  // Kind of the item referenced by each opcode. All references are at code unit 1.
+  private static final byte[] REFERENCES = new byte[256];
+
+  static {
+    setSize(1, 0x00, 0x01, 0x04, 0x07, 0x0a, 0x0b, 0x0c, 0x0d, 0x0e, 0x0f, 0x10, 0x11, 0x12,
+        0x1d, 0x1e, 0x21, 0x27, 0x28);
+    setSizeRange(1, 0x7b, 0x8f);
+    setSizeRange(1, 0xb0, 0xcf);
+    setSize(2, 0x02, 0x05, 0x08, 0x13, 0x15, 0x16, 0x19, 0x1a, 0x1c, 0x1f, 0x20, 0x22, 0x23,
+        0x29);
+    setSizeRange(2, 0x2d, 0x3d);
+    setSizeRange(2, 0x44, 0x6d);
+    setSizeRange(2, 0x90, 0xaf);
+    setSizeRange(2, 0xd0, 0xe2);
+    setSize(3, 0x03, 0x06, 0x09, 0x14, 0x17, 0x1b, 0x24, 0x25, 0x26, 0x2a, 0x2b, 0x2c, 0xfc,
+        0xfd);
+    setSizeRange(3, 0x6e, 0x72);
+    setSizeRange(3, 0x74, 0x78);
+    setSize(4, 0xfa, 0xfb);
+    setSize(5, 0x18);
+
+    setReference(STRING, 0x1a);
+    setReference(STRING_JUMBO, 0x1b);
+    setReference(TYPE, 0x1c, 0x1f, 0x20, 0x22, 0x23, 0x24, 0x25);
+    for (int opcode = 0x52; opcode <= 0x6d; opcode++) {
+      setReference(FIELD, opcode);
+    }
+    for (int opcode = 0x6e; opcode <= 0x78; opcode++) {
+      if (opcode != 0x73) {
+        setReference(METHOD, opcode);
+      }
+    }
+    setReference(METHOD_AND_PROTO, 0xfa, 0xfb);
+    setReference(CALL_SITE, 0xfc, 0xfd);
+  }
+
+  private static void setSize(int size, int... opcodes) {
+    for (int opcode : opcodes) {
+      SIZES[opcode] = (byte) size;
+    }
+  }
+
+  private static void setSizeRange(int size, int first, int last) {
+    for (int opcode = first; opcode <= last; opcode++) {
+      SIZES[opcode] = (byte) size;
+    }
+  }
+
+  private static void setReference(byte kind, int... opcodes) {
+    for (int opcode : opcodes) {
+      REFERENCES[opcode] = kind;
+    }
+  }
+
+  private final short[] codeUnits;
+  private final OffsetToObjectMapping mapping;
+
+  public CodeUnits(short[] codeUnits, OffsetToObjectMapping mapping) {
+    this.codeUnits = codeUnits;
+    this.mapping = mapping;
+  }
+
+  public int size() {
+    return codeUnits.length;
+  }
+
+  public Instruction[] decode(InstructionFactory factory) {
+    return factory.readSequenceFrom(ShortBuffer.wrap(codeUnits), 0, codeUnits.length, mapping);
+  }
+
+  private int opcodeAt(int offset) {
+    return codeUnits[offset] & 0xff;
+  }
+
+  private int sizeAt(int offset) {
+    int opcode = opcodeAt(offset);
+    if (opcode == 0x00) {
+      switch ((codeUnits[offset] >> 8) & 0xff) {
+        case 0x01:
+          // Packed switch payload.
+          return 4 + 2 * read16BitValue(offset + 1);
+        case 0x02:
+          // Sparse switch payload.
+          return 2 + 4 * read16BitValue(offset + 1);
+        case 0x03:
+          // Fill array data payload.
+          long width = read16BitValue(offset + 1);
+          long count = read32BitValue(offset + 2);
+          return 4 + (int) ((width * count + 1) / 2);
+        default:
+          return 1;
+      }
+    }
+    int size = SIZES[opcode];
+    if (size == 0) {
+      throw new IllegalArgumentException("Illegal Opcode: 0x" + Integer.toString(opcode, 16));
+    }
+    return size;
+  }
+
+  private int read16BitValue(int offset) {
+    return codeUnits[offset] & 0xffff;
+  }
+
+  private long read32BitValue(int offset) {
+    return (codeUnits[offset] & 0xffffL) | ((codeUnits[offset + 1] & 0xffffL) << 16);
+  }
+
+  private IndexedDexItem referenceAt(int offset) {
+    switch (REFERENCES[opcodeAt(offset)]) {
+      case STRING:
+        return mapping.getString(read16BitValue(offset + 1));
+      case STRING_JUMBO:
+        return mapping.getString((int) read32BitValue(offset + 1));
+      case TYPE:
+        return mapping.getType(read16BitValue(offset + 1));
+      case FIELD:
+        return mapping.getField(read16BitValue(offset + 1));
+      case METHOD:
+      case METHOD_AND_PROTO:
+        return mapping.getMethod(read16BitValue(offset + 1));
+      case CALL_SITE:
+        return mapping.getCallSite(read16BitValue(offset + 1));
+      default:
+        return null;
+    }
+  }
+
+  /** Returns the number of instructions, including payload pseudo-instructions. */
+  public int countInstructions() {
+    int count = 0;
+    for (int offset = 0; offset < codeUnits.length; offset += sizeAt(offset)) {
+      count++;
+    }
+    return count;
+  }
+
+  /** Returns the highest sorting string referenced by a const-string instruction, if any. */
+  public DexString getHighestSortingString() {
+    DexString highestSortingString = null;
+    for (int offset = 0; offset < codeUnits.length; offset += sizeAt(offset)) {
+      byte kind = REFERENCES[opcodeAt(offset)];
+      if (kind == STRING || kind == STRING_JUMBO) {
+        DexString string = (DexString) referenceAt(offset);
+        if (highestSortingString == null || highestSortingString.slowCompareTo(string) < 0) {
+          highestSortingString = string;
+        }
+      }
+    }
+    return highestSortingString;
+  }
+
+  public void collectIndexedItems(IndexedItemCollection indexedItems) {
+    for (int offset = 0; offset < codeUnits.length; offset += sizeAt(offset)) {
+      IndexedDexItem item = referenceAt(offset);
+      if (item != null) {
+        item.collectIndexedItems(indexedItems);
+        if (REFERENCES[opcodeAt(offset)] == METHOD_AND_PROTO) {
+          mapping.getProto(read16BitValue(offset + 3)).collectIndexedItems(indexedItems);
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the code units to the given buffer, with the item references rewritten to the indices
+   * of the items in the dex file being written.
+   */
+  public void write(ShortBuffer dest, ObjectToOffsetMapping offsets) {
+    int start = dest.position();
+    dest.put(codeUnits);
+    for (int offset = 0; offset < codeUnits.length; offset += sizeAt(offset)) {
+      IndexedDexItem item = referenceAt(offset);
+      if (item == null) {
+        continue;
+      }
+      int index = item.getOffset(offsets);
+      if (REFERENCES[opcodeAt(offset)] == STRING_JUMBO) {
+        dest.put(start + offset + 1, (short) (index & 0xffff));
+        dest.put(start + offset + 2, (short) ((index >> 16) & 0xffff));
+        continue;
+      }
+      assert index == (index & 0xffff);
+      dest.put(start + offset + 1, (short) index);
+      if (REFERENCES[opcodeAt(offset)] == METHOD_AND_PROTO) {
+        int protoIndex = mapping.getProto(read16BitValue(offset + 3)).getOffset(offsets);
+        assert protoIndex == (protoIndex & 0xffff);
+        dest.put(start + offset + 3, (short) protoIndex);
+      }
+    }
+  }
+}
@@ -28,9 +28,11 @@ import com.android.tools.r8.utils.DexVersion;
 import com.android.tools.r8.utils.ClassProvider;
 import com.android.tools.r8.utils.ClasspathClassCollection;
 import com.android.tools.r8.utils.DescriptorUtils;
+import com.android.tools.r8.utils.InliningProfile;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.LibraryClassCollection;
 import com.android.tools.r8.utils.MainDexList;
+import com.android.tools.r8.utils.StartupProfile;
 import com.android.tools.r8.utils.ThreadUtils;
 import com.android.tools.r8.utils.Timing;
 import java.io.IOException;
@@ -43,6 +45,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class ApplicationReader {
@@ -83,9 +86,12 @@ public class ApplicationReader {
       // TODO: try and preload less classes.
       readProguardMap(builder, executorService, futures);
       readMainDexList(builder, executorService, futures);
+      readStartupProfile(executorService, futures);
+      readInliningProfile(executorService, futures);
       ClassReader classReader = new ClassReader(executorService, futures);
       classReader.readSources();
       ThreadUtils.awaitFutures(futures);
+      classReader.addDexClasses();
       classReader.initializeLazyClassCollection(builder);
     } finally {
       timing.end();
@@ -141,6 +147,38 @@ public class ApplicationReader {
     }
   }
 
+  private void readStartupProfile(ExecutorService executorService, List<Future<?>> futures) {
+    if (inputApp.hasStartupProfile()) {
+      futures.add(executorService.submit(() -> {
+        StartupProfile.Builder builder = StartupProfile.builder(itemFactory);
+        for (Resource resource : inputApp.getStartupProfileResources()) {
+          try (InputStream input = resource.getStream()) {
+            builder.parse(input);
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+        options.startupProfile = builder.build();
+      }));
+    }
+  }
+
+  private void readInliningProfile(ExecutorService executorService, List<Future<?>> futures) {
+    if (inputApp.hasInliningProfile()) {
+      futures.add(executorService.submit(() -> {
+        InliningProfile.Builder builder = InliningProfile.builder(itemFactory);
+        for (Resource resource : inputApp.getInliningProfileResources()) {
+          try (InputStream input = resource.getStream()) {
+            builder.parse(input);
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+        options.inliningProfile = builder.build();
+      }));
+    }
+  }
+
   private final class ClassReader {
     private final ExecutorService executorService;
     private final List<Future<?>> futures;
@@ -152,6 +190,8 @@ public class ApplicationReader {
     private final Queue<DexLibraryClass> libraryClasses = new ConcurrentLinkedQueue<>();
     // Jar application reader to share across all class readers.
     private final JarApplicationReader application = new JarApplicationReader(options);
+    // Adds the classes read from dex files to the queues, in file order, once they are all read.
+    private final List<Runnable> dexClassAdditions = new ArrayList<>();
 
     ClassReader(ExecutorService executorService, List<Future<?>> futures) {
       this.executorService = executorService;
@@ -174,14 +214,13 @@ public class ApplicationReader {
         for (DexFileReader reader : fileReaders) {
           DexFileReader.populateIndexTables(reader);
         }
-        // Read the DexCode items and DexProgramClass items in parallel.
+        // Read the DexProgramClass items in parallel, also within each file. Code items are read
+        // with the methods referring to them.
         if (!options.skipReadingDexCode) {
+          Consumer<DexClass> classCollection = classKind.bridgeConsumer(classes::add);
           for (DexFileReader reader : fileReaders) {
-            futures.add(executorService.submit(() -> {
-              reader.addCodeItemsTo();  // Depends on Everything for parsing.
-              reader.addClassDefsTo(
-                  classKind.bridgeConsumer(classes::add)); // Depends on Methods, Code items etc.
-            }));
+            List<List<DexClass>> ranges = reader.readClassDefs(executorService, futures);
+            dexClassAdditions.add(() -> ranges.forEach(range -> range.forEach(classCollection)));
           }
         }
       }
@@ -191,17 +230,23 @@ public class ApplicationReader {
         ClassKind classKind, Queue<T> classes) {
       JarClassFileReader reader = new JarClassFileReader(
           application, classKind.bridgeConsumer(classes::add));
-      // Read classes in parallel.
-      for (Resource input : classSources) {
-        futures.add(executorService.submit(() -> {
-          try (InputStream is = input.getStream()) {
-            reader.read(DEFAULT_DEX_FILENAME, classKind, is);
-          }
-          // No other way to have a void callable, but we want the IOException from the previous
-          // line to be wrapped into an ExecutionException.
-          return null;
-        }));
-      }
+      // Read classes in parallel, in batches of classes to avoid a task per class.
+      futures.addAll(ThreadUtils.submitItemsInBatches(
+          classSources,
+          input -> 1,
+          ThreadUtils.getParallelism(executorService),
+          input -> {
+            try (InputStream is = input.getStream()) {
+              reader.read(DEFAULT_DEX_FILENAME, classKind, is);
+            }
+          },
+          executorService,
+          null));
+    }
+
+    void addDexClasses() {
+      dexClassAdditions.forEach(Runnable::run);
+      dexClassAdditions.clear();
     }
 
     void readSources() throws IOException {
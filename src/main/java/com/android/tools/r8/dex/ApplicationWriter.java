@@ -6,12 +6,12 @@ package com.android.tools.r8.dex;
 import com.android.tools.r8.ApiLevelException;
 import com.android.tools.r8.errors.DexOverflowException;
 import com.android.tools.r8.graph.AppInfo;
+import com.android.tools.r8.graph.Code;
 import com.android.tools.r8.graph.DexAnnotation;
 import com.android.tools.r8.graph.DexAnnotationDirectory;
 import com.android.tools.r8.graph.DexAnnotationSet;
 import com.android.tools.r8.graph.DexAnnotationSetRefList;
 import com.android.tools.r8.graph.DexApplication;
-import com.android.tools.r8.graph.DexCode;
 import com.android.tools.r8.graph.DexDebugInfo;
 import com.android.tools.r8.graph.DexEncodedArray;
 import com.android.tools.r8.graph.DexProgramClass;
@@ -80,7 +80,7 @@ public class ApplicationWriter {
     }
 
     @Override
-    public boolean add(DexCode dexCode) {
+    public boolean add(Code code) {
       return true;
     }
 
@@ -131,12 +131,8 @@ public class ApplicationWriter {
       throws IOException, ExecutionException, DexOverflowException {
     application.timing.begin("DexApplication.write");
     try {
-      application.dexItemFactory.sort(namingLens);
       assert this.markerString == null || application.dexItemFactory.extractMarker() != null;
 
-      SortAnnotations sortAnnotations = new SortAnnotations();
-      application.classes().forEach((clazz) -> clazz.addDependencies(sortAnnotations));
-
       // Distribute classes into dex files.
       VirtualFile.Distributor distributor = null;
       if (options.outputMode == OutputMode.FilePerInputClass) {
@@ -150,6 +146,13 @@ public class ApplicationWriter {
       }
       Map<Integer, VirtualFile> newFiles = distributor.run();
 
+      // Only the items referenced from the files being written are sorted, not all the items in
+      // the factory, which includes library items and items from removed code.
+      VirtualFile.sortIndexedItems(application.dexItemFactory, namingLens, newFiles.values());
+
+      SortAnnotations sortAnnotations = new SortAnnotations();
+      application.classes().forEach((clazz) -> clazz.addDependencies(sortAnnotations));
+
       // Collect the indexed items sets for all files and perform JumboString processing.
       // This is required to ensure that shared code blocks have a single and consistent code
       // item that is valid for all dex files.
@@ -35,6 +35,12 @@ public abstract class BaseFile {
     buffer = ByteBuffer.wrap(bytes);
   }
 
+  // Create a file sharing the content of the given file, but with its own position.
+  protected BaseFile(BaseFile file) {
+    buffer = file.buffer.duplicate();
+    buffer.order(file.buffer.order());
+  }
+
   abstract void setByteOrder();
 
   byte[] getByteArray(int size) {
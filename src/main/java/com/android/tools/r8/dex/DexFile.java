@@ -41,6 +41,16 @@ public class DexFile extends BaseFile {
     version = parseMagic(buffer);
   }
 
+  /**
+   * Returns a file sharing the content of the given file but with its own position, for reading
+   * different parts of the file concurrently.
+   */
+  DexFile(DexFile file) {
+    super(file);
+    this.name = file.name;
+    this.version = file.version;
+  }
+
   // Parse the magic header and determine the dex file version.
   private int parseMagic(ByteBuffer buffer) {
     int index = 0;
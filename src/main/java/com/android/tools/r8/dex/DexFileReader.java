@@ -9,8 +9,6 @@ import static com.android.tools.r8.utils.EncodedValueUtils.parseSigned;
 import static com.android.tools.r8.utils.EncodedValueUtils.parseUnsigned;
 
 import com.android.tools.r8.Resource;
-import com.android.tools.r8.code.Instruction;
-import com.android.tools.r8.code.InstructionFactory;
 import com.android.tools.r8.graph.ClassKind;
 import com.android.tools.r8.graph.Descriptor;
 import com.android.tools.r8.graph.DexAccessFlags;
@@ -49,25 +47,36 @@ import com.android.tools.r8.graph.DexValue.DexValueMethodHandle;
 import com.android.tools.r8.graph.DexValue.DexValueMethodType;
 import com.android.tools.r8.graph.DexValue.DexValueNull;
 import com.android.tools.r8.graph.DexValue.DexValueString;
+import com.android.tools.r8.graph.LazyDexCode;
 import com.android.tools.r8.graph.OffsetToObjectMapping;
 import com.android.tools.r8.logging.Log;
+import com.android.tools.r8.utils.ThreadUtils;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ShortBuffer;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 public class DexFileReader {
 
   final int NO_INDEX = -1;
+
+  // Minimum number of class definitions read by one task when reading a file concurrently.
+  private static final int MIN_CLASS_DEFS_PER_TASK = 256;
+
+  // Number of tasks per thread when reading a file concurrently, to balance classes of
+  // different sizes.
+  private static final int CLASS_DEF_TASKS_PER_THREAD = 4;
+
   private DexFile file;
   private final Segment[] segments;
   private int[] stringIDs;
@@ -89,7 +98,6 @@ public class DexFileReader {
   public void close() {
     // This close behavior is needed to reduce peak memory usage of D8/R8.
     indexedItems = null;
-    codes = null;
     offsetMap = null;
     file = null;
     stringIDs = null;
@@ -98,10 +106,8 @@ public class DexFileReader {
   // Mapping from indexes to indexable dex items.
   private OffsetToObjectMapping indexedItems = new OffsetToObjectMapping();
 
-  // Mapping from offset to code item;
-  private Int2ObjectMap<DexCode> codes = new Int2ObjectOpenHashMap<>();
-
-  // Mapping from offset to dex item;
+  // Mapping from offset to dex item, including code items. The map is shared by the readers
+  // reading parts of the file concurrently and is accessed while synchronized on it.
   private Int2ObjectMap<Object> offsetMap = new Int2ObjectOpenHashMap<>();
 
   // Factory to canonicalize certain dexitems.
@@ -116,26 +122,19 @@ public class DexFileReader {
     this.classKind = classKind;
   }
 
-  public OffsetToObjectMapping getIndexedItemsMap() {
-    return indexedItems;
+  // Create a reader sharing the state of the given reader, but with its own position in the file.
+  private DexFileReader(DexFileReader reader) {
+    this.file = new DexFile(reader.file);
+    this.dexItemFactory = reader.dexItemFactory;
+    this.segments = reader.segments;
+    this.stringIDs = reader.stringIDs;
+    this.classKind = reader.classKind;
+    this.indexedItems = reader.indexedItems;
+    this.offsetMap = reader.offsetMap;
   }
 
-  void addCodeItemsTo() {
-    if (classKind == ClassKind.LIBRARY) {
-      // Ignore contents of library files.
-      return;
-    }
-    Segment segment = lookupSegment(Constants.TYPE_CODE_ITEM);
-    if (segment.length == 0) {
-      return;
-    }
-    file.position(segment.offset);
-    for (int i = 0; i < segment.length; i++) {
-      file.align(4);  // code items are 4 byte aligned.
-      int offset = file.position();
-      DexCode code = parseCodeItem();
-      codes.put(offset, code);  // Update the file local offset to code mapping.
-    }
+  public OffsetToObjectMapping getIndexedItemsMap() {
+    return indexedItems;
   }
 
   private DexTypeList parseTypeList() {
@@ -370,16 +369,25 @@ public class DexFileReader {
     if (offset == 0) {
       return null;  // return null for offset zero.
     }
-    Object result = offsetMap.get(offset);
+    Object result;
+    synchronized (offsetMap) {
+      result = offsetMap.get(offset);
+    }
     if (result != null) {
       return result;  // return the cached result.
     }
     // Cache is empty so parse the structure.
     file.position(offset);
     result = function.get();
-    // Update the map.
-    offsetMap.put(offset, result);
-    assert offsetMap.get(offset) == result;
+    // Update the map, unless another reader parsed the structure concurrently, in which case
+    // the first result is used so that the structure is only represented once.
+    synchronized (offsetMap) {
+      Object existing = offsetMap.get(offset);
+      if (existing != null) {
+        return existing;
+      }
+      offsetMap.put(offset, result);
+    }
     return result;
   }
 
@@ -577,10 +585,9 @@ public class DexFileReader {
       methodIndex += file.getUleb128();
       DexAccessFlags accessFlags = new DexAccessFlags(file.getUleb128());
       int codeOff = file.getUleb128();
-      DexCode code = null;
+      LazyDexCode code = null;
       if (!skipCodes) {
-        assert codeOff == 0 || codes.get(codeOff) != null;
-        code = codes.get(codeOff);
+        code = codeAt(codeOff);
       }
       DexMethod method = indexedItems.getMethod(methodIndex);
       methods[i] = new DexEncodedMethod(method, accessFlags, annotationIterator.getNextFor(method),
@@ -589,14 +596,54 @@ public class DexFileReader {
     return methods;
   }
 
-  void addClassDefsTo(Consumer<DexClass> classCollection) {
-    final Segment segment = lookupSegment(Constants.TYPE_CLASS_DEF_ITEM);
-    final int length = segment.length;
+  private LazyDexCode codeAt(int offset) {
+    // Store and restore offset information around reading the code item.
+    int saved = file.position();
+    LazyDexCode code = (LazyDexCode) cacheAt(offset, this::parseCodeItem);
+    file.position(saved);
+    return code;
+  }
+
+  /**
+   * Read the class definitions of the file using the threads of the executor. The class
+   * definitions are split into ranges that are read concurrently, each by a reader with its own
+   * position in the file and into its own list. Once the futures are done, the lists hold the
+   * classes in the order of the file.
+   */
+  List<List<DexClass>> readClassDefs(ExecutorService executorService, List<Future<?>> futures) {
+    int length = lookupSegment(Constants.TYPE_CLASS_DEF_ITEM).length;
+    int tasks = Integer.max(1, Integer.min(
+        CLASS_DEF_TASKS_PER_THREAD * ThreadUtils.getParallelism(executorService),
+        length / MIN_CLASS_DEFS_PER_TASK));
+    return readClassDefs(executorService, futures, tasks);
+  }
+
+  // Split out for testing with a given number of ranges.
+  List<List<DexClass>> readClassDefs(ExecutorService executorService, List<Future<?>> futures,
+      int tasks) {
+    final int length = lookupSegment(Constants.TYPE_CLASS_DEF_ITEM).length;
     indexedItems.initializeClasses(length);
+    List<List<DexClass>> ranges = new ArrayList<>(tasks);
+    for (int i = 0; i < tasks; i++) {
+      int start = (int) ((long) length * i / tasks);
+      int end = (int) ((long) length * (i + 1) / tasks);
+      DexFileReader reader = i == 0 ? this : new DexFileReader(this);
+      List<DexClass> range = new ArrayList<>(end - start);
+      ranges.add(range);
+      futures.add(executorService.submit(() -> {
+        reader.addClassDefsTo(range::add, start, end);
+      }));
+    }
+    return ranges;
+  }
+
+  private void addClassDefsTo(Consumer<DexClass> classCollection, int start, int end) {
+    final Segment segment = lookupSegment(Constants.TYPE_CLASS_DEF_ITEM);
+    final int length = end - start;
     if (length == 0) {
       return;
     }
-    file.position(segment.offset);
+    file.position(segment.offset + start * Constants.TYPE_CLASS_DEF_ITEM_SIZE);
 
     int[] classIndices = new int[length];
     int[] accessFlags = new int[length];
@@ -726,7 +773,10 @@ public class DexFileReader {
     return result;
   }
 
-  private DexCode parseCodeItem() {
+  // The instructions of the code item are decoded when the code of a method is first used, see
+  // LazyDexCode.
+  private LazyDexCode parseCodeItem() {
+    assert file.position() % 4 == 0;  // code items are 4 byte aligned.
     int registerSize = file.getUshort();
     int insSize = file.getUshort();
     int outsSize = file.getUshort();
@@ -789,18 +839,8 @@ public class DexFileReader {
     int saved = file.position();
     DexDebugInfo debugInfo = debugInfoAt(debugInfoOff);
     file.position(saved);
-    InstructionFactory factory = new InstructionFactory();
-    Instruction[] instructions =
-        factory.readSequenceFrom(ShortBuffer.wrap(code), 0, code.length, indexedItems);
-    return new DexCode(
-        registerSize,
-        insSize,
-        outsSize,
-        instructions,
-        tries,
-        handlers,
-        debugInfo,
-        factory.getHighestSortingString());
+    return new LazyDexCode(
+        registerSize, insSize, outsSize, code, tries, handlers, debugInfo, indexedItems);
   }
 
   static void populateIndexTables(DexFileReader fileReader) {
@@ -4,6 +4,7 @@
 package com.android.tools.r8.dex;
 
 import com.android.tools.r8.code.Instruction;
+import com.android.tools.r8.graph.LazyDexCode;
 import com.android.tools.r8.graph.ObjectToOffsetMapping;
 import com.android.tools.r8.utils.EncodedValueUtils;
 import com.android.tools.r8.utils.LebUtils;
@@ -70,6 +71,14 @@ public class DexOutputBuffer {
     byteBuffer.position(byteBuffer.position() + shortBuffer.position() * Short.BYTES);
   }
 
+  public void putInstructions(LazyDexCode code, ObjectToOffsetMapping mapping) {
+    ensureSpaceFor(code.codeSizeInCodeUnits() * Short.BYTES);
+    assert byteBuffer.position() % 2 == 0;
+    ShortBuffer shortBuffer = byteBuffer.asShortBuffer();
+    code.writeInstructions(shortBuffer, mapping);
+    byteBuffer.position(byteBuffer.position() + shortBuffer.position() * Short.BYTES);
+  }
+
   public void putByte(byte aByte) {
     ensureSpaceFor(Byte.BYTES);
     byteBuffer.put(aByte);
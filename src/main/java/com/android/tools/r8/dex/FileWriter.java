@@ -18,6 +18,7 @@ import com.android.tools.r8.graph.DexAnnotationSetRefList;
 import com.android.tools.r8.graph.DexApplication;
 import com.android.tools.r8.graph.DexCallSite;
 import com.android.tools.r8.graph.DexClass;
+import com.android.tools.r8.graph.Code;
 import com.android.tools.r8.graph.DexCode;
 import com.android.tools.r8.graph.DexCode.Try;
 import com.android.tools.r8.graph.DexCode.TryHandler;
@@ -39,6 +40,7 @@ import com.android.tools.r8.graph.DexType;
 import com.android.tools.r8.graph.DexTypeList;
 import com.android.tools.r8.graph.DexValue;
 import com.android.tools.r8.graph.KeyedDexItem;
+import com.android.tools.r8.graph.LazyDexCode;
 import com.android.tools.r8.graph.ObjectToOffsetMapping;
 import com.android.tools.r8.graph.PresortedComparable;
 import com.android.tools.r8.graph.ProgramClassVisitor;
@@ -51,12 +53,14 @@ import com.android.tools.r8.utils.AndroidApiLevel;
 import com.android.tools.r8.utils.DexVersion;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.LebUtils;
+import com.android.tools.r8.utils.StartupProfile;
 import com.android.tools.r8.utils.ThrowingConsumer;
 import com.google.common.collect.Sets;
 import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Reference2IntLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -65,6 +69,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Hashtable;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -128,9 +133,10 @@ public class FileWriter {
   }
 
   public FileWriter collect() {
-    // Use the class array from the mapping, as it has a deterministic iteration order.
+    // Use the class array from the mapping, as it has a deterministic iteration order. Startup
+    // classes are visited first, so that their data is laid out together.
     new ProgramClassDependencyCollector(application, mapping.getClasses())
-        .run(mapping.getClasses());
+        .run(startupClassesFirst(mapping.getClasses()));
 
     // Sort the class members.
     // Needed before adding static-value arrays and writing annotation directories and classes.
@@ -141,6 +147,9 @@ public class FileWriter {
 
     // String data is not tracked by the MixedSectionCollection.new AppInfo(application, null)
     assert mixedSectionOffsets.stringData.size() == 0;
+    for (DexString string : collectStartupStrings()) {
+      mixedSectionOffsets.add(string);
+    }
     for (DexString string : mapping.getStrings()) {
       mixedSectionOffsets.add(string);
     }
@@ -164,7 +173,7 @@ public class FileWriter {
     layout.setCodesOffset(layout.dataSectionOffset);
 
     // Sort the codes first, as their order might impact size due to alignment constraints.
-    List<DexCode> codes = sortDexCodesByClassName(mixedSectionOffsets.getCodes(), application);
+    List<Code> codes = sortDexCodes(mixedSectionOffsets.getCodes(), application);
 
     // Output the debug_info_items first, as they have no dependencies.
     dest.moveTo(layout.getCodesOffset() + sizeOfCodeItems(codes));
@@ -285,22 +294,79 @@ public class FileWriter {
     }
   }
 
-  private List<DexCode> sortDexCodesByClassName(Collection<DexCode> codes,
-      DexApplication application) {
-    Map<DexCode, String> codeToSignatureMap = new IdentityHashMap<>();
+  private DexProgramClass[] startupClassesFirst(DexProgramClass[] classes) {
+    StartupProfile startupProfile = options.startupProfile;
+    if (startupProfile.isEmpty()) {
+      return classes;
+    }
+    // The sort is stable, so the classes not used at startup keep their order.
+    DexProgramClass[] result = classes.clone();
+    Arrays.sort(result, Comparator.comparingInt(clazz -> startupProfile.getClassOrder(clazz.type)));
+    return result;
+  }
+
+  private Collection<DexString> collectStartupStrings() {
+    StartupProfile startupProfile = options.startupProfile;
+    if (startupProfile.isEmpty()) {
+      return Collections.emptyList();
+    }
+    StartupStringCollector collector = new StartupStringCollector();
+    for (DexProgramClass clazz : startupClassesFirst(mapping.getClasses())) {
+      if (!startupProfile.isStartupClass(clazz.type)) {
+        break;
+      }
+      clazz.collectIndexedItems(collector);
+    }
+    return collector.strings;
+  }
+
+  private List<Code> sortDexCodes(Collection<Code> codes, DexApplication application) {
+    Map<Code, String> codeToSignatureMap = new IdentityHashMap<>();
     for (DexProgramClass clazz : mapping.getClasses()) {
       clazz.forEachMethod(method ->
           addSignaturesFromMethod(method, codeToSignatureMap, application.getProguardMap()));
     }
-    DexCode[] codesArray = codes.toArray(new DexCode[codes.size()]);
-    Arrays.sort(codesArray, Comparator.comparing(codeToSignatureMap::get));
+    Code[] codesArray = codes.toArray(new Code[codes.size()]);
+    StartupProfile startupProfile = options.startupProfile;
+    if (startupProfile.isEmpty()) {
+      Arrays.sort(codesArray, Comparator.comparing(codeToSignatureMap::get));
+    } else {
+      // Place the code of startup methods first, then the remaining code of startup classes, in
+      // the order the classes are used. This keeps the code run at startup on as few pages as
+      // possible.
+      Reference2IntMap<Code> codeToStartupOrder = new Reference2IntOpenHashMap<>();
+      codeToStartupOrder.defaultReturnValue(StartupProfile.NOT_STARTUP);
+      for (DexProgramClass clazz : mapping.getClasses()) {
+        clazz.forEachMethod(method ->
+            addStartupOrderFromMethod(method, codeToStartupOrder, startupProfile));
+      }
+      Arrays.sort(codesArray, Comparator.<Code>comparingInt(codeToStartupOrder::getInt)
+          .thenComparing(codeToSignatureMap::get));
+    }
     return Arrays.asList(codesArray);
   }
 
+  private void addStartupOrderFromMethod(DexEncodedMethod method,
+      Reference2IntMap<Code> codeToStartupOrder, StartupProfile startupProfile) {
+    Code code = method.getCodeWithoutDecoding();
+    if (code == null) {
+      return;
+    }
+    int classOrder = startupProfile.getClassOrder(method.method.holder);
+    if (classOrder == StartupProfile.NOT_STARTUP) {
+      return;
+    }
+    int order = startupProfile.isStartupMethod(method.method, application.dexItemFactory)
+        ? classOrder
+        : startupProfile.size() + classOrder;
+    codeToStartupOrder.put(code, Math.min(order, codeToStartupOrder.getInt(code)));
+  }
+
   private static void addSignaturesFromMethod(DexEncodedMethod method,
-      Map<DexCode, String> codeToSignatureMap,
+      Map<Code, String> codeToSignatureMap,
       ClassNameMapper proguardMap) {
-    if (method.getCode() == null) {
+    Code code = method.getCodeWithoutDecoding();
+    if (code == null) {
       assert method.accessFlags.isAbstract() || method.accessFlags.isNative();
     } else {
       Signature signature;
@@ -312,7 +378,7 @@ public class FileWriter {
         signature = MethodSignature.fromDexMethod(method.method);
         originalClassName = method.method.holder.toSourceString();
       }
-      codeToSignatureMap.put(method.getCode().asDexCode(), originalClassName + signature);
+      codeToSignatureMap.put(code, originalClassName + signature);
     }
   }
 
@@ -339,27 +405,36 @@ public class FileWriter {
     }
   }
 
-  private int sizeOfCodeItems(Iterable<DexCode> codes) {
+  private int sizeOfCodeItems(Iterable<Code> codes) {
     int size = 0;
-    for (DexCode code : codes) {
+    for (Code code : codes) {
       size = alignSize(4, size);
       size += sizeOfCodeItem(code);
     }
     return size;
   }
 
-  private int sizeOfCodeItem(DexCode code) {
-    int result = 16;
+  private int sizeOfCodeItem(Code code) {
+    if (code.isLazyDexCode()) {
+      LazyDexCode lazyCode = code.asLazyDexCode();
+      return sizeOfCodeItem(lazyCode.codeSizeInCodeUnits(), lazyCode.tries, lazyCode.handlers);
+    }
+    DexCode dexCode = code.asDexCode();
     int insnSize = 0;
-    for (Instruction insn : code.instructions) {
+    for (Instruction insn : dexCode.instructions) {
       insnSize += insn.getSize();
     }
+    return sizeOfCodeItem(insnSize, dexCode.tries, dexCode.handlers);
+  }
+
+  private int sizeOfCodeItem(int insnSize, Try[] tries, TryHandler[] handlers) {
+    int result = 16;
     result += insnSize * 2;
-    result += code.tries.length * 8;
-    if ((code.handlers != null) && (code.handlers.length > 0)) {
+    result += tries.length * 8;
+    if ((handlers != null) && (handlers.length > 0)) {
       result = alignSize(4, result);
-      result += LebUtils.sizeAsUleb128(code.handlers.length);
-      for (TryHandler handler : code.handlers) {
+      result += LebUtils.sizeAsUleb128(handlers.length);
+      for (TryHandler handler : handlers) {
         boolean hasCatchAll = handler.catchAllAddr != TryHandler.NO_HANDLER;
         result += LebUtils
             .sizeAsSleb128(hasCatchAll ? -handler.pairs.length : handler.pairs.length);
@@ -434,6 +509,28 @@ public class FileWriter {
     dest.putBytes(new DebugBytecodeWriter(debugInfo, mapping).generate());
   }
 
+  private void writeCodeItem(Code code) {
+    if (code.isLazyDexCode()) {
+      writeCodeItem(code.asLazyDexCode());
+    } else {
+      writeCodeItem(code.asDexCode());
+    }
+  }
+
+  private void writeCodeItem(LazyDexCode code) {
+    mixedSectionOffsets.setOffsetFor(code, dest.align(4));
+    // Fixed size header information.
+    dest.putShort((short) code.registerSize);
+    dest.putShort((short) code.incomingRegisterSize);
+    dest.putShort((short) code.outgoingRegisterSize);
+    dest.putShort((short) code.tries.length);
+    dest.putInt(mixedSectionOffsets.getOffsetFor(code.getDebugInfo()));
+    dest.putInt(code.codeSizeInCodeUnits());
+    // Write the instruction stream as read, with the references rewritten.
+    dest.putInstructions(code, mapping);
+    writeTriesAndHandlers(code.tries, code.handlers);
+  }
+
   private void writeCodeItem(DexCode code) {
     mixedSectionOffsets.setOffsetFor(code, dest.align(4));
     // Fixed size header information.
@@ -452,16 +549,20 @@ public class FileWriter {
     dest.rewind(insnSize + 4);
     dest.putInt(insnSize / 2);
     dest.forward(insnSize);
-    if (code.tries.length > 0) {
+    writeTriesAndHandlers(code.tries, code.handlers);
+  }
+
+  private void writeTriesAndHandlers(Try[] tries, TryHandler[] handlers) {
+    if (tries.length > 0) {
       // The tries need to be 4 byte aligned.
       int beginOfTriesOffset = dest.align(4);
       // First write the handlers, so that we know their mixedSectionOffsets.
-      dest.forward(code.tries.length * 8);
+      dest.forward(tries.length * 8);
       int beginOfHandlersOffset = dest.position();
-      dest.putUleb128(code.handlers.length);
-      short[] offsets = new short[code.handlers.length];
+      dest.putUleb128(handlers.length);
+      short[] offsets = new short[handlers.length];
       int i = 0;
-      for (TryHandler handler : code.handlers) {
+      for (TryHandler handler : handlers) {
         offsets[i++] = (short) (dest.position() - beginOfHandlersOffset);
         boolean hasCatchAll = handler.catchAllAddr != TryHandler.NO_HANDLER;
         dest.putSleb128(hasCatchAll ? -handler.pairs.length : handler.pairs.length);
@@ -476,7 +577,7 @@ public class FileWriter {
       int endOfCodeOffset = dest.position();
       // Now write the tries.
       dest.moveTo(beginOfTriesOffset);
-      for (Try aTry : code.tries) {
+      for (Try aTry : tries) {
         dest.putInt(aTry.startAddress);
         dest.putShort((short) aTry.instructionCount);
         dest.putShort(offsets[aTry.handlerIndex]);
@@ -579,11 +680,12 @@ public class FileWriter {
       dest.putUleb128(nextOffset - currentOffset);
       currentOffset = nextOffset;
       dest.putUleb128(method.accessFlags.get());
-      if (method.getCode() == null) {
+      Code code = method.getCodeWithoutDecoding();
+      if (code == null) {
         assert method.accessFlags.isAbstract() || method.accessFlags.isNative();
         dest.putUleb128(0);
       } else {
-        dest.putUleb128(mixedSectionOffsets.getOffsetFor(method.getCode().asDexCode()));
+        dest.putUleb128(mixedSectionOffsets.getOffsetFor(code));
         // Writing the methods starts to take up memory so we are going to flush the
         // code objects since they are no longer necessary after this.
         if (clearBodies) {
@@ -1007,7 +1109,7 @@ public class FileWriter {
     private static final int NOT_SET = -1;
     private static final int NOT_KNOWN = -2;
 
-    private final Reference2IntMap<DexCode> codes = createReference2IntMap();
+    private final Reference2IntMap<Code> codes = createReference2IntMap();
     private final Object2IntMap<DexDebugInfo> debugInfos = createObject2IntMap();
     private final Object2IntMap<DexTypeList> typeLists = createObject2IntMap();
     private final Reference2IntMap<DexString> stringData = createReference2IntMap();
@@ -1069,7 +1171,7 @@ public class FileWriter {
     }
 
     @Override
-    public boolean add(DexCode code) {
+    public boolean add(Code code) {
       return add(codes, code);
     }
 
@@ -1111,7 +1213,7 @@ public class FileWriter {
       return add(stringData, string);
     }
 
-    public Collection<DexCode> getCodes() {
+    public Collection<Code> getCodes() {
       return codes.keySet();
     }
 
@@ -1220,7 +1322,7 @@ public class FileWriter {
       return lookup(annotationSetRefList, annotationSetRefLists);
     }
 
-    public int getOffsetFor(DexCode code) {
+    public int getOffsetFor(Code code) {
       return lookup(code, codes);
     }
 
@@ -1234,7 +1336,7 @@ public class FileWriter {
       setOffsetFor(debugInfo, offset, debugInfos);
     }
 
-    void setOffsetFor(DexCode code, int offset) {
+    void setOffsetFor(Code code, int offset) {
       setOffsetFor(code, offset, codes);
     }
 
@@ -1273,6 +1375,70 @@ public class FileWriter {
     }
   }
 
+  /**
+   * Collects the strings referenced from startup classes, in the order they are referenced.
+   */
+  private class StartupStringCollector implements IndexedItemCollection {
+
+    private final Set<DexString> strings = new LinkedHashSet<>();
+    private final Set<DexItem> seen = Sets.newIdentityHashSet();
+
+    @Override
+    public boolean addClass(DexProgramClass dexProgramClass) {
+      return seen.add(dexProgramClass);
+    }
+
+    @Override
+    public boolean addField(DexField field) {
+      return seen.add(field);
+    }
+
+    @Override
+    public boolean addMethod(DexMethod method) {
+      return seen.add(method);
+    }
+
+    @Override
+    public boolean addString(DexString string) {
+      return strings.add(string);
+    }
+
+    @Override
+    public boolean addProto(DexProto proto) {
+      return seen.add(proto);
+    }
+
+    @Override
+    public boolean addType(DexType type) {
+      return seen.add(type);
+    }
+
+    @Override
+    public boolean addCallSite(DexCallSite callSite) {
+      return seen.add(callSite);
+    }
+
+    @Override
+    public boolean addMethodHandle(DexMethodHandle methodHandle) {
+      return seen.add(methodHandle);
+    }
+
+    @Override
+    public DexString getRenamedName(DexMethod method) {
+      return namingLens.lookupName(method);
+    }
+
+    @Override
+    public DexString getRenamedName(DexField field) {
+      return namingLens.lookupName(field);
+    }
+
+    @Override
+    public DexString getRenamedDescriptor(DexType type) {
+      return namingLens.lookupDescriptor(type);
+    }
+  }
+
   private class ProgramClassDependencyCollector extends ProgramClassVisitor {
 
     private final Set<DexClass> includedClasses = Sets.newIdentityHashSet();
@@ -3,11 +3,11 @@
 // BSD-style license that can be found in the LICENSE file.
 package com.android.tools.r8.dex;
 
+import com.android.tools.r8.graph.Code;
 import com.android.tools.r8.graph.DexAnnotation;
 import com.android.tools.r8.graph.DexAnnotationDirectory;
 import com.android.tools.r8.graph.DexAnnotationSet;
 import com.android.tools.r8.graph.DexAnnotationSetRefList;
-import com.android.tools.r8.graph.DexCode;
 import com.android.tools.r8.graph.DexDebugInfo;
 import com.android.tools.r8.graph.DexEncodedArray;
 import com.android.tools.r8.graph.DexItem;
@@ -53,13 +53,14 @@ public abstract class MixedSectionCollection {
   public abstract boolean add(DexAnnotationSet dexAnnotationSet);
 
   /**
-   * Adds the given code item to the collection.
+   * Adds the given code item to the collection, either a {@link com.android.tools.r8.graph.DexCode}
+   * or a {@link com.android.tools.r8.graph.LazyDexCode} that is written without decoding it.
    *
    * Does not add any dependencies.
    *
    * @return true if the item was not added before
    */
-  public abstract boolean add(DexCode dexCode);
+  public abstract boolean add(Code code);
 
   /**
    * Adds the given debug info to the collection.
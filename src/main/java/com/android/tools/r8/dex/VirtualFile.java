@@ -23,6 +23,7 @@ import com.android.tools.r8.naming.ClassNameMapper;
 import com.android.tools.r8.naming.NamingLens;
 import com.android.tools.r8.utils.DescriptorUtils;
 import com.android.tools.r8.utils.FileUtils;
+import com.android.tools.r8.utils.StartupProfile;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -162,6 +163,34 @@ public class VirtualFile {
         indexedItems.methodHandles.toArray(new DexMethodHandle[indexedItems.methodHandles.size()]));
   }
 
+  /**
+   * Assign sorted indices to the items referenced from the given files, which are the only items
+   * that need a sorted index when writing them.
+   */
+  static void sortIndexedItems(
+      DexItemFactory factory, NamingLens namingLens, Collection<VirtualFile> files) {
+    if (files.size() == 1) {
+      VirtualFileIndexedItemCollection items = files.iterator().next().indexedItems;
+      factory.sort(namingLens, items.strings, items.types, items.fields, items.protos,
+          items.methods);
+      return;
+    }
+    // Items can be referenced from more than one file.
+    Set<DexString> strings = Sets.newIdentityHashSet();
+    Set<DexType> types = Sets.newIdentityHashSet();
+    Set<DexField> fields = Sets.newIdentityHashSet();
+    Set<DexProto> protos = Sets.newIdentityHashSet();
+    Set<DexMethod> methods = Sets.newIdentityHashSet();
+    for (VirtualFile file : files) {
+      strings.addAll(file.indexedItems.strings);
+      types.addAll(file.indexedItems.types);
+      fields.addAll(file.indexedItems.fields);
+      protos.addAll(file.indexedItems.protos);
+      methods.addAll(file.indexedItems.methods);
+    }
+    factory.sort(namingLens, strings, types, fields, protos, methods);
+  }
+
   private void addClass(DexProgramClass clazz) {
     transaction.addClassAndDependencies(clazz);
   }
@@ -304,6 +333,28 @@ public class VirtualFile {
       }
     }
 
+    /**
+     * Fill the primary dex file with the startup classes, in the order they are used, for as long
+     * as they fit.
+     */
+    protected void fillForStartupProfile(Set<DexProgramClass> classes) {
+      StartupProfile startupProfile = writer.options.startupProfile;
+      for (DexType type : startupProfile.getClasses()) {
+        DexClass clazz = application.definitionFor(type);
+        if (clazz == null || !clazz.isProgramClass() || !classes.contains(clazz)) {
+          continue;
+        }
+        DexProgramClass programClass = clazz.asProgramClass();
+        mainDexFile.addClass(programClass);
+        if (mainDexFile.isFilledEnough(FillStrategy.FILL_MAX)) {
+          mainDexFile.abortTransaction();
+          return;
+        }
+        mainDexFile.commitTransaction();
+        classes.remove(programClass);
+      }
+    }
+
     TreeSet<DexProgramClass> sortClassesByPackage(Set<DexProgramClass> classes,
         Map<DexProgramClass, String> originalNames) {
       TreeSet<DexProgramClass> sortedClasses = new TreeSet<>(
@@ -351,6 +402,9 @@ public class VirtualFile {
     public Map<Integer, VirtualFile> run() throws IOException, DexOverflowException {
       // First fill required classes into the main dex file.
       fillForMainDexList(classes);
+      if (!minimalMainDex) {
+        fillForStartupProfile(classes);
+      }
       if (classes.isEmpty()) {
         // All classes ended up in the main dex file, no more to do.
         return nameToFileMap;
@@ -3,14 +3,11 @@
 // BSD-style license that can be found in the LICENSE file.
 package com.android.tools.r8.graph;
 
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Hashtable;
-import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
 
@@ -18,25 +15,25 @@ public class AppInfoWithSubtyping extends AppInfo {
 
   // Set of missing classes, discovered during subtypeMap computation.
   private Set<DexType> missingClasses = Sets.newIdentityHashSet();
-  // Map from types to their subtypes.
-  private final Hashtable<DexType, ImmutableSet<DexType>> subtypeMap = new Hashtable<>();
+  // Interval numbered class hierarchy for subtype queries.
+  private final ClassHierarchyIndex hierarchyIndex;
 
   public AppInfoWithSubtyping(DexApplication application) {
     super(application);
-    populateSubtypeMap(application.asDirect(), application.dexItemFactory);
+    hierarchyIndex = populateSubtypeMap(application.asDirect(), application.dexItemFactory);
   }
 
   protected AppInfoWithSubtyping(AppInfoWithSubtyping previous) {
     super(previous);
     missingClasses.addAll(previous.missingClasses);
-    subtypeMap.putAll(previous.subtypeMap);
+    hierarchyIndex = previous.hierarchyIndex;
     assert app instanceof DirectMappedDexApplication;
   }
 
   protected AppInfoWithSubtyping(AppInfoWithSubtyping previous, GraphLense lense) {
     super(previous, lense);
     // Recompute subtype map if we have modified the graph.
-    populateSubtypeMap(previous.getDirectApplication(), dexItemFactory);
+    hierarchyIndex = populateSubtypeMap(previous.getDirectApplication(), dexItemFactory);
   }
 
   private DirectMappedDexApplication getDirectApplication() {
@@ -52,37 +49,35 @@ public class AppInfoWithSubtyping extends AppInfo {
     return Collections.unmodifiableSet(missingClasses);
   }
 
-  public ImmutableSet<DexType> subtypes(DexType type) {
+  /**
+   * Returns a view of all defined subtypes of the given type, not including the type itself.
+   */
+  public Set<DexType> subtypes(DexType type) {
     assert type.isClassType();
-    ImmutableSet<DexType> subtypes = subtypeMap.get(type);
-    return subtypes == null ? ImmutableSet.of() : subtypes;
+    return hierarchyIndex.subtypes(type);
   }
 
-  private void populateSuperType(Hashtable<DexType, Set<DexType>> map, DexType superType,
-      DexClass baseClass, Function<DexType, DexClass> definitions) {
-    if (superType != null) {
-      Set<DexType> set = map.computeIfAbsent(superType, ignore -> new HashSet<>());
-      if (set.add(baseClass.type)) {
-        // Only continue recursion if type has been added to set.
-        populateAllSuperTypes(map, superType, baseClass, definitions);
-      }
-    }
+  public ClassHierarchyIndex getHierarchyIndex() {
+    return hierarchyIndex;
   }
 
-  private void populateAllSuperTypes(Hashtable<DexType, Set<DexType>> map, DexType holder,
-      DexClass baseClass, Function<DexType, DexClass> definitions) {
+  private void populateAllSuperTypes(Set<DexType> seen, DexType holder, DexClass baseClass,
+      Function<DexType, DexClass> definitions) {
+    if (!seen.add(holder)) {
+      return;
+    }
     DexClass holderClass = definitions.apply(holder);
     // Skip if no corresponding class is found.
     if (holderClass != null) {
-      populateSuperType(map, holderClass.superType, baseClass, definitions);
       if (holderClass.superType != null) {
+        populateAllSuperTypes(seen, holderClass.superType, baseClass, definitions);
         holderClass.superType.addDirectSubtype(holder);
       } else {
         // We found java.lang.Object
         assert dexItemFactory.objectType == holder;
       }
       for (DexType inter : holderClass.interfaces.values) {
-        populateSuperType(map, inter, baseClass, definitions);
+        populateAllSuperTypes(seen, inter, baseClass, definitions);
         inter.addInterfaceSubtype(holder);
       }
     } else {
@@ -96,17 +91,18 @@ public class AppInfoWithSubtyping extends AppInfo {
     }
   }
 
-  private void populateSubtypeMap(DirectMappedDexApplication app, DexItemFactory dexItemFactory) {
+  private ClassHierarchyIndex populateSubtypeMap(DirectMappedDexApplication app,
+      DexItemFactory dexItemFactory) {
     dexItemFactory.clearSubtypeInformation();
     dexItemFactory.objectType.tagAsSubtypeRoot();
-    Hashtable<DexType, Set<DexType>> map = new Hashtable<>();
+    // Program classes are visited first, so that missing super types reachable from the program
+    // are reported even if they are also reachable from library classes.
+    Set<DexType> seen = Sets.newIdentityHashSet();
     for (DexClass clazz : Iterables.<DexClass>concat(app.classes(), app.libraryClasses())) {
-      populateAllSuperTypes(map, clazz.type, clazz, app::definitionFor);
-    }
-    for (Map.Entry<DexType, Set<DexType>> entry : map.entrySet()) {
-      subtypeMap.put(entry.getKey(), ImmutableSet.copyOf(entry.getValue()));
+      populateAllSuperTypes(seen, clazz.type, clazz, app::definitionFor);
     }
     assert DexType.validateLevelsAreCorrect(app::definitionFor, dexItemFactory);
+    return ClassHierarchyIndex.build(app);
   }
 
   // For mapping invoke virtual instruction to target methods.
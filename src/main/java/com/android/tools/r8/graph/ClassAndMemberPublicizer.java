@@ -3,18 +3,27 @@
 // BSD-style license that can be found in the LICENSE file.
 package com.android.tools.r8.graph;
 
+import com.android.tools.r8.utils.ThreadUtils;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
 public abstract class ClassAndMemberPublicizer {
   /**
    * Marks all package private and protected methods and fields as public.
    * <p>
-   * This will destructively update the DexApplication passed in as argument.
+   * This will destructively update the DexApplication passed in as argument. Classes are
+   * processed in parallel on the given executor service.
    */
-  public static DexApplication run(DexApplication application) {
-    for (DexClass clazz : application.classes()) {
-      clazz.accessFlags.promoteToPublic();
-      clazz.forEachMethod(method -> method.accessFlags.promoteNonPrivateToPublic());
-      clazz.forEachField(field -> field.accessFlags.promoteToPublic());
-    }
+  public static DexApplication run(DexApplication application, ExecutorService executorService)
+      throws ExecutionException {
+    ThreadUtils.processItems(
+        application.classes(), ClassAndMemberPublicizer::publicize, executorService);
     return application;
   }
+
+  private static void publicize(DexClass clazz) {
+    clazz.accessFlags.promoteToPublic();
+    clazz.forEachMethod(method -> method.accessFlags.promoteNonPrivateToPublic());
+    clazz.forEachField(field -> field.accessFlags.promoteToPublic());
+  }
 }
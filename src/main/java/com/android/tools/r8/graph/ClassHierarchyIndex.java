@@ -0,0 +1,361 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.graph;
+
+import com.google.common.collect.Iterables;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Compact index over the class hierarchy of an application that answers subtype queries in
+ * constant time without materializing the transitive subtype set of every type.
+ *
+ * <p>Classes are numbered in pre-order of the tree induced by the super-class relation, rooted
+ * at java.lang.Object. All subclasses of a class {@code C} therefore occupy the id interval
+ * {@code (id(C), end(C)]}. Interfaces are numbered after all classes, and each interface has a
+ * bitset of the ids of all types that implement or extend it, directly or indirectly.
+ *
+ * <p>Types that are referenced as a super type but have no definition are kept in the index, so
+ * that subtype queries on them work, but they are never reported as subtypes themselves.
+ */
+public final class ClassHierarchyIndex {
+
+  private static final int NOT_INDEXED = -1;
+
+  private final DexType objectType;
+  private final Reference2IntMap<DexType> ids;
+  private final DexType[] types;
+  // For class ids, the highest id in the sub-tree rooted at the class.
+  private final int[] intervalEnd;
+  // Only set for ids of types that have a definition.
+  private final BitSet defined;
+  // The number of ids below the index that have a definition, so that the defined types in an id
+  // interval can be counted in constant time.
+  private final int[] definedBefore;
+  // Indexed by id - classCount, the ids of all subtypes of the interface.
+  private final BitSet[] implementors;
+  // Indexed by id - classCount, the number of defined subtypes of the interface, or -1 if it has
+  // not been counted yet. Counting gives the same result every time, so concurrent queries may
+  // race on the entries.
+  private final int[] definedImplementorCount;
+  private final int classCount;
+
+  private ClassHierarchyIndex(DexType objectType, Reference2IntMap<DexType> ids, DexType[] types,
+      int[] intervalEnd, BitSet defined, int[] definedBefore, BitSet[] implementors,
+      int classCount) {
+    this.objectType = objectType;
+    this.ids = ids;
+    this.types = types;
+    this.intervalEnd = intervalEnd;
+    this.defined = defined;
+    this.definedBefore = definedBefore;
+    this.implementors = implementors;
+    this.definedImplementorCount = new int[implementors.length];
+    Arrays.fill(definedImplementorCount, -1);
+    this.classCount = classCount;
+  }
+
+  public static ClassHierarchyIndex build(DirectMappedDexApplication application) {
+    return new Builder(application).build();
+  }
+
+  public boolean contains(DexType type) {
+    return ids.getInt(type) != NOT_INDEXED;
+  }
+
+  public boolean isInterface(DexType type) {
+    int id = ids.getInt(type);
+    assert id != NOT_INDEXED;
+    return id >= classCount;
+  }
+
+  /**
+   * Returns true if {@code subtype} is {@code supertype} or one of its transitive subtypes. Both
+   * types must be part of the index.
+   */
+  public boolean isSubtype(DexType subtype, DexType supertype) {
+    int subId = ids.getInt(subtype);
+    int superId = ids.getInt(supertype);
+    assert subId != NOT_INDEXED && superId != NOT_INDEXED;
+    if (subId == superId) {
+      return true;
+    }
+    if (superId < classCount) {
+      if (subId >= classCount) {
+        // Interfaces only extend java.lang.Object.
+        return supertype == objectType;
+      }
+      return superId < subId && subId <= intervalEnd[superId];
+    }
+    return implementors[superId - classCount].get(subId);
+  }
+
+  /**
+   * Returns a view of all defined strict subtypes of the given type. The view is not materialized,
+   * {@link Set#contains} and {@link Set#size} are constant time operations and iteration visits
+   * subclasses in pre-order. The subtypes of an interface are counted on the first size query.
+   */
+  public Set<DexType> subtypes(DexType type) {
+    int id = ids.getInt(type);
+    if (id == NOT_INDEXED) {
+      return Collections.emptySet();
+    }
+    return new SubtypeSet(type, id);
+  }
+
+  // The number of types visited by the iterator of the subtype set of the type with the id.
+  private int countSubtypes(DexType type, int id) {
+    if (id < classCount) {
+      int count = definedBefore[intervalEnd[id] + 1] - definedBefore[id + 1];
+      if (type == objectType) {
+        count += definedBefore[types.length] - definedBefore[classCount];
+      }
+      return count;
+    }
+    int index = id - classCount;
+    int count = definedImplementorCount[index];
+    if (count < 0) {
+      BitSet subtypes = (BitSet) implementors[index].clone();
+      subtypes.and(defined);
+      count = subtypes.cardinality();
+      definedImplementorCount[index] = count;
+    }
+    return count;
+  }
+
+  public void forEachSubtype(DexType type, Consumer<DexType> consumer) {
+    int id = ids.getInt(type);
+    if (id == NOT_INDEXED) {
+      return;
+    }
+    if (id < classCount) {
+      for (int i = defined.nextSetBit(id + 1); i >= 0 && i <= intervalEnd[id];
+          i = defined.nextSetBit(i + 1)) {
+        consumer.accept(types[i]);
+      }
+      if (type == objectType) {
+        for (int i = defined.nextSetBit(classCount); i >= 0; i = defined.nextSetBit(i + 1)) {
+          consumer.accept(types[i]);
+        }
+      }
+    } else {
+      BitSet subtypes = implementors[id - classCount];
+      for (int i = subtypes.nextSetBit(0); i >= 0; i = subtypes.nextSetBit(i + 1)) {
+        if (defined.get(i)) {
+          consumer.accept(types[i]);
+        }
+      }
+    }
+  }
+
+  private class SubtypeSet extends AbstractSet<DexType> {
+
+    private final DexType type;
+    private final int id;
+
+    private SubtypeSet(DexType type, int id) {
+      this.type = type;
+      this.id = id;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      if (!(o instanceof DexType) || o == type) {
+        return false;
+      }
+      int otherId = ids.getInt(o);
+      return otherId != NOT_INDEXED && defined.get(otherId) && isSubtype((DexType) o, type);
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return size() == 0;
+    }
+
+    @Override
+    public int size() {
+      return countSubtypes(type, id);
+    }
+
+    @Override
+    public Iterator<DexType> iterator() {
+      return new Iterator<DexType>() {
+        // Interfaces are subtypes of java.lang.Object, so for the object type we continue into the
+        // interface ids after the class interval.
+        private final int end = type == objectType ? types.length - 1
+            : id < classCount ? intervalEnd[id] : types.length - 1;
+        private final BitSet candidates = id < classCount ? defined
+            : implementors[id - classCount];
+        private int next = advance(id < classCount ? id + 1 : 0);
+
+        private int advance(int from) {
+          for (int i = candidates.nextSetBit(from); i >= 0 && i <= end;
+              i = candidates.nextSetBit(i + 1)) {
+            if (defined.get(i)) {
+              return i;
+            }
+          }
+          return NOT_INDEXED;
+        }
+
+        @Override
+        public boolean hasNext() {
+          return next != NOT_INDEXED;
+        }
+
+        @Override
+        public DexType next() {
+          if (next == NOT_INDEXED) {
+            throw new NoSuchElementException();
+          }
+          DexType result = types[next];
+          next = advance(next + 1);
+          return result;
+        }
+      };
+    }
+  }
+
+  private static class Builder {
+
+    private final DirectMappedDexApplication application;
+    private final DexType objectType;
+    // Super class tree, with missing and broken super chains attached to java.lang.Object.
+    private final Map<DexType, List<DexType>> subclasses = new IdentityHashMap<>();
+    // Direct subtypes of each interface, both classes and interfaces.
+    private final Map<DexType, List<DexType>> directImplementors = new IdentityHashMap<>();
+    private final List<DexType> interfaces = new ArrayList<>();
+    private final Set<DexType> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private Builder(DirectMappedDexApplication application) {
+      this.application = application;
+      this.objectType = application.dexItemFactory.objectType;
+    }
+
+    private void addSubclass(DexType superType, DexType type) {
+      subclasses.computeIfAbsent(superType, k -> new ArrayList<>()).add(type);
+    }
+
+    private void addType(DexType type, boolean referencedAsInterface) {
+      if (!seen.add(type)) {
+        return;
+      }
+      DexClass clazz = application.definitionFor(type);
+      if (clazz == null) {
+        if (referencedAsInterface) {
+          interfaces.add(type);
+        } else if (type != objectType) {
+          addSubclass(objectType, type);
+        }
+        return;
+      }
+      if (clazz.isInterface()) {
+        interfaces.add(type);
+      } else if (type != objectType) {
+        DexType superType = clazz.superType == null ? objectType : clazz.superType;
+        addType(superType, false);
+        addSubclass(superType, type);
+      }
+      for (DexType iface : clazz.interfaces.values) {
+        addType(iface, true);
+        directImplementors.computeIfAbsent(iface, k -> new ArrayList<>()).add(type);
+      }
+    }
+
+    private ClassHierarchyIndex build() {
+      seen.add(objectType);
+      for (DexClass clazz : Iterables.<DexClass>concat(application.classes(),
+          application.libraryClasses())) {
+        addType(clazz.type, false);
+      }
+      int typeCount = seen.size();
+      Reference2IntMap<DexType> ids = new Reference2IntOpenHashMap<>(typeCount);
+      ids.defaultReturnValue(NOT_INDEXED);
+      DexType[] types = new DexType[typeCount];
+      int[] intervalEnd = new int[typeCount];
+      // Pre-order numbering of the class tree. A class is pushed back on the stack once its
+      // children have been pushed, so that its interval end can be assigned when it is popped.
+      int nextId = 0;
+      Deque<DexType> stack = new ArrayDeque<>();
+      stack.push(objectType);
+      while (!stack.isEmpty()) {
+        DexType type = stack.pop();
+        int id = ids.getInt(type);
+        if (id != NOT_INDEXED) {
+          intervalEnd[id] = nextId - 1;
+          continue;
+        }
+        ids.put(type, nextId);
+        types[nextId++] = type;
+        stack.push(type);
+        List<DexType> children = subclasses.getOrDefault(type, Collections.emptyList());
+        for (int i = children.size() - 1; i >= 0; i--) {
+          stack.push(children.get(i));
+        }
+      }
+      int classCount = nextId;
+      for (DexType iface : interfaces) {
+        ids.put(iface, nextId);
+        types[nextId++] = iface;
+      }
+      // Types whose super chain is cyclic are not reachable from the root and are left out.
+      typeCount = nextId;
+      BitSet defined = new BitSet(typeCount);
+      for (int i = 0; i < typeCount; i++) {
+        if (application.definitionFor(types[i]) != null) {
+          defined.set(i);
+        }
+      }
+      int[] definedBefore = new int[types.length + 1];
+      for (int i = 0; i < types.length; i++) {
+        definedBefore[i + 1] = definedBefore[i] + (defined.get(i) ? 1 : 0);
+      }
+      BitSet[] implementors = new BitSet[interfaces.size()];
+      for (DexType iface : interfaces) {
+        computeImplementors(iface, ids, intervalEnd, classCount, implementors);
+      }
+      return new ClassHierarchyIndex(objectType, ids, types, intervalEnd, defined, definedBefore,
+          implementors, classCount);
+    }
+
+    private BitSet computeImplementors(DexType iface, Reference2IntMap<DexType> ids,
+        int[] intervalEnd, int classCount, BitSet[] implementors) {
+      int index = ids.getInt(iface) - classCount;
+      BitSet result = implementors[index];
+      if (result != null) {
+        return result;
+      }
+      result = new BitSet();
+      // Guard against cyclic interface hierarchies.
+      implementors[index] = result;
+      for (DexType subtype : directImplementors.getOrDefault(iface, Collections.emptyList())) {
+        int id = ids.getInt(subtype);
+        if (id == NOT_INDEXED) {
+          continue;
+        }
+        if (id < classCount) {
+          result.set(id, intervalEnd[id] + 1);
+        } else if (id != index + classCount) {
+          result.set(id);
+          result.or(computeImplementors(subtype, ids, intervalEnd, classCount, implementors));
+        }
+      }
+      return result;
+    }
+  }
+}
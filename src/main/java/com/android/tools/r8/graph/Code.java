@@ -27,6 +27,10 @@ public abstract class Code extends CachedHashValueDexItem {
     return false;
   }
 
+  public boolean isLazyDexCode() {
+    return false;
+  }
+
   public boolean isJarCode() {
     return false;
   }
@@ -43,6 +47,10 @@ public abstract class Code extends CachedHashValueDexItem {
     throw new Unreachable(getClass().getCanonicalName() + ".asDexCode()");
   }
 
+  public LazyDexCode asLazyDexCode() {
+    throw new Unreachable(getClass().getCanonicalName() + ".asLazyDexCode()");
+  }
+
   public JarCode asJarCode() {
     throw new Unreachable(getClass().getCanonicalName() + ".asJarCode()");
   }
@@ -5,17 +5,32 @@ package com.android.tools.r8.graph;
 
 import com.android.tools.r8.utils.DescriptorUtils;
 import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.ThreadUtils;
 import com.android.tools.r8.utils.ThrowingFunction;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 public abstract class DexByteCodeWriter {
 
+  // Number of classes per thread rendered ahead of the class being written when writing to a
+  // single stream in parallel.
+  private static final int CLASSES_IN_FLIGHT_PER_THREAD = 16;
+
   final DexApplication application;
   final InternalOptions options;
 
@@ -39,21 +54,95 @@ public abstract class DexByteCodeWriter {
       Path classOutput = path.resolve(className.replace('.', File.separatorChar)
           + getFileEnding());
       ensureParentExists(classOutput);
-      return new PrintStream(Files.newOutputStream(classOutput));
+      return newPrintStream(classOutput);
     };
   }
 
+  private static PrintStream newPrintStream(Path path) throws IOException {
+    return new PrintStream(new BufferedOutputStream(Files.newOutputStream(path)));
+  }
+
   public void write(Path path) throws IOException {
     if (Files.isDirectory(path)) {
       write(oneFilePerClass(path), PrintStream::close);
     } else {
       ensureParentExists(path);
-      try (PrintStream ps = new PrintStream(Files.newOutputStream(path))) {
+      try (PrintStream ps = newPrintStream(path)) {
         write(ps);
       }
     }
   }
 
+  /**
+   * Write the classes to the given path using the threads of the executor. If the path is a
+   * directory each class is written to its own file, otherwise all classes are written to the
+   * file in the same order as by {@link #write(Path)}.
+   */
+  public void write(Path path, ExecutorService executorService)
+      throws IOException, ExecutionException {
+    if (Files.isDirectory(path)) {
+      ThrowingFunction<DexClass, PrintStream, IOException> outputStreamProvider =
+          oneFilePerClass(path);
+      ThreadUtils.processItems(classesToWrite(), clazz -> {
+        try (PrintStream ps = outputStreamProvider.apply(clazz)) {
+          writeClass(clazz, ps);
+        }
+      }, executorService);
+    } else {
+      ensureParentExists(path);
+      try (PrintStream ps = newPrintStream(path)) {
+        write(ps, executorService);
+      }
+    }
+  }
+
+  /**
+   * Write the classes to the output stream, rendering them in parallel using the threads of the
+   * executor. The output is the same as for {@link #write(PrintStream)}. Classes are written as
+   * soon as they and all classes before them are rendered, so only a bounded number of rendered
+   * classes is kept in memory.
+   */
+  public void write(PrintStream output, ExecutorService executorService)
+      throws ExecutionException {
+    int classesInFlight =
+        CLASSES_IN_FLIGHT_PER_THREAD * ThreadUtils.getParallelism(executorService);
+    Deque<Future<byte[]>> rendered = new ArrayDeque<>(classesInFlight);
+    for (DexProgramClass clazz : classesToWrite()) {
+      if (rendered.size() == classesInFlight) {
+        writeRendered(output, rendered.removeFirst());
+      }
+      rendered.addLast(executorService.submit(() -> render(clazz)));
+    }
+    while (!rendered.isEmpty()) {
+      writeRendered(output, rendered.removeFirst());
+    }
+  }
+
+  private static void writeRendered(PrintStream output, Future<byte[]> rendered)
+      throws ExecutionException {
+    byte[] bytes = ThreadUtils.awaitFutures(Collections.singletonList(rendered)).get(0);
+    output.write(bytes, 0, bytes.length);
+  }
+
+  private byte[] render(DexProgramClass clazz) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (PrintStream ps = new PrintStream(bytes)) {
+      writeClass(clazz, ps);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * The classes to write sorted by type, so that the output does not depend on the order of the
+   * classes in the application.
+   */
+  private List<DexProgramClass> classesToWrite() {
+    return application.classes().stream()
+        .filter(this::anyMethodMatches)
+        .sorted((a, b) -> a.type.slowCompareTo(b.type))
+        .collect(Collectors.toList());
+  }
+
   public void write(PrintStream output) throws IOException {
     write(x -> output, x -> {
     });
@@ -62,14 +151,12 @@ public abstract class DexByteCodeWriter {
   private void write(ThrowingFunction<DexClass, PrintStream, IOException> outputStreamProvider,
       Consumer<PrintStream> closer)
       throws IOException {
-    for (DexProgramClass clazz : application.classes()) {
-      if (anyMethodMatches(clazz)) {
-        PrintStream ps = outputStreamProvider.apply(clazz);
-        try {
-          writeClass(clazz, outputStreamProvider.apply(clazz));
-        } finally {
-          closer.accept(ps);
-        }
+    for (DexProgramClass clazz : classesToWrite()) {
+      PrintStream ps = outputStreamProvider.apply(clazz);
+      try {
+        writeClass(clazz, ps);
+      } finally {
+        closer.accept(ps);
       }
     }
   }
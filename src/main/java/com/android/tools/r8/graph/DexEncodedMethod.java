@@ -29,6 +29,7 @@ import com.android.tools.r8.ir.code.ValueNumberGenerator;
 import com.android.tools.r8.ir.conversion.DexBuilder;
 import com.android.tools.r8.ir.optimize.Inliner.Constraint;
 import com.android.tools.r8.ir.optimize.Inliner.Reason;
+import com.android.tools.r8.ir.optimize.ScalarReplacement.TrivialInitializer;
 import com.android.tools.r8.ir.regalloc.RegisterAllocator;
 import com.android.tools.r8.ir.synthetic.ForwardMethodSourceCode;
 import com.android.tools.r8.ir.synthetic.SynthesizedCode;
@@ -258,11 +259,13 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
   }
 
   public IRCode buildIR(InternalOptions options) throws ApiLevelException {
+    Code code = getCode();
     return code == null ? null : code.buildIR(this, options);
   }
 
   public IRCode buildIR(ValueNumberGenerator valueNumberGenerator, InternalOptions options)
       throws ApiLevelException {
+    Code code = getCode();
     return code == null
         ? null
         : code.asDexCode().buildIR(this, valueNumberGenerator, options);
@@ -281,6 +284,7 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
   @Override
   public void collectIndexedItems(IndexedItemCollection indexedItems) {
     method.collectIndexedItems(indexedItems);
+    Code code = getCodeWithoutDecoding();
     if (code != null) {
       code.collectIndexedItems(indexedItems);
     }
@@ -290,6 +294,7 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
 
   @Override
   void collectMixedSectionItems(MixedSectionCollection mixedItems) {
+    Code code = getCodeWithoutDecoding();
     if (code != null) {
       code.collectMixedSectionItems(mixedItems);
     }
@@ -298,9 +303,37 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
   }
 
   public Code getCode() {
+    Code code = this.code;
+    if (code instanceof LazyDexCode) {
+      // Replace code read from a dex file by the decoded code on first use.
+      code = ((LazyDexCode) code).decode();
+      this.code = code;
+    }
     return code;
   }
 
+  /**
+   * Returns the code for writing it out again. Code read from a dex file is returned as a {@link
+   * LazyDexCode} unless it has been decoded, also when decoded through another method sharing the
+   * code item.
+   */
+  public Code getCodeWithoutDecoding() {
+    Code code = this.code;
+    if (code instanceof LazyDexCode && ((LazyDexCode) code).isDecoded()) {
+      code = getCode();
+    }
+    return code;
+  }
+
+  /** Returns the highest sorting string referenced by the code, without decoding it. */
+  public DexString getHighestSortingString() {
+    Code code = getCodeWithoutDecoding();
+    assert code != null && code.isDexCode();
+    return code.isLazyDexCode()
+        ? code.asLazyDexCode().getHighestSortingString()
+        : code.asDexCode().highestSortingString;
+  }
+
   public void setDexCode(DexCode code) {
     this.code = code;
   }
@@ -310,6 +343,7 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
   }
 
   public boolean hasDebugPositions() {
+    Code code = getCode();
     assert code != null && code.isDexCode();
     return code.asDexCode().hasDebugPositions();
   }
@@ -337,6 +371,7 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
     builder.append(method.name.toSmaliString());
     builder.append(method.proto.toSmaliString());
     builder.append("\n");
+    Code code = getCode();
     if (code != null) {
       DexCode dexCode = code.asDexCode();
       builder.append("    .registers ");
@@ -505,9 +540,9 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
     if (code == null) {
       return;
     }
-    DexCode code = this.code.asDexCode();
-    if (code.highestSortingString != null) {
-      if (mapping.getOffsetFor(code.highestSortingString) > Constants.MAX_NON_JUMBO_INDEX) {
+    DexString highestSortingString = getHighestSortingString();
+    if (highestSortingString != null) {
+      if (mapping.getOffsetFor(highestSortingString) > Constants.MAX_NON_JUMBO_INDEX) {
         JumboStringRewriter rewriter =
             new JumboStringRewriter(this, mapping.getFirstJumboString(),
                 application.dexItemFactory);
@@ -517,6 +552,7 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
   }
 
   public String codeToString() {
+    Code code = getCode();
     return code == null ? "<no code>" : code.toString(this, null);
   }
 
@@ -530,6 +566,7 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
   }
 
   public void registerReachableDefinitions(UseRegistry registry) {
+    Code code = getCode();
     if (code != null) {
       if (Log.ENABLED) {
         Log.verbose(getClass(), "Registering definitions reachable from `%s`.", method);
@@ -549,6 +586,7 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
     private boolean returnsConstant = false;
     private long returnedConstant = 0;
     private boolean forceInline = false;
+    private TrivialInitializer trivialInitializer = null;
 
     private OptimizationInfo() {
       // Intentionally left empty.
@@ -560,6 +598,7 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
       returnsConstant = template.returnsConstant;
       returnedConstant = template.returnedConstant;
       forceInline = template.forceInline;
+      trivialInitializer = template.trivialInitializer;
     }
 
     public boolean returnsArgument() {
@@ -588,6 +627,11 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
       return forceInline;
     }
 
+    /** The field values of the new instance, if this is a trivial instance initializer. */
+    public TrivialInitializer getTrivialInitializer() {
+      return trivialInitializer;
+    }
+
     private void markReturnsArgument(int argument) {
       assert argument >= 0;
       assert returnedArgument == -1 || returnedArgument == argument;
@@ -608,6 +652,10 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
       forceInline = true;
     }
 
+    private void markTrivialInitializer(TrivialInitializer info) {
+      trivialInitializer = info;
+    }
+
     public OptimizationInfo copy() {
       return new OptimizationInfo(this);
     }
@@ -649,6 +697,10 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
     ensureMutableOI().markForceInline();
   }
 
+  synchronized public void markTrivialInitializer(TrivialInitializer info) {
+    ensureMutableOI().markTrivialInitializer(info);
+  }
+
   public OptimizationInfo getOptimizationInfo() {
     return optimizationInfo;
   }
@@ -19,6 +19,7 @@ import com.google.common.collect.ImmutableSet;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -132,6 +133,9 @@ public class DexItemFactory {
   public final DexType stringType = createType(stringDescriptor);
   public final DexType stringArrayType = createType(stringArrayDescriptor);
   public final DexType objectType = createType(objectDescriptor);
+  public final DexType cloneableType = createType("Ljava/lang/Cloneable;");
+  public final DexType serializableType = createType("Ljava/io/Serializable;");
+  public final DexType classType = createType(classDescriptor);
   public final DexType enumType = createType(enumDescriptor);
   public final DexType annotationType = createType(annotationDescriptor);
   public final DexType throwableType = createType(throwableDescriptor);
@@ -196,7 +200,7 @@ public class DexItemFactory {
     public final DexMethod getClass;
 
     private ObjectMethods() {
-      getClass = createMethod(objectsDescriptor, getClassMethodName, classDescriptor,
+      getClass = createMethod(objectDescriptor, getClassMethodName, classDescriptor,
           DexString.EMPTY_ARRAY);
     }
   }
@@ -242,6 +246,10 @@ public class DexItemFactory {
     public final DexMethod appendObject;
     public final DexMethod appendString;
     public final DexMethod appendStringBuffer;
+    public final DexMethod defaultConstructor;
+    public final DexMethod capacityConstructor;
+    public final DexMethod stringConstructor;
+    public final DexMethod toString;
 
     private StringBuildingMethods(DexType receiver) {
       DexType sbufType = createType(createString("Ljava/lang/StringBuffer;"));
@@ -264,6 +272,12 @@ public class DexItemFactory {
       appendObject = createMethod(receiver, createProto(receiver, objectType), append);
       appendString = createMethod(receiver, createProto(receiver, stringType), append);
       appendStringBuffer = createMethod(receiver, createProto(receiver, sbufType), append);
+      defaultConstructor = createMethod(receiver, createProto(voidType), constructorMethodName);
+      capacityConstructor =
+          createMethod(receiver, createProto(voidType, intType), constructorMethodName);
+      stringConstructor =
+          createMethod(receiver, createProto(voidType, stringType), constructorMethodName);
+      toString = createMethod(receiver, createProto(stringType), toStringMethodName);
     }
 
     public void forEachAppendMethod(Consumer<DexMethod> consumer) {
@@ -474,21 +488,34 @@ public class DexItemFactory {
 
   private static <S extends PresortedComparable<S>> void assignSortedIndices(Collection<S> items,
       NamingLens namingLens) {
-    List<S> sorted = new ArrayList<>(items);
-    sorted.sort((a, b) -> a.layeredCompareTo(b, namingLens));
-    int i = 0;
-    for (S value : sorted) {
-      value.setSortedIndex(i++);
+    @SuppressWarnings("unchecked")
+    S[] sorted = (S[]) items.toArray(new PresortedComparable<?>[items.size()]);
+    Arrays.parallelSort(sorted, (a, b) -> a.layeredCompareTo(b, namingLens));
+    for (int i = 0; i < sorted.length; i++) {
+      sorted[i].setSortedIndex(i);
     }
   }
 
   synchronized public void sort(NamingLens namingLens) {
+    sort(namingLens, strings.values(), types.values(), fields.values(), protos.values(),
+        methods.values());
+  }
+
+  /**
+   * Assign sorted indices to the given items only. Items are compared using the sorted indices of
+   * the items they refer to, so the given items must be closed under references, as is the case
+   * for the items of a set of dex files.
+   */
+  synchronized public void sort(NamingLens namingLens, Collection<DexString> sortStrings,
+      Collection<DexType> sortTypes, Collection<DexField> sortFields,
+      Collection<DexProto> sortProtos, Collection<DexMethod> sortMethods) {
     assert !sorted;
-    assignSortedIndices(strings.values(), namingLens);
-    assignSortedIndices(types.values(), namingLens);
-    assignSortedIndices(fields.values(), namingLens);
-    assignSortedIndices(protos.values(), namingLens);
-    assignSortedIndices(methods.values(), namingLens);
+    // Each kind of item is compared using the sorted indices of the kinds sorted before it.
+    assignSortedIndices(sortStrings, namingLens);
+    assignSortedIndices(sortTypes, namingLens);
+    assignSortedIndices(sortFields, namingLens);
+    assignSortedIndices(sortProtos, namingLens);
+    assignSortedIndices(sortMethods, namingLens);
     sorted = true;
   }
 
@@ -508,4 +535,8 @@ public class DexItemFactory {
   synchronized public void forAllTypes(Consumer<DexType> f) {
     new ArrayList<>(types.values()).forEach(f);
   }
+
+  synchronized public void forAllMethodHandles(Consumer<DexMethodHandle> f) {
+    new ArrayList<>(methodHandles.values()).forEach(f);
+  }
 }
@@ -7,6 +7,7 @@ import com.android.tools.r8.dex.Constants;
 import com.android.tools.r8.dex.IndexedItemCollection;
 import com.android.tools.r8.naming.NamingLens;
 import java.io.UTFDataFormatException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 public class DexString extends IndexedDexItem implements PresortedComparable<DexString> {
@@ -47,6 +48,19 @@ public class DexString extends IndexedDexItem implements PresortedComparable<Dex
     }
   }
 
+  // One byte per character, and no zero or negative bytes, except for the terminating zero.
+  private boolean isAscii() {
+    if (content.length != size + 1) {
+      return false;
+    }
+    for (int i = 0; i < size; i++) {
+      if (content[i] <= 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   public int numberOfLeadingSquareBrackets() {
     int result = 0;
     while (content.length > result && content[result] == ((byte) '[')) {
@@ -57,6 +71,9 @@ public class DexString extends IndexedDexItem implements PresortedComparable<Dex
 
   // Inspired from /dex/src/main/java/com/android/dex/Mutf8.java
   private String decode() throws UTFDataFormatException {
+    if (isAscii()) {
+      return new String(content, 0, size, StandardCharsets.US_ASCII);
+    }
     int s = 0;
     int p = 0;
     char[] out = new char[size];
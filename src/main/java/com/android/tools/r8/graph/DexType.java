@@ -110,6 +110,13 @@ public class DexType extends IndexedDexItem implements PresortedComparable<DexTy
     if (other == appInfo.dexItemFactory.objectType) {
       return true;
     }
+    if (appInfo.hasSubtyping()) {
+      ClassHierarchyIndex index = appInfo.withSubtyping().getHierarchyIndex();
+      // Types synthesized after the index was built are not part of it.
+      if (index.contains(this) && index.contains(other)) {
+        return index.isSubtype(this, other);
+      }
+    }
     if (this.hierarchyLevel == INTERFACE_LEVEL) {
       return isInterfaceSubtypeOf(this, other, appInfo);
     }
@@ -59,6 +59,19 @@ public class JarCode extends Code {
     return this;
   }
 
+  /**
+   * Returns an estimate of the size of the code without parsing it, for balancing work between
+   * threads. Before parsing the estimate is the size of the class file shared by its methods.
+   */
+  public int estimatedSize() {
+    ReparseContext context = this.context;
+    if (context != null) {
+      return context.classCache.length / Integer.max(context.lookupMap.size(), 1);
+    }
+    MethodNode node = this.node;
+    return node == null ? 1 : node.instructions.size();
+  }
+
   @Override
   protected int computeHashCode() {
     triggerDelayedParsingIfNeccessary();
@@ -0,0 +1,194 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.graph;
+
+import com.android.tools.r8.ApiLevelException;
+import com.android.tools.r8.code.CodeUnits;
+import com.android.tools.r8.code.InstructionFactory;
+import com.android.tools.r8.dex.IndexedItemCollection;
+import com.android.tools.r8.dex.MixedSectionCollection;
+import com.android.tools.r8.graph.DexCode.Try;
+import com.android.tools.r8.graph.DexCode.TryHandler;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.naming.ClassNameMapper;
+import com.android.tools.r8.utils.InternalOptions;
+import java.nio.ShortBuffer;
+
+/**
+ * A code item read from a dex file where the instructions are decoded on first use.
+ *
+ * <p>Decoding creates an object per instruction with all references resolved, so the code units
+ * are kept instead until the code of the method is requested through {@link
+ * DexEncodedMethod#getCode}, which replaces this with the decoded {@link DexCode}. Code that is
+ * never requested, like the code of methods removed by tree shaking, is never decoded, and the
+ * code that is requested is decoded by the threads processing it instead of when reading.
+ *
+ * <p>Code that is only written out again, like all code when D8 merges dex files, is obtained
+ * through {@link DexEncodedMethod#getCodeWithoutDecoding} and written by copying the code units
+ * with the item references rewritten to the indices of the output file.
+ */
+public class LazyDexCode extends Code {
+
+  public final int registerSize;
+  public final int incomingRegisterSize;
+  public final int outgoingRegisterSize;
+  public final Try[] tries;
+  public final TryHandler[] handlers;
+  private final DexDebugInfo debugInfo;
+  // Kept after decoding, as methods sharing the code item can still write it without decoding.
+  private final CodeUnits codeUnits;
+
+  private volatile DexCode decoded = null;
+  private volatile boolean highestSortingStringComputed = false;
+  private DexString highestSortingString = null;
+
+  public LazyDexCode(
+      int registerSize,
+      int insSize,
+      int outsSize,
+      short[] codeUnits,
+      Try[] tries,
+      TryHandler[] handlers,
+      DexDebugInfo debugInfo,
+      OffsetToObjectMapping mapping) {
+    this.registerSize = registerSize;
+    this.incomingRegisterSize = insSize;
+    this.outgoingRegisterSize = outsSize;
+    this.codeUnits = new CodeUnits(codeUnits, mapping);
+    this.tries = tries;
+    this.handlers = handlers;
+    this.debugInfo = debugInfo;
+  }
+
+  /**
+   * Decode the instructions. The code item can be shared by several methods, so the decoded code
+   * is cached and returned for all of them.
+   */
+  public synchronized DexCode decode() {
+    if (decoded == null) {
+      InstructionFactory factory = new InstructionFactory();
+      decoded = new DexCode(
+          registerSize,
+          incomingRegisterSize,
+          outgoingRegisterSize,
+          codeUnits.decode(factory),
+          tries,
+          handlers,
+          debugInfo,
+          factory.getHighestSortingString());
+    }
+    return decoded;
+  }
+
+  public boolean isDecoded() {
+    return decoded != null;
+  }
+
+  public DexDebugInfo getDebugInfo() {
+    return debugInfo;
+  }
+
+  public int codeSizeInCodeUnits() {
+    return codeUnits.size();
+  }
+
+  public DexString getHighestSortingString() {
+    if (!highestSortingStringComputed) {
+      synchronized (this) {
+        if (!highestSortingStringComputed) {
+          highestSortingString = codeUnits.getHighestSortingString();
+          highestSortingStringComputed = true;
+        }
+      }
+    }
+    return highestSortingString;
+  }
+
+  public void writeInstructions(ShortBuffer dest, ObjectToOffsetMapping mapping) {
+    codeUnits.write(dest, mapping);
+  }
+
+  @Override
+  public boolean isLazyDexCode() {
+    return true;
+  }
+
+  @Override
+  public LazyDexCode asLazyDexCode() {
+    return this;
+  }
+
+  @Override
+  public void collectIndexedItems(IndexedItemCollection indexedItems) {
+    codeUnits.collectIndexedItems(indexedItems);
+    if (debugInfo != null) {
+      debugInfo.collectIndexedItems(indexedItems);
+    }
+    if (handlers != null) {
+      for (TryHandler handler : handlers) {
+        handler.collectIndexedItems(indexedItems);
+      }
+    }
+  }
+
+  @Override
+  void collectMixedSectionItems(MixedSectionCollection mixedItems) {
+    if (mixedItems.add(this)) {
+      if (debugInfo != null) {
+        debugInfo.collectMixedSectionItems(mixedItems);
+      }
+    }
+  }
+
+  @Override
+  public int estimatedSizeForInlining() {
+    return isDecoded() ? decoded.estimatedSizeForInlining() : codeUnits.countInstructions();
+  }
+
+  // The methods below are only used if the undecoded code escapes DexEncodedMethod.
+
+  @Override
+  public IRCode buildIR(DexEncodedMethod encodedMethod, InternalOptions options)
+      throws ApiLevelException {
+    return decode().buildIR(encodedMethod, options);
+  }
+
+  @Override
+  public void registerReachableDefinitions(UseRegistry registry) {
+    decode().registerReachableDefinitions(registry);
+  }
+
+  @Override
+  public boolean isDexCode() {
+    return true;
+  }
+
+  @Override
+  public DexCode asDexCode() {
+    return decode();
+  }
+
+  @Override
+  protected int computeHashCode() {
+    return decode().hashCode();
+  }
+
+  @Override
+  protected boolean computeEquals(Object other) {
+    if (other instanceof LazyDexCode) {
+      other = ((LazyDexCode) other).decode();
+    }
+    return decode().equals(other);
+  }
+
+  @Override
+  public String toString() {
+    return decode().toString();
+  }
+
+  @Override
+  public String toString(DexEncodedMethod method, ClassNameMapper naming) {
+    return decode().toString(method, naming);
+  }
+}
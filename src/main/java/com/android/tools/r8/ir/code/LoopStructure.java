@@ -0,0 +1,146 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.code;
+
+import com.google.common.collect.Sets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The natural loops of a method.
+ *
+ * <p>An edge is a back edge if its target dominates its source. The natural loop of a back edge is
+ * its target, the loop header, and the blocks that reach its source without passing through the
+ * header. The natural loops of back edges with the same header are merged into one loop. Natural
+ * loops are either disjoint or nested. Irreducible loops, which have no header dominating the
+ * other blocks of the loop, are not found.
+ */
+public class LoopStructure {
+
+  public static class Loop {
+
+    private final BasicBlock header;
+    private final Set<BasicBlock> blocks = Sets.newIdentityHashSet();
+    private Loop parent = null;
+    private int depth = 1;
+
+    private Loop(BasicBlock header) {
+      this.header = header;
+      blocks.add(header);
+    }
+
+    public BasicBlock getHeader() {
+      return header;
+    }
+
+    /** The blocks of the loop, including the blocks of nested loops. */
+    public Set<BasicBlock> getBlocks() {
+      return blocks;
+    }
+
+    public boolean contains(BasicBlock block) {
+      return blocks.contains(block);
+    }
+
+    /** The innermost loop containing this loop, or null if this is an outermost loop. */
+    public Loop getParent() {
+      return parent;
+    }
+
+    /** The number of loops containing this loop, including itself. */
+    public int getDepth() {
+      return depth;
+    }
+
+    /**
+     * The block outside the loop which is the only predecessor of the header outside the loop and
+     * only has the header as successor, or null if there is no such block.
+     */
+    public BasicBlock getPreheader() {
+      BasicBlock preheader = null;
+      for (BasicBlock predecessor : header.getPredecessors()) {
+        if (!contains(predecessor)) {
+          if (preheader != null) {
+            return null;
+          }
+          preheader = predecessor;
+        }
+      }
+      if (preheader == null
+          || preheader.getSuccessors().size() != 1
+          || !preheader.exit().isGoto()) {
+        return null;
+      }
+      return preheader;
+    }
+  }
+
+  // The loops with outer loops before the loops they contain.
+  private final List<Loop> loops;
+  private final Map<BasicBlock, Loop> innermostLoops = new IdentityHashMap<>();
+
+  public LoopStructure(IRCode code, DominatorTree dominatorTree) {
+    Map<BasicBlock, Loop> loopsByHeader = new LinkedHashMap<>();
+    for (BasicBlock block : code.blocks) {
+      for (BasicBlock successor : block.getSuccessors()) {
+        if (dominatorTree.dominatedBy(block, successor)) {
+          addBackEdge(loopsByHeader.computeIfAbsent(successor, Loop::new), block);
+        }
+      }
+    }
+    loops = new ArrayList<>(loopsByHeader.values());
+    // A loop containing another loop has more blocks.
+    loops.sort((loop1, loop2) -> loop2.blocks.size() - loop1.blocks.size());
+    for (Loop loop : loops) {
+      Loop parent = innermostLoops.get(loop.header);
+      if (parent != null) {
+        loop.parent = parent;
+        loop.depth = parent.depth + 1;
+      }
+      for (BasicBlock block : loop.blocks) {
+        innermostLoops.put(block, loop);
+      }
+    }
+  }
+
+  private static void addBackEdge(Loop loop, BasicBlock source) {
+    Deque<BasicBlock> worklist = new ArrayDeque<>();
+    if (loop.blocks.add(source)) {
+      worklist.push(source);
+    }
+    while (!worklist.isEmpty()) {
+      for (BasicBlock predecessor : worklist.pop().getPredecessors()) {
+        if (loop.blocks.add(predecessor)) {
+          worklist.push(predecessor);
+        }
+      }
+    }
+  }
+
+  public boolean isEmpty() {
+    return loops.isEmpty();
+  }
+
+  /** The loops of the method, with outer loops before the loops they contain. */
+  public List<Loop> getLoops() {
+    return loops;
+  }
+
+  /** The innermost loop containing the block, or null if the block is not in a loop. */
+  public Loop getInnermostLoop(BasicBlock block) {
+    return innermostLoops.get(block);
+  }
+
+  /** The number of loops containing the block. */
+  public int getLoopDepth(BasicBlock block) {
+    Loop loop = innermostLoops.get(block);
+    return loop == null ? 0 : loop.depth;
+  }
+}
@@ -113,6 +113,96 @@ public class NumberConversion extends Unop {
     builder.add(this, instruction);
   }
 
+  @Override
+  public boolean canBeFolded() {
+    return source().isConstNumber();
+  }
+
+  @Override
+  public ConstInstruction fold(IRCode code) {
+    assert canBeFolded();
+    ConstNumber source = source().getConstInstruction().asConstNumber();
+    switch (to) {
+      case BYTE:
+        return foldInt(code, (byte) source.getIntValue());
+      case CHAR:
+        return foldInt(code, (char) source.getIntValue());
+      case SHORT:
+        return foldInt(code, (short) source.getIntValue());
+      case INT:
+        switch (from) {
+          case LONG:
+            return foldInt(code, (int) source.getLongValue());
+          case FLOAT:
+            return foldInt(code, (int) source.getFloatValue());
+          case DOUBLE:
+            return foldInt(code, (int) source.getDoubleValue());
+          default:
+            break;
+        }
+        break;
+      case LONG:
+        switch (from) {
+          case INT:
+            return foldLong(code, source.getIntValue());
+          case FLOAT:
+            return foldLong(code, (long) source.getFloatValue());
+          case DOUBLE:
+            return foldLong(code, (long) source.getDoubleValue());
+          default:
+            break;
+        }
+        break;
+      case FLOAT:
+        switch (from) {
+          case INT:
+            return foldFloat(code, (float) source.getIntValue());
+          case LONG:
+            return foldFloat(code, (float) source.getLongValue());
+          case DOUBLE:
+            return foldFloat(code, (float) source.getDoubleValue());
+          default:
+            break;
+        }
+        break;
+      case DOUBLE:
+        switch (from) {
+          case INT:
+            return foldDouble(code, (double) source.getIntValue());
+          case LONG:
+            return foldDouble(code, (double) source.getLongValue());
+          case FLOAT:
+            return foldDouble(code, (double) source.getFloatValue());
+          default:
+            break;
+        }
+        break;
+      default:
+        break;
+    }
+    throw new Unreachable("Unexpected types " + from + ", " + to);
+  }
+
+  private ConstNumber foldInt(IRCode code, int result) {
+    Value value = code.createValue(MoveType.SINGLE, getLocalInfo());
+    return new ConstNumber(ConstType.INT, value, result);
+  }
+
+  private ConstNumber foldLong(IRCode code, long result) {
+    Value value = code.createValue(MoveType.WIDE, getLocalInfo());
+    return new ConstNumber(ConstType.LONG, value, result);
+  }
+
+  private ConstNumber foldFloat(IRCode code, float result) {
+    Value value = code.createValue(MoveType.SINGLE, getLocalInfo());
+    return new ConstNumber(ConstType.FLOAT, value, Float.floatToIntBits(result));
+  }
+
+  private ConstNumber foldDouble(IRCode code, double result) {
+    Value value = code.createValue(MoveType.WIDE, getLocalInfo());
+    return new ConstNumber(ConstType.DOUBLE, value, Double.doubleToLongBits(result));
+  }
+
   @Override
   public boolean identicalNonValueParts(Instruction other) {
     NumberConversion o = other.asNumberConversion();
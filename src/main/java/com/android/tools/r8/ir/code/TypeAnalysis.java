@@ -0,0 +1,182 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.code;
+
+import com.android.tools.r8.graph.AppInfo;
+import com.android.tools.r8.graph.DexClass;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexType;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Computes a {@link TypeLatticeElement} for each reference value of a method.
+ *
+ * <p>The elements are computed by a fixed point iteration over the SSA values. They are seeded
+ * from the instructions creating objects, which are never null, the receiver, the declared types
+ * of parameters, fields, array elements and return values, and from check-casts. The element of a
+ * phi is the join of the elements of its operands. Interface types are not checked by the verifier
+ * so values declared with an interface type, other than the result of a check-cast, get the
+ * element of Object.
+ */
+public class TypeAnalysis {
+
+  private final AppInfo appInfo;
+  private final DexItemFactory factory;
+  private final DexEncodedMethod method;
+  private final IRCode code;
+  private final Map<Value, TypeLatticeElement> elements = new IdentityHashMap<>();
+  private final Deque<Value> worklist = new ArrayDeque<>();
+
+  public TypeAnalysis(AppInfo appInfo, IRCode code) {
+    this.appInfo = appInfo;
+    this.factory = appInfo.dexItemFactory;
+    this.method = code.method;
+    this.code = code;
+    analyze();
+  }
+
+  /** The element of the value, or the top element if the value is not a reference. */
+  public TypeLatticeElement getElement(Value value) {
+    TypeLatticeElement element = elements.get(value);
+    if (element != null) {
+      return element;
+    }
+    // Null constants are not always typed as references in code read from dex.
+    if (value.isConstNumber() && value.getConstInstruction().asConstNumber().isZero()) {
+      return TypeLatticeElement.nullElement();
+    }
+    return TypeLatticeElement.top(factory);
+  }
+
+  private void analyze() {
+    int argumentIndex = method.accessFlags.isStatic() ? 0 : -1;
+    for (BasicBlock block : code.blocks) {
+      for (Phi phi : block.getPhis()) {
+        if (phi.outType() == MoveType.OBJECT) {
+          elements.put(phi, TypeLatticeElement.bottom());
+          worklist.add(phi);
+        }
+      }
+      for (Instruction instruction : block.getInstructions()) {
+        Value outValue = instruction.outValue();
+        if (instruction.isArgument()) {
+          if (outValue.outType() == MoveType.OBJECT) {
+            elements.put(outValue, argumentElement(argumentIndex));
+          }
+          argumentIndex++;
+        } else if (outValue != null && outValue.outType() == MoveType.OBJECT) {
+          elements.put(outValue, TypeLatticeElement.bottom());
+          worklist.add(outValue);
+        }
+      }
+    }
+    while (!worklist.isEmpty()) {
+      Value value = worklist.poll();
+      TypeLatticeElement element = value.isPhi()
+          ? computePhi(value.asPhi())
+          : compute(value.definition);
+      if (!element.equals(elements.put(value, element))) {
+        for (Instruction user : value.uniqueUsers()) {
+          Value outValue = user.outValue();
+          if (outValue != null && elements.containsKey(outValue)) {
+            worklist.add(outValue);
+          }
+        }
+        for (Phi user : value.uniquePhiUsers()) {
+          if (elements.containsKey(user)) {
+            worklist.add(user);
+          }
+        }
+      }
+    }
+  }
+
+  private TypeLatticeElement argumentElement(int index) {
+    if (index < 0) {
+      return TypeLatticeElement.fromType(method.method.getHolder(), false);
+    }
+    return fromDeclaredType(method.method.proto.parameters.values[index]);
+  }
+
+  private TypeLatticeElement computePhi(Phi phi) {
+    TypeLatticeElement element = TypeLatticeElement.bottom();
+    for (Value operand : phi.getOperands()) {
+      element = element.join(getElement(operand), appInfo);
+    }
+    return element;
+  }
+
+  private TypeLatticeElement compute(Instruction instruction) {
+    if (instruction.isNewInstance()) {
+      return TypeLatticeElement.fromType(instruction.asNewInstance().clazz, false);
+    }
+    if (instruction.isNewArrayEmpty()) {
+      return TypeLatticeElement.fromType(instruction.asNewArrayEmpty().type, false);
+    }
+    if (instruction.isInvokeNewArray()) {
+      return TypeLatticeElement.fromType(instruction.asInvokeNewArray().getArrayType(), false);
+    }
+    if (instruction.isConstString()) {
+      return TypeLatticeElement.fromType(factory.stringType, false);
+    }
+    if (instruction.isConstClass()) {
+      return TypeLatticeElement.fromType(factory.classType, false);
+    }
+    if (instruction.isConstNumber()) {
+      return TypeLatticeElement.nullElement();
+    }
+    if (instruction.isMoveException()) {
+      return TypeLatticeElement.fromType(factory.throwableType, false);
+    }
+    if (instruction.isMove()) {
+      return getElement(instruction.inValues().get(0));
+    }
+    if (instruction.isCheckCast()) {
+      TypeLatticeElement element = getElement(instruction.inValues().get(0));
+      if (element.isBottom() || element.isNull()) {
+        return element;
+      }
+      DexType type = instruction.asCheckCast().getType();
+      if (TypeLatticeElement.isSubtype(element.getType(), type, appInfo)) {
+        return element;
+      }
+      return TypeLatticeElement.fromType(type, element.isNullable());
+    }
+    if (instruction.isInstanceGet()) {
+      return fromDeclaredType(instruction.asInstanceGet().getField().type);
+    }
+    if (instruction.isStaticGet()) {
+      return fromDeclaredType(instruction.asStaticGet().getField().type);
+    }
+    if (instruction.isArrayGet()) {
+      TypeLatticeElement array = getElement(instruction.asArrayGet().array());
+      if (array.isBottom()) {
+        return array;
+      }
+      if (array.isReference() && array.getType().isArrayType()) {
+        return fromDeclaredType(array.getType().toArrayElementType(factory));
+      }
+      return TypeLatticeElement.top(factory);
+    }
+    if (instruction.isInvokeMethod()) {
+      return fromDeclaredType(instruction.asInvokeMethod().getInvokedMethod().proto.returnType);
+    }
+    return TypeLatticeElement.top(factory);
+  }
+
+  private TypeLatticeElement fromDeclaredType(DexType type) {
+    DexType baseType = type.toBaseType(factory);
+    if (baseType.isClassType()) {
+      DexClass clazz = appInfo.definitionFor(baseType);
+      if (clazz == null || clazz.isInterface()) {
+        return TypeLatticeElement.top(factory);
+      }
+    }
+    return TypeLatticeElement.fromType(type, true);
+  }
+}
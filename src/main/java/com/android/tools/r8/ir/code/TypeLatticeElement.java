@@ -0,0 +1,187 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.code;
+
+import com.android.tools.r8.graph.AppInfo;
+import com.android.tools.r8.graph.DexClass;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexType;
+import java.util.Objects;
+
+/**
+ * An element of the type lattice for reference values.
+ *
+ * <p>The elements are, from bottom to top: bottom, which has no values, the null reference, and
+ * for each reference type the values of that type, either including or excluding null. The top
+ * element is Object including null. The type of an element is an upper bound of the classes of its
+ * values.
+ */
+public class TypeLatticeElement {
+
+  private static final TypeLatticeElement BOTTOM = new TypeLatticeElement(null, false);
+  private static final TypeLatticeElement NULL = new TypeLatticeElement(null, true);
+
+  private final DexType type;
+  private final boolean isNullable;
+
+  private TypeLatticeElement(DexType type, boolean isNullable) {
+    this.type = type;
+    this.isNullable = isNullable;
+  }
+
+  public static TypeLatticeElement bottom() {
+    return BOTTOM;
+  }
+
+  public static TypeLatticeElement nullElement() {
+    return NULL;
+  }
+
+  public static TypeLatticeElement top(DexItemFactory factory) {
+    return fromType(factory.objectType, true);
+  }
+
+  public static TypeLatticeElement fromType(DexType type, boolean isNullable) {
+    assert type != null && !type.isPrimitiveType();
+    return new TypeLatticeElement(type, isNullable);
+  }
+
+  public boolean isBottom() {
+    return this == BOTTOM;
+  }
+
+  /** True if the only value of this element is null. */
+  public boolean isNull() {
+    return this == NULL;
+  }
+
+  public boolean isReference() {
+    return type != null;
+  }
+
+  /** The upper bound of the classes of the values, or null for bottom and the null element. */
+  public DexType getType() {
+    return type;
+  }
+
+  public boolean isNullable() {
+    return isNullable;
+  }
+
+  public TypeLatticeElement asNonNull() {
+    if (isNull()) {
+      return BOTTOM;
+    }
+    return isNullable ? new TypeLatticeElement(type, false) : this;
+  }
+
+  public TypeLatticeElement join(TypeLatticeElement other, AppInfo appInfo) {
+    if (isBottom() || this.equals(other)) {
+      return other;
+    }
+    if (other.isBottom()) {
+      return this;
+    }
+    if (isNull()) {
+      return other.isNullable ? other : new TypeLatticeElement(other.type, true);
+    }
+    if (other.isNull()) {
+      return isNullable ? this : new TypeLatticeElement(type, true);
+    }
+    return new TypeLatticeElement(
+        commonSupertype(type, other.type, appInfo), isNullable || other.isNullable);
+  }
+
+  /** True if all values of this element are also values of the other element. */
+  public boolean lessThanOrEqual(TypeLatticeElement other, AppInfo appInfo) {
+    if (isBottom() || other.equals(this)) {
+      return true;
+    }
+    if (isNull()) {
+      return other.isNullable;
+    }
+    return other.isReference()
+        && (other.isNullable || !isNullable)
+        && isSubtype(type, other.type, appInfo);
+  }
+
+  /**
+   * True if the type is known to be a subtype of the other type, including arrays. The result is
+   * false if the class hierarchy is incomplete.
+   */
+  public static boolean isSubtype(DexType type, DexType other, AppInfo appInfo) {
+    DexItemFactory factory = appInfo.dexItemFactory;
+    if (type == other || other == factory.objectType) {
+      return true;
+    }
+    if (type.isArrayType()) {
+      if (other.isArrayType()) {
+        DexType element = type.toArrayElementType(factory);
+        DexType otherElement = other.toArrayElementType(factory);
+        return !element.isPrimitiveType()
+            && !otherElement.isPrimitiveType()
+            && isSubtype(element, otherElement, appInfo);
+      }
+      return other == factory.cloneableType || other == factory.serializableType;
+    }
+    if (other.isArrayType() || type == factory.objectType) {
+      return false;
+    }
+    if (appInfo.definitionFor(type) == null || appInfo.definitionFor(other) == null) {
+      return false;
+    }
+    return type.isSubtypeOf(other, appInfo);
+  }
+
+  private static DexType commonSupertype(DexType type, DexType other, AppInfo appInfo) {
+    if (isSubtype(type, other, appInfo)) {
+      return other;
+    }
+    if (isSubtype(other, type, appInfo)) {
+      return type;
+    }
+    // Find the closest common superclass, arrays and interfaces only have Object in common.
+    for (DexType superType = superclassOf(type, appInfo);
+        superType != null;
+        superType = superclassOf(superType, appInfo)) {
+      if (isSubtype(other, superType, appInfo)) {
+        return superType;
+      }
+    }
+    return appInfo.dexItemFactory.objectType;
+  }
+
+  private static DexType superclassOf(DexType type, AppInfo appInfo) {
+    if (!type.isClassType()) {
+      return null;
+    }
+    DexClass clazz = appInfo.definitionFor(type);
+    return clazz == null || clazz.isInterface() ? null : clazz.superType;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof TypeLatticeElement)) {
+      return false;
+    }
+    TypeLatticeElement element = (TypeLatticeElement) other;
+    return type == element.type && isNullable == element.isNullable;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(type, isNullable);
+  }
+
+  @Override
+  public String toString() {
+    if (isBottom()) {
+      return "BOTTOM";
+    }
+    if (isNull()) {
+      return "NULL";
+    }
+    return (isNullable ? "" : "!") + type.toSourceString();
+  }
+}
@@ -4,6 +4,7 @@
 
 package com.android.tools.r8.ir.conversion;
 
+import com.android.tools.r8.CompilationListener.Counter;
 import com.android.tools.r8.graph.AppInfoWithSubtyping;
 import com.android.tools.r8.graph.DexApplication;
 import com.android.tools.r8.graph.DexClass;
@@ -19,6 +20,7 @@ import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.ThreadUtils;
 import com.android.tools.r8.utils.ThrowingBiConsumer;
+import com.android.tools.r8.utils.WorkStatistics;
 import com.google.common.collect.Sets;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -30,7 +32,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -53,6 +54,7 @@ import java.util.stream.Collectors;
 public class CallGraph extends CallSiteInformation {
 
   private CallGraph(InternalOptions options) {
+    this.options = options;
     this.shuffle = options.testing.irOrdering;
   }
 
@@ -132,6 +134,7 @@ public class CallGraph extends CallSiteInformation {
 
   private final Map<DexEncodedMethod, Node> nodes = new LinkedHashMap<>();
   private final Function<Set<DexEncodedMethod>, Set<DexEncodedMethod>> shuffle;
+  private final InternalOptions options;
 
   private Set<DexEncodedMethod> singleCallSite = Sets.newIdentityHashSet();
   private Set<DexEncodedMethod> doubleCallSite = Sets.newIdentityHashSet();
@@ -288,23 +291,65 @@ public class CallGraph extends CallSiteInformation {
    * <p>
    * As second parameter, a predicate that can be used to decide whether another method is
    * processed at the same time is passed. This can be used to avoid races in concurrent processing.
+   * <p>
+   * Before each set of leaves is processed the compilation listener is told the number of methods
+   * remaining, and cancellation of the compilation is checked.
    */
   public <E extends Exception> void forEachMethod(
       ThrowingBiConsumer<DexEncodedMethod, Predicate<DexEncodedMethod>, E> consumer,
       ExecutorService executorService)
       throws ExecutionException {
+    forEachMethod(consumer, executorService, null);
+  }
+
+  /**
+   * Applies the given method to all leaf nodes of the graph as {@link #forEachMethod}, and records
+   * the parallel work in {@code statistics}.
+   * <p>
+   * The leaves are processed in batches balanced by the estimated size of their code.
+   */
+  public <E extends Exception> void forEachMethod(
+      ThrowingBiConsumer<DexEncodedMethod, Predicate<DexEncodedMethod>, E> consumer,
+      ExecutorService executorService,
+      WorkStatistics statistics)
+      throws ExecutionException {
+    forEachMethod(consumer, method -> false, executorService, statistics);
+  }
+
+  /**
+   * Applies the given method to all leaf nodes of the graph as {@link #forEachMethod}. The leaves
+   * matching {@code processSequentially} are processed one after another in a fixed order, in a
+   * task of their own, so that they can share state without making the result depend on the
+   * scheduling of the threads.
+   */
+  public <E extends Exception> void forEachMethod(
+      ThrowingBiConsumer<DexEncodedMethod, Predicate<DexEncodedMethod>, E> consumer,
+      Predicate<DexEncodedMethod> processSequentially,
+      ExecutorService executorService,
+      WorkStatistics statistics)
+      throws ExecutionException {
+    int parallelism = ThreadUtils.getParallelism(executorService);
     while (!isEmpty()) {
+      options.checkCanceled();
+      options.compilationListener.counter(Counter.METHODS_REMAINING, nodes.size());
       Set<DexEncodedMethod> methods = extractLeaves();
       assert methods.size() > 0;
-      List<Future<?>> futures = new ArrayList<>();
+      List<DexEncodedMethod> sequential = new ArrayList<>();
+      List<DexEncodedMethod> concurrent = new ArrayList<>(methods.size());
       for (DexEncodedMethod method : methods) {
-        futures.add(executorService.submit(() -> {
-          consumer.accept(method, methods::contains);
-          return null; // we want a Callable not a Runnable to be able to throw
-        }));
+        (processSequentially.test(method) ? sequential : concurrent).add(method);
       }
-      ThreadUtils.awaitFutures(futures);
-    }
+      sequential.sort(DexEncodedMethod::slowCompare);
+      ThreadUtils.processItemsInBatches(
+          concurrent,
+          sequential,
+          IRConverter::estimatedConversionCost,
+          parallelism,
+          method -> consumer.accept(method, methods::contains),
+          executorService,
+          statistics);
+    }
+    options.compilationListener.counter(Counter.METHODS_REMAINING, 0);
   }
 
   public void dump() {
@@ -3,10 +3,13 @@
 // BSD-style license that can be found in the LICENSE file.
 package com.android.tools.r8.ir.conversion;
 
+import static com.android.tools.r8.ir.conversion.OptimizationPassManager.introduces;
+import static com.android.tools.r8.ir.conversion.OptimizationPassManager.requiresAny;
 import static com.android.tools.r8.ir.desugar.InterfaceMethodRewriter.Flavor.ExcludeDexResources;
 import static com.android.tools.r8.ir.desugar.InterfaceMethodRewriter.Flavor.IncludeAllResources;
 
 import com.android.tools.r8.ApiLevelException;
+import com.android.tools.r8.CompilationListener.Counter;
 import com.android.tools.r8.errors.Unreachable;
 import com.android.tools.r8.graph.AppInfo;
 import com.android.tools.r8.graph.AppInfoWithSubtyping;
@@ -22,6 +25,7 @@ import com.android.tools.r8.graph.DexString;
 import com.android.tools.r8.graph.DexType;
 import com.android.tools.r8.graph.GraphLense;
 import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.conversion.OptimizationPassManager.Kind;
 import com.android.tools.r8.ir.desugar.InterfaceMethodRewriter;
 import com.android.tools.r8.ir.desugar.LambdaRewriter;
 import com.android.tools.r8.ir.optimize.CodeRewriter;
@@ -40,18 +44,19 @@ import com.android.tools.r8.utils.DescriptorUtils;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.ThreadUtils;
 import com.android.tools.r8.utils.Timing;
+import com.android.tools.r8.utils.WorkStatistics;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ListMultimap;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -60,6 +65,8 @@ import java.util.stream.Collectors;
 public class IRConverter {
 
   private static final int PEEPHOLE_OPTIMIZATION_PASSES = 2;
+  // Number of processed methods between reports to the compilation listener.
+  private static final int PROGRESS_REPORTING_INTERVAL = 1000;
 
   private final Timing timing;
   public final DexApplication application;
@@ -75,6 +82,12 @@ public class IRConverter {
   private final LensCodeRewriter lensCodeRewriter;
   private final Inliner inliner;
   private final ProtoLitePruner protoLiteRewriter;
+  private final OptimizationPassManager optimizationPasses;
+
+  private final AtomicLong numberOfProcessedMethods = new AtomicLong();
+  private final WorkStatistics classConversionStatistics = new WorkStatistics("Convert classes");
+  private final WorkStatistics methodConversionStatistics =
+      new WorkStatistics("Optimize methods in call graph order");
 
   private OptimizationFeedback ignoreOptimizationFeedback = new OptimizationFeedbackIgnore();
   private DexString highestSortingString;
@@ -91,14 +104,17 @@ public class IRConverter {
     assert application != null;
     assert appInfo != null;
     assert options != null;
-    this.timing = timing != null ? timing : new Timing("internal");
+    this.timing = timing != null ? timing : new Timing("internal", options.compilationListener);
     this.application = application;
     this.appInfo = appInfo;
     this.graphLense = graphLense != null ? graphLense : GraphLense.getIdentityLense();
     this.options = options;
     this.printer = printer;
     this.codeRewriter = new CodeRewriter(appInfo, libraryMethodsReturningReceiver());
-    this.lambdaRewriter = enableDesugaring ? new LambdaRewriter(this) : null;
+    this.optimizationPasses = createOptimizationPasses();
+    this.lambdaRewriter =
+        enableDesugaring
+            ? new LambdaRewriter(this, options.mergeLambdaClasses) : null;
     this.interfaceMethodRewriter =
         (enableDesugaring && enableInterfaceMethodDesugaring())
             ? new InterfaceMethodRewriter(this, options) : null;
@@ -170,6 +186,69 @@ public class IRConverter {
     this(timing, application, appInfo, graphLense, options, printer, true, true);
   }
 
+  // Kinds of the instructions that global value numbering and loop invariant code motion move or
+  // remove.
+  private static final Predicate<Set<Kind>> VALUE_NUMBERED_KINDS =
+      requiresAny(Kind.BINOP, Kind.UNOP, Kind.INSTANCE_OF, Kind.CHECK_CAST, Kind.FIELD_GET,
+          Kind.ARRAY_LENGTH, Kind.CONST_NUMBER);
+
+  private OptimizationPassManager createOptimizationPasses() {
+    return new OptimizationPassManager()
+        .add("Devirtualize interface calls",
+            kinds -> options.enableDevirtualization && appInfo.hasSubtyping()
+                && kinds.contains(Kind.INVOKE),
+            introduces(Kind.CHECK_CAST),
+            codeRewriter::devirtualize)
+        .addLocal("Remove cast chains",
+            requiresAny(Kind.CHECK_CAST), introduces(),
+            codeRewriter::removeCastChain)
+        .addLocal("Rewrite Long.compare and Objects.requireNonNull",
+            kinds -> !options.canUseLongCompareAndObjectsNonNull() && kinds.contains(Kind.INVOKE),
+            introduces(Kind.BINOP, Kind.INVOKE),
+            codeRewriter::rewriteLongCompareAndRequireNonNull)
+        .add("Eliminate type checks",
+            kinds -> options.enableTypeCheckElimination && appInfo.hasSubtyping()
+                && (kinds.contains(Kind.CHECK_CAST) || kinds.contains(Kind.INSTANCE_OF)
+                    || kinds.contains(Kind.IF) || kinds.contains(Kind.INVOKE)),
+            introduces(Kind.CONST_NUMBER),
+            codeRewriter::eliminateTypeChecks)
+        .addWithFeedback("Scalar replacement",
+            kinds -> options.enableScalarReplacement && appInfo.hasSubtyping()
+                && kinds.contains(Kind.NEW_INSTANCE),
+            introduces(Kind.CONST_NUMBER),
+            codeRewriter::replaceAllocationsByScalars)
+        .add("Global value numbering",
+            kinds -> options.enableGlobalValueNumbering && VALUE_NUMBERED_KINDS.test(kinds),
+            introduces(),
+            codeRewriter::commonSubexpressionElimination)
+        .add("Loop invariant code motion",
+            kinds -> options.enableLoopInvariantCodeMotion && VALUE_NUMBERED_KINDS.test(kinds),
+            introduces(),
+            codeRewriter::loopInvariantCodeMotion)
+        .add("Simplify array construction",
+            requiresAny(Kind.NEW_ARRAY_EMPTY), introduces(Kind.INVOKE),
+            codeRewriter::simplifyArrayConstruction)
+        .add("Rewrite move result",
+            requiresAny(Kind.INVOKE), introduces(),
+            codeRewriter::rewriteMoveResult)
+        .add("Split range invoke constants",
+            requiresAny(Kind.INVOKE), introduces(),
+            codeRewriter::splitRangeInvokeConstants)
+        .add("Fold constants",
+            requiresAny(Kind.BINOP, Kind.UNOP), introduces(),
+            codeRewriter::foldConstants)
+        .add("Optimize string builders",
+            kinds -> options.enableStringBuilderOptimization && kinds.contains(Kind.INVOKE),
+            introduces(Kind.CONST_NUMBER),
+            codeRewriter::optimizeStringBuilders)
+        .add("Rewrite switch",
+            requiresAny(Kind.SWITCH), introduces(Kind.IF),
+            codeRewriter::rewriteSwitch)
+        .add("Simplify if",
+            requiresAny(Kind.IF), introduces(),
+            codeRewriter::simplifyIf);
+  }
+
   private boolean enableInterfaceMethodDesugaring() {
     switch (options.interfaceMethodDesugaring) {
       case Off:
@@ -242,6 +321,10 @@ public class IRConverter {
       clearSynthesizedClassMapping(builder);
     }
 
+    if (options.printTimes) {
+      optimizationPasses.report(timing);
+      reportWorkStatistics();
+    }
     return builder.build();
   }
 
@@ -300,23 +383,63 @@ public class IRConverter {
 
   private void convertClassesToDex(Iterable<DexProgramClass> classes,
       ExecutorService executor) throws ExecutionException {
-    List<Future<?>> futures = new ArrayList<>();
-    for (DexProgramClass clazz : classes) {
-      futures.add(
-          executor.submit(
-              () -> {
-                clazz.forEachMethodThrowing(this::convertMethodToDex);
-                return null; // we want a Callable not a Runnable to be able to throw
-              }));
+    ThreadUtils.processItemsInBatches(
+        ImmutableList.copyOf(classes),
+        IRConverter::estimatedClassConversionCost,
+        ThreadUtils.getParallelism(executor),
+        clazz -> {
+          options.checkCanceled();
+          clazz.forEachMethodThrowing(this::convertMethodToDex);
+        },
+        executor,
+        classConversionStatistics);
+    reportProgress(numberOfProcessedMethods.get());
+  }
+
+  // Estimated cost of converting the code of a method, used for balancing work between threads.
+  static long estimatedConversionCost(DexEncodedMethod method) {
+    Code code = method.getCodeWithoutDecoding();
+    if (code == null) {
+      return 1;
+    }
+    if (code.isJarCode()) {
+      return code.asJarCode().estimatedSize();
+    }
+    if (code.isDexCode()) {
+      return code.estimatedSizeForInlining();
+    }
+    return 1;
+  }
+
+  private static long estimatedClassConversionCost(DexProgramClass clazz) {
+    long cost = 0;
+    for (DexEncodedMethod method : clazz.directMethods()) {
+      cost += estimatedConversionCost(method);
+    }
+    for (DexEncodedMethod method : clazz.virtualMethods()) {
+      cost += estimatedConversionCost(method);
+    }
+    return cost;
+  }
+
+  private void reportWorkStatistics() {
+    System.out.println();
+    System.out.println("Recorded parallel work:");
+    for (WorkStatistics statistics :
+        ImmutableList.of(classConversionStatistics, methodConversionStatistics)) {
+      if (statistics.getBatches() > 0) {
+        statistics.report(System.out);
+      }
     }
-    ThreadUtils.awaitFutures(futures);
   }
 
   void convertMethodToDex(DexEncodedMethod method) throws ApiLevelException {
-    if (method.getCode() != null) {
+    // Code read from a dex file is not decoded, it is written out again as is.
+    Code code = method.getCodeWithoutDecoding();
+    if (code != null) {
       boolean matchesMethodFilter = options.methodMatchesFilter(method);
       if (matchesMethodFilter) {
-        if (method.getCode().isJarCode()) {
+        if (code.isJarCode()) {
           // We do not process in call graph order, so anything could be a leaf.
           rewriteCode(method, ignoreOptimizationFeedback, x -> true, CallSiteInformation.empty(),
               Outliner::noProcessing);
@@ -356,7 +479,8 @@ public class IRConverter {
       callGraph.forEachMethod((method, isProcessedConcurrently) -> {
         processMethod(method, directFeedback, isProcessedConcurrently, callGraph,
             outliner == null ? Outliner::noProcessing : outliner::identifyCandidates);
-      }, executorService);
+      }, this::usesHotInliningBudget, executorService, methodConversionStatistics);
+      reportProgress(numberOfProcessedMethods.get());
       timing.end();
     }
 
@@ -392,16 +516,25 @@ public class IRConverter {
           processMethod(method, ignoreOptimizationFeedback, isProcessedConcurrently, callGraph,
               outliner::applyOutliningCandidate);
           assert method.isProcessed();
-        }, executorService);
+        }, this::usesHotInliningBudget, executorService, methodConversionStatistics);
         builder.addSynthesizedClass(outlineClass, true);
         clearDexMethodCompilationState(outlineClass);
+        reportProgress(numberOfProcessedMethods.get());
       }
       timing.end();
     }
     clearDexMethodCompilationState();
+    if (options.printTimes) {
+      optimizationPasses.report(timing);
+      reportWorkStatistics();
+    }
     return builder.build();
   }
 
+  private boolean usesHotInliningBudget(DexEncodedMethod method) {
+    return inliner != null && inliner.usesHotInliningBudget(method);
+  }
+
   private void clearDexMethodCompilationState() {
     application.classes().forEach(this::clearDexMethodCompilationState);
   }
@@ -449,9 +582,12 @@ public class IRConverter {
 
   private DexProgramClass prepareOutlining() throws ApiLevelException {
     if (!outliner.selectMethodsForOutlining()) {
+      options.compilationListener.counter(Counter.OUTLINES_CREATED, 0);
       return null;
     }
     DexProgramClass outlineClass = outliner.buildOutlinerClass(computeOutlineClassType());
+    options.compilationListener.counter(
+        Counter.OUTLINES_CREATED, outlineClass.directMethods().length);
     optimizeSynthesizedClass(outlineClass);
     return outlineClass;
   }
@@ -493,6 +629,7 @@ public class IRConverter {
       CallSiteInformation callSiteInformation,
       BiConsumer<IRCode, DexEncodedMethod> outlineHandler)
       throws ApiLevelException {
+    options.checkCanceled();
     if (options.verbose) {
       System.out.println("Processing: " + method.toSourceString());
     }
@@ -542,15 +679,7 @@ public class IRConverter {
       assert !options.debug;
       inliner.performInlining(method, code, isProcessedConcurrently, callSiteInformation);
     }
-    codeRewriter.removeCastChains(code);
-    codeRewriter.rewriteLongCompareAndRequireNonNull(code, options);
-    codeRewriter.commonSubexpressionElimination(code);
-    codeRewriter.simplifyArrayConstruction(code);
-    codeRewriter.rewriteMoveResult(code);
-    codeRewriter.splitRangeInvokeConstants(code);
-    codeRewriter.foldConstants(code);
-    codeRewriter.rewriteSwitch(code);
-    codeRewriter.simplifyIf(code);
+    optimizationPasses.run(code, isProcessedConcurrently);
     if (!options.debug) {
       codeRewriter.collectClassInitializerDefaults(method, code);
     }
@@ -585,6 +714,7 @@ public class IRConverter {
 
     codeRewriter.shortenLiveRanges(code);
     codeRewriter.identifyReturnsArgument(method, code, feedback);
+    codeRewriter.identifyTrivialInitializer(method, code, feedback);
 
     // Insert code to log arguments if requested.
     if (options.methodMatchesLogArgumentsFilter(method)) {
@@ -613,10 +743,26 @@ public class IRConverter {
       state = inliner.computeInliningConstraint(code, method);
     }
     feedback.markProcessed(method, state);
+    long processed = numberOfProcessedMethods.incrementAndGet();
+    if (processed % PROGRESS_REPORTING_INTERVAL == 0) {
+      reportProgress(processed);
+    }
+  }
+
+  private void reportProgress(long processed) {
+    options.compilationListener.counter(Counter.METHODS_PROCESSED, processed);
+    if (inliner != null) {
+      options.compilationListener.counter(
+          Counter.METHODS_INLINED, inliner.getNumberOfInlinedMethods());
+      if (inliner.hasInliningProfile()) {
+        options.compilationListener.counter(
+            Counter.HOT_INLINING_BUDGET_USED, inliner.getUsedHotInliningBudget());
+      }
+    }
   }
 
   private synchronized void updateHighestSortingStrings(DexEncodedMethod method) {
-    DexString highestSortingReferencedString = method.getCode().asDexCode().highestSortingString;
+    DexString highestSortingReferencedString = method.getHighestSortingString();
     if (highestSortingReferencedString != null) {
       if (highestSortingString == null
           || highestSortingReferencedString.slowCompareTo(highestSortingString) > 0) {
@@ -6,10 +6,12 @@ package com.android.tools.r8.ir.conversion;
 
 import com.android.tools.r8.graph.DexEncodedMethod;
 import com.android.tools.r8.ir.optimize.Inliner.Constraint;
+import com.android.tools.r8.ir.optimize.ScalarReplacement.TrivialInitializer;
 
 public interface OptimizationFeedback {
   void methodReturnsArgument(DexEncodedMethod method, int argument);
   void methodReturnsConstant(DexEncodedMethod method, long value);
   void methodNeverReturnsNull(DexEncodedMethod method);
+  void methodIsTrivialInitializer(DexEncodedMethod method, TrivialInitializer info);
   void markProcessed(DexEncodedMethod method, Constraint state);
 }
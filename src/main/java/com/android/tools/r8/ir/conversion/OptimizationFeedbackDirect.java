@@ -6,6 +6,7 @@ package com.android.tools.r8.ir.conversion;
 
 import com.android.tools.r8.graph.DexEncodedMethod;
 import com.android.tools.r8.ir.optimize.Inliner.Constraint;
+import com.android.tools.r8.ir.optimize.ScalarReplacement.TrivialInitializer;
 
 public class OptimizationFeedbackDirect implements OptimizationFeedback {
 
@@ -24,6 +25,11 @@ public class OptimizationFeedbackDirect implements OptimizationFeedback {
     method.markNeverReturnsNull();
   }
 
+  @Override
+  public void methodIsTrivialInitializer(DexEncodedMethod method, TrivialInitializer info) {
+    method.markTrivialInitializer(info);
+  }
+
   @Override
   public void markProcessed(DexEncodedMethod method, Constraint state) {
     method.markProcessed(state);
@@ -6,6 +6,7 @@ package com.android.tools.r8.ir.conversion;
 
 import com.android.tools.r8.graph.DexEncodedMethod;
 import com.android.tools.r8.ir.optimize.Inliner.Constraint;
+import com.android.tools.r8.ir.optimize.ScalarReplacement.TrivialInitializer;
 
 public class OptimizationFeedbackIgnore implements OptimizationFeedback {
 
@@ -18,6 +19,9 @@ public class OptimizationFeedbackIgnore implements OptimizationFeedback {
   @Override
   public void methodNeverReturnsNull(DexEncodedMethod method) {}
 
+  @Override
+  public void methodIsTrivialInitializer(DexEncodedMethod method, TrivialInitializer info) {}
+
   @Override
   public void markProcessed(DexEncodedMethod method, Constraint state) {}
 }
@@ -0,0 +1,311 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.conversion;
+
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.InstructionIterator;
+import com.android.tools.r8.utils.Timing;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Runs a fixed sequence of IR optimization passes on a method.
+ *
+ * <p>Before running the passes the manager records which kinds of instructions the method
+ * contains, and passes that require an instruction kind that is not present are skipped. When a
+ * pass changes the IR, the kinds of instructions it might introduce are added to the recorded set,
+ * so the set is always a conservative approximation and the IR is only scanned once.
+ *
+ * <p>Consecutive local rewrites, which only look at a single instruction at a time, are fused
+ * into a single traversal of the instructions.
+ *
+ * <p>The manager is shared by all threads processing methods, and keeps per-pass statistics on
+ * time spent, number of runs, number of skips and number of runs that changed the IR.
+ *
+ * <p>Only the SSA rewrites run after inlining are managed. Dead code removal and the peephole
+ * optimizations after register allocation run on every method and are not skipped.
+ */
+class OptimizationPassManager {
+
+  /**
+   * Instruction kinds used to decide if a pass can apply.
+   */
+  enum Kind {
+    BINOP,
+    UNOP,
+    CHECK_CAST,
+    INSTANCE_OF,
+    INVOKE,
+    NEW_ARRAY_EMPTY,
+    NEW_INSTANCE,
+    FIELD_GET,
+    ARRAY_LENGTH,
+    CONST_NUMBER,
+    SWITCH,
+    IF;
+
+    static Set<Kind> of(IRCode code) {
+      Set<Kind> kinds = EnumSet.noneOf(Kind.class);
+      InstructionIterator iterator = code.instructionIterator();
+      while (iterator.hasNext()) {
+        Instruction instruction = iterator.next();
+        if (instruction.isBinop()) {
+          kinds.add(BINOP);
+        } else if (instruction.isUnop()) {
+          kinds.add(UNOP);
+        } else if (instruction.isCheckCast()) {
+          kinds.add(CHECK_CAST);
+        } else if (instruction.isInstanceOf()) {
+          kinds.add(INSTANCE_OF);
+        } else if (instruction.isInvoke()) {
+          kinds.add(INVOKE);
+        } else if (instruction.isNewArrayEmpty()) {
+          kinds.add(NEW_ARRAY_EMPTY);
+        } else if (instruction.isNewInstance()) {
+          kinds.add(NEW_INSTANCE);
+        } else if (instruction.isInstanceGet() || instruction.isStaticGet()) {
+          kinds.add(FIELD_GET);
+        } else if (instruction.isArrayLength()) {
+          kinds.add(ARRAY_LENGTH);
+        } else if (instruction.isConstNumber()) {
+          kinds.add(CONST_NUMBER);
+        } else if (instruction.isSwitch()) {
+          kinds.add(SWITCH);
+        } else if (instruction.isIf()) {
+          kinds.add(IF);
+        }
+      }
+      return kinds;
+    }
+  }
+
+  /**
+   * A pass over the entire IR of a method returning true if the IR was changed.
+   */
+  interface CodePass {
+    boolean run(IRCode code);
+  }
+
+  /**
+   * A pass over the entire IR of a method that uses the optimization info of other methods. The
+   * info of methods processed concurrently with the method may or may not be available yet, so
+   * the pass must not use it to keep the result deterministic.
+   */
+  interface FeedbackPass {
+    boolean run(IRCode code, Predicate<DexEncodedMethod> isProcessedConcurrently);
+  }
+
+  /**
+   * A rewrite of a single instruction returning true if the instruction was rewritten. The rewrite
+   * must only modify the instruction stream through the iterator.
+   */
+  interface LocalRewrite {
+    boolean rewrite(InstructionIterator iterator, Instruction current);
+  }
+
+  private static class Statistics {
+    final String name;
+    final AtomicLong time = new AtomicLong();
+    final AtomicLong runs = new AtomicLong();
+    final AtomicLong skips = new AtomicLong();
+    final AtomicLong changes = new AtomicLong();
+
+    Statistics(String name) {
+      this.name = name;
+    }
+
+    void record(long nanos, boolean changed) {
+      time.addAndGet(nanos);
+      runs.incrementAndGet();
+      if (changed) {
+        changes.incrementAndGet();
+      }
+    }
+  }
+
+  private abstract static class Pass {
+    final Predicate<Set<Kind>> applies;
+    final Set<Kind> introduces;
+
+    Pass(Predicate<Set<Kind>> applies, Set<Kind> introduces) {
+      this.applies = applies;
+      this.introduces = introduces;
+    }
+
+    abstract boolean run(
+        IRCode code, Set<Kind> kinds, Predicate<DexEncodedMethod> isProcessedConcurrently);
+  }
+
+  private static class SinglePass extends Pass {
+    final Statistics statistics;
+    final FeedbackPass pass;
+
+    SinglePass(
+        String name, Predicate<Set<Kind>> applies, Set<Kind> introduces, FeedbackPass pass) {
+      super(applies, introduces);
+      this.statistics = new Statistics(name);
+      this.pass = pass;
+    }
+
+    @Override
+    boolean run(
+        IRCode code, Set<Kind> kinds, Predicate<DexEncodedMethod> isProcessedConcurrently) {
+      if (!applies.test(kinds)) {
+        statistics.skips.incrementAndGet();
+        return false;
+      }
+      long start = System.nanoTime();
+      boolean changed = pass.run(code, isProcessedConcurrently);
+      statistics.record(System.nanoTime() - start, changed);
+      return changed;
+    }
+  }
+
+  private static class LocalPass {
+    final Statistics statistics;
+    final Predicate<Set<Kind>> applies;
+    final Set<Kind> introduces;
+    final LocalRewrite rewrite;
+
+    LocalPass(
+        String name, Predicate<Set<Kind>> applies, Set<Kind> introduces, LocalRewrite rewrite) {
+      this.statistics = new Statistics(name);
+      this.applies = applies;
+      this.introduces = introduces;
+      this.rewrite = rewrite;
+    }
+  }
+
+  private static class FusedPass extends Pass {
+    final Statistics statistics;
+    // Members of a fused pass only record runs and skips, the time and change count are recorded
+    // for the fused traversal.
+    final List<LocalPass> members = new ArrayList<>();
+
+    FusedPass(Statistics statistics) {
+      super(kinds -> false, EnumSet.noneOf(Kind.class));
+      this.statistics = statistics;
+    }
+
+    void add(LocalPass member) {
+      members.add(member);
+      introduces.addAll(member.introduces);
+    }
+
+    @Override
+    boolean run(
+        IRCode code, Set<Kind> kinds, Predicate<DexEncodedMethod> isProcessedConcurrently) {
+      List<LocalRewrite> applicable = new ArrayList<>(members.size());
+      for (LocalPass member : members) {
+        if (member.applies.test(kinds)) {
+          applicable.add(member.rewrite);
+          member.statistics.runs.incrementAndGet();
+        } else {
+          member.statistics.skips.incrementAndGet();
+        }
+      }
+      if (applicable.isEmpty()) {
+        statistics.skips.incrementAndGet();
+        return false;
+      }
+      long start = System.nanoTime();
+      boolean changed = false;
+      InstructionIterator iterator = code.instructionIterator();
+      while (iterator.hasNext()) {
+        Instruction current = iterator.next();
+        for (LocalRewrite rewrite : applicable) {
+          if (rewrite.rewrite(iterator, current)) {
+            // The current instruction has been removed or replaced.
+            changed = true;
+            break;
+          }
+        }
+      }
+      assert code.isConsistentSSA();
+      statistics.record(System.nanoTime() - start, changed);
+      return changed;
+    }
+  }
+
+  private final List<Pass> passes = new ArrayList<>();
+  private final List<Statistics> statistics = new ArrayList<>();
+  private FusedPass currentFusedPass = null;
+
+  static Predicate<Set<Kind>> requiresAny(Kind kind, Kind... kinds) {
+    Set<Kind> required = EnumSet.of(kind, kinds);
+    return present -> !Collections.disjoint(required, present);
+  }
+
+  static Set<Kind> introduces(Kind... kinds) {
+    Set<Kind> result = EnumSet.noneOf(Kind.class);
+    Collections.addAll(result, kinds);
+    return result;
+  }
+
+  /**
+   * Add a pass at the end of the pass sequence.
+   */
+  OptimizationPassManager add(
+      String name, Predicate<Set<Kind>> applies, Set<Kind> introduces, CodePass pass) {
+    return addWithFeedback(
+        name, applies, introduces, (code, isProcessedConcurrently) -> pass.run(code));
+  }
+
+  /**
+   * Add a pass using the optimization info of other methods at the end of the pass sequence.
+   */
+  OptimizationPassManager addWithFeedback(
+      String name, Predicate<Set<Kind>> applies, Set<Kind> introduces, FeedbackPass pass) {
+    currentFusedPass = null;
+    SinglePass singlePass = new SinglePass(name, applies, introduces, pass);
+    passes.add(singlePass);
+    statistics.add(singlePass.statistics);
+    return this;
+  }
+
+  /**
+   * Add a local rewrite at the end of the pass sequence. Local rewrites added after each other
+   * are run in the same traversal of the instructions.
+   */
+  OptimizationPassManager addLocal(
+      String name, Predicate<Set<Kind>> applies, Set<Kind> introduces, LocalRewrite rewrite) {
+    if (currentFusedPass == null) {
+      currentFusedPass = new FusedPass(new Statistics("Fused local rewrites"));
+      passes.add(currentFusedPass);
+      statistics.add(currentFusedPass.statistics);
+    }
+    LocalPass member = new LocalPass(name, applies, introduces, rewrite);
+    currentFusedPass.add(member);
+    statistics.add(member.statistics);
+    return this;
+  }
+
+  void run(IRCode code, Predicate<DexEncodedMethod> isProcessedConcurrently) {
+    Set<Kind> kinds = Kind.of(code);
+    for (Pass pass : passes) {
+      if (pass.run(code, kinds, isProcessedConcurrently)) {
+        kinds.addAll(pass.introduces);
+      }
+    }
+  }
+
+  /**
+   * Add the statistics of the passes to the current task of {@code timing}. The time of a pass is
+   * the total time spent by all threads running it.
+   */
+  void report(Timing timing) {
+    for (Statistics entry : statistics) {
+      timing.add("Optimization pass " + entry.name + " (" + entry.runs.get() + " runs, "
+          + entry.skips.get() + " skipped, " + entry.changes.get() + " changed)",
+          entry.time.get());
+    }
+  }
+}
@@ -58,6 +58,8 @@ final class LambdaClass {
   final DexMethod constructor;
   final DexMethod classConstructor;
   final DexField instanceField;
+  // Type of the lambda group this lambda is merged into, or null if not merged.
+  final DexType groupType;
   final Target target;
   final AtomicBoolean addToMainDexList = new AtomicBoolean(false);
   private Collection<DexProgramClass> synthesizedFrom = new ArrayList<DexProgramClass>(1);
@@ -81,13 +83,22 @@ final class LambdaClass {
     this.target = createTarget(accessedFrom);
 
     boolean stateless = isStateless();
+    this.groupType = rewriter.mergeLambdaClasses && LambdaGroup.canMerge(rewriter, descriptor)
+        ? LambdaGroup.createGroupType(rewriter, accessedFrom, descriptor) : null;
     this.classConstructor = !stateless ? null
         : factory.createMethod(lambdaClassType, constructorProto, rewriter.classConstructorName);
-    this.instanceField = !stateless ? null
-        : factory.createField(lambdaClassType, lambdaClassType, rewriter.instanceFieldName);
+    if (isMerged()) {
+      // The singleton instance of a merged lambda is held by the group class, in a field
+      // named after the lambda class.
+      this.instanceField = factory.createField(groupType, groupType,
+          factory.createString(rewriter.instanceFieldName + "$" + lambdaClassType.getName()));
+    } else {
+      this.instanceField = !stateless ? null
+          : factory.createField(lambdaClassType, lambdaClassType, rewriter.instanceFieldName);
+    }
 
     // We have to register this new class as a subtype of object.
-    rewriter.appInfo.registerNewType(type, factory.objectType);
+    rewriter.appInfo.registerNewType(isMerged() ? groupType : type, factory.objectType);
   }
 
   // Generate unique lambda class type for lambda descriptor and instantiation point context.
@@ -142,11 +153,20 @@ final class LambdaClass {
     return descriptor.isStateless();
   }
 
+  // Checks if the lambda is merged into a lambda group instead of getting its own class.
+  final boolean isMerged() {
+    return groupType != null;
+  }
+
   synchronized void addSynthesizedFrom(DexProgramClass synthesizedFrom) {
     assert synthesizedFrom != null;
     this.synthesizedFrom.add(synthesizedFrom);
   }
 
+  synchronized Collection<DexProgramClass> getSynthesizedFrom() {
+    return synthesizedFrom;
+  }
+
   // Synthesize virtual methods.
   private DexEncodedMethod[] synthesizeVirtualMethods() {
     DexEncodedMethod[] methods = new DexEncodedMethod[1 + descriptor.bridges.size()];
@@ -0,0 +1,242 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+
+package com.android.tools.r8.ir.desugar;
+
+import com.android.tools.r8.dex.Constants;
+import com.android.tools.r8.graph.DexAccessFlags;
+import com.android.tools.r8.graph.DexAnnotationSet;
+import com.android.tools.r8.graph.DexAnnotationSetRefList;
+import com.android.tools.r8.graph.DexEncodedField;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.graph.DexField;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.graph.DexProgramClass;
+import com.android.tools.r8.graph.DexProto;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.graph.DexTypeList;
+import com.android.tools.r8.graph.DexValue.DexValueNull;
+import com.android.tools.r8.ir.synthetic.SynthesizedCode;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Represents a class shared by several stateless lambda classes.
+ *
+ * Stateless lambdas implementing the same interfaces, with the same main method
+ * and bridges, and instantiated in the same package are compatible. Instead of
+ * synthesizing a class per lambda, all compatible lambdas are merged into one group
+ * class. The group class holds one singleton instance per lambda, each with a
+ * distinct id, and its main method dispatches on the id to the code of the lambda
+ * the instance represents.
+ *
+ * The group type is computed from the properties shared by compatible lambdas, so
+ * every lambda can be assigned to its group while lambda instantiation points are
+ * being patched, before all lambdas are known.
+ */
+final class LambdaGroup {
+
+  static final String LAMBDA_GROUP_CLASS_NAME_PREFIX = "-$$LambdaGroup$";
+  static final String LAMBDA_GROUP_ID_FIELD_NAME = "id";
+
+  final LambdaRewriter rewriter;
+  final DexType type;
+  final DexField idField;
+  final DexMethod constructor;
+  final DexMethod classConstructor;
+  private final List<LambdaClass> members = new ArrayList<>();
+
+  LambdaGroup(LambdaRewriter rewriter, DexType groupType) {
+    this.rewriter = rewriter;
+    this.type = groupType;
+
+    DexItemFactory factory = rewriter.factory;
+    this.idField = factory.createField(
+        groupType, factory.intType, factory.createString(LAMBDA_GROUP_ID_FIELD_NAME));
+    this.constructor = factory.createMethod(groupType,
+        factory.createProto(factory.voidType, factory.intType), rewriter.constructorName);
+    this.classConstructor = factory.createMethod(groupType,
+        factory.createProto(factory.voidType), rewriter.classConstructorName);
+  }
+
+  // Checks if the lambda may be merged with other compatible lambdas.
+  static boolean canMerge(LambdaRewriter rewriter, LambdaDescriptor descriptor) {
+    // Serializable lambdas are deserialized by the name of their class.
+    return descriptor.isStateless()
+        && !descriptor.interfaces.contains(rewriter.serializableType);
+  }
+
+  // Generate the type of the group the lambda belongs to in the given instantiation context.
+  static DexType createGroupType(
+      LambdaRewriter rewriter, DexType accessedFrom, LambdaDescriptor descriptor) {
+    assert canMerge(rewriter, descriptor);
+    StringBuilder key = new StringBuilder();
+    for (DexType iface : descriptor.interfaces) {
+      key.append(iface.toDescriptorString());
+    }
+    key.append(';').append(descriptor.name.toString())
+        .append(descriptor.erasedProto.toDescriptorString())
+        .append(descriptor.enforcedProto.toDescriptorString());
+    descriptor.bridges.stream()
+        .map(DexProto::toDescriptorString)
+        .sorted()
+        .forEach(key::append);
+
+    StringBuilder groupClassDescriptor = new StringBuilder("L");
+    // Like lambda classes, groups are always created in the package of the instantiation point.
+    String packageDescriptor = accessedFrom.getPackageDescriptor();
+    if (!packageDescriptor.isEmpty()) {
+      groupClassDescriptor.append(packageDescriptor).append('/');
+    }
+    // Only the first 20 bytes of the hash are used to keep the class names short.
+    byte[] hash = Hashing.sha256().hashString(key, Charsets.UTF_8).asBytes();
+    groupClassDescriptor.append(LAMBDA_GROUP_CLASS_NAME_PREFIX)
+        .append(BaseEncoding.base64Url().omitPadding().encode(hash, 0, 20))
+        .append(';');
+    return rewriter.factory.createType(groupClassDescriptor.toString());
+  }
+
+  void addMember(LambdaClass lambda) {
+    assert lambda.groupType == type;
+    members.add(lambda);
+  }
+
+  List<LambdaClass> members() {
+    return members;
+  }
+
+  // Id of the member, it is assigned after all members are known.
+  int getId(LambdaClass lambda) {
+    int id = members.indexOf(lambda);
+    assert id >= 0;
+    return id;
+  }
+
+  boolean shouldAddToMainDexList() {
+    return members.stream().anyMatch(lambda -> lambda.addToMainDexList.get());
+  }
+
+  final DexProgramClass synthesizeGroupClass() {
+    assert !members.isEmpty();
+    // Make member ids independent of the order lambdas are discovered in.
+    members.sort((a, b) -> a.type.slowCompareTo(b.type));
+    Collection<DexProgramClass> synthesizedFrom = new LinkedHashSet<>();
+    for (LambdaClass lambda : members) {
+      synthesizedFrom.addAll(lambda.getSynthesizedFrom());
+    }
+    return new DexProgramClass(
+        type,
+        null,
+        new DexAccessFlags(Constants.ACC_FINAL | Constants.ACC_SYNTHETIC),
+        rewriter.factory.objectType,
+        buildInterfaces(),
+        rewriter.factory.createString("lambda"),
+        DexAnnotationSet.empty(),
+        synthesizeStaticFields(),
+        synthesizeInstanceFields(),
+        synthesizeDirectMethods(),
+        synthesizeVirtualMethods(),
+        synthesizedFrom
+    );
+  }
+
+  // All members share the descriptor properties relevant for the group class.
+  private LambdaDescriptor descriptor() {
+    return members.get(0).descriptor;
+  }
+
+  // Synthesize virtual methods.
+  private DexEncodedMethod[] synthesizeVirtualMethods() {
+    LambdaDescriptor descriptor = descriptor();
+    DexEncodedMethod[] methods = new DexEncodedMethod[1 + descriptor.bridges.size()];
+    int index = 0;
+
+    // Synthesize main method dispatching on the member id.
+    DexMethod mainMethod = rewriter.factory
+        .createMethod(type, descriptor.erasedProto, descriptor.name);
+    methods[index++] = new DexEncodedMethod(
+        mainMethod,
+        new DexAccessFlags(Constants.ACC_PUBLIC | Constants.ACC_FINAL),
+        DexAnnotationSet.empty(),
+        DexAnnotationSetRefList.empty(),
+        new SynthesizedCode(new LambdaGroupMainMethodSourceCode(this, mainMethod)));
+
+    // Synthesize bridge methods, they are the same for all members.
+    for (DexProto bridgeProto : descriptor.bridges) {
+      DexMethod bridgeMethod = rewriter.factory.createMethod(type, bridgeProto, descriptor.name);
+      methods[index++] = new DexEncodedMethod(
+          bridgeMethod,
+          new DexAccessFlags(Constants.ACC_PUBLIC | Constants.ACC_FINAL
+              | Constants.ACC_SYNTHETIC | Constants.ACC_BRIDGE),
+          DexAnnotationSet.empty(),
+          DexAnnotationSetRefList.empty(),
+          new SynthesizedCode(
+              new LambdaBridgeMethodSourceCode(members.get(0), mainMethod, bridgeMethod)));
+    }
+    return methods;
+  }
+
+  // Synthesize direct methods.
+  private DexEncodedMethod[] synthesizeDirectMethods() {
+    DexEncodedMethod[] methods = new DexEncodedMethod[2];
+
+    // Constructor taking the member id.
+    methods[0] = new DexEncodedMethod(
+        constructor,
+        new DexAccessFlags(
+            Constants.ACC_PRIVATE | Constants.ACC_SYNTHETIC | Constants.ACC_CONSTRUCTOR),
+        DexAnnotationSet.empty(),
+        DexAnnotationSetRefList.empty(),
+        new SynthesizedCode(new LambdaGroupConstructorSourceCode(this)));
+
+    // Class constructor instantiating the singleton instance of each member.
+    methods[1] = new DexEncodedMethod(
+        classConstructor,
+        new DexAccessFlags(
+            Constants.ACC_SYNTHETIC | Constants.ACC_CONSTRUCTOR | Constants.ACC_STATIC),
+        DexAnnotationSet.empty(),
+        DexAnnotationSetRefList.empty(),
+        new SynthesizedCode(new LambdaGroupClassConstructorSourceCode(this)));
+    return methods;
+  }
+
+  // Synthesize the instance field holding the member id.
+  private DexEncodedField[] synthesizeInstanceFields() {
+    DexEncodedField[] fields = new DexEncodedField[1];
+    fields[0] = new DexEncodedField(
+        idField,
+        new DexAccessFlags(Constants.ACC_FINAL | Constants.ACC_SYNTHETIC | Constants.ACC_PRIVATE),
+        DexAnnotationSet.empty(),
+        null);
+    return fields;
+  }
+
+  // Synthesize static fields to represent the singleton instance of each member.
+  private DexEncodedField[] synthesizeStaticFields() {
+    DexEncodedField[] fields = new DexEncodedField[members.size()];
+    for (int i = 0; i < fields.length; i++) {
+      assert members.get(i).instanceField.clazz == type;
+      fields[i] = new DexEncodedField(
+          members.get(i).instanceField,
+          new DexAccessFlags(Constants.ACC_PUBLIC | Constants.ACC_FINAL
+              | Constants.ACC_SYNTHETIC | Constants.ACC_STATIC),
+          DexAnnotationSet.empty(),
+          DexValueNull.NULL);
+    }
+    return fields;
+  }
+
+  // Build a list of implemented interfaces.
+  private DexTypeList buildInterfaces() {
+    List<DexType> interfaces = descriptor().interfaces;
+    return interfaces.isEmpty() ? DexTypeList.empty()
+        : new DexTypeList(interfaces.toArray(new DexType[interfaces.size()]));
+  }
+}
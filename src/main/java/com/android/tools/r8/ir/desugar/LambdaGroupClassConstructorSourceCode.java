@@ -0,0 +1,50 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+
+package com.android.tools.r8.ir.desugar;
+
+import com.android.tools.r8.ir.code.Invoke;
+import com.android.tools.r8.ir.code.MemberType;
+import com.android.tools.r8.ir.code.MoveType;
+import com.android.tools.r8.ir.conversion.IRBuilder;
+import com.android.tools.r8.ir.synthetic.SingleBlockSourceCode;
+import com.google.common.collect.ImmutableList;
+
+// Source code representing synthesized lambda group class constructor.
+// Instantiates the singleton instance of each lambda in the group.
+final class LambdaGroupClassConstructorSourceCode extends SingleBlockSourceCode {
+
+  private final LambdaGroup group;
+
+  LambdaGroupClassConstructorSourceCode(LambdaGroup group) {
+    super(null /* Class initializer is static */, group.classConstructor.proto);
+    this.group = group;
+  }
+
+  @Override
+  protected void prepareInstructions() {
+    int instance = nextRegister(MoveType.OBJECT);
+    int id = nextRegister(MoveType.SINGLE);
+    for (LambdaClass lambda : group.members()) {
+      // Create and initialize an instance with the id of the lambda.
+      int value = group.getId(lambda);
+      add(builder -> builder.addNewInstance(instance, group.type));
+      add(builder -> builder.addConst(MoveType.SINGLE, id, value));
+      add(builder -> builder.addInvoke(
+          Invoke.Type.DIRECT, group.constructor, group.constructor.proto,
+          ImmutableList.of(MoveType.OBJECT, MoveType.SINGLE), ImmutableList.of(instance, id)));
+
+      // Assign to the field of the lambda.
+      add(builder -> builder.addStaticPut(MemberType.OBJECT, instance, lambda.instanceField));
+    }
+
+    // Final return.
+    add(IRBuilder::addReturn);
+  }
+
+  @Override
+  public String toString() {
+    return group.classConstructor.toSourceString();
+  }
+}
@@ -0,0 +1,44 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+
+package com.android.tools.r8.ir.desugar;
+
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.ir.code.Invoke;
+import com.android.tools.r8.ir.code.MemberType;
+import com.android.tools.r8.ir.conversion.IRBuilder;
+import com.android.tools.r8.ir.synthetic.SingleBlockSourceCode;
+import java.util.Collections;
+
+// Source code representing synthesized lambda group constructor.
+// Stores the id of the lambda the new instance represents.
+final class LambdaGroupConstructorSourceCode extends SingleBlockSourceCode {
+
+  private final LambdaGroup group;
+
+  LambdaGroupConstructorSourceCode(LambdaGroup group) {
+    super(group.type, group.constructor.proto);
+    this.group = group;
+  }
+
+  @Override
+  protected void prepareInstructions() {
+    // Super constructor call (always java.lang.Object.<init>()).
+    DexMethod objectInitMethod = group.rewriter.objectInitMethod;
+    add(builder -> builder.addInvoke(Invoke.Type.DIRECT, objectInitMethod,
+        objectInitMethod.proto, Collections.singletonList(getReceiverValue())));
+
+    // Assign the id field.
+    add(builder -> builder.addInstancePut(
+        MemberType.SINGLE, getParamRegister(0), getReceiverRegister(), group.idField));
+
+    // Final return.
+    add(IRBuilder::addReturn);
+  }
+
+  @Override
+  public String toString() {
+    return group.constructor.toSourceString();
+  }
+}
@@ -0,0 +1,209 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+
+package com.android.tools.r8.ir.desugar;
+
+import com.android.tools.r8.ApiLevelException;
+import com.android.tools.r8.errors.Unreachable;
+import com.android.tools.r8.graph.DebugLocalInfo;
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.ir.code.CatchHandlers;
+import com.android.tools.r8.ir.code.DebugPosition;
+import com.android.tools.r8.ir.code.MemberType;
+import com.android.tools.r8.ir.code.MoveType;
+import com.android.tools.r8.ir.conversion.IRBuilder;
+import com.android.tools.r8.ir.conversion.SourceCode;
+import java.util.List;
+
+// Source code representing synthesized lambda group main method.
+//
+// Reads the id of the receiver and switches on it to the code of the
+// main method of the corresponding lambda:
+//
+//   0:      iget id <- this
+//   1:      switch id { 0: L0, 1: L1, ..., fallthrough: Ln }
+//   L0:     <main method of member 0>
+//   ...
+//   Ln:     <main method of member n>
+//
+// The main method code of each member is prepared by LambdaMainMethodSourceCode,
+// all of them have the same receiver and parameter registers.
+final class LambdaGroupMainMethodSourceCode implements SourceCode {
+
+  private static final int ID_INDEX = 0;
+  private static final int SWITCH_INDEX = 1;
+  private static final int FIRST_MEMBER_INDEX = 2;
+
+  private final LambdaGroup group;
+  private final DexMethod mainMethod;
+  private final LambdaMainMethodSourceCode[] memberCode;
+  // Index of the first instruction of each member, after set up.
+  private int[] memberStart;
+  private final int idRegister;
+
+  LambdaGroupMainMethodSourceCode(LambdaGroup group, DexMethod mainMethod) {
+    this.group = group;
+    this.mainMethod = mainMethod;
+    List<LambdaClass> members = group.members();
+    this.memberCode = new LambdaMainMethodSourceCode[members.size()];
+    for (LambdaClass lambda : members) {
+      memberCode[group.getId(lambda)] = new LambdaMainMethodSourceCode(lambda, mainMethod);
+    }
+
+    // The id is read into the first register after the receiver and parameters.
+    int register = 1;
+    for (DexType param : mainMethod.proto.parameters.values) {
+      register += MoveType.fromDexType(param) == MoveType.WIDE ? 2 : 1;
+    }
+    this.idRegister = register;
+  }
+
+  private int memberOf(int instructionIndex) {
+    assert instructionIndex >= FIRST_MEMBER_INDEX;
+    int member = memberCode.length - 1;
+    while (memberStart[member] > instructionIndex) {
+      member--;
+    }
+    return member;
+  }
+
+  @Override
+  public int instructionCount() {
+    int last = memberCode.length - 1;
+    return memberStart[last] + memberCode[last].instructionCount();
+  }
+
+  @Override
+  public int instructionIndex(int instructionOffset) {
+    return instructionOffset;
+  }
+
+  @Override
+  public int instructionOffset(int instructionIndex) {
+    return instructionIndex;
+  }
+
+  @Override
+  public DebugLocalInfo getCurrentLocal(int register) {
+    return null;
+  }
+
+  @Override
+  public DebugPosition getDebugPositionAtOffset(int offset) {
+    throw new Unreachable();
+  }
+
+  @Override
+  public int traceInstruction(int instructionIndex, IRBuilder builder) {
+    if (instructionIndex == ID_INDEX) {
+      return -1;
+    }
+    if (instructionIndex == SWITCH_INDEX) {
+      for (int start : memberStart) {
+        builder.ensureNormalSuccessorBlock(instructionIndex, start);
+      }
+      return instructionIndex;
+    }
+    // Each member ends with a return.
+    int member = memberOf(instructionIndex);
+    int memberIndex = instructionIndex - memberStart[member];
+    return memberCode[member].traceInstruction(memberIndex, builder) == -1
+        ? -1 : instructionIndex;
+  }
+
+  @Override
+  public void closingCurrentBlockWithFallthrough(
+      int fallthroughInstructionIndex, IRBuilder builder) {
+  }
+
+  @Override
+  public void setUp() {
+    memberStart = new int[memberCode.length];
+    int start = FIRST_MEMBER_INDEX;
+    for (int i = 0; i < memberCode.length; i++) {
+      memberCode[i].setUp();
+      memberStart[i] = start;
+      start += memberCode[i].instructionCount();
+    }
+  }
+
+  @Override
+  public void clear() {
+    for (LambdaMainMethodSourceCode code : memberCode) {
+      code.clear();
+    }
+    memberStart = null;
+  }
+
+  @Override
+  public void buildPrelude(IRBuilder builder) {
+    // All members share the receiver and parameter registers.
+    memberCode[0].buildPrelude(builder);
+  }
+
+  @Override
+  public void buildInstruction(IRBuilder builder, int instructionIndex)
+      throws ApiLevelException {
+    if (instructionIndex == ID_INDEX) {
+      builder.addInstanceGet(MemberType.SINGLE, idRegister, 0 /* receiver */, group.idField);
+    } else if (instructionIndex == SWITCH_INDEX) {
+      // Packed switch over the ids of all but the last member, which is the fallthrough.
+      int last = memberCode.length - 1;
+      int[] labelOffsets = new int[last];
+      System.arraycopy(memberStart, 0, labelOffsets, 0, last);
+      builder.addSwitch(idRegister, new int[]{0}, memberStart[last], labelOffsets);
+    } else {
+      int member = memberOf(instructionIndex);
+      memberCode[member].buildInstruction(builder, instructionIndex - memberStart[member]);
+    }
+  }
+
+  @Override
+  public void buildPostlude(IRBuilder builder) {
+    // Intentionally left empty.
+  }
+
+  @Override
+  public void resolveAndBuildSwitch(
+      int value, int fallthroughOffset, int payloadOffset, IRBuilder builder) {
+    throw new Unreachable("Unexpected call to resolveAndBuildSwitch");
+  }
+
+  @Override
+  public void resolveAndBuildNewArrayFilledData(
+      int arrayRef, int payloadOffset, IRBuilder builder) {
+    throw new Unreachable("Unexpected call to resolveAndBuildNewArrayFilledData");
+  }
+
+  @Override
+  public CatchHandlers<Integer> getCurrentCatchHandlers() {
+    return null;
+  }
+
+  @Override
+  public int getMoveExceptionRegister() {
+    throw new Unreachable();
+  }
+
+  @Override
+  public boolean verifyRegister(int register) {
+    return true;
+  }
+
+  @Override
+  public boolean verifyCurrentInstructionCanThrow() {
+    return true;
+  }
+
+  @Override
+  public boolean verifyLocalInScope(DebugLocalInfo local) {
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return mainMethod.toSourceString();
+  }
+}
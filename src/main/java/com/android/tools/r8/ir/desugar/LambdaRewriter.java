@@ -30,6 +30,7 @@ import com.android.tools.r8.ir.code.Value;
 import com.android.tools.r8.ir.conversion.IRConverter;
 import java.util.ArrayList;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -62,6 +63,8 @@ public class LambdaRewriter {
   final IRConverter converter;
   final AppInfo appInfo;
   final DexItemFactory factory;
+  // Merge compatible stateless lambdas into lambda groups.
+  final boolean mergeLambdaClasses;
 
   final DexMethod metafactoryMethod;
   final DexMethod objectInitMethod;
@@ -92,9 +95,10 @@ public class LambdaRewriter {
     return clazz.getName().startsWith(LAMBDA_CLASS_NAME_PREFIX);
   }
 
-  public LambdaRewriter(IRConverter converter) {
+  public LambdaRewriter(IRConverter converter, boolean mergeLambdaClasses) {
     assert converter != null;
     this.converter = converter;
+    this.mergeLambdaClasses = mergeLambdaClasses;
     this.factory = converter.application.dexItemFactory;
     this.appInfo = converter.appInfo;
 
@@ -202,13 +206,24 @@ public class LambdaRewriter {
     }
   }
 
-  /** Generates lambda classes and adds them to the builder. */
+  /** Generates lambda classes and lambda groups and adds them to the builder. */
   public void synthesizeLambdaClasses(Builder builder) throws ApiLevelException {
+    Map<DexType, LambdaGroup> groups = new LinkedHashMap<>();
     for (LambdaClass lambdaClass : knownLambdaClasses.values()) {
+      if (lambdaClass.isMerged()) {
+        groups.computeIfAbsent(lambdaClass.groupType, type -> new LambdaGroup(this, type))
+            .addMember(lambdaClass);
+        continue;
+      }
       DexProgramClass synthesizedClass = lambdaClass.synthesizeLambdaClass();
       converter.optimizeSynthesizedClass(synthesizedClass);
       builder.addSynthesizedClass(synthesizedClass, lambdaClass.addToMainDexList.get());
     }
+    for (LambdaGroup group : groups.values()) {
+      DexProgramClass synthesizedClass = group.synthesizeGroupClass();
+      converter.optimizeSynthesizedClass(synthesizedClass);
+      builder.addSynthesizedClass(synthesizedClass, group.shouldAddToMainDexList());
+    }
   }
 
   // Matches invoke-custom instruction operands to infer lambda descriptor
@@ -64,15 +64,11 @@ import com.android.tools.r8.ir.code.Switch;
 import com.android.tools.r8.ir.code.Value;
 import com.android.tools.r8.ir.code.Xor;
 import com.android.tools.r8.ir.conversion.OptimizationFeedback;
+import com.android.tools.r8.ir.optimize.ScalarReplacement.TrivialInitializer;
 import com.android.tools.r8.ir.optimize.SwitchUtils.EnumSwitchInfo;
-import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.LongInterval;
-import com.google.common.base.Equivalence;
-import com.google.common.base.Equivalence.Wrapper;
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import it.unimi.dsi.fastutil.ints.Int2IntArrayMap;
@@ -98,6 +94,7 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.function.Predicate;
 
 public class CodeRewriter {
 
@@ -542,7 +539,8 @@ public class CodeRewriter {
     newBlocks.forEach(blocksIterator::add);
   }
 
-  public void rewriteSwitch(IRCode code) {
+  public boolean rewriteSwitch(IRCode code) {
+    boolean changed = false;
     ListIterator<BasicBlock> blocksIterator = code.listIterator();
     while (blocksIterator.hasNext()) {
       BasicBlock block = blocksIterator.next();
@@ -558,6 +556,7 @@ public class CodeRewriter {
             if (fallthroughBlockIndex < caseBlockIndex) {
               block.swapSuccessorsByIndex(fallthroughBlockIndex, caseBlockIndex);
             }
+            changed = true;
             if (theSwitch.getFirstKey() == 0) {
               iterator.replaceCurrentInstruction(new If(Type.EQ, theSwitch.value()));
             } else {
@@ -621,6 +620,7 @@ public class CodeRewriter {
               if (rewrittenSize < currentSize) {
                 convertSwitchToSwitchAndIfs(
                     code, blocksIterator, block, iterator, theSwitch, sequences, outliers);
+                changed = true;
               }
             } else if (outliers.size() > 1) {
               // Calculate estimated size for splitting into switches (packed for the sequences
@@ -638,12 +638,14 @@ public class CodeRewriter {
                 seqs.add(outliers);
                 convertSwitchToSwitchAndIfs(
                     code, blocksIterator, block, iterator, theSwitch, seqs, IntLists.EMPTY_LIST);
+                changed = true;
               }
             }
           }
         }
       }
     }
+    return changed;
   }
 
   /**
@@ -781,6 +783,16 @@ public class CodeRewriter {
     }
   }
 
+  public void identifyTrivialInitializer(
+      DexEncodedMethod method, IRCode code, OptimizationFeedback feedback) {
+    if (method.isInstanceInitializer()) {
+      TrivialInitializer info = ScalarReplacement.computeTrivialInitializer(appInfo, method, code);
+      if (info != null) {
+        feedback.methodIsTrivialInitializer(method, info);
+      }
+    }
+  }
+
   private boolean checkArgumentType(InvokeMethod invoke, DexMethod target, int argumentIndex) {
     DexType returnType = invoke.getInvokedMethod().proto.returnType;
     // TODO(sgjesse): Insert cast if required.
@@ -796,7 +808,8 @@ public class CodeRewriter {
   }
 
   // Replace result uses for methods where something is known about what is returned.
-  public void rewriteMoveResult(IRCode code) {
+  public boolean rewriteMoveResult(IRCode code) {
+    boolean changed = false;
     AppInfoWithSubtyping appInfoWithSubtyping = appInfo.withSubtyping();
     InstructionIterator iterator = code.instructionIterator();
     while (iterator.hasNext()) {
@@ -810,6 +823,7 @@ public class CodeRewriter {
             if (checkArgumentType(invoke, invoke.getInvokedMethod(), 0)) {
               invoke.outValue().replaceUsers(invoke.arguments().get(0));
               invoke.setOutValue(null);
+              changed = true;
             }
           } else if (appInfoWithSubtyping != null) {
             DexEncodedMethod target = invoke.computeSingleTarget(appInfoWithSubtyping);
@@ -829,6 +843,7 @@ public class CodeRewriter {
                           && argument.isZero());
                   invoke.outValue().replaceUsers(argument);
                   invoke.setOutValue(null);
+                  changed = true;
                 }
               }
             }
@@ -837,6 +852,7 @@ public class CodeRewriter {
       }
     }
     assert code.isConsistentGraph();
+    return changed;
   }
 
 
@@ -921,6 +937,88 @@ public class CodeRewriter {
     return false;
   }
 
+  // Check if the instruction can execute code outside the class initializer, e.g., by calling a
+  // method or by triggering the initialization of another class. Such code can write the static
+  // fields of the class being initialized.
+  private boolean mayRunOtherCode(DexEncodedMethod method, Instruction instruction) {
+    if (instruction.isInvoke() || instruction.isNewInstance()) {
+      return true;
+    }
+    if (instruction.isStaticGet()) {
+      return instruction.asStaticGet().getField().getHolder() != method.method.getHolder();
+    }
+    if (instruction.isStaticPut()) {
+      return instruction.asStaticPut().getField().getHolder() != method.method.getHolder();
+    }
+    return false;
+  }
+
+  // Evaluate the straight-line part of the class initializer (the blocks dominating the exit
+  // block) in program order, keeping track of the constants stored into the static fields of the
+  // class. Reads of these fields are replaced by the stored constant and arithmetic on constants is
+  // folded, so that static fields computed from other static fields of the class become constant
+  // puts that can be turned into static values.
+  private void propagateClassInitializerConstants(
+      DexEncodedMethod method, IRCode code, DominatorTree dominatorTree, BasicBlock exit) {
+    List<BasicBlock> straightLine = new ArrayList<>();
+    dominatorTree.dominatorBlocks(exit).forEach(straightLine::add);
+    Collections.reverse(straightLine);
+    Set<BasicBlock> straightLineBlocks = Sets.newIdentityHashSet();
+    straightLineBlocks.addAll(straightLine);
+    // An exceptional edge can leave a block half way, and code in other blocks can write the
+    // static fields. In both cases the values tracked along the dominator chain are not precise.
+    Set<DexField> writtenOutsideStraightLine = Sets.newIdentityHashSet();
+    for (BasicBlock block : code.blocks) {
+      if (block.hasCatchHandlers()) {
+        return;
+      }
+      if (!straightLineBlocks.contains(block)) {
+        for (Instruction instruction : block.getInstructions()) {
+          if (mayRunOtherCode(method, instruction)) {
+            return;
+          }
+          if (instruction.isStaticPut()) {
+            writtenOutsideStraightLine.add(instruction.asStaticPut().getField());
+          }
+        }
+      }
+    }
+
+    Map<DexField, Value> knownValues = Maps.newIdentityHashMap();
+    for (BasicBlock block : straightLine) {
+      InstructionListIterator iterator = block.listIterator();
+      while (iterator.hasNext()) {
+        Instruction current = iterator.next();
+        if (mayRunOtherCode(method, current)) {
+          knownValues.clear();
+        } else if (current.isStaticPut()) {
+          StaticPut put = current.asStaticPut();
+          if ((put.inValue().isConstNumber() || put.inValue().isConstString())
+              && !writtenOutsideStraightLine.contains(put.getField())) {
+            knownValues.put(put.getField(), put.inValue());
+          } else {
+            knownValues.remove(put.getField());
+          }
+        } else if (current.isStaticGet()) {
+          Value known = knownValues.get(current.asStaticGet().getField());
+          if (known != null && current.outValue() != null) {
+            ConstInstruction definition = known.getConstInstruction();
+            Instruction replacement;
+            if (definition.isConstNumber()) {
+              replacement = ConstNumber.copyOf(code, definition.asConstNumber());
+            } else {
+              Value value = code.createValue(MoveType.OBJECT);
+              replacement = new ConstString(value, definition.asConstString().getValue());
+            }
+            iterator.replaceCurrentInstruction(replacement);
+          }
+        } else if (canBeFolded(current)) {
+          iterator.replaceCurrentInstruction(current.fold(code));
+        }
+      }
+    }
+  }
+
   public void collectClassInitializerDefaults(DexEncodedMethod method, IRCode code) {
     if (!method.isClassInitializer()) {
       return;
@@ -938,6 +1036,7 @@ public class CodeRewriter {
     if (exit == null) {
       return;
     }
+    propagateClassInitializerConstants(method, code, dominatorTree, exit);
     Set<StaticPut> puts = Sets.newIdentityHashSet();
     Map<DexField, StaticPut> dominatingPuts = Maps.newIdentityHashMap();
     for (BasicBlock block : dominatorTree.dominatorBlocks(exit)) {
@@ -1071,27 +1170,36 @@ public class CodeRewriter {
     }
   }
 
+  public boolean eliminateTypeChecks(IRCode code) {
+    return new TypeCheckEliminator(appInfo.withSubtyping(), code).run();
+  }
+
+  public boolean replaceAllocationsByScalars(
+      IRCode code, Predicate<DexEncodedMethod> isProcessedConcurrently) {
+    return new ScalarReplacement(appInfo, code, isProcessedConcurrently).run();
+  }
+
   /**
    * Due to inlining, we might see chains of casts on subtypes. It suffices to cast to the lowest
    * subtype, as that will fail if a cast on a supertype would have failed.
+   *
+   * <p>Removes the cast chain starting at the current instruction of the iterator, if any.
    */
-  public void removeCastChains(IRCode code) {
-    InstructionIterator it = code.instructionIterator();
-    while (it.hasNext()) {
-      Instruction current = it.next();
-      if (current.isCheckCast()
-          && current.getLocalInfo() == null
-          && current.outValue() != null && current.outValue().isUsed()
-          && current.outValue().numberOfPhiUsers() == 0) {
-        CheckCast checkCast = current.asCheckCast();
-        if (checkCast.outValue().uniqueUsers().stream().allMatch(
-            user -> user.isCheckCast()
-                && user.asCheckCast().getType().isSubtypeOf(checkCast.getType(), appInfo))) {
-          checkCast.outValue().replaceUsers(checkCast.inValues().get(0));
-          it.removeOrReplaceByDebugLocalRead();
-        }
+  public boolean removeCastChain(InstructionIterator it, Instruction current) {
+    if (current.isCheckCast()
+        && current.getLocalInfo() == null
+        && current.outValue() != null && current.outValue().isUsed()
+        && current.outValue().numberOfPhiUsers() == 0) {
+      CheckCast checkCast = current.asCheckCast();
+      if (checkCast.outValue().uniqueUsers().stream().allMatch(
+          user -> user.isCheckCast()
+              && user.asCheckCast().getType().isSubtypeOf(checkCast.getType(), appInfo))) {
+        checkCast.outValue().replaceUsers(checkCast.inValues().get(0));
+        it.removeOrReplaceByDebugLocalRead();
+        return true;
       }
     }
+    return false;
   }
 
   private boolean canBeFolded(Instruction instruction) {
@@ -1099,7 +1207,8 @@ public class CodeRewriter {
         (instruction.isUnop() && instruction.asUnop().canBeFolded());
   }
 
-  public void foldConstants(IRCode code) {
+  public boolean foldConstants(IRCode code) {
+    boolean changed = false;
     Queue<BasicBlock> worklist = new LinkedList<>();
     worklist.addAll(code.blocks);
     for (BasicBlock block = worklist.poll(); block != null; block = worklist.poll()) {
@@ -1110,18 +1219,21 @@ public class CodeRewriter {
         if (canBeFolded(current)) {
           folded = current.fold(code);
           iterator.replaceCurrentInstruction(folded);
+          changed = true;
           folded.outValue().uniqueUsers()
               .forEach(instruction -> worklist.add(instruction.getBlock()));
         }
       }
     }
     assert code.isConsistentSSA();
+    return changed;
   }
 
   // Split constants that flow into ranged invokes. This gives the register allocator more
   // freedom in assigning register to ranged invokes which can greatly reduce the number
   // of register needed (and thereby code size as well).
-  public void splitRangeInvokeConstants(IRCode code) {
+  public boolean splitRangeInvokeConstants(IRCode code) {
+    boolean changed = false;
     for (BasicBlock block : code.blocks) {
       InstructionListIterator it = block.listIterator();
       while (it.hasNext()) {
@@ -1144,12 +1256,14 @@ public class CodeRewriter {
               invoke.inValues().set(i, newNumber.outValue());
               originalValue.removeUser(invoke);
               newNumber.outValue().addUser(invoke);
+              changed = true;
             }
           }
           it.next();
         }
       }
     }
+    return changed;
   }
 
   public void shortenLiveRanges(IRCode code) {
@@ -1360,7 +1474,8 @@ public class CodeRewriter {
    * Replace new-array followed by stores of constants to all entries with new-array
    * and fill-array-data / filled-new-array.
    */
-  public void simplifyArrayConstruction(IRCode code) {
+  public boolean simplifyArrayConstruction(IRCode code) {
+    boolean changed = false;
     for (BasicBlock block : code.blocks) {
       // Map from the array value to the number of array put instruction to remove for that value.
       Map<Value, Instruction> instructionToInsertForArray = new HashMap<>();
@@ -1416,6 +1531,7 @@ public class CodeRewriter {
       // Second pass: remove all the array put instructions for the array for which we have
       // inserted a fill array data instruction instead.
       if (!storesToRemoveForArray.isEmpty()) {
+        changed = true;
         do {
           it = block.listIterator();
           while (it.hasNext()) {
@@ -1442,6 +1558,7 @@ public class CodeRewriter {
         } while (block != null);
       }
     }
+    return changed;
   }
 
   // TODO(mikaelpeltier) Manage that from and to instruction do not belong to the same block.
@@ -1595,110 +1712,24 @@ public class CodeRewriter {
     code.removeBlocks(Collections.singletonList(block));
   }
 
-  private static class ExpressionEquivalence extends Equivalence<Instruction> {
-
-    @Override
-    protected boolean doEquivalent(Instruction a, Instruction b) {
-      if (a.getClass() != b.getClass() || !a.identicalNonValueParts(b)) {
-        return false;
-      }
-      // For commutative binary operations any order of in-values are equal.
-      if (a.isBinop() && a.asBinop().isCommutative()) {
-        Value a0 = a.inValues().get(0);
-        Value a1 = a.inValues().get(1);
-        Value b0 = b.inValues().get(0);
-        Value b1 = b.inValues().get(1);
-        return (a0.equals(b0) && a1.equals(b1)) || (a0.equals(b1) && a1.equals(b0));
-      } else {
-        // Compare all in-values.
-        assert a.inValues().size() == b.inValues().size();
-        for (int i = 0; i < a.inValues().size(); i++) {
-          if (!a.inValues().get(i).equals(b.inValues().get(i))) {
-            return false;
-          }
-        }
-        return true;
-      }
-    }
-
-    @Override
-    protected int doHash(Instruction instruction) {
-      final int prime = 29;
-      int hash = instruction.getClass().hashCode();
-      if (instruction.isBinop()) {
-        Binop binop = instruction.asBinop();
-        Value in0 = instruction.inValues().get(0);
-        Value in1 = instruction.inValues().get(1);
-        if (binop.isCommutative()) {
-          hash += hash * prime + in0.hashCode() * in1.hashCode();
-        } else {
-          hash += hash * prime + in0.hashCode();
-          hash += hash * prime + in1.hashCode();
-        }
-        return hash;
-      } else {
-        for (Value value : instruction.inValues()) {
-          hash += hash * prime + value.hashCode();
-        }
-      }
-      return hash;
-    }
+  public boolean devirtualize(IRCode code) {
+    return new Devirtualizer(appInfo.withSubtyping(), code).run();
   }
 
-  private boolean shareCatchHandlers(Instruction i0, Instruction i1) {
-    if (!i0.instructionTypeCanThrow()) {
-      assert !i1.instructionTypeCanThrow();
-      return true;
-    }
-    assert i1.instructionTypeCanThrow();
-    // TODO(sgjesse): This could be even better by checking for the exceptions thrown, e.g. div
-    // and rem only ever throw ArithmeticException.
-    CatchHandlers<BasicBlock> ch0 = i0.getBlock().getCatchHandlers();
-    CatchHandlers<BasicBlock> ch1 = i1.getBlock().getCatchHandlers();
-    return ch0.equals(ch1);
+  public boolean commonSubexpressionElimination(IRCode code) {
+    return new GlobalValueNumbering(appInfo, code).run();
   }
 
-  public void commonSubexpressionElimination(IRCode code) {
-    final ListMultimap<Wrapper<Instruction>, Value> instructionToValue = ArrayListMultimap.create();
-    final DominatorTree dominatorTree = new DominatorTree(code);
-    final ExpressionEquivalence equivalence = new ExpressionEquivalence();
+  public boolean loopInvariantCodeMotion(IRCode code) {
+    return new LoopInvariantCodeMotion(appInfo, code).run();
+  }
 
-    for (int i = 0; i < dominatorTree.getSortedBlocks().length; i++) {
-      BasicBlock block = dominatorTree.getSortedBlocks()[i];
-      InstructionListIterator iterator = block.listIterator();
-      while (iterator.hasNext()) {
-        Instruction instruction = iterator.next();
-        if (instruction.isBinop()
-            || instruction.isUnop()
-            || instruction.isInstanceOf()
-            || instruction.isCheckCast()) {
-          if (instruction.getLocalInfo() != null || instruction.hasInValueWithLocalInfo()) {
-            // If the instruction has input or output values then it is not safe to share it.
-            continue;
-          }
-          List<Value> candidates = instructionToValue.get(equivalence.wrap(instruction));
-          boolean eliminated = false;
-          if (candidates.size() > 0) {
-            for (Value candidate : candidates) {
-              if (dominatorTree.dominatedBy(block, candidate.definition.getBlock()) &&
-                  shareCatchHandlers(instruction, candidate.definition)) {
-                instruction.outValue().replaceUsers(candidate);
-                eliminated = true;
-                iterator.removeOrReplaceByDebugLocalRead();
-                break;  // Don't try any more candidates.
-              }
-            }
-          }
-          if (!eliminated) {
-            instructionToValue.put(equivalence.wrap(instruction), instruction.outValue());
-          }
-        }
-      }
-    }
-    assert code.isConsistentSSA();
+  public boolean optimizeStringBuilders(IRCode code) {
+    return new StringBuilderOptimizer(dexItemFactory, code).run();
   }
 
-  public void simplifyIf(IRCode code) {
+  public boolean simplifyIf(IRCode code) {
+    boolean changed = false;
     DominatorTree dominator = new DominatorTree(code);
     code.clearMarks();
     for (BasicBlock block : code.blocks) {
@@ -1707,11 +1738,16 @@ public class CodeRewriter {
       }
       if (block.exit().isIf()) {
         // First rewrite zero comparison.
-        rewriteIfWithConstZero(block);
+        changed |= rewriteIfWithConstZero(block);
 
+        Value testValue = block.exit().inValues().get(0);
+        int testValueUsers = testValue.numberOfAllUsers();
         if (simplifyKnownBooleanCondition(code, dominator, block)) {
+          changed = true;
           continue;
         }
+        // Phis might have been replaced by the test value even if the if is kept.
+        changed |= testValue.numberOfAllUsers() != testValueUsers;
 
         // Simplify if conditions when possible.
         If theIf = block.exit().asIf();
@@ -1756,10 +1792,12 @@ public class CodeRewriter {
         BasicBlock deadTarget =
             target == theIf.getTrueTarget() ? theIf.fallthroughBlock() : theIf.getTrueTarget();
         rewriteIfToGoto(dominator, block, theIf, target, deadTarget);
+        changed = true;
       }
     }
     code.removeMarkedBlocks();
     assert code.isConsistentSSA();
+    return changed;
   }
 
 
@@ -1842,7 +1880,7 @@ public class CodeRewriter {
     return false;
   }
 
-  private void rewriteIfToGoto(DominatorTree dominator, BasicBlock block, If theIf,
+  static void rewriteIfToGoto(DominatorTree dominator, BasicBlock block, If theIf,
       BasicBlock target, BasicBlock deadTarget) {
     List<BasicBlock> removedBlocks = block.unlink(deadTarget, dominator);
     for (BasicBlock removedBlock : removedBlocks) {
@@ -1856,10 +1894,10 @@ public class CodeRewriter {
     assert block.exit().asGoto().getTarget() == target;
   }
 
-  private void rewriteIfWithConstZero(BasicBlock block) {
+  private boolean rewriteIfWithConstZero(BasicBlock block) {
     If theIf = block.exit().asIf();
     if (theIf.isZeroTest()) {
-      return;
+      return false;
     }
 
     List<Value> inValues = theIf.inValues();
@@ -1872,6 +1910,7 @@ public class CodeRewriter {
           If ifz = new If(theIf.getType().forSwappedOperands(), rightValue);
           block.replaceLastInstruction(ifz);
           assert block.exit() == ifz;
+          return true;
         }
       } else {
         int right = rightValue.getConstInstruction().asConstNumber().getIntValue();
@@ -1879,42 +1918,43 @@ public class CodeRewriter {
           If ifz = new If(theIf.getType(), leftValue);
           block.replaceLastInstruction(ifz);
           assert block.exit() == ifz;
+          return true;
         }
       }
     }
+    return false;
   }
 
-  public void rewriteLongCompareAndRequireNonNull(IRCode code, InternalOptions options) {
-    if (options.canUseLongCompareAndObjectsNonNull()) {
-      return;
-    }
-
-    InstructionIterator iterator = code.instructionIterator();
-    while (iterator.hasNext()) {
-      Instruction current = iterator.next();
-      if (current.isInvokeMethod()) {
-        DexMethod invokedMethod = current.asInvokeMethod().getInvokedMethod();
-        if (invokedMethod == dexItemFactory.longMethods.compare) {
-          // Rewrite calls to Long.compare for sdk versions that do not have that method.
-          List<Value> inValues = current.inValues();
-          assert inValues.size() == 2;
-          iterator.replaceCurrentInstruction(
-              new Cmp(NumericType.LONG, Bias.NONE, current.outValue(), inValues.get(0),
-                  inValues.get(1)));
-        } else if (invokedMethod == dexItemFactory.objectsMethods.requireNonNull) {
-          // Rewrite calls to Objects.requireNonNull(Object) because Javac 9 start to use it for
-          // synthesized null checks.
-          InvokeVirtual callToGetClass = new InvokeVirtual(dexItemFactory.objectMethods.getClass,
-              null, current.inValues());
-          if (current.outValue() != null) {
-            current.outValue().replaceUsers(current.inValues().get(0));
-            current.setOutValue(null);
-          }
-          iterator.replaceCurrentInstruction(callToGetClass);
+  /**
+   * Rewrites the current instruction of the iterator if it is a call to Long.compare or
+   * Objects.requireNonNull. Must only be used if these methods are not available.
+   */
+  public boolean rewriteLongCompareAndRequireNonNull(
+      InstructionIterator iterator, Instruction current) {
+    if (current.isInvokeMethod()) {
+      DexMethod invokedMethod = current.asInvokeMethod().getInvokedMethod();
+      if (invokedMethod == dexItemFactory.longMethods.compare) {
+        // Rewrite calls to Long.compare for sdk versions that do not have that method.
+        List<Value> inValues = current.inValues();
+        assert inValues.size() == 2;
+        iterator.replaceCurrentInstruction(
+            new Cmp(NumericType.LONG, Bias.NONE, current.outValue(), inValues.get(0),
+                inValues.get(1)));
+        return true;
+      } else if (invokedMethod == dexItemFactory.objectsMethods.requireNonNull) {
+        // Rewrite calls to Objects.requireNonNull(Object) because Javac 9 start to use it for
+        // synthesized null checks.
+        InvokeVirtual callToGetClass = new InvokeVirtual(dexItemFactory.objectMethods.getClass,
+            null, current.inValues());
+        if (current.outValue() != null) {
+          current.outValue().replaceUsers(current.inValues().get(0));
+          current.setOutValue(null);
         }
+        iterator.replaceCurrentInstruction(callToGetClass);
+        return true;
       }
     }
-    assert code.isConsistentSSA();
+    return false;
   }
 
   // Removes calls to Throwable.addSuppressed(Throwable) and rewrites
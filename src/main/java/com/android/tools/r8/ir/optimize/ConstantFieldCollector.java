@@ -0,0 +1,449 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import com.android.tools.r8.ApiLevelException;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexClass;
+import com.android.tools.r8.graph.DexEncodedField;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.graph.DexField;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.graph.DexProgramClass;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.graph.DexValue;
+import com.android.tools.r8.graph.DexValue.DexValueBoolean;
+import com.android.tools.r8.graph.DexValue.DexValueByte;
+import com.android.tools.r8.graph.DexValue.DexValueChar;
+import com.android.tools.r8.graph.DexValue.DexValueDouble;
+import com.android.tools.r8.graph.DexValue.DexValueFloat;
+import com.android.tools.r8.graph.DexValue.DexValueInt;
+import com.android.tools.r8.graph.DexValue.DexValueLong;
+import com.android.tools.r8.graph.DexValue.DexValueNull;
+import com.android.tools.r8.graph.DexValue.DexValueShort;
+import com.android.tools.r8.graph.GraphLense;
+import com.android.tools.r8.graph.UseRegistry;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.InstancePut;
+import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.InstructionIterator;
+import com.android.tools.r8.ir.code.InvokeDirect;
+import com.android.tools.r8.ir.code.StaticPut;
+import com.android.tools.r8.ir.code.Value;
+import com.android.tools.r8.ir.conversion.LensCodeRewriter;
+import com.android.tools.r8.logging.Log;
+import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
+import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Finds the fields of program classes that always hold the same constant value.
+ *
+ * <p>An instance field is constant if all of its writes are in the instance initializers of its
+ * class, store the same constant into the receiver, and either store the default value or happen
+ * in every initializer before the object can be observed. An initializer observes nothing before
+ * it calls Object.{@code <init>}, and one calling another initializer of the same class is covered
+ * by that initializer. A static field is constant if it is only written by the class initializer
+ * of its class, and its class and superclasses have no class initializer besides one of the class
+ * itself that only stores constants into its static fields. It then holds the last value stored by
+ * the class initializer, or its initial value. Fields that are kept or referenced by a method
+ * handle are never constant.
+ *
+ * <p>The reads of constant fields are replaced by the constant by {@link MemberValuePropagation},
+ * which also removes their writes, as the values written are never read.
+ */
+public class ConstantFieldCollector {
+
+  private final DexApplication application;
+  private final AppInfoWithLiveness appInfo;
+  private final GraphLense graphLense;
+  private final InternalOptions options;
+  private final DexItemFactory factory;
+
+  // Fields written outside of the initializers of their class or referenced by a method handle.
+  private final Set<DexEncodedField> ineligible = Sets.newConcurrentHashSet();
+  private final Map<DexField, Long> constantFields = new ConcurrentHashMap<>();
+
+  public ConstantFieldCollector(DexApplication application, AppInfoWithLiveness appInfo,
+      GraphLense graphLense, InternalOptions options) {
+    this.application = application;
+    this.appInfo = appInfo;
+    this.graphLense = graphLense;
+    this.options = options;
+    this.factory = appInfo.dexItemFactory;
+  }
+
+  public void run(ExecutorService executorService) throws ExecutionException {
+    factory.forAllMethodHandles(handle -> {
+      if (handle.isFieldHandle()) {
+        DexEncodedField field = lookupField(graphLense.lookupField(handle.asField(), null));
+        if (field != null) {
+          ineligible.add(field);
+        }
+      }
+    });
+    List<DexProgramClass> allClasses = application.classes();
+    ThreadUtils.processItems(allClasses, this::collectWrites, executorService);
+    // Only the initializers of classes with candidate fields are converted to IR. The constants
+    // must be known before the main IR conversion, which replaces the reads in all methods, so the
+    // IR built here cannot be shared with it.
+    List<DexProgramClass> classes = new ArrayList<>();
+    for (DexProgramClass clazz : allClasses) {
+      if (hasCandidate(clazz.instanceFields()) || hasCandidate(clazz.staticFields())) {
+        classes.add(clazz);
+      }
+    }
+    ThreadUtils.processItems(classes, this::processClass, executorService);
+    if (!constantFields.isEmpty()) {
+      appInfo.setExtension(ConstantFieldCollector.class, constantFields);
+    }
+    if (Log.ENABLED) {
+      Log.info(getClass(), "Found %d constant fields.", constantFields.size());
+    }
+  }
+
+  /**
+   * The raw value of the constant held by the field, or null if the field is not constant.
+   */
+  public static Long getConstantFor(DexField field, AppInfoWithLiveness appInfo) {
+    Map<DexField, Long> constantFields =
+        appInfo.getExtension(ConstantFieldCollector.class, Collections.emptyMap());
+    return constantFields.get(field);
+  }
+
+  private DexEncodedField lookupField(DexField field) {
+    DexEncodedField target = appInfo.lookupInstanceTarget(field.getHolder(), field);
+    return target != null ? target : appInfo.lookupStaticTarget(field.getHolder(), field);
+  }
+
+  private boolean isCandidate(DexEncodedField field) {
+    return !ineligible.contains(field) && !appInfo.pinnedItems.contains(field);
+  }
+
+  private boolean hasCandidate(DexEncodedField[] fields) {
+    for (DexEncodedField field : fields) {
+      if (isCandidate(field)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void collectWrites(DexProgramClass clazz) {
+    clazz.forEachMethod(method -> {
+      if (method.getCode() != null) {
+        method.getCode().registerReachableDefinitions(new WriteCollector(method));
+      }
+    });
+  }
+
+  private IRCode buildIR(DexEncodedMethod method) throws ApiLevelException {
+    IRCode code = method.buildIR(options);
+    if (code != null) {
+      new LensCodeRewriter(graphLense, appInfo).rewrite(code, method);
+    }
+    return code;
+  }
+
+  private void processClass(DexProgramClass clazz) throws ApiLevelException {
+    List<DexEncodedField> instanceFields = new ArrayList<>();
+    for (DexEncodedField field : clazz.instanceFields()) {
+      if (isCandidate(field)) {
+        instanceFields.add(field);
+      }
+    }
+    if (!instanceFields.isEmpty()) {
+      processInstanceFields(clazz, instanceFields);
+    }
+    List<DexEncodedField> staticFields = new ArrayList<>();
+    for (DexEncodedField field : clazz.staticFields()) {
+      if (isCandidate(field)) {
+        staticFields.add(field);
+      }
+    }
+    if (!staticFields.isEmpty() && !superclassesHaveClassInitializer(clazz)) {
+      processStaticFields(clazz, staticFields);
+    }
+  }
+
+  private void processInstanceFields(DexProgramClass clazz, List<DexEncodedField> fields)
+      throws ApiLevelException {
+    Map<DexEncodedField, Long> values = new IdentityHashMap<>();
+    Set<DexEncodedField> nonConstant = Sets.newIdentityHashSet();
+    // The fields not assigned before the object can be observed by some initializer.
+    Set<DexEncodedField> notInitialized = Sets.newIdentityHashSet();
+    for (DexEncodedMethod method : clazz.directMethods()) {
+      if (!method.isInstanceInitializer()) {
+        continue;
+      }
+      IRCode code = buildIR(method);
+      if (code == null) {
+        return;
+      }
+      Set<DexEncodedField> initialized = collectInitializedFields(clazz, code);
+      for (DexEncodedField field : fields) {
+        if (!initialized.contains(field)) {
+          notInitialized.add(field);
+        }
+      }
+      InstructionIterator iterator = code.instructionIterator();
+      while (iterator.hasNext()) {
+        Instruction instruction = iterator.next();
+        if (!instruction.isInstancePut()) {
+          continue;
+        }
+        InstancePut put = instruction.asInstancePut();
+        DexEncodedField field = lookupField(put.getField());
+        if (field == null || !fields.contains(field)) {
+          continue;
+        }
+        Long value = constantValue(put.value());
+        if (value == null || !put.object().isThis()) {
+          nonConstant.add(field);
+        } else if (!value.equals(values.getOrDefault(field, value))) {
+          nonConstant.add(field);
+        } else {
+          values.put(field, value);
+        }
+      }
+    }
+    for (DexEncodedField field : fields) {
+      if (nonConstant.contains(field)) {
+        continue;
+      }
+      long value = values.getOrDefault(field, 0L);
+      if (value == 0 || !notInitialized.contains(field)) {
+        constantFields.put(field.field, value);
+      }
+    }
+  }
+
+  /**
+   * The fields of the class assigned by the initializer before the object can be observed, or
+   * all fields if the initializer calls another initializer of the class first.
+   */
+  private Set<DexEncodedField> collectInitializedFields(DexClass clazz, IRCode code) {
+    Set<DexEncodedField> initialized = Sets.newIdentityHashSet();
+    for (Instruction instruction : code.blocks.getFirst().getInstructions()) {
+      if (instruction.isArgument()
+          || instruction.isConstNumber()
+          || instruction.isDebugInstruction()) {
+        continue;
+      }
+      if (instruction.isInvokeDirect()) {
+        InvokeDirect invoke = instruction.asInvokeDirect();
+        DexMethod target = invoke.getInvokedMethod();
+        if (factory.isConstructor(target) && invoke.getReceiver().isThis()) {
+          if (target.getHolder() == clazz.type) {
+            initialized.addAll(Arrays.asList(clazz.instanceFields()));
+            break;
+          }
+          if (target.getHolder() == factory.objectType) {
+            continue;
+          }
+        }
+        break;
+      }
+      if (instruction.isInstancePut()
+          && instruction.asInstancePut().object().isThis()
+          && constantValue(instruction.asInstancePut().value()) != null) {
+        DexEncodedField field = lookupField(instruction.asInstancePut().getField());
+        if (field != null) {
+          initialized.add(field);
+        }
+        continue;
+      }
+      break;
+    }
+    return initialized;
+  }
+
+  private void processStaticFields(DexProgramClass clazz, List<DexEncodedField> fields)
+      throws ApiLevelException {
+    Map<DexEncodedField, Long> values = new IdentityHashMap<>();
+    for (DexEncodedField field : fields) {
+      values.put(field, rawValue(field.staticValue));
+    }
+    DexEncodedMethod classInitializer = clazz.getClassInitializer();
+    if (classInitializer != null) {
+      IRCode code = buildIR(classInitializer);
+      if (code == null || code.blocks.size() != 1) {
+        return;
+      }
+      // Nothing can read the fields while the class initializer runs, so the fields hold the last
+      // values stored.
+      for (Instruction instruction : code.blocks.getFirst().getInstructions()) {
+        if (instruction.isConstNumber()
+            || instruction.isDebugInstruction()
+            || instruction.isReturn()) {
+          continue;
+        }
+        if (!instruction.isStaticPut()
+            || instruction.asStaticPut().getField().getHolder() != clazz.type) {
+          // The class initializer may have side effects.
+          return;
+        }
+        StaticPut put = instruction.asStaticPut();
+        DexEncodedField field = lookupField(put.getField());
+        if (field == null) {
+          return;
+        }
+        if (values.containsKey(field)) {
+          values.put(field, constantValue(put.inValue()));
+        }
+      }
+    }
+    for (DexEncodedField field : fields) {
+      Long value = values.get(field);
+      if (value != null) {
+        constantFields.put(field.field, value);
+      }
+    }
+  }
+
+  private boolean superclassesHaveClassInitializer(DexClass clazz) {
+    DexType type = clazz.superType;
+    while (type != null && type != factory.objectType) {
+      DexClass superClass = appInfo.definitionFor(type);
+      if (superClass == null || superClass.hasClassInitializer()) {
+        return true;
+      }
+      type = superClass.superType;
+    }
+    return false;
+  }
+
+  private static Long constantValue(Value value) {
+    if (value.isConstNumber()) {
+      return value.getConstInstruction().asConstNumber().getRawValue();
+    }
+    return null;
+  }
+
+  // The raw value of a constant number as stored in a ConstNumber, or null if not a number.
+  private static Long rawValue(DexValue value) {
+    if (value == null || value instanceof DexValueNull) {
+      return 0L;
+    }
+    if (value instanceof DexValueBoolean) {
+      return ((DexValueBoolean) value).getValue() ? 1L : 0L;
+    }
+    if (value instanceof DexValueByte) {
+      return (long) ((DexValueByte) value).getValue();
+    }
+    if (value instanceof DexValueShort) {
+      return (long) ((DexValueShort) value).getValue();
+    }
+    if (value instanceof DexValueChar) {
+      return (long) ((DexValueChar) value).getValue();
+    }
+    if (value instanceof DexValueInt) {
+      return (long) ((DexValueInt) value).getValue();
+    }
+    if (value instanceof DexValueLong) {
+      return ((DexValueLong) value).getValue();
+    }
+    if (value instanceof DexValueFloat) {
+      return (long) Float.floatToRawIntBits(((DexValueFloat) value).getValue());
+    }
+    if (value instanceof DexValueDouble) {
+      return Double.doubleToRawLongBits(((DexValueDouble) value).getValue());
+    }
+    return null;
+  }
+
+  private class WriteCollector extends UseRegistry {
+
+    private final DexEncodedMethod context;
+
+    WriteCollector(DexEncodedMethod context) {
+      this.context = context;
+    }
+
+    private void registerWrite(DexField reference, boolean isStatic) {
+      DexField rewritten = graphLense.lookupField(reference, context);
+      DexEncodedField field = isStatic
+          ? appInfo.lookupStaticTarget(rewritten.getHolder(), rewritten)
+          : appInfo.lookupInstanceTarget(rewritten.getHolder(), rewritten);
+      if (field == null) {
+        return;
+      }
+      boolean inInitializer = isStatic
+          ? context.isClassInitializer()
+          : context.isInstanceInitializer();
+      if (!inInitializer || context.method.getHolder() != field.field.getHolder()) {
+        ineligible.add(field);
+      }
+    }
+
+    @Override
+    public boolean registerInvokeVirtual(DexMethod method) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInvokeDirect(DexMethod method) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInvokeStatic(DexMethod method) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInvokeInterface(DexMethod method) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInvokeSuper(DexMethod method) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInstanceFieldWrite(DexField field) {
+      registerWrite(field, false);
+      return false;
+    }
+
+    @Override
+    public boolean registerInstanceFieldRead(DexField field) {
+      return false;
+    }
+
+    @Override
+    public boolean registerNewInstance(DexType type) {
+      return false;
+    }
+
+    @Override
+    public boolean registerStaticFieldRead(DexField field) {
+      return false;
+    }
+
+    @Override
+    public boolean registerStaticFieldWrite(DexField field) {
+      registerWrite(field, true);
+      return false;
+    }
+
+    @Override
+    public boolean registerTypeReference(DexType type) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,135 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import com.android.tools.r8.graph.AppInfoWithSubtyping;
+import com.android.tools.r8.graph.DexClass;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.ir.code.BasicBlock;
+import com.android.tools.r8.ir.code.CheckCast;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.InstructionListIterator;
+import com.android.tools.r8.ir.code.InvokeInterface;
+import com.android.tools.r8.ir.code.InvokeVirtual;
+import com.android.tools.r8.ir.code.MoveType;
+import com.android.tools.r8.ir.code.Value;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * Rewrites interface calls with a single target to virtual calls.
+ *
+ * <p>An invoke-interface is replaced by an invoke-virtual of the single implementation of the
+ * interface method, see {@link AppInfoWithSubtyping#lookupSingleInterfaceTarget}, when the class
+ * of the implementation is accessible from the calling method. The receiver is cast to that class
+ * first, unless it is known to be an instance of it. Dex has no direct calls of non-private
+ * methods, so the virtual call is the most direct call possible for the implementation.
+ */
+public class Devirtualizer {
+
+  private final AppInfoWithSubtyping appInfo;
+  private final DexEncodedMethod method;
+  private final IRCode code;
+
+  public Devirtualizer(AppInfoWithSubtyping appInfo, IRCode code) {
+    this.appInfo = appInfo;
+    this.method = code.method;
+    this.code = code;
+  }
+
+  /**
+   * Rewrite all interface calls with a single accessible target and return true if the code was
+   * changed.
+   */
+  public boolean run() {
+    boolean changed = false;
+    // Blocks are added while iterating when splitting blocks with catch handlers.
+    ListIterator<BasicBlock> blocks = code.blocks.listIterator();
+    while (blocks.hasNext()) {
+      BasicBlock block = blocks.next();
+      InstructionListIterator iterator = block.listIterator();
+      while (iterator.hasNext()) {
+        Instruction current = iterator.next();
+        if (!current.isInvokeInterface()) {
+          continue;
+        }
+        InvokeInterface invoke = current.asInvokeInterface();
+        DexEncodedMethod target = lookupAccessibleTarget(invoke);
+        if (target == null) {
+          continue;
+        }
+        DexType targetHolder = target.method.getHolder();
+        Value receiver = invoke.getReceiver();
+        List<Value> arguments = new ArrayList<>(invoke.inValues());
+        CheckCast cast = null;
+        if (!isInstanceOf(receiver, targetHolder)) {
+          Value castValue = code.createValue(MoveType.OBJECT);
+          cast = new CheckCast(castValue, receiver, targetHolder);
+          arguments.set(0, castValue);
+        }
+        iterator.replaceCurrentInstruction(
+            new InvokeVirtual(target.method, invoke.outValue(), arguments));
+        changed = true;
+        if (cast != null) {
+          iterator.previous();
+          iterator.add(cast);
+          // If the current block has catch handlers split the check cast into its own block.
+          if (block.hasCatchHandlers()) {
+            iterator.previous();
+            iterator.split(1, code, blocks);
+            // The remaining instructions of the block, after the invoke, cannot throw.
+            break;
+          }
+          iterator.next();
+        }
+      }
+    }
+    assert code.isConsistentSSA();
+    return changed;
+  }
+
+  private DexEncodedMethod lookupAccessibleTarget(InvokeInterface invoke) {
+    // Keep invalid interface calls of class methods, which throw IncompatibleClassChangeError.
+    DexClass holder = appInfo.definitionFor(invoke.getInvokedMethod().getHolder());
+    if (holder == null || !holder.isInterface()) {
+      return null;
+    }
+    DexEncodedMethod target = invoke.computeSingleTarget(appInfo);
+    if (target == null
+        || target.accessFlags.isAbstract()
+        || !target.accessFlags.isPublic()) {
+      return null;
+    }
+    DexType targetHolder = target.method.getHolder();
+    DexClass targetClass = appInfo.definitionFor(targetHolder);
+    if (targetClass == null || !targetClass.isProgramClass() || targetClass.isInterface()) {
+      return null;
+    }
+    if (!targetClass.accessFlags.isPublic()
+        && !targetHolder.isSamePackage(method.method.getHolder())) {
+      return null;
+    }
+    return target;
+  }
+
+  private boolean isInstanceOf(Value value, DexType type) {
+    if (value.isThis()) {
+      return method.method.getHolder().isSubtypeOf(type, appInfo);
+    }
+    if (value.isPhi()) {
+      return false;
+    }
+    Instruction definition = value.definition;
+    if (definition.isNewInstance()) {
+      return definition.asNewInstance().clazz.isSubtypeOf(type, appInfo);
+    }
+    if (definition.isCheckCast()) {
+      return definition.asCheckCast().getType().isSubtypeOf(type, appInfo);
+    }
+    return false;
+  }
+}
@@ -0,0 +1,813 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import com.android.tools.r8.ApiLevelException;
+import com.android.tools.r8.code.AddIntLit8;
+import com.android.tools.r8.code.Aput;
+import com.android.tools.r8.code.Const;
+import com.android.tools.r8.code.IfNez;
+import com.android.tools.r8.code.InvokeDirect;
+import com.android.tools.r8.code.NewArray;
+import com.android.tools.r8.code.NewInstance;
+import com.android.tools.r8.code.Return;
+import com.android.tools.r8.code.ReturnObject;
+import com.android.tools.r8.code.Throw;
+import com.android.tools.r8.dex.Constants;
+import com.android.tools.r8.graph.DexAccessFlags;
+import com.android.tools.r8.graph.DexAnnotation;
+import com.android.tools.r8.graph.DexAnnotationElement;
+import com.android.tools.r8.graph.DexAnnotationSet;
+import com.android.tools.r8.graph.DexAnnotationSetRefList;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexClass;
+import com.android.tools.r8.graph.DexCode;
+import com.android.tools.r8.graph.DexEncodedAnnotation;
+import com.android.tools.r8.graph.DexEncodedField;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.graph.DexField;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.graph.DexProgramClass;
+import com.android.tools.r8.graph.DexProto;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.graph.DexValue;
+import com.android.tools.r8.graph.DexValue.DexValueAnnotation;
+import com.android.tools.r8.graph.DexValue.DexValueArray;
+import com.android.tools.r8.graph.DexValue.DexValueEnum;
+import com.android.tools.r8.graph.DexValue.DexValueType;
+import com.android.tools.r8.graph.GraphLense;
+import com.android.tools.r8.graph.UseRegistry;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.InstructionIterator;
+import com.android.tools.r8.logging.Log;
+import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
+import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.MethodSignatureEquivalence;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.google.common.base.Equivalence.Wrapper;
+import com.google.common.collect.Sets;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Predicate;
+
+/**
+ * Replaces enums that are only used through their constants, ordinals and identity by int values.
+ * <p>
+ * An unboxed enum value is represented by its ordinal plus one, so that zero, the default value
+ * of fields and array elements, still represents null. Fields, parameters, return values and
+ * arrays of the enum type are retyped to int and int[], calls to {@code ordinal()} are replaced
+ * by a static helper in the enum class that throws a NullPointerException for zero, and the enum
+ * constants are replaced by int constants. The enum class remains, with {@code values()}
+ * returning the int values of the constants and without instances or class initializer.
+ * <p>
+ * An enum is unboxed if all of its values only flow to fields, parameters, return values and
+ * arrays of the enum type, to calls to {@code ordinal()} and to comparisons with other values of
+ * the enum or null. Any other use, such as passing a value as an Object or calling {@code name()},
+ * {@code equals()} or {@code hashCode()} on it, as well as references to the enum class in type
+ * checks, class constants, annotations and kept or native members keeps the enum boxed.
+ * <p>
+ * The code of all methods using an unboxed enum is rewritten here, before the main IR
+ * processing, so that the rewritten definitions never meet code that uses the enum objects.
+ */
+public class EnumUnboxer {
+
+  private static final String ORDINAL_HELPER_NAME = "$ordinal";
+  private static final String VALUES_METHOD_NAME = "values";
+  private static final String VALUES_HELPER_NAME = "$values";
+  private static final String SYSTEM_ANNOTATION_PREFIX = "Ldalvik/annotation/";
+
+  private final DexApplication application;
+  private final AppInfoWithLiveness appInfo;
+  private final InternalOptions options;
+  final DexItemFactory factory;
+  final GraphLense graphLense;
+
+  // The enums being unboxed and the ordinals of their constants.
+  private final Map<DexType, Reference2IntMap<DexField>> candidates = new IdentityHashMap<>();
+  // Candidates found to not be unboxable while processing methods concurrently.
+  private final Set<DexType> ineligible = Sets.newConcurrentHashSet();
+
+  private final DexType intArrayType;
+  private final DexProto ordinalHelperProto;
+
+  public EnumUnboxer(DexApplication application, AppInfoWithLiveness appInfo,
+      GraphLense graphLense, InternalOptions options) {
+    this.application = application;
+    this.appInfo = appInfo;
+    this.graphLense = graphLense;
+    this.options = options;
+    this.factory = appInfo.dexItemFactory;
+    this.intArrayType = factory.createType("[I");
+    this.ordinalHelperProto = factory.createProto(factory.intType, factory.intType);
+  }
+
+  /**
+   * Unbox all enums that can be unboxed and return the application info for the rewritten
+   * program. The graph lense for the rewritten program is available from {@link #getGraphLense}
+   * afterwards.
+   */
+  public AppInfoWithLiveness run(ExecutorService executorService) throws ExecutionException {
+    for (DexProgramClass clazz : application.classes()) {
+      Reference2IntMap<DexField> ordinals = EnumOrdinalMapCollector
+          .getOrdinalsMapFor(clazz.type, appInfo);
+      if (ordinals != null && isCandidate(clazz, ordinals)) {
+        candidates.put(clazz.type, ordinals);
+      }
+    }
+    if (candidates.isEmpty()) {
+      return appInfo;
+    }
+
+    // Find the enums used in definitions and code in a way that prevents unboxing. The analysis
+    // only tracks values of candidates, so keeping an enum boxed can make the uses of other
+    // candidates mixed with it unsupported. Repeat until no more candidates are removed.
+    EnumUnboxingRewriter rewriter = new EnumUnboxingRewriter(this, appInfo, options);
+    Map<DexEncodedMethod, Set<DexType>> methodsUsingCandidates = collectMethodsUsingCandidates();
+    int numberOfCandidates;
+    do {
+      numberOfCandidates = candidates.size();
+      for (DexProgramClass clazz : application.classes()) {
+        checkDefinitions(clazz);
+      }
+      removeIneligibleCandidates();
+      ThreadUtils.processItems(methodsUsingRemainingCandidates(methodsUsingCandidates),
+          method -> rewriter.analyze(method), executorService);
+      removeIneligibleCandidates();
+      while (!candidates.isEmpty() && hasSignatureCollisions()) {
+        removeIneligibleCandidates();
+      }
+    } while (!candidates.isEmpty() && candidates.size() != numberOfCandidates);
+    if (candidates.isEmpty()) {
+      return appInfo;
+    }
+
+    // Rewrite the code using the unboxed enums, then all definitions.
+    ThreadUtils.processItems(methodsUsingRemainingCandidates(methodsUsingCandidates),
+        method -> rewriter.rewrite(method), executorService);
+    for (DexProgramClass clazz : application.classes()) {
+      if (candidates.containsKey(clazz.type)) {
+        rewriteEnumClass(clazz);
+      }
+      rewriteDefinitions(clazz);
+    }
+    if (Log.ENABLED) {
+      Log.info(getClass(), "Unboxed %d enums.", candidates.size());
+    }
+    return appInfo.prunedCopyFrom(application, Collections.emptyList())
+        .rewrittenWithLense(new EnumUnboxingLense(GraphLense.getIdentityLense()));
+  }
+
+  /**
+   * Returns the graph lense given to the unboxer with the references to methods and fields with
+   * unboxed enums in their signature mapped on top.
+   */
+  public GraphLense getGraphLense() {
+    return candidates.isEmpty() ? graphLense : new EnumUnboxingLense(graphLense);
+  }
+
+  private void removeIneligibleCandidates() {
+    candidates.keySet().removeAll(ineligible);
+  }
+
+  void markIneligible(DexType type) {
+    DexType candidate = getCandidate(type);
+    if (candidate != null) {
+      ineligible.add(candidate);
+    }
+  }
+
+  private void markIneligible(DexProto proto) {
+    markIneligible(proto.returnType);
+    for (DexType parameter : proto.parameters.values) {
+      markIneligible(parameter);
+    }
+  }
+
+  /** Returns the candidate enum if the type is a candidate or an array of a candidate. */
+  DexType getCandidate(DexType type) {
+    DexType baseType = type.isArrayType() ? type.toBaseType(factory) : type;
+    return candidates.containsKey(baseType) ? baseType : null;
+  }
+
+  boolean isCandidate(DexType type) {
+    return candidates.containsKey(type);
+  }
+
+  /** Returns true for candidates and one-dimensional arrays of candidates. */
+  boolean isSupportedType(DexType type) {
+    return isCandidate(type)
+        || (type.isArrayType() && isCandidate(type.toArrayElementType(factory)));
+  }
+
+  boolean mentionsCandidate(DexProto proto) {
+    if (getCandidate(proto.returnType) != null) {
+      return true;
+    }
+    for (DexType parameter : proto.parameters.values) {
+      if (getCandidate(parameter) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  Reference2IntMap<DexField> getOrdinals(DexType type) {
+    return candidates.get(type);
+  }
+
+  DexMethod getOrdinalHelper(DexType type) {
+    assert isCandidate(type);
+    return factory.createMethod(type, ordinalHelperProto, ORDINAL_HELPER_NAME);
+  }
+
+  DexType rewriteType(DexType type) {
+    if (isCandidate(type)) {
+      return factory.intType;
+    }
+    if (type.isArrayType() && isSupportedType(type)) {
+      return intArrayType;
+    }
+    return type;
+  }
+
+  DexProto rewriteProto(DexProto proto) {
+    if (!mentionsCandidate(proto)) {
+      return proto;
+    }
+    DexType[] parameters = new DexType[proto.parameters.values.length];
+    for (int i = 0; i < parameters.length; i++) {
+      parameters[i] = rewriteType(proto.parameters.values[i]);
+    }
+    return factory.createProto(rewriteType(proto.returnType), parameters);
+  }
+
+  DexMethod rewriteMethod(DexMethod method) {
+    DexProto proto = rewriteProto(method.proto);
+    return proto == method.proto ? method : factory.createMethod(method.holder, proto, method.name);
+  }
+
+  DexField rewriteField(DexField field) {
+    DexType type = rewriteType(field.type);
+    return type == field.type ? field : factory.createField(field.clazz, type, field.name);
+  }
+
+  private boolean isValuesMethod(DexEncodedMethod method, DexType enumType) {
+    return method.accessFlags.isStatic()
+        && method.method.name.toString().equals(VALUES_METHOD_NAME)
+        && method.method.proto.parameters.isEmpty()
+        && method.method.proto.returnType.isArrayType()
+        && method.method.proto.returnType.toArrayElementType(factory) == enumType;
+  }
+
+  private boolean isValuesHelperMethod(DexEncodedMethod method, DexType enumType) {
+    return method.accessFlags.isStatic()
+        && method.method.name.toString().equals(VALUES_HELPER_NAME)
+        && method.method.proto.parameters.isEmpty()
+        && method.method.proto.returnType.isArrayType()
+        && method.method.proto.returnType.toArrayElementType(factory) == enumType;
+  }
+
+  // Methods of an unboxed enum that are removed or replaced when it is unboxed.
+  boolean isEnumSupportMethod(DexEncodedMethod method) {
+    DexType holder = method.method.holder;
+    return isCandidate(holder)
+        && (factory.isClassConstructor(method.method)
+            || factory.isConstructor(method.method)
+            || isValuesMethod(method, holder)
+            || isValuesHelperMethod(method, holder));
+  }
+
+  private boolean isCandidate(DexProgramClass clazz, Reference2IntMap<DexField> ordinals) {
+    // Enums with constant specific bodies have subclasses and are not final.
+    if (!clazz.accessFlags.isEnum()
+        || !clazz.accessFlags.isFinal()
+        || clazz.superType != factory.enumType
+        || !clazz.interfaces.isEmpty()
+        || clazz.instanceFields().length > 0
+        || clazz.virtualMethods().length > 0
+        || appInfo.pinnedItems.contains(clazz)) {
+      return false;
+    }
+    for (DexEncodedField field : clazz.staticFields()) {
+      if (appInfo.pinnedItems.contains(field)) {
+        return false;
+      }
+      // Only the constants and the array of all constants.
+      if (field.field.type == clazz.type
+          ? ordinals.getInt(field.field) < 0
+          : field.field.type != factory.createType("[" + clazz.type.toDescriptorString())) {
+        return false;
+      }
+    }
+    for (DexEncodedMethod method : clazz.directMethods()) {
+      if (appInfo.pinnedItems.contains(method) || method.accessFlags.isNative()) {
+        return false;
+      }
+      if (factory.isClassConstructor(method.method)) {
+        if (!hasOnlyInstructions(method, insn -> isEnumInitializationInstruction(insn, clazz))) {
+          return false;
+        }
+      } else if (factory.isConstructor(method.method)) {
+        if (!hasOnlyInstructions(method, this::isEnumConstructorInstruction)) {
+          return false;
+        }
+      } else if (isValuesHelperMethod(method, clazz.type)) {
+        if (!hasOnlyInstructions(method, insn -> isEnumInitializationInstruction(insn, clazz))) {
+          return false;
+        }
+      } else if (!method.accessFlags.isStatic()
+          || method.method.name == factory.valueOfMethodName) {
+        // valueOf(String) looks up the constant by name through the enum class.
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean hasOnlyInstructions(DexEncodedMethod method, Predicate<Instruction> predicate) {
+    IRCode code;
+    try {
+      code = method.buildIR(options);
+    } catch (ApiLevelException e) {
+      return false;
+    }
+    if (code == null) {
+      return false;
+    }
+    InstructionIterator iterator = code.instructionIterator();
+    while (iterator.hasNext()) {
+      if (!predicate.test(iterator.next())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Instructions that create the constants of the enum and the array of all constants.
+  private boolean isEnumInitializationInstruction(Instruction insn, DexProgramClass clazz) {
+    if (insn.isNewInstance()) {
+      return insn.asNewInstance().clazz == clazz.type;
+    }
+    if (insn.isInvokeDirect()) {
+      DexMethod method = insn.asInvokeDirect().getInvokedMethod();
+      return method.holder == clazz.type && factory.isConstructor(method);
+    }
+    if (insn.isInvokeStatic()) {
+      DexMethod method = insn.asInvokeStatic().getInvokedMethod();
+      return method.holder == clazz.type
+          && method.name.toString().equals(VALUES_HELPER_NAME);
+    }
+    if (insn.isStaticGet()) {
+      return insn.asStaticGet().getField().clazz == clazz.type;
+    }
+    if (insn.isStaticPut()) {
+      return insn.asStaticPut().getField().clazz == clazz.type;
+    }
+    return insn.isConstNumber()
+        || insn.isConstString()
+        || insn.isNewArrayEmpty()
+        || insn.isInvokeNewArray()
+        || insn.isArrayPut()
+        || insn.isReturn()
+        || insn.isGoto()
+        || insn.isDebugPosition();
+  }
+
+  // Instructions of the constructor that only passes the name and ordinal to java.lang.Enum.
+  private boolean isEnumConstructorInstruction(Instruction insn) {
+    if (insn.isInvokeDirect()) {
+      DexMethod method = insn.asInvokeDirect().getInvokedMethod();
+      return method.holder == factory.enumType && factory.isConstructor(method);
+    }
+    return insn.isArgument() || insn.isReturn() || insn.isGoto() || insn.isDebugPosition();
+  }
+
+  private void checkDefinitions(DexProgramClass clazz) {
+    checkAnnotations(clazz.annotations);
+    clazz.forEachField(field -> {
+      checkAnnotations(field.annotations);
+      if (isCandidate(clazz.type) || getCandidate(field.field.type) == null) {
+        return;
+      }
+      if (!isSupportedType(field.field.type) || appInfo.pinnedItems.contains(field)) {
+        markIneligible(field.field.type);
+      }
+    });
+    clazz.forEachMethod(method -> {
+      checkAnnotations(method.annotations);
+      for (DexAnnotationSet annotations : method.parameterAnnotations.values) {
+        checkAnnotations(annotations);
+      }
+      if (isEnumSupportMethod(method) || !mentionsCandidate(method.method.proto)) {
+        return;
+      }
+      DexProto proto = method.method.proto;
+      if (appInfo.pinnedItems.contains(method)
+          || method.accessFlags.isNative()
+          || clazz.accessFlags.isAnnotation()) {
+        markIneligible(proto);
+        return;
+      }
+      if (!proto.returnType.isVoidType() && !isSupportedType(proto.returnType)) {
+        markIneligible(proto.returnType);
+      }
+      for (DexType parameter : proto.parameters.values) {
+        if (!isSupportedType(parameter)) {
+          markIneligible(parameter);
+        }
+      }
+    });
+  }
+
+  private void checkAnnotations(DexAnnotationSet annotations) {
+    for (DexAnnotation annotation : annotations.annotations) {
+      // The system annotations on inner classes refer to the enum class, but not to its values.
+      if (!annotation.annotation.type.toDescriptorString().startsWith(SYSTEM_ANNOTATION_PREFIX)) {
+        checkAnnotation(annotation.annotation);
+      }
+    }
+  }
+
+  private void checkAnnotation(DexEncodedAnnotation annotation) {
+    markIneligible(annotation.type);
+    for (DexAnnotationElement element : annotation.elements) {
+      checkAnnotationValue(element.value);
+    }
+  }
+
+  private void checkAnnotationValue(DexValue value) {
+    if (value instanceof DexValueEnum) {
+      markIneligible(((DexValueEnum) value).value.clazz);
+    } else if (value instanceof DexValueType) {
+      markIneligible(((DexValueType) value).value);
+    } else if (value instanceof DexValueArray) {
+      for (DexValue element : ((DexValueArray) value).getValues()) {
+        checkAnnotationValue(element);
+      }
+    } else if (value instanceof DexValueAnnotation) {
+      checkAnnotation(((DexValueAnnotation) value).value);
+    }
+  }
+
+  // Collect the methods with code using candidates, together with the candidates they use.
+  private Map<DexEncodedMethod, Set<DexType>> collectMethodsUsingCandidates() {
+    Map<DexEncodedMethod, Set<DexType>> result = new IdentityHashMap<>();
+    for (DexProgramClass clazz : application.classes()) {
+      clazz.forEachMethod(method -> {
+        if (method.getCode() == null || isEnumSupportMethod(method)) {
+          return;
+        }
+        CandidateUseCollector collector = new CandidateUseCollector();
+        collector.registerProto(method.method.proto);
+        method.getCode().registerReachableDefinitions(collector);
+        if (!collector.candidates.isEmpty()) {
+          result.put(method, collector.candidates);
+        }
+      });
+    }
+    return result;
+  }
+
+  private List<DexEncodedMethod> methodsUsingRemainingCandidates(
+      Map<DexEncodedMethod, Set<DexType>> methodsUsingCandidates) {
+    List<DexEncodedMethod> result = new ArrayList<>();
+    methodsUsingCandidates.forEach((method, types) -> {
+      if (types.stream().anyMatch(candidates::containsKey)) {
+        result.add(method);
+      }
+    });
+    return result;
+  }
+
+  // Detect collisions of rewritten methods with other methods. Collisions are resolved by keeping
+  // the enums of the colliding methods boxed, and reported by returning true.
+  private boolean hasSignatureCollisions() {
+    MethodSignatureEquivalence equivalence = MethodSignatureEquivalence.get();
+    Set<Wrapper<DexMethod>> unchangedVirtualMethods = new HashSet<>();
+    Map<Wrapper<DexMethod>, DexMethod> changedVirtualMethods = new HashMap<>();
+    for (DexProgramClass clazz : application.classes()) {
+      Map<DexMethod, DexMethod> methods = new IdentityHashMap<>();
+      if (isCandidate(clazz.type)) {
+        methods.put(getOrdinalHelper(clazz.type), getOrdinalHelper(clazz.type));
+      }
+      clazz.forEachMethod(method -> {
+        if (isEnumSupportMethod(method) && !isValuesMethod(method, clazz.type)) {
+          return;
+        }
+        DexMethod rewritten = rewriteMethod(method.method);
+        DexMethod existing = methods.putIfAbsent(rewritten, method.method);
+        if (existing != null) {
+          markIneligible(clazz.type);
+          markIneligible(existing.proto);
+          markIneligible(method.method.proto);
+        }
+        if (method.accessFlags.isStatic() || factory.isConstructor(method.method)) {
+          return;
+        }
+        if (rewritten == method.method) {
+          unchangedVirtualMethods.add(equivalence.wrap(method.method));
+          return;
+        }
+        // Methods with different signatures must not override each other after rewriting.
+        existing = changedVirtualMethods.putIfAbsent(equivalence.wrap(rewritten), method.method);
+        if (existing != null && !equivalence.equivalent(existing, method.method)) {
+          markIneligible(existing.proto);
+          markIneligible(method.method.proto);
+        }
+      });
+      Map<DexField, DexField> fields = new IdentityHashMap<>();
+      clazz.forEachField(field -> {
+        if (isCandidate(clazz.type)) {
+          return;
+        }
+        DexField existing = fields.putIfAbsent(rewriteField(field.field), field.field);
+        if (existing != null) {
+          markIneligible(existing.type);
+          markIneligible(field.field.type);
+        }
+      });
+    }
+    // A rewritten virtual method must not override methods it did not override before.
+    changedVirtualMethods.forEach((rewritten, method) -> {
+      if (unchangedVirtualMethods.contains(rewritten)
+          || isDefinedInLibrarySupertype(method.holder, rewritten.get())) {
+        markIneligible(method.proto);
+      }
+    });
+    return candidates.keySet().stream().anyMatch(ineligible::contains);
+  }
+
+  private boolean isDefinedInLibrarySupertype(DexType type, DexMethod method) {
+    DexClass clazz = appInfo.definitionFor(type);
+    if (clazz == null) {
+      return false;
+    }
+    if (!clazz.isProgramClass()
+        && clazz.findVirtualTarget(factory.createMethod(type, method.proto, method.name)) != null) {
+      return true;
+    }
+    if (clazz.superType != null && isDefinedInLibrarySupertype(clazz.superType, method)) {
+      return true;
+    }
+    for (DexType iface : clazz.interfaces.values) {
+      if (isDefinedInLibrarySupertype(iface, method)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void rewriteEnumClass(DexProgramClass clazz) {
+    List<DexEncodedMethod> directMethods = new ArrayList<>();
+    for (DexEncodedMethod method : clazz.directMethods()) {
+      if (isValuesMethod(method, clazz.type)) {
+        directMethods.add(method.toTypeSubstitutedMethod(rewriteMethod(method.method)));
+        directMethods.get(directMethods.size() - 1).setDexCode(createValuesCode(clazz.type));
+      } else if (!isEnumSupportMethod(method)) {
+        directMethods.add(method);
+      }
+    }
+    directMethods.add(new DexEncodedMethod(
+        getOrdinalHelper(clazz.type),
+        new DexAccessFlags(Constants.ACC_PUBLIC | Constants.ACC_STATIC | Constants.ACC_SYNTHETIC),
+        DexAnnotationSet.empty(),
+        DexAnnotationSetRefList.empty(),
+        createOrdinalHelperCode()));
+    clazz.setDirectMethods(directMethods.toArray(new DexEncodedMethod[directMethods.size()]));
+    // The constants are replaced by int constants and the array of all constants by values().
+    clazz.setStaticFields(DexEncodedField.EMPTY_ARRAY);
+  }
+
+  // Code for values() returning the int values of all constants, ordered by ordinal:
+  //
+  //   const v0, n
+  //   new-array v0, v0, int[]
+  //   const v1, i
+  //   const v2, i + 1
+  //   aput v2, v0, v1
+  //   ...
+  //   return-object v0
+  private DexCode createValuesCode(DexType enumType) {
+    int count = candidates.get(enumType).size();
+    List<com.android.tools.r8.code.Instruction> instructions = new ArrayList<>();
+    instructions.add(new Const(0, count));
+    instructions.add(new NewArray(0, 0, intArrayType));
+    for (int i = 0; i < count; i++) {
+      instructions.add(new Const(1, i));
+      instructions.add(new Const(2, i + 1));
+      instructions.add(new Aput(2, 0, 1));
+    }
+    instructions.add(new ReturnObject(0));
+    return createCode(3, 0, 0, instructions);
+  }
+
+  // Code for the ordinal helper taking the int value of a constant:
+  //
+  //   if-nez v1, :ordinal
+  //   new-instance v0, java.lang.NullPointerException
+  //   invoke-direct {v0}, java.lang.NullPointerException.<init>()V
+  //   throw v0
+  //   :ordinal
+  //   add-int/lit8 v0, v1, -1
+  //   return v0
+  private DexCode createOrdinalHelperCode() {
+    DexType exceptionType = factory.createType("Ljava/lang/NullPointerException;");
+    DexMethod exceptionInit = factory.createMethod(
+        exceptionType, factory.createProto(factory.voidType), factory.constructorMethodName);
+    List<com.android.tools.r8.code.Instruction> instructions = new ArrayList<>();
+    NewInstance newInstance = new NewInstance(0, exceptionType);
+    InvokeDirect invoke = new InvokeDirect(1, exceptionInit, 0, 0, 0, 0, 0);
+    Throw throwInstruction = new Throw(0);
+    IfNez ifNez = new IfNez(1, IfNez.SIZE
+        + newInstance.getSize() + invoke.getSize() + throwInstruction.getSize());
+    instructions.add(ifNez);
+    instructions.add(newInstance);
+    instructions.add(invoke);
+    instructions.add(throwInstruction);
+    instructions.add(new AddIntLit8(0, 1, -1));
+    instructions.add(new Return(0));
+    return createCode(2, 1, 1, instructions);
+  }
+
+  private DexCode createCode(int registerSize, int insSize, int outsSize,
+      List<com.android.tools.r8.code.Instruction> instructions) {
+    int offset = 0;
+    for (com.android.tools.r8.code.Instruction instruction : instructions) {
+      instruction.setOffset(offset);
+      offset += instruction.getSize();
+    }
+    return new DexCode(registerSize, insSize, outsSize,
+        instructions.toArray(new com.android.tools.r8.code.Instruction[instructions.size()]),
+        new DexCode.Try[0], new DexCode.TryHandler[0], null, null);
+  }
+
+  private void rewriteDefinitions(DexProgramClass clazz) {
+    clazz.setDirectMethods(rewriteMethods(clazz.directMethods()));
+    clazz.setVirtualMethods(rewriteMethods(clazz.virtualMethods()));
+    clazz.setStaticFields(rewriteFields(clazz.staticFields()));
+    clazz.setInstanceFields(rewriteFields(clazz.instanceFields()));
+  }
+
+  private DexEncodedMethod[] rewriteMethods(DexEncodedMethod[] methods) {
+    DexEncodedMethod[] result = null;
+    for (int i = 0; i < methods.length; i++) {
+      DexEncodedMethod method = methods[i];
+      DexMethod rewritten = rewriteMethod(method.method);
+      if (rewritten != method.method) {
+        if (result == null) {
+          result = methods.clone();
+        }
+        result[i] = method.toTypeSubstitutedMethod(rewritten);
+      }
+    }
+    return result == null ? methods : result;
+  }
+
+  private DexEncodedField[] rewriteFields(DexEncodedField[] fields) {
+    DexEncodedField[] result = null;
+    for (int i = 0; i < fields.length; i++) {
+      DexEncodedField field = fields[i];
+      DexField rewritten = rewriteField(field.field);
+      if (rewritten != field.field) {
+        if (result == null) {
+          result = fields.clone();
+        }
+        result[i] = field.toTypeSubstitutedField(rewritten);
+        if (field.accessFlags.isStatic()) {
+          // The initial value of the rewritten field is null, which is represented by zero.
+          result[i].staticValue = DexValue.defaultForType(rewritten.type, factory);
+        }
+      }
+    }
+    return result == null ? fields : result;
+  }
+
+  private class CandidateUseCollector extends UseRegistry {
+
+    private final Set<DexType> candidates = Sets.newIdentityHashSet();
+
+    private boolean registerType(DexType type) {
+      DexType candidate = getCandidate(type);
+      if (candidate != null) {
+        candidates.add(candidate);
+      }
+      return true;
+    }
+
+    private void registerProto(DexProto proto) {
+      registerType(proto.returnType);
+      for (DexType parameter : proto.parameters.values) {
+        registerType(parameter);
+      }
+    }
+
+    private boolean registerMethod(DexMethod method) {
+      registerType(method.holder);
+      registerProto(method.proto);
+      return true;
+    }
+
+    private boolean registerField(DexField field) {
+      registerType(field.clazz);
+      return registerType(field.type);
+    }
+
+    @Override
+    public boolean registerInvokeVirtual(DexMethod method) {
+      return registerMethod(method);
+    }
+
+    @Override
+    public boolean registerInvokeDirect(DexMethod method) {
+      return registerMethod(method);
+    }
+
+    @Override
+    public boolean registerInvokeStatic(DexMethod method) {
+      return registerMethod(method);
+    }
+
+    @Override
+    public boolean registerInvokeInterface(DexMethod method) {
+      return registerMethod(method);
+    }
+
+    @Override
+    public boolean registerInvokeSuper(DexMethod method) {
+      return registerMethod(method);
+    }
+
+    @Override
+    public boolean registerInstanceFieldWrite(DexField field) {
+      return registerField(field);
+    }
+
+    @Override
+    public boolean registerInstanceFieldRead(DexField field) {
+      return registerField(field);
+    }
+
+    @Override
+    public boolean registerNewInstance(DexType type) {
+      return registerType(type);
+    }
+
+    @Override
+    public boolean registerStaticFieldRead(DexField field) {
+      return registerField(field);
+    }
+
+    @Override
+    public boolean registerStaticFieldWrite(DexField field) {
+      return registerField(field);
+    }
+
+    @Override
+    public boolean registerTypeReference(DexType type) {
+      return registerType(type);
+    }
+  }
+
+  // Maps references to methods and fields with unboxed enums in their signature to the rewritten
+  // references, including references to definitions in supertypes.
+  private class EnumUnboxingLense extends GraphLense {
+
+    private final GraphLense previousLense;
+
+    private EnumUnboxingLense(GraphLense previousLense) {
+      this.previousLense = previousLense;
+    }
+
+    @Override
+    public DexType lookupType(DexType type, DexEncodedMethod context) {
+      return previousLense.lookupType(type, context);
+    }
+
+    @Override
+    public DexMethod lookupMethod(DexMethod method, DexEncodedMethod context) {
+      return rewriteMethod(previousLense.lookupMethod(method, context));
+    }
+
+    @Override
+    public DexField lookupField(DexField field, DexEncodedMethod context) {
+      return rewriteField(previousLense.lookupField(field, context));
+    }
+
+    @Override
+    public boolean isContextFree() {
+      return previousLense.isContextFree();
+    }
+  }
+}
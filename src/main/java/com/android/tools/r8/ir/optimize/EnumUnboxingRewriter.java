@@ -0,0 +1,639 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import com.android.tools.r8.ApiLevelException;
+import com.android.tools.r8.graph.DexCallSite;
+import com.android.tools.r8.graph.DexClass;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.graph.DexField;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.graph.DexMethodHandle;
+import com.android.tools.r8.graph.DexProto;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.graph.DexValue;
+import com.android.tools.r8.graph.DexValue.DexValueMethodHandle;
+import com.android.tools.r8.graph.DexValue.DexValueMethodType;
+import com.android.tools.r8.graph.DexValue.DexValueType;
+import com.android.tools.r8.ir.code.Argument;
+import com.android.tools.r8.ir.code.ArrayGet;
+import com.android.tools.r8.ir.code.ArrayPut;
+import com.android.tools.r8.ir.code.BasicBlock;
+import com.android.tools.r8.ir.code.ConstNumber;
+import com.android.tools.r8.ir.code.ConstType;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.InstanceGet;
+import com.android.tools.r8.ir.code.InstancePut;
+import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.InstructionIterator;
+import com.android.tools.r8.ir.code.InstructionListIterator;
+import com.android.tools.r8.ir.code.Invoke;
+import com.android.tools.r8.ir.code.InvokeMethod;
+import com.android.tools.r8.ir.code.InvokeNewArray;
+import com.android.tools.r8.ir.code.InvokeStatic;
+import com.android.tools.r8.ir.code.MemberType;
+import com.android.tools.r8.ir.code.MoveType;
+import com.android.tools.r8.ir.code.NewArrayEmpty;
+import com.android.tools.r8.ir.code.Phi;
+import com.android.tools.r8.ir.code.Return;
+import com.android.tools.r8.ir.code.StaticGet;
+import com.android.tools.r8.ir.code.StaticPut;
+import com.android.tools.r8.ir.code.Value;
+import com.android.tools.r8.ir.conversion.LensCodeRewriter;
+import com.android.tools.r8.ir.regalloc.LinearScanRegisterAllocator;
+import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
+import com.android.tools.r8.utils.InternalOptions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Analysis and rewriting of the code of a single method for {@link EnumUnboxer}.
+ * <p>
+ * The enum type of values is computed from the types of the arguments, fields, invoked methods
+ * and arrays they are defined by and propagated through phis and array reads. Values of unboxed
+ * enums are replaced by int values, and their uses by the corresponding int operations.
+ */
+class EnumUnboxingRewriter {
+
+  private final EnumUnboxer unboxer;
+  private final AppInfoWithLiveness appInfo;
+  private final InternalOptions options;
+  private final DexItemFactory factory;
+
+  EnumUnboxingRewriter(EnumUnboxer unboxer, AppInfoWithLiveness appInfo,
+      InternalOptions options) {
+    this.unboxer = unboxer;
+    this.appInfo = appInfo;
+    this.options = options;
+    this.factory = appInfo.dexItemFactory;
+  }
+
+  private IRCode buildIR(DexEncodedMethod method) throws ApiLevelException {
+    IRCode code = method.buildIR(options);
+    if (code != null) {
+      new LensCodeRewriter(unboxer.graphLense, appInfo).rewrite(code, method);
+    }
+    return code;
+  }
+
+  /** Mark all enums used by the method in a way that prevents unboxing as ineligible. */
+  void analyze(DexEncodedMethod method) throws ApiLevelException {
+    IRCode code = buildIR(method);
+    if (code == null) {
+      return;
+    }
+    Map<Value, DexType> types = computeEnumTypes(code, method);
+    InstructionIterator iterator = code.instructionIterator();
+    while (iterator.hasNext()) {
+      Instruction insn = iterator.next();
+      analyzeInstruction(insn, method, types);
+      for (Value value : insn.inValues()) {
+        DexType type = types.get(value);
+        if (type != null && !isAllowedUse(insn, value, type, method, types)) {
+          unboxer.markIneligible(type);
+        }
+      }
+    }
+    types.forEach((value, type) -> {
+      if (value.isPhi()) {
+        for (Value operand : value.asPhi().getOperands()) {
+          checkOperand(operand, type, types);
+        }
+      }
+    });
+  }
+
+  // Computes the enum type of all values of candidate enum types or arrays of them.
+  private Map<Value, DexType> computeEnumTypes(IRCode code, DexEncodedMethod method) {
+    Map<Value, DexType> types = new IdentityHashMap<>();
+    Deque<Value> worklist = new ArrayDeque<>();
+    DexMethod signature = method.method;
+    List<Value> arguments = code.collectArguments();
+    int offset = method.accessFlags.isStatic() ? 0 : 1;
+    for (int i = offset; i < arguments.size(); i++) {
+      setType(arguments.get(i), signature.proto.parameters.values[i - offset], types, worklist);
+    }
+    InstructionIterator iterator = code.instructionIterator();
+    while (iterator.hasNext()) {
+      Instruction insn = iterator.next();
+      if (insn.outValue() == null) {
+        continue;
+      }
+      if (insn.isStaticGet() || insn.isInstanceGet()) {
+        DexField field = insn.isStaticGet()
+            ? insn.asStaticGet().getField()
+            : insn.asInstanceGet().getField();
+        setType(insn.outValue(), field.type, types, worklist);
+      } else if (insn.isInvokeNewArray()) {
+        setType(insn.outValue(), insn.asInvokeNewArray().getArrayType(), types, worklist);
+      } else if (insn.isInvokeMethod() && !insn.isInvokePolymorphic()) {
+        setType(insn.outValue(), insn.asInvokeMethod().getInvokedMethod().proto.returnType,
+            types, worklist);
+      } else if (insn.isNewArrayEmpty()) {
+        setType(insn.outValue(), insn.asNewArrayEmpty().type, types, worklist);
+      }
+    }
+    while (!worklist.isEmpty()) {
+      Value value = worklist.poll();
+      DexType type = types.get(value);
+      for (Phi phi : value.uniquePhiUsers()) {
+        setType(phi, type, types, worklist);
+      }
+      if (type.isArrayType()) {
+        for (Instruction user : value.uniqueUsers()) {
+          if (user.isArrayGet() && user.asArrayGet().array() == value) {
+            setType(user.outValue(), type.toArrayElementType(factory), types, worklist);
+          }
+        }
+      }
+    }
+    return types;
+  }
+
+  private void setType(
+      Value value, DexType type, Map<Value, DexType> types, Deque<Value> worklist) {
+    if (unboxer.getCandidate(type) == null) {
+      return;
+    }
+    DexType current = types.putIfAbsent(value, type);
+    if (current == null) {
+      worklist.add(value);
+    } else if (current != type) {
+      unboxer.markIneligible(current);
+      unboxer.markIneligible(type);
+    }
+  }
+
+  private void analyzeInstruction(
+      Instruction insn, DexEncodedMethod method, Map<Value, DexType> types) {
+    if (insn.isCheckCast()) {
+      unboxer.markIneligible(insn.asCheckCast().getType());
+    } else if (insn.isInstanceOf()) {
+      unboxer.markIneligible(insn.asInstanceOf().type());
+    } else if (insn.isConstClass()) {
+      unboxer.markIneligible(insn.asConstClass().getValue());
+    } else if (insn.isNewInstance()) {
+      unboxer.markIneligible(insn.asNewInstance().clazz);
+    } else if (insn.isNewArrayEmpty()) {
+      markUnsupportedType(insn.asNewArrayEmpty().type);
+    } else if (insn.isInvokeNewArray()) {
+      markUnsupportedType(insn.asInvokeNewArray().getArrayType());
+    } else if (insn.isInvokeCustom()) {
+      analyzeCallSite(insn.asInvokeCustom().getCallSite());
+    } else if (insn.isInvokePolymorphic()) {
+      markProto(insn.asInvokePolymorphic().getProto());
+    } else if (insn.isStaticGet() || insn.isStaticPut()
+        || insn.isInstanceGet() || insn.isInstancePut()) {
+      DexField field = insn.isStaticGet() ? insn.asStaticGet().getField()
+          : insn.isStaticPut() ? insn.asStaticPut().getField()
+              : insn.isInstanceGet() ? insn.asInstanceGet().getField()
+                  : insn.asInstancePut().getField();
+      markUnsupportedType(field.type);
+      // Only the enum constants are read, the array of all constants is only used by values().
+      if (unboxer.isCandidate(field.clazz)
+          && !(insn.isStaticGet() && unboxer.getOrdinals(field.clazz).containsKey(field))) {
+        unboxer.markIneligible(field.clazz);
+      }
+    } else if (insn.isInvokeMethod()) {
+      InvokeMethod invoke = insn.asInvokeMethod();
+      DexMethod invoked = invoke.getInvokedMethod();
+      markUnsupportedType(invoked.proto.returnType);
+      for (DexType parameter : invoked.proto.parameters.values) {
+        markUnsupportedType(parameter);
+      }
+      if (unboxer.isCandidate(invoked.holder) && !invoke.isInvokeStatic()) {
+        unboxer.markIneligible(invoked.holder);
+      }
+      DexType receiverType = isOrdinalInvoke(invoke, types);
+      if (receiverType != null && !isAccessible(receiverType, method.method.holder)) {
+        // The ordinal helper cannot be called from here.
+        unboxer.markIneligible(receiverType);
+      }
+    }
+  }
+
+  private void analyzeCallSite(DexCallSite callSite) {
+    markProto(callSite.methodProto);
+    analyzeMethodHandle(callSite.bootstrapMethod);
+    for (DexValue argument : callSite.bootstrapArgs) {
+      if (argument instanceof DexValueMethodHandle) {
+        analyzeMethodHandle(((DexValueMethodHandle) argument).value);
+      } else if (argument instanceof DexValueMethodType) {
+        markProto(((DexValueMethodType) argument).value);
+      } else if (argument instanceof DexValueType) {
+        unboxer.markIneligible(((DexValueType) argument).value);
+      }
+    }
+  }
+
+  private void analyzeMethodHandle(DexMethodHandle handle) {
+    if (handle.isMethodHandle()) {
+      DexMethod method = handle.asMethod();
+      unboxer.markIneligible(method.holder);
+      markProto(method.proto);
+    } else {
+      DexField field = handle.asField();
+      unboxer.markIneligible(field.clazz);
+      unboxer.markIneligible(field.type);
+    }
+  }
+
+  private void markProto(DexProto proto) {
+    unboxer.markIneligible(proto.returnType);
+    for (DexType parameter : proto.parameters.values) {
+      unboxer.markIneligible(parameter);
+    }
+  }
+
+  // Multi-dimensional arrays of enums are not rewritten.
+  private void markUnsupportedType(DexType type) {
+    if (unboxer.getCandidate(type) != null && !unboxer.isSupportedType(type)) {
+      unboxer.markIneligible(type);
+    }
+  }
+
+  private boolean isAccessible(DexType enumType, DexType context) {
+    DexClass clazz = appInfo.definitionFor(enumType);
+    return clazz.accessFlags.isPublic()
+        || enumType.getPackageDescriptor().equals(context.getPackageDescriptor());
+  }
+
+  // Returns the enum type of the receiver if the invoke is a call to ordinal() on an enum value.
+  private DexType isOrdinalInvoke(InvokeMethod invoke, Map<Value, DexType> types) {
+    if (!invoke.isInvokeVirtual() || invoke.inValues().isEmpty()) {
+      return null;
+    }
+    DexMethod invoked = invoke.getInvokedMethod();
+    DexType receiverType = types.get(invoke.inValues().get(0));
+    if (receiverType == null
+        || !unboxer.isCandidate(receiverType)
+        || invoked.name != factory.ordinalMethodName
+        || !invoked.proto.parameters.isEmpty()
+        || invoked.proto.returnType != factory.intType
+        || (invoked.holder != receiverType && invoked.holder != factory.enumType)) {
+      return null;
+    }
+    return receiverType;
+  }
+
+  // Returns true if the use of the enum value by the instruction can be rewritten.
+  private boolean isAllowedUse(Instruction insn, Value value, DexType type,
+      DexEncodedMethod method, Map<Value, DexType> types) {
+    if (insn.isStaticPut()) {
+      return insn.asStaticPut().getField().type == type;
+    }
+    if (insn.isInstancePut()) {
+      return insn.asInstancePut().value() == value
+          && insn.asInstancePut().object() != value
+          && insn.asInstancePut().getField().type == type;
+    }
+    if (insn.isInvokeMethod()) {
+      if (insn.isInvokeCustom() || insn.isInvokePolymorphic()) {
+        return false;
+      }
+      InvokeMethod invoke = insn.asInvokeMethod();
+      if (isOrdinalInvoke(invoke, types) != null) {
+        return true;
+      }
+      List<Value> arguments = invoke.arguments();
+      DexType[] parameters = invoke.getInvokedMethod().proto.parameters.values;
+      int offset = arguments.size() - parameters.length;
+      for (int i = 0; i < arguments.size(); i++) {
+        if (arguments.get(i) == value && (i < offset || parameters[i - offset] != type)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (insn.isReturn()) {
+      return method.method.proto.returnType == type;
+    }
+    if (insn.isArrayPut()) {
+      ArrayPut arrayPut = insn.asArrayPut();
+      if (arrayPut.index() == value) {
+        return false;
+      }
+      if (arrayPut.array() == value) {
+        return type.isArrayType() && checkOperand(
+            arrayPut.source(), type.toArrayElementType(factory), types);
+      }
+      DexType arrayType = types.get(arrayPut.array());
+      return arrayType != null && arrayType.toArrayElementType(factory) == type;
+    }
+    if (insn.isArrayGet()) {
+      return insn.asArrayGet().array() == value && type.isArrayType();
+    }
+    if (insn.isArrayLength()) {
+      return type.isArrayType();
+    }
+    if (insn.isIf()) {
+      for (Value operand : insn.inValues()) {
+        if (!checkOperand(operand, type, types)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  // Checks that a value flowing into a use of the given enum type is of that type or null.
+  private boolean checkOperand(Value operand, DexType type, Map<Value, DexType> types) {
+    DexType operandType = types.get(operand);
+    if (operandType == type || (operandType == null && isNull(operand))) {
+      return true;
+    }
+    unboxer.markIneligible(type);
+    if (operandType != null) {
+      unboxer.markIneligible(operandType);
+    }
+    return false;
+  }
+
+  private static boolean isNull(Value value) {
+    return !value.isPhi() && value.isZero();
+  }
+
+  /** Replace all values of unboxed enums used by the method by int values. */
+  void rewrite(DexEncodedMethod method) throws ApiLevelException {
+    IRCode code = buildIR(method);
+    CodeRewriter codeRewriter = new CodeRewriter(appInfo, ImmutableSet.of());
+    if (options.removeSwitchMaps) {
+      // Switch maps are recognized by the calls to ordinal(), which are rewritten here.
+      codeRewriter.removeSwitchMaps(code);
+    }
+    Map<Value, DexType> types = computeEnumTypes(code, method);
+
+    // Null values flowing into phis and comparisons of enum values are replaced by int zero
+    // after all other instructions have been rewritten.
+    // Rewriting replaces values, so the uses of enum values are collected up front.
+    List<Instruction> comparisons = new ArrayList<>();
+    List<Phi> phis = new ArrayList<>();
+    Map<Instruction, DexType> ordinalInvokes = new IdentityHashMap<>();
+    types.forEach((value, type) -> {
+      if (unboxer.isCandidate(type)) {
+        if (value.isPhi()) {
+          phis.add(value.asPhi());
+        }
+        for (Instruction user : value.uniqueUsers()) {
+          if (user.isIf()) {
+            comparisons.add(user);
+          } else if (user.isInvokeMethod()
+              && isOrdinalInvoke(user.asInvokeMethod(), types) != null) {
+            ordinalInvokes.put(user, type);
+          }
+        }
+      }
+    });
+
+    Value zero = addIntZero(code);
+    for (BasicBlock block : code.blocks) {
+      InstructionListIterator iterator = block.listIterator();
+      while (iterator.hasNext()) {
+        Instruction insn = iterator.next();
+        Instruction replacement =
+            rewriteInstruction(insn, method, code, types, ordinalInvokes, zero);
+        if (replacement != null) {
+          iterator.replaceCurrentInstruction(replacement);
+        }
+      }
+    }
+    for (Instruction comparison : comparisons) {
+      for (Value operand : new ArrayList<>(comparison.inValues())) {
+        if (isNull(operand) && operand.outType() == MoveType.OBJECT) {
+          comparison.replaceValue(operand, zero);
+          operand.removeUser(comparison);
+        }
+      }
+    }
+    rewritePhis(phis, code, zero);
+    assert code.isConsistentSSA();
+
+    DeadCodeRemover.removeDeadCode(code, codeRewriter, options);
+    LinearScanRegisterAllocator registerAllocator =
+        new LinearScanRegisterAllocator(code, options);
+    registerAllocator.allocateRegisters(false);
+    CodeRewriter.collapsTrivialGotos(method, code);
+    method.setCode(code, registerAllocator, factory);
+  }
+
+  // Replaces phis of enum values, which are object phis, by int phis.
+  private static void rewritePhis(List<Phi> phis, IRCode code, Value zero) {
+    List<Phi> newPhis = new ArrayList<>(phis.size());
+    for (Phi phi : phis) {
+      Phi newPhi = new Phi(code.valueNumberGenerator.next(), phi.getBlock(), MoveType.SINGLE,
+          phi.getLocalInfo());
+      newPhis.add(newPhi);
+    }
+    // Phis can use each other, so all uses are replaced before any operands are added.
+    for (int i = 0; i < phis.size(); i++) {
+      phis.get(i).replaceUsers(newPhis.get(i));
+    }
+    for (int i = 0; i < phis.size(); i++) {
+      Phi phi = phis.get(i);
+      List<Value> operands = new ArrayList<>(phi.getOperands().size());
+      for (Value operand : phi.getOperands()) {
+        operands.add(isNull(operand) && operand.outType() == MoveType.OBJECT ? zero : operand);
+        operand.removePhiUser(phi);
+      }
+      phi.getBlock().removePhi(phi);
+      newPhis.get(i).addOperands(operands);
+    }
+  }
+
+  // Adds a constant int zero after the arguments to replace null values of unboxed enums.
+  private static Value addIntZero(IRCode code) {
+    Value zero = code.createValue(MoveType.SINGLE);
+    InstructionListIterator iterator = code.blocks.getFirst().listIterator();
+    while (iterator.hasNext()) {
+      if (!iterator.next().isArgument()) {
+        iterator.previous();
+        break;
+      }
+    }
+    iterator.add(new ConstNumber(ConstType.INT, zero, 0));
+    return zero;
+  }
+
+  private Value rewriteOperand(Value value, DexType type, Value zero) {
+    return unboxer.isCandidate(type) && isNull(value) ? zero : value;
+  }
+
+  private List<Value> rewriteArguments(
+      List<Value> arguments, DexType[] parameters, Value zero) {
+    List<Value> result = new ArrayList<>(arguments);
+    int offset = arguments.size() - parameters.length;
+    for (int i = offset; i < arguments.size(); i++) {
+      result.set(i, rewriteOperand(arguments.get(i), parameters[i - offset], zero));
+    }
+    return result;
+  }
+
+  private Value rewriteOutValue(Instruction insn, DexType type, IRCode code) {
+    if (insn.outValue() == null) {
+      return null;
+    }
+    if (!unboxer.isCandidate(type)) {
+      return insn.outValue();
+    }
+    return code.createValue(MoveType.SINGLE, insn.outValue().getLocalInfo());
+  }
+
+  // Returns the replacement of the instruction, or null if it does not use unboxed enums.
+  private Instruction rewriteInstruction(Instruction insn, DexEncodedMethod method, IRCode code,
+      Map<Value, DexType> types, Map<Instruction, DexType> ordinalInvokes, Value zero) {
+    if (insn.isArgument()) {
+      DexType type = types.get(insn.outValue());
+      if (type == null || !unboxer.isCandidate(type)) {
+        return null;
+      }
+      return new Argument(code.createValue(MoveType.SINGLE, insn.outValue().getLocalInfo()));
+    }
+    if (insn.isStaticGet()) {
+      StaticGet staticGet = insn.asStaticGet();
+      DexField field = staticGet.getField();
+      if (unboxer.isCandidate(field.clazz)) {
+        int ordinal = unboxer.getOrdinals(field.clazz).getInt(field);
+        return new ConstNumber(ConstType.INT,
+            code.createValue(MoveType.SINGLE, staticGet.getLocalInfo()), ordinal + 1);
+      }
+      DexField rewritten = unboxer.rewriteField(field);
+      if (rewritten == field) {
+        return null;
+      }
+      return new StaticGet(MemberType.fromDexType(rewritten.type),
+          rewriteOutValue(insn, field.type, code), rewritten);
+    }
+    if (insn.isStaticPut()) {
+      StaticPut staticPut = insn.asStaticPut();
+      DexField field = staticPut.getField();
+      DexField rewritten = unboxer.rewriteField(field);
+      if (rewritten == field) {
+        return null;
+      }
+      return new StaticPut(MemberType.fromDexType(rewritten.type),
+          rewriteOperand(staticPut.inValue(), field.type, zero), rewritten);
+    }
+    if (insn.isInstanceGet()) {
+      InstanceGet instanceGet = insn.asInstanceGet();
+      DexField field = instanceGet.getField();
+      DexField rewritten = unboxer.rewriteField(field);
+      if (rewritten == field) {
+        return null;
+      }
+      return new InstanceGet(MemberType.fromDexType(rewritten.type),
+          rewriteOutValue(insn, field.type, code), instanceGet.object(), rewritten);
+    }
+    if (insn.isInstancePut()) {
+      InstancePut instancePut = insn.asInstancePut();
+      DexField field = instancePut.getField();
+      DexField rewritten = unboxer.rewriteField(field);
+      if (rewritten == field) {
+        return null;
+      }
+      return new InstancePut(MemberType.fromDexType(rewritten.type),
+          ImmutableList.of(
+              rewriteOperand(instancePut.value(), field.type, zero), instancePut.object()),
+          rewritten);
+    }
+    if (insn.isArrayGet()) {
+      ArrayGet arrayGet = insn.asArrayGet();
+      DexType arrayType = types.get(arrayGet.array());
+      if (arrayType == null || !unboxer.isSupportedType(arrayType)) {
+        return null;
+      }
+      return new ArrayGet(MemberType.SINGLE,
+          code.createValue(MoveType.SINGLE, arrayGet.getLocalInfo()),
+          arrayGet.array(), arrayGet.index());
+    }
+    if (insn.isArrayPut()) {
+      ArrayPut arrayPut = insn.asArrayPut();
+      DexType arrayType = types.get(arrayPut.array());
+      if (arrayType == null || !unboxer.isSupportedType(arrayType)) {
+        return null;
+      }
+      return new ArrayPut(MemberType.SINGLE, ImmutableList.of(
+          rewriteOperand(arrayPut.source(), arrayType.toArrayElementType(factory), zero),
+          arrayPut.array(), arrayPut.index()));
+    }
+    if (insn.isNewArrayEmpty()) {
+      NewArrayEmpty newArray = insn.asNewArrayEmpty();
+      DexType rewritten = unboxer.rewriteType(newArray.type);
+      return rewritten == newArray.type
+          ? null
+          : new NewArrayEmpty(code.createValue(MoveType.OBJECT, newArray.getLocalInfo()),
+              newArray.size(), rewritten);
+    }
+    if (insn.isInvokeNewArray()) {
+      InvokeNewArray newArray = insn.asInvokeNewArray();
+      DexType type = newArray.getArrayType();
+      DexType rewritten = unboxer.rewriteType(type);
+      if (rewritten == type) {
+        return null;
+      }
+      List<Value> arguments = new ArrayList<>();
+      for (Value argument : newArray.arguments()) {
+        arguments.add(rewriteOperand(argument, type.toArrayElementType(factory), zero));
+      }
+      return new InvokeNewArray(rewritten, newArray.outValue(), arguments);
+    }
+    if (insn.isReturn()) {
+      Return ret = insn.asReturn();
+      DexType returnType = method.method.proto.returnType;
+      if (ret.isReturnVoid() || !unboxer.isCandidate(returnType)) {
+        return null;
+      }
+      return new Return(rewriteOperand(ret.returnValue(), returnType, zero), MoveType.SINGLE);
+    }
+    if (insn.isInvokeMethod() && !insn.isInvokeCustom() && !insn.isInvokePolymorphic()) {
+      return rewriteInvoke(insn.asInvokeMethod(), code, ordinalInvokes.get(insn), zero);
+    }
+    return null;
+  }
+
+  // Returns the ordinal of an enum constant, whether its read is rewritten already or not.
+  private int getConstantOrdinal(Value value) {
+    if (value.isPhi() || value.definition == null) {
+      return -1;
+    }
+    if (value.definition.isStaticGet()) {
+      DexField field = value.definition.asStaticGet().getField();
+      return unboxer.isCandidate(field.clazz) ? unboxer.getOrdinals(field.clazz).getInt(field) : -1;
+    }
+    return value.isConstNumber()
+        ? value.getConstInstruction().asConstNumber().getIntValue() - 1
+        : -1;
+  }
+
+  private Instruction rewriteInvoke(
+      InvokeMethod invoke, IRCode code, DexType ordinalReceiverType, Value zero) {
+    if (ordinalReceiverType != null) {
+      Value receiver = invoke.inValues().get(0);
+      // The ordinal of a constant is known, null values throw in the ordinal helper.
+      int ordinal = getConstantOrdinal(receiver);
+      if (ordinal >= 0) {
+        return new ConstNumber(ConstType.INT, invoke.outValue() == null
+            ? code.createValue(MoveType.SINGLE)
+            : invoke.outValue(), ordinal);
+      }
+      return new InvokeStatic(unboxer.getOrdinalHelper(ordinalReceiverType), invoke.outValue(),
+          ImmutableList.of(rewriteOperand(receiver, ordinalReceiverType, zero)));
+    }
+    DexMethod invoked = invoke.getInvokedMethod();
+    DexMethod rewritten = unboxer.rewriteMethod(invoked);
+    if (rewritten == invoked) {
+      return null;
+    }
+    return Invoke.create(invoke.getType(), rewritten, null,
+        rewriteOutValue(invoke, invoked.proto.returnType, code),
+        rewriteArguments(invoke.arguments(), invoked.proto.parameters.values, zero));
+  }
+}
@@ -0,0 +1,384 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import com.android.tools.r8.graph.AppInfo;
+import com.android.tools.r8.graph.DexEncodedField;
+import com.android.tools.r8.graph.DexField;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.ir.code.BasicBlock;
+import com.android.tools.r8.ir.code.Binop;
+import com.android.tools.r8.ir.code.CatchHandlers;
+import com.android.tools.r8.ir.code.DominatorTree;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.InstancePut;
+import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.InstructionListIterator;
+import com.android.tools.r8.ir.code.LoopStructure;
+import com.android.tools.r8.ir.code.StaticPut;
+import com.android.tools.r8.ir.code.Value;
+import com.google.common.base.Equivalence;
+import com.google.common.base.Equivalence.Wrapper;
+import com.google.common.collect.Sets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Global value numbering over the dominator tree.
+ *
+ * <p>The dominator tree is walked in pre-order with a scoped table of available expressions, so
+ * an instruction is only replaced by an equivalent instruction in a dominating block. The
+ * following instructions are numbered:
+ * <ul>
+ *   <li>binops, unops, instance-of, check-cast and array-length, which only depend on their
+ *   in-values.</li>
+ *   <li>instance and static field loads, which are available until an instruction that might
+ *   write the field, that is a field put, an invoke, a monitor instruction or a class
+ *   initialization. Loads are only propagated from a block to a dominated block that has the
+ *   block as its unique normal predecessor, so there are no intervening writes on other
+ *   paths.</li>
+ *   <li>constants, which are only replaced by an equivalent constant defined in a block with a
+ *   lower loop depth, so that constants are not materialized in every iteration of a loop.</li>
+ * </ul>
+ */
+public class GlobalValueNumbering {
+
+  private static class ExpressionEquivalence extends Equivalence<Instruction> {
+
+    @Override
+    protected boolean doEquivalent(Instruction a, Instruction b) {
+      if (a.getClass() != b.getClass() || !a.identicalNonValueParts(b)) {
+        return false;
+      }
+      // For commutative binary operations any order of in-values are equal.
+      if (a.isBinop() && a.asBinop().isCommutative()) {
+        Value a0 = a.inValues().get(0);
+        Value a1 = a.inValues().get(1);
+        Value b0 = b.inValues().get(0);
+        Value b1 = b.inValues().get(1);
+        return (a0.equals(b0) && a1.equals(b1)) || (a0.equals(b1) && a1.equals(b0));
+      } else {
+        // Compare all in-values.
+        assert a.inValues().size() == b.inValues().size();
+        for (int i = 0; i < a.inValues().size(); i++) {
+          if (!a.inValues().get(i).equals(b.inValues().get(i))) {
+            return false;
+          }
+        }
+        return true;
+      }
+    }
+
+    @Override
+    protected int doHash(Instruction instruction) {
+      final int prime = 29;
+      int hash = instruction.getClass().hashCode();
+      if (instruction.isBinop()) {
+        Binop binop = instruction.asBinop();
+        Value in0 = instruction.inValues().get(0);
+        Value in1 = instruction.inValues().get(1);
+        if (binop.isCommutative()) {
+          hash += hash * prime + in0.hashCode() * in1.hashCode();
+        } else {
+          hash += hash * prime + in0.hashCode();
+          hash += hash * prime + in1.hashCode();
+        }
+        return hash;
+      }
+      // Include the non-value parts for instructions which are mostly distinguished by those.
+      if (instruction.isConstNumber()) {
+        hash += hash * prime + Long.hashCode(instruction.asConstNumber().getRawValue());
+      } else if (instruction.isInstanceGet()) {
+        hash += hash * prime + instruction.asInstanceGet().getField().hashCode();
+      } else if (instruction.isStaticGet()) {
+        hash += hash * prime + instruction.asStaticGet().getField().hashCode();
+      }
+      for (Value value : instruction.inValues()) {
+        hash += hash * prime + value.hashCode();
+      }
+      return hash;
+    }
+  }
+
+  /**
+   * Field loads available at a program point and the classes known to be initialized.
+   */
+  private static class LoadState {
+    private final Map<Wrapper<Instruction>, Value> loads;
+    private final Set<DexType> initializedClasses;
+
+    LoadState() {
+      loads = new HashMap<>();
+      initializedClasses = Sets.newIdentityHashSet();
+    }
+
+    LoadState(LoadState state) {
+      loads = new HashMap<>(state.loads);
+      initializedClasses = Sets.newIdentityHashSet();
+      initializedClasses.addAll(state.initializedClasses);
+    }
+
+    void killAll() {
+      loads.clear();
+    }
+
+    void killField(DexField field, boolean isStatic) {
+      // Fields are compared by name and type, as the same field can be referenced through
+      // different holders.
+      loads.keySet().removeIf(key -> {
+        Instruction load = key.get();
+        DexField loaded = isStatic
+            ? (load.isStaticGet() ? load.asStaticGet().getField() : null)
+            : (load.isInstanceGet() ? load.asInstanceGet().getField() : null);
+        return loaded != null && loaded.name == field.name && loaded.type == field.type;
+      });
+    }
+  }
+
+  private static class Scope {
+    final BasicBlock block;
+    final LoadState loads;
+    // Expressions added in this scope and the entries they shadow, used to restore the table.
+    final List<Wrapper<Instruction>> addedExpressions = new ArrayList<>();
+    final List<Value> shadowedValues = new ArrayList<>();
+    boolean addedExceptionalDominator = false;
+    int nextChild = 0;
+
+    Scope(BasicBlock block, LoadState loads) {
+      this.block = block;
+      this.loads = loads;
+    }
+  }
+
+  private final AppInfo appInfo;
+  private final IRCode code;
+  private final DexType holder;
+  private final DominatorTree dominatorTree;
+  private final ExpressionEquivalence equivalence = new ExpressionEquivalence();
+  // Expressions available in the block being processed.
+  private final Map<Wrapper<Instruction>, Value> expressions = new HashMap<>();
+  // Blocks with catch handlers dominating the block being processed where the path from the
+  // block can go through an exceptional edge. Values defined after the throwing instruction in
+  // these blocks are not available.
+  private final Set<BasicBlock> exceptionalDominators = Sets.newIdentityHashSet();
+  private LoopStructure loopStructure = null;
+  private boolean changed = false;
+
+  public GlobalValueNumbering(AppInfo appInfo, IRCode code) {
+    this.appInfo = appInfo;
+    this.code = code;
+    this.holder = code.method.method.getHolder();
+    this.dominatorTree = new DominatorTree(code);
+  }
+
+  /**
+   * Run value numbering and return true if the code was changed.
+   */
+  public boolean run() {
+    BasicBlock[] sorted = dominatorTree.getSortedBlocks();
+    List<List<BasicBlock>> children = new ArrayList<>(sorted.length);
+    for (int i = 0; i < sorted.length; i++) {
+      children.add(new ArrayList<>());
+    }
+    for (int i = 1; i < sorted.length; i++) {
+      children.get(dominatorTree.immediateDominator(sorted[i]).getNumber()).add(sorted[i]);
+    }
+    Deque<Scope> stack = new ArrayDeque<>();
+    stack.push(enter(new Scope(sorted[0], new LoadState())));
+    while (!stack.isEmpty()) {
+      Scope scope = stack.peek();
+      List<BasicBlock> blockChildren = children.get(scope.block.getNumber());
+      if (scope.nextChild < blockChildren.size()) {
+        BasicBlock child = blockChildren.get(scope.nextChild++);
+        boolean normalEdge = child.getPredecessors().size() == 1
+            && child.getPredecessors().get(0) == scope.block
+            && !scope.block.hasCatchSuccessor(child);
+        Scope childScope =
+            new Scope(child, normalEdge ? new LoadState(scope.loads) : new LoadState());
+        if (!normalEdge && scope.block.hasCatchHandlers()) {
+          childScope.addedExceptionalDominator = exceptionalDominators.add(scope.block);
+        }
+        stack.push(enter(childScope));
+      } else {
+        stack.pop();
+        for (int i = scope.addedExpressions.size() - 1; i >= 0; i--) {
+          Wrapper<Instruction> expression = scope.addedExpressions.get(i);
+          Value shadowed = scope.shadowedValues.get(i);
+          if (shadowed == null) {
+            expressions.remove(expression);
+          } else {
+            expressions.put(expression, shadowed);
+          }
+        }
+        if (scope.addedExceptionalDominator) {
+          exceptionalDominators.remove(scope.block);
+        }
+      }
+    }
+    assert code.isConsistentSSA();
+    return changed;
+  }
+
+  private Scope enter(Scope scope) {
+    InstructionListIterator iterator = scope.block.listIterator();
+    while (iterator.hasNext()) {
+      Instruction instruction = iterator.next();
+      if (instruction.isBinop()
+          || instruction.isUnop()
+          || instruction.isInstanceOf()
+          || instruction.isCheckCast()
+          || instruction.isArrayLength()
+          || instruction.isConstNumber()) {
+        numberExpression(instruction, iterator, scope);
+      } else if (instruction.isInstanceGet() || instruction.isStaticGet()) {
+        numberLoad(instruction, iterator, scope.loads);
+      } else {
+        updateLoadState(instruction, scope.loads);
+      }
+    }
+    return scope;
+  }
+
+  private static boolean hasLocalInfo(Instruction instruction) {
+    // If the instruction has input or output values then it is not safe to share it.
+    return instruction.getLocalInfo() != null || instruction.hasInValueWithLocalInfo();
+  }
+
+  private void replace(Instruction instruction, Value value, InstructionListIterator iterator) {
+    instruction.outValue().replaceUsers(value);
+    iterator.removeOrReplaceByDebugLocalRead();
+    changed = true;
+  }
+
+  private void numberExpression(
+      Instruction instruction, InstructionListIterator iterator, Scope scope) {
+    if (hasLocalInfo(instruction) || instruction.outValue() == null) {
+      return;
+    }
+    Wrapper<Instruction> key = equivalence.wrap(instruction);
+    Value candidate = expressions.get(key);
+    if (candidate != null) {
+      Instruction definition = candidate.definition;
+      if (isAvailable(definition)
+          && shareCatchHandlers(instruction, definition)
+          && (!instruction.isConstNumber() || inLoopOf(instruction, definition))) {
+        replace(instruction, candidate, iterator);
+        return;
+      }
+    }
+    // Make this instruction the candidate for the blocks it dominates.
+    expressions.put(key, instruction.outValue());
+    scope.addedExpressions.add(key);
+    scope.shadowedValues.add(candidate);
+  }
+
+  private void numberLoad(Instruction load, InstructionListIterator iterator, LoadState state) {
+    DexEncodedField target = load.isInstanceGet()
+        ? lookupInstanceTarget(load.asInstanceGet().getField())
+        : lookupStaticTarget(load.asStaticGet().getField());
+    if (target == null || target.accessFlags.isVolatile()) {
+      // Unknown and volatile loads can observe writes from other threads.
+      state.killAll();
+      return;
+    }
+    if (load.isStaticGet()) {
+      ensureInitialized(target.field.getHolder(), state);
+    }
+    if (hasLocalInfo(load) || load.outValue() == null) {
+      return;
+    }
+    Wrapper<Instruction> key = equivalence.wrap(load);
+    Value candidate = state.loads.get(key);
+    if (candidate == null) {
+      state.loads.put(key, load.outValue());
+    } else {
+      // The load cannot throw, as an equivalent load has already succeeded.
+      replace(load, candidate, iterator);
+    }
+  }
+
+  private void updateLoadState(Instruction instruction, LoadState state) {
+    if (instruction.isInstancePut()) {
+      InstancePut put = instruction.asInstancePut();
+      DexEncodedField target = lookupInstanceTarget(put.getField());
+      if (target == null || target.accessFlags.isVolatile()) {
+        state.killAll();
+      } else {
+        state.killField(put.getField(), false);
+      }
+    } else if (instruction.isStaticPut()) {
+      StaticPut put = instruction.asStaticPut();
+      DexEncodedField target = lookupStaticTarget(put.getField());
+      if (target == null || target.accessFlags.isVolatile()) {
+        state.killAll();
+      } else {
+        ensureInitialized(target.field.getHolder(), state);
+        state.killField(put.getField(), true);
+      }
+    } else if (instruction.isNewInstance()) {
+      ensureInitialized(instruction.asNewInstance().clazz, state);
+    } else if ((instruction.isInvoke() && !instruction.isInvokeNewArray())
+        || instruction.isMonitor()) {
+      state.killAll();
+    }
+  }
+
+  private DexEncodedField lookupInstanceTarget(DexField field) {
+    return appInfo.lookupInstanceTarget(field.getHolder(), field);
+  }
+
+  private DexEncodedField lookupStaticTarget(DexField field) {
+    return appInfo.lookupStaticTarget(field.getHolder(), field);
+  }
+
+  private void ensureInitialized(DexType clazz, LoadState state) {
+    // Class initialization can run arbitrary code.
+    if (clazz != holder && state.initializedClasses.add(clazz)) {
+      state.killAll();
+    }
+  }
+
+  private boolean isAvailable(Instruction definition) {
+    BasicBlock block = definition.getBlock();
+    if (!exceptionalDominators.contains(block)) {
+      return true;
+    }
+    // Only values defined before the throwing instruction are available on exceptional edges.
+    for (Instruction instruction : block.getInstructions()) {
+      if (instruction == definition) {
+        return !instruction.instructionTypeCanThrow();
+      }
+      if (instruction.instructionTypeCanThrow()) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  private boolean shareCatchHandlers(Instruction i0, Instruction i1) {
+    if (!i0.instructionTypeCanThrow()) {
+      assert !i1.instructionTypeCanThrow();
+      return true;
+    }
+    assert i1.instructionTypeCanThrow();
+    // TODO(sgjesse): This could be even better by checking for the exceptions thrown, e.g. div
+    // and rem only ever throw ArithmeticException.
+    CatchHandlers<BasicBlock> ch0 = i0.getBlock().getCatchHandlers();
+    CatchHandlers<BasicBlock> ch1 = i1.getBlock().getCatchHandlers();
+    return ch0.equals(ch1);
+  }
+
+  private boolean inLoopOf(Instruction instruction, Instruction definition) {
+    if (loopStructure == null) {
+      loopStructure = new LoopStructure(code, dominatorTree);
+    }
+    return loopStructure.getLoopDepth(instruction.getBlock())
+        > loopStructure.getLoopDepth(definition.getBlock());
+  }
+}
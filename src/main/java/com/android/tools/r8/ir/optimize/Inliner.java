@@ -29,6 +29,7 @@ import com.android.tools.r8.ir.conversion.IRConverter;
 import com.android.tools.r8.ir.conversion.LensCodeRewriter;
 import com.android.tools.r8.ir.conversion.OptimizationFeedback;
 import com.android.tools.r8.logging.Log;
+import com.android.tools.r8.utils.InliningProfile;
 import com.android.tools.r8.utils.InternalOptions;
 import com.google.common.collect.Sets;
 import java.util.ArrayList;
@@ -37,6 +38,7 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -52,12 +54,66 @@ public class Inliner {
   private final Set<DexEncodedMethod> doubleInlineSelectedTargets = Sets.newIdentityHashSet();
   private final Map<DexEncodedMethod, DexEncodedMethod> doubleInlineeCandidates = new HashMap<>();
 
+  private final AtomicLong numberOfInlinedMethods = new AtomicLong();
+  // Instructions used for inlining at hot call sites. Only methods with hot call sites use the
+  // budget, and they are processed one after another (see usesHotInliningBudget), so the budget
+  // is used the same way regardless of the number of threads.
+  private int usedHotInliningBudget = 0;
+
   public Inliner(AppInfoWithSubtyping appInfo, GraphLense graphLense, InternalOptions options) {
     this.appInfo = appInfo;
     this.graphLense = graphLense;
     this.options = options;
   }
 
+  public long getNumberOfInlinedMethods() {
+    return numberOfInlinedMethods.get();
+  }
+
+  public boolean hasInliningProfile() {
+    return !options.inliningProfile.isEmpty();
+  }
+
+  public long getUsedHotInliningBudget() {
+    return usedHotInliningBudget;
+  }
+
+  /**
+   * True if the method may inline at hot call sites, and must therefore not be processed
+   * concurrently with other such methods.
+   */
+  public boolean usesHotInliningBudget(DexEncodedMethod method) {
+    return hasInliningProfile() && options.inliningProfile.hasHotCallSites(method.method);
+  }
+
+  boolean isHotCallSite(DexEncodedMethod method, InvokeMethod invoke, DexEncodedMethod target) {
+    InliningProfile profile = options.inliningProfile;
+    return profile.isHotCallSite(method.method, invoke.getInvokedMethod())
+        || profile.isHotCallSite(method.method, target.method);
+  }
+
+  boolean hasHotInliningBudget(int size) {
+    return usedHotInliningBudget + size <= options.hotInliningBudget;
+  }
+
+  // Take the size of the target of an inline at a hot call site from the hot inlining budget, if
+  // the inline uses the budget. This is done right before inlining, so that budget is only used
+  // for inlines that are performed.
+  private boolean reserveHotInliningBudget(InlineAction action) {
+    if (action.reason != Reason.HOT) {
+      return true;
+    }
+    int size = action.target.getCode().estimatedSizeForInlining();
+    if (!InliningOracle.usesHotInliningBudget(size)) {
+      return true;
+    }
+    if (!hasHotInliningBudget(size)) {
+      return false;
+    }
+    usedHotInliningBudget += size;
+    return true;
+  }
+
   private Constraint instructionAllowedForInlining(
       DexEncodedMethod method, Instruction instruction) {
     Constraint result = instruction.inliningConstraint(appInfo, method.method.holder);
@@ -210,6 +266,7 @@ public class Inliner {
     ALWAYS,        // Inlinee is marked for inlining due to alwaysinline directive.
     SINGLE_CALLER, // Inlinee has precisely one caller.
     DUAL_CALLER,   // Inlinee has precisely two callers.
+    HOT,           // Inlinee is called from a hot call site of the inlining profile.
     SIMPLE,        // Inlinee has simple code suitable for inlining.
   }
 
@@ -226,7 +283,8 @@ public class Inliner {
     }
 
     boolean ignoreInstructionBudget() {
-      return reason != Reason.SIMPLE;
+      // Inlining at hot call sites is limited by both the global and the per method budget.
+      return reason != Reason.SIMPLE && reason != Reason.HOT;
     }
 
     public IRCode buildIR(ValueNumberGenerator generator, AppInfoWithSubtyping appInfo,
@@ -388,12 +446,20 @@ public class Inliner {
                   downcast = result.target.method.getHolder();
                 }
               }
+              int inlineeInstructions = numberOfInstructions(inlinee);
+              boolean withinAllowance = instruction_allowance >= inlineeInstructions
+                  || result.ignoreInstructionBudget();
+              if (withinAllowance && !reserveHotInliningBudget(result)) {
+                // An earlier inline used the rest of the hot inlining budget.
+                continue;
+              }
               // Inline the inlinee code in place of the invoke instruction
               // Back up before the invoke instruction.
               iterator.previous();
-              instruction_allowance -= numberOfInstructions(inlinee);
-              if (instruction_allowance >= 0 || result.ignoreInstructionBudget()) {
+              instruction_allowance -= inlineeInstructions;
+              if (withinAllowance) {
                 iterator.inlineInvoke(code, inlinee, blockIterator, blocksToRemove, downcast);
+                numberOfInlinedMethods.incrementAndGet();
               }
               // If we inlined the invoke from a bridge method, it is no longer a bridge method.
               if (method.accessFlags.isBridge()) {
@@ -7,6 +7,7 @@ import com.android.tools.r8.graph.DexEncodedMethod;
 import com.android.tools.r8.graph.DexMethod;
 import com.android.tools.r8.ir.code.Invoke.Type;
 import com.android.tools.r8.ir.code.InvokeMethod;
+import com.android.tools.r8.ir.optimize.Inliner.Reason;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -40,13 +41,17 @@ public class InliningInfo {
 
   static class Inlining extends Node {
     final DexEncodedMethod target;
+    final Reason reason;
 
-    Inlining(DexEncodedMethod target) {
+    Inlining(DexEncodedMethod target, Reason reason) {
       this.target = target;
+      this.reason = reason;
     }
 
     void appendOn(StringBuffer buffer) {
-      buffer.append("<< INLINED");
+      buffer.append("<< INLINED (");
+      buffer.append(reason);
+      buffer.append(')');
     }
   }
 
@@ -71,8 +76,8 @@ public class InliningInfo {
     this.method = method;
   }
 
-  public void include(Type type, DexEncodedMethod target) {
-    edges.add(new Edge(type, target.method, new Inlining(target)));
+  public void include(Type type, DexEncodedMethod target, Reason reason) {
+    edges.add(new Edge(type, target.method, new Inlining(target, reason)));
   }
 
   public void exclude(InvokeMethod invoke, String reason) {
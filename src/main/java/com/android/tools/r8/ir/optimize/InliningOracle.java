@@ -24,6 +24,13 @@ import java.util.function.Predicate;
 public class InliningOracle {
 
   private static final int INLINING_INSTRUCTION_LIMIT = 5;
+  // Larger methods are inlined at hot call sites, paid for by the global hot inlining budget.
+  private static final int HOT_INLINING_INSTRUCTION_LIMIT = 50;
+
+  // Inlines at hot call sites of methods that are not simple are paid for by the budget.
+  static boolean usesHotInliningBudget(int size) {
+    return size > INLINING_INSTRUCTION_LIMIT;
+  }
 
   private final Inliner inliner;
   private final DexEncodedMethod method;
@@ -62,7 +69,7 @@ public class InliningOracle {
     return candidate;
   }
 
-  private Reason computeInliningReason(DexEncodedMethod target) {
+  private Reason computeInliningReason(InvokeMethod invoke, DexEncodedMethod target) {
     if (target.getOptimizationInfo().forceInline()) {
       return Reason.FORCE;
     }
@@ -76,6 +83,9 @@ public class InliningOracle {
     if (isDoubleInliningTarget(target)) {
       return Reason.DUAL_CALLER;
     }
+    if (inliner.hasInliningProfile() && inliner.isHotCallSite(method, invoke, target)) {
+      return Reason.HOT;
+    }
     return Reason.SIMPLE;
   }
 
@@ -165,6 +175,23 @@ public class InliningOracle {
         return false;
       }
     }
+
+    if (reason == Reason.HOT) {
+      // Methods that are not simple are only inlined at hot call sites while there is budget.
+      int size = candidate.getCode().estimatedSizeForInlining();
+      if (size > HOT_INLINING_INSTRUCTION_LIMIT) {
+        if (info != null) {
+          info.exclude(invoke, "target is too large for inlining at hot call site");
+        }
+        return false;
+      }
+      if (usesHotInliningBudget(size) && !inliner.hasHotInliningBudget(size)) {
+        if (info != null) {
+          info.exclude(invoke, "hot inlining budget is exhausted");
+        }
+        return false;
+      }
+    }
     return true;
   }
 
@@ -181,7 +208,7 @@ public class InliningOracle {
       return null;
     }
 
-    Reason reason = computeInliningReason(candidate);
+    Reason reason = computeInliningReason(invoke, candidate);
     if (!candidate.isInliningCandidate(method, reason, inliner.appInfo)) {
       // Abort inlining attempt if the single target is not an inlining candidate.
       if (info != null) {
@@ -195,7 +222,7 @@ public class InliningOracle {
     }
 
     if (info != null) {
-      info.include(invoke.getType(), candidate);
+      info.include(invoke.getType(), candidate, reason);
     }
     return new InlineAction(candidate, invoke, reason);
   }
@@ -206,7 +233,7 @@ public class InliningOracle {
       return null;
     }
 
-    Reason reason = computeInliningReason(candidate);
+    Reason reason = computeInliningReason(invoke, candidate);
     // Determine if this should be inlined no matter how big it is.
     if (!candidate.isInliningCandidate(method, reason, inliner.appInfo)) {
       // Abort inlining attempt if the single target is not an inlining candidate.
@@ -229,7 +256,7 @@ public class InliningOracle {
     }
 
     if (info != null) {
-      info.include(invoke.getType(), candidate);
+      info.include(invoke.getType(), candidate, reason);
     }
     return new InlineAction(candidate, invoke, reason);
   }
@@ -0,0 +1,217 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import com.android.tools.r8.graph.AppInfo;
+import com.android.tools.r8.graph.DexEncodedField;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.graph.DexField;
+import com.android.tools.r8.ir.code.BasicBlock;
+import com.android.tools.r8.ir.code.DominatorTree;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.InstructionListIterator;
+import com.android.tools.r8.ir.code.LoopStructure;
+import com.android.tools.r8.ir.code.LoopStructure.Loop;
+import com.android.tools.r8.ir.code.Value;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loop-invariant code motion.
+ *
+ * <p>Instructions in a loop which compute the same value in every iteration are moved to the
+ * preheader of the loop, see {@link Loop#getPreheader}. Inner loops are processed before the loops
+ * containing them, so an instruction is moved out of all the loops it is invariant in. An
+ * instruction is invariant if all its in-values are defined outside the loop, and it is one of:
+ * <ul>
+ *   <li>a constant, binop, unop, array-length, instance-of or check-cast.</li>
+ *   <li>a load of a final field, except in the initializers of its holder, or of a field that is
+ *   not written in the loop, when the loop has no invokes, monitors or class initializations.
+ *   Volatile fields are never moved.</li>
+ * </ul>
+ * An instruction that can throw is only moved if it is in the loop header and only instructions
+ * without side effects come before it in the header, so it is executed on entry to the loop
+ * anyway, and if neither the header nor the preheader has catch handlers. Instructions with debug
+ * local information are not moved.
+ */
+public class LoopInvariantCodeMotion {
+
+  private final AppInfo appInfo;
+  private final DexEncodedMethod method;
+  private final IRCode code;
+
+  public LoopInvariantCodeMotion(AppInfo appInfo, IRCode code) {
+    this.appInfo = appInfo;
+    this.method = code.method;
+    this.code = code;
+  }
+
+  /**
+   * Move the invariant instructions out of all loops and return true if the code was changed.
+   */
+  public boolean run() {
+    DominatorTree dominatorTree = new DominatorTree(code);
+    LoopStructure loopStructure = new LoopStructure(code, dominatorTree);
+    boolean changed = false;
+    for (Loop loop : Lists.reverse(loopStructure.getLoops())) {
+      BasicBlock preheader = loop.getPreheader();
+      if (preheader != null) {
+        changed |= hoist(loop, preheader, dominatorTree.getSortedBlocks());
+      }
+    }
+    assert code.isConsistentSSA();
+    return changed;
+  }
+
+  private boolean hoist(Loop loop, BasicBlock preheader, BasicBlock[] sorted) {
+    FieldWrites writes = new FieldWrites(loop);
+    boolean allowThrowing = !loop.getHeader().hasCatchHandlers() && !preheader.hasCatchHandlers();
+    Set<Instruction> hoisted = Sets.newIdentityHashSet();
+    List<Instruction> moved = new ArrayList<>();
+    // Visit the blocks in reverse postorder, so in-values are visited before their users.
+    for (BasicBlock block : sorted) {
+      if (!loop.contains(block)) {
+        continue;
+      }
+      // Instructions that can throw are only moved from the start of the header.
+      boolean canMoveThrowing = allowThrowing && block == loop.getHeader();
+      InstructionListIterator iterator = block.listIterator();
+      while (iterator.hasNext()) {
+        Instruction instruction = iterator.next();
+        boolean canThrow = canThrow(instruction);
+        if (isInvariant(instruction, loop, hoisted, writes)
+            && (!canThrow || canMoveThrowing)) {
+          iterator.detach();
+          hoisted.add(instruction);
+          moved.add(instruction);
+        } else if (canThrow || !isSideEffectFree(instruction)) {
+          canMoveThrowing = false;
+        }
+      }
+    }
+    if (moved.isEmpty()) {
+      return false;
+    }
+    InstructionListIterator iterator =
+        preheader.listIterator(preheader.getInstructions().size() - 1);
+    for (Instruction instruction : moved) {
+      iterator.add(instruction);
+    }
+    return true;
+  }
+
+  private boolean isInvariant(
+      Instruction instruction, Loop loop, Set<Instruction> hoisted, FieldWrites writes) {
+    if (instruction.outValue() == null
+        || instruction.getLocalInfo() != null
+        || instruction.hasInValueWithLocalInfo()
+        || !instruction.getDebugValues().isEmpty()) {
+      return false;
+    }
+    for (Value value : instruction.inValues()) {
+      BasicBlock block = value.isPhi() ? value.asPhi().getBlock() : value.definition.getBlock();
+      if (loop.contains(block) && (value.isPhi() || !hoisted.contains(value.definition))) {
+        return false;
+      }
+    }
+    if (instruction.isConstNumber()
+        || instruction.isConstString()
+        || instruction.isConstClass()
+        || instruction.isBinop()
+        || instruction.isUnop()
+        || instruction.isArrayLength()
+        || instruction.isInstanceOf()
+        || instruction.isCheckCast()) {
+      return true;
+    }
+    if (instruction.isInstanceGet() || instruction.isStaticGet()) {
+      DexEncodedField target = lookupTarget(instruction);
+      return target != null
+          && !target.accessFlags.isVolatile()
+          && !writes.mayWrite(target);
+    }
+    return false;
+  }
+
+  private boolean canThrow(Instruction instruction) {
+    if (instruction.isInstanceGet()) {
+      return !instruction.asInstanceGet().object().isNeverNull();
+    }
+    if (instruction.isArrayLength()) {
+      return !instruction.asArrayLength().array().isNeverNull();
+    }
+    if (instruction.isStaticGet()) {
+      // Only the class initialization of other classes can throw.
+      return !isHolderStaticField(lookupTarget(instruction));
+    }
+    return instruction.instructionInstanceCanThrow();
+  }
+
+  private boolean isHolderStaticField(DexEncodedField target) {
+    return target != null && target.field.getHolder() == method.method.getHolder();
+  }
+
+  private static boolean isSideEffectFree(Instruction instruction) {
+    return instruction.isConstNumber() || instruction.isBinop() || instruction.isUnop();
+  }
+
+  private DexEncodedField lookupTarget(Instruction instruction) {
+    if (instruction.isInstanceGet() || instruction.isInstancePut()) {
+      DexField field = instruction.isInstanceGet()
+          ? instruction.asInstanceGet().getField()
+          : instruction.asInstancePut().getField();
+      return appInfo.lookupInstanceTarget(field.getHolder(), field);
+    }
+    DexField field = instruction.isStaticGet()
+        ? instruction.asStaticGet().getField()
+        : instruction.asStaticPut().getField();
+    return appInfo.lookupStaticTarget(field.getHolder(), field);
+  }
+
+  /** The fields that may be written while executing a loop. */
+  private class FieldWrites {
+
+    private final Set<DexEncodedField> writtenFields = Sets.newIdentityHashSet();
+    private boolean mayWriteAnyField = false;
+
+    FieldWrites(Loop loop) {
+      for (BasicBlock block : loop.getBlocks()) {
+        for (Instruction instruction : block.getInstructions()) {
+          if (instruction.isInstancePut() || instruction.isStaticPut()) {
+            DexEncodedField target = lookupTarget(instruction);
+            if (target == null) {
+              mayWriteAnyField = true;
+            } else {
+              writtenFields.add(target);
+            }
+          }
+          // Invokes and class initializers of other classes can run any code.
+          if (instruction.isInvoke()
+              || instruction.isMonitor()
+              || instruction.isNewInstance()
+              || ((instruction.isStaticGet() || instruction.isStaticPut())
+                  && !isHolderStaticField(lookupTarget(instruction)))) {
+            mayWriteAnyField = true;
+          }
+        }
+      }
+    }
+
+    boolean mayWrite(DexEncodedField field) {
+      if (field.accessFlags.isFinal() && !isInitializerOf(field)) {
+        return false;
+      }
+      return mayWriteAnyField || writtenFields.contains(field);
+    }
+
+    private boolean isInitializerOf(DexEncodedField field) {
+      return method.method.getHolder() == field.field.getHolder()
+          && (method.isInstanceInitializer() || method.isClassInitializer());
+    }
+  }
+}
@@ -15,16 +15,19 @@ import com.android.tools.r8.graph.DexType;
 import com.android.tools.r8.ir.code.ConstNumber;
 import com.android.tools.r8.ir.code.ConstType;
 import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.InstanceGet;
 import com.android.tools.r8.ir.code.InstancePut;
 import com.android.tools.r8.ir.code.Instruction;
 import com.android.tools.r8.ir.code.InstructionIterator;
 import com.android.tools.r8.ir.code.InvokeMethod;
+import com.android.tools.r8.ir.code.InvokeVirtual;
 import com.android.tools.r8.ir.code.MoveType;
 import com.android.tools.r8.ir.code.StaticGet;
 import com.android.tools.r8.ir.code.StaticPut;
 import com.android.tools.r8.ir.code.Value;
 import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
 import com.android.tools.r8.shaking.ProguardMemberRule;
+import com.google.common.collect.ImmutableList;
 
 public class MemberValuePropagation {
 
@@ -178,13 +181,32 @@ public class MemberValuePropagation {
             }
           }
         }
+      } else if (current.isInstanceGet()) {
+        InstanceGet instanceGet = current.asInstanceGet();
+        DexField field = instanceGet.getField();
+        DexEncodedField target = appInfo.lookupInstanceTarget(field.getHolder(), field);
+        if (target != null && isConstantField(target)) {
+          Instruction replacement = constantFieldReplacement(code, target, instanceGet);
+          if (instanceGet.object().isNeverNull()) {
+            iterator.replaceCurrentInstruction(replacement);
+          } else {
+            // Keep the NullPointerException of the read by checking the object for null.
+            instanceGet.outValue().replaceUsers(replacement.outValue());
+            iterator.replaceCurrentInstruction(new InvokeVirtual(
+                appInfo.dexItemFactory.objectMethods.getClass,
+                null,
+                ImmutableList.of(instanceGet.object())));
+            iterator.add(replacement);
+          }
+        }
       } else if (current.isInstancePut()) {
         InstancePut instancePut = current.asInstancePut();
         DexField field = instancePut.getField();
         DexEncodedField target = appInfo.lookupInstanceTarget(field.getHolder(), field);
         if (target != null) {
-          // Remove writes to dead (i.e. never read) fields.
-          if (!isFieldRead(target, false) && instancePut.object().isNeverNull()) {
+          // Remove writes to dead (i.e. never read) fields and to fields with a constant value.
+          if ((!isFieldRead(target, false) || isConstantField(target))
+              && instancePut.object().isNeverNull()) {
             iterator.remove();
           }
         }
@@ -207,6 +229,8 @@ public class MemberValuePropagation {
             // If no const replacement was found, at least store the range information.
             if (lookup != null) {
               setValueRangeFromProguardRule(lookup.rule, staticGet.dest());
+            } else if (isConstantField(target)) {
+              replacement = constantFieldReplacement(code, target, staticGet);
             }
           }
           if (replacement != null) {
@@ -223,8 +247,8 @@ public class MemberValuePropagation {
         DexField field = staticPut.getField();
         DexEncodedField target = appInfo.lookupStaticTarget(field.getHolder(), field);
         if (target != null) {
-          // Remove writes to dead (i.e. never read) fields.
-          if (!isFieldRead(target, true)) {
+          // Remove writes to dead (i.e. never read) fields and to fields with a constant value.
+          if (!isFieldRead(target, true) || isConstantField(target)) {
             iterator.remove();
           }
         }
@@ -233,6 +257,22 @@ public class MemberValuePropagation {
     assert code.isConsistentSSA();
   }
 
+  private boolean isConstantField(DexEncodedField field) {
+    return liveSet != null && ConstantFieldCollector.getConstantFor(field.field, liveSet) != null;
+  }
+
+  private Instruction constantFieldReplacement(
+      IRCode code, DexEncodedField field, Instruction read) {
+    long constant = ConstantFieldCollector.getConstantFor(field.field, liveSet);
+    MoveType moveType = read.outType();
+    if (moveType == MoveType.OBJECT) {
+      assert constant == 0;
+      moveType = MoveType.SINGLE;
+    }
+    Value value = code.createValue(moveType, read.getLocalInfo());
+    return new ConstNumber(ConstType.fromMoveType(moveType), value, constant);
+  }
+
   private boolean isFieldRead(DexEncodedField field, boolean isStatic) {
     // Without live set information we cannot tell and assume true.
     if (liveSet == null
@@ -0,0 +1,398 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import com.android.tools.r8.ApiLevelException;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexCallSite;
+import com.android.tools.r8.graph.DexClass;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.graph.DexField;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.graph.DexMethodHandle;
+import com.android.tools.r8.graph.DexProgramClass;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.graph.DexValue;
+import com.android.tools.r8.graph.DexValue.DexValueMethodHandle;
+import com.android.tools.r8.graph.GraphLense;
+import com.android.tools.r8.graph.UseRegistry;
+import com.android.tools.r8.ir.code.Argument;
+import com.android.tools.r8.ir.code.BasicBlock;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.InstructionIterator;
+import com.android.tools.r8.ir.code.InstructionListIterator;
+import com.android.tools.r8.ir.code.Invoke.Type;
+import com.android.tools.r8.ir.code.InvokeMethodWithReceiver;
+import com.android.tools.r8.ir.code.InvokeStatic;
+import com.android.tools.r8.ir.code.InvokeVirtual;
+import com.android.tools.r8.ir.code.Value;
+import com.android.tools.r8.ir.conversion.LensCodeRewriter;
+import com.android.tools.r8.ir.regalloc.LinearScanRegisterAllocator;
+import com.android.tools.r8.logging.Log;
+import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
+import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Makes virtual methods that do not use their receiver static.
+ *
+ * <p>A virtual method of a program class is made static if it is not kept, native, synchronized
+ * or a bridge, does not override a method of a supertype, does not implement an interface method
+ * for any subclass of its class, is not overridden, is not referenced by method handles and does
+ * not use its receiver. The receiver argument is removed from the code of the method, and all
+ * virtual and super calls of the method are rewritten to static calls. A receiver that may be null
+ * is checked for null before the call, to keep throwing the NullPointerException. The method keeps
+ * its name and signature, so it keeps its entry in the mapping file.
+ *
+ * <p>Methods of classes with a non-trivial class initializer are not made static, as static calls
+ * to other classes are only inlined when they cannot trigger class initialization.
+ */
+public class MethodStaticizer {
+
+  private final DexApplication application;
+  private final AppInfoWithLiveness appInfo;
+  private final GraphLense graphLense;
+  private final InternalOptions options;
+  private final DexItemFactory factory;
+
+  // The methods to make static.
+  private final Set<DexEncodedMethod> candidates = Sets.newIdentityHashSet();
+  // Candidates found to not be eligible while processing methods concurrently.
+  private final Set<DexEncodedMethod> ineligible = Sets.newConcurrentHashSet();
+
+  public MethodStaticizer(DexApplication application, AppInfoWithLiveness appInfo,
+      GraphLense graphLense, InternalOptions options) {
+    this.application = application;
+    this.appInfo = appInfo;
+    this.graphLense = graphLense;
+    this.options = options;
+    this.factory = appInfo.dexItemFactory;
+  }
+
+  /**
+   * Make all methods static that can be made static and rewrite their calls.
+   */
+  public void run(ExecutorService executorService) throws ExecutionException {
+    for (DexProgramClass clazz : application.classes()) {
+      if (clazz.isInterface() || clazz.hasNonTrivialClassInitializer()) {
+        continue;
+      }
+      for (DexEncodedMethod method : clazz.virtualMethods()) {
+        if (isCandidate(method)) {
+          candidates.add(method);
+        }
+      }
+    }
+    if (candidates.isEmpty()) {
+      return;
+    }
+    ThreadUtils.processItems(candidates, this::checkReceiverUnused, executorService);
+    removeIneligibleCandidates();
+    if (candidates.isEmpty()) {
+      return;
+    }
+
+    // Method handles of candidates prevent making them static.
+    List<DexEncodedMethod> callers = collectCallers();
+    ThreadUtils.processItems(callers, this::checkMethodHandles, executorService);
+    removeIneligibleCandidates();
+    if (candidates.isEmpty()) {
+      return;
+    }
+
+    // Rewrite the code of the candidates and their callers, then the definitions.
+    Set<DexEncodedMethod> methodsToRewrite = Sets.newIdentityHashSet();
+    methodsToRewrite.addAll(candidates);
+    methodsToRewrite.addAll(callers);
+    ThreadUtils.processItems(methodsToRewrite, this::rewrite, executorService);
+    for (DexProgramClass clazz : application.classes()) {
+      List<DexEncodedMethod> staticized = new ArrayList<>();
+      List<DexEncodedMethod> virtualMethods = new ArrayList<>();
+      for (DexEncodedMethod method : clazz.virtualMethods()) {
+        (candidates.contains(method) ? staticized : virtualMethods).add(method);
+      }
+      if (!staticized.isEmpty()) {
+        staticized.addAll(0, Arrays.asList(clazz.directMethods()));
+        clazz.setDirectMethods(staticized.toArray(new DexEncodedMethod[staticized.size()]));
+        clazz.setVirtualMethods(
+            virtualMethods.toArray(new DexEncodedMethod[virtualMethods.size()]));
+      }
+    }
+    if (Log.ENABLED) {
+      Log.info(getClass(), "Made %d methods static.", candidates.size());
+    }
+  }
+
+  private void removeIneligibleCandidates() {
+    candidates.removeAll(ineligible);
+  }
+
+  private boolean isCandidate(DexEncodedMethod method) {
+    if (method.accessFlags.isAbstract()
+        || method.accessFlags.isNative()
+        || method.accessFlags.isSynchronized()
+        || method.accessFlags.isBridge()
+        || method.getCode() == null
+        || appInfo.pinnedItems.contains(method)) {
+      return false;
+    }
+    Set<DexEncodedMethod> targets = appInfo.lookupVirtualTargets(method.method);
+    if (targets == null || targets.size() != 1 || !targets.contains(method)) {
+      return false;
+    }
+    // Neither the class nor its subclasses may inherit a method with the same signature.
+    DexType holder = method.method.getHolder();
+    Set<DexType> visited = Sets.newIdentityHashSet();
+    visited.add(holder);
+    if (mayInheritMethod(holder, method.method, visited)) {
+      return false;
+    }
+    Set<DexType> subtypes = appInfo.subtypes(holder);
+    if (subtypes != null) {
+      for (DexType subtype : subtypes) {
+        if (mayInheritMethod(subtype, method.method, visited)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  // Returns true if a supertype of the type may have a virtual method with the signature.
+  private boolean mayInheritMethod(DexType type, DexMethod method, Set<DexType> visited) {
+    DexClass clazz = appInfo.definitionFor(type);
+    if (clazz == null) {
+      return true;
+    }
+    List<DexType> supertypes = new ArrayList<>(Arrays.asList(clazz.interfaces.values));
+    if (clazz.superType != null) {
+      supertypes.add(clazz.superType);
+    }
+    for (DexType supertype : supertypes) {
+      if (!visited.add(supertype)) {
+        continue;
+      }
+      DexClass superClass = appInfo.definitionFor(supertype);
+      if (superClass == null
+          || superClass.findVirtualTarget(method) != null
+          || mayInheritMethod(supertype, method, visited)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void checkReceiverUnused(DexEncodedMethod method) throws ApiLevelException {
+    IRCode code = method.buildIR(options);
+    if (code == null || getReceiver(code).isUsed()) {
+      ineligible.add(method);
+    }
+  }
+
+  private static Value getReceiver(IRCode code) {
+    Instruction argument = code.blocks.getFirst().getInstructions().getFirst();
+    assert argument.isArgument() && argument.outValue().isThis();
+    return argument.outValue();
+  }
+
+  private List<DexEncodedMethod> collectCallers() {
+    List<DexEncodedMethod> result = new ArrayList<>();
+    for (DexProgramClass clazz : application.classes()) {
+      clazz.forEachMethod(method -> {
+        if (method.getCode() == null) {
+          return;
+        }
+        CallCollector collector = new CallCollector(method);
+        method.getCode().registerReachableDefinitions(collector);
+        if (collector.callsCandidate) {
+          result.add(method);
+        }
+      });
+    }
+    return result;
+  }
+
+  private DexEncodedMethod lookupCandidate(Type type, DexMethod method) {
+    DexEncodedMethod target = appInfo.lookup(type, method);
+    return target != null && candidates.contains(target) ? target : null;
+  }
+
+  private IRCode buildIR(DexEncodedMethod method) throws ApiLevelException {
+    IRCode code = method.buildIR(options);
+    if (code != null) {
+      new LensCodeRewriter(graphLense, appInfo).rewrite(code, method);
+    }
+    return code;
+  }
+
+  private void checkMethodHandles(DexEncodedMethod method) throws ApiLevelException {
+    IRCode code = buildIR(method);
+    InstructionIterator iterator = code.instructionIterator();
+    while (iterator.hasNext()) {
+      Instruction insn = iterator.next();
+      if (insn.isInvokeCustom()) {
+        DexCallSite callSite = insn.asInvokeCustom().getCallSite();
+        checkMethodHandle(callSite.bootstrapMethod);
+        for (DexValue argument : callSite.bootstrapArgs) {
+          if (argument instanceof DexValueMethodHandle) {
+            checkMethodHandle(((DexValueMethodHandle) argument).value);
+          }
+        }
+      }
+    }
+  }
+
+  private void checkMethodHandle(DexMethodHandle handle) {
+    if (handle.isMethodHandle() && handle.asMethod().getHolder().isClassType()) {
+      DexEncodedMethod target = lookupCandidate(Type.VIRTUAL, handle.asMethod());
+      if (target != null) {
+        ineligible.add(target);
+      }
+    }
+  }
+
+  private void rewrite(DexEncodedMethod method) throws ApiLevelException {
+    IRCode code = buildIR(method);
+    if (candidates.contains(method)) {
+      InstructionListIterator iterator = code.blocks.getFirst().listIterator();
+      Argument receiver = iterator.next().asArgument();
+      assert !receiver.outValue().isUsed();
+      iterator.remove();
+      method.accessFlags.setStatic();
+    }
+    rewriteInvokes(code);
+    assert code.isConsistentSSA();
+
+    DeadCodeRemover.removeDeadCode(code, new CodeRewriter(appInfo, ImmutableSet.of()), options);
+    LinearScanRegisterAllocator registerAllocator =
+        new LinearScanRegisterAllocator(code, options);
+    registerAllocator.allocateRegisters(false);
+    CodeRewriter.collapsTrivialGotos(method, code);
+    method.setCode(code, registerAllocator, factory);
+  }
+
+  private void rewriteInvokes(IRCode code) {
+    // Blocks are added while iterating when splitting blocks with catch handlers.
+    ListIterator<BasicBlock> blocks = code.blocks.listIterator();
+    while (blocks.hasNext()) {
+      BasicBlock block = blocks.next();
+      // The receivers already checked for null in the block.
+      Set<Value> checked = Sets.newIdentityHashSet();
+      InstructionListIterator iterator = block.listIterator();
+      while (iterator.hasNext()) {
+        Instruction current = iterator.next();
+        if (!current.isInvokeMethodWithReceiver()) {
+          continue;
+        }
+        InvokeMethodWithReceiver invoke = current.asInvokeMethodWithReceiver();
+        DexEncodedMethod target = lookupCandidate(invoke.getType(), invoke.getInvokedMethod());
+        if (target == null) {
+          continue;
+        }
+        Value receiver = invoke.getReceiver();
+        List<Value> arguments = invoke.inValues().subList(1, invoke.inValues().size());
+        iterator.replaceCurrentInstruction(
+            new InvokeStatic(target.method, invoke.outValue(), new ArrayList<>(arguments)));
+        if (!receiver.isNeverNull() && checked.add(receiver)) {
+          iterator.previous();
+          iterator.add(new InvokeVirtual(
+              factory.objectMethods.getClass, null, ImmutableList.of(receiver)));
+          // If the current block has catch handlers split the null check into its own block.
+          if (block.hasCatchHandlers()) {
+            iterator.previous();
+            iterator.split(1, code, blocks);
+            // The remaining instructions of the block, after the invoke, cannot throw.
+            break;
+          }
+          iterator.next();
+        }
+      }
+    }
+  }
+
+  private class CallCollector extends UseRegistry {
+
+    private final DexEncodedMethod context;
+    private boolean callsCandidate = false;
+
+    CallCollector(DexEncodedMethod context) {
+      this.context = context;
+    }
+
+    private boolean registerCall(Type type, DexMethod method) {
+      if (method.getHolder().isClassType()
+          && lookupCandidate(type, graphLense.lookupMethod(method, context)) != null) {
+        callsCandidate = true;
+      }
+      return false;
+    }
+
+    @Override
+    public boolean registerInvokeVirtual(DexMethod method) {
+      return registerCall(Type.VIRTUAL, method);
+    }
+
+    @Override
+    public boolean registerInvokeDirect(DexMethod method) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInvokeStatic(DexMethod method) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInvokeInterface(DexMethod method) {
+      return registerCall(Type.INTERFACE, method);
+    }
+
+    @Override
+    public boolean registerInvokeSuper(DexMethod method) {
+      return registerCall(Type.SUPER, method);
+    }
+
+    @Override
+    public boolean registerInstanceFieldWrite(DexField field) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInstanceFieldRead(DexField field) {
+      return false;
+    }
+
+    @Override
+    public boolean registerNewInstance(DexType type) {
+      return false;
+    }
+
+    @Override
+    public boolean registerStaticFieldRead(DexField field) {
+      return false;
+    }
+
+    @Override
+    public boolean registerStaticFieldWrite(DexField field) {
+      return false;
+    }
+
+    @Override
+    public boolean registerTypeReference(DexType type) {
+      return false;
+    }
+  }
+}
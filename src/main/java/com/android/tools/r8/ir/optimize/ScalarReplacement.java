@@ -0,0 +1,445 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import com.android.tools.r8.graph.AppInfo;
+import com.android.tools.r8.graph.DexClass;
+import com.android.tools.r8.graph.DexEncodedField;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.graph.DexField;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.ir.code.BasicBlock;
+import com.android.tools.r8.ir.code.ConstNumber;
+import com.android.tools.r8.ir.code.ConstType;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.InstanceGet;
+import com.android.tools.r8.ir.code.InstancePut;
+import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.InstructionListIterator;
+import com.android.tools.r8.ir.code.InvokeDirect;
+import com.android.tools.r8.ir.code.MoveType;
+import com.android.tools.r8.ir.code.NewInstance;
+import com.android.tools.r8.ir.code.Phi;
+import com.android.tools.r8.ir.code.Value;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Replaces allocations that do not escape the method by SSA values for their fields.
+ *
+ * <p>An allocation is replaced if its class is a program class without a non-trivial class
+ * initializer or a finalizer, which only extends Object, and the new instance is only initialized
+ * by a {@link TrivialInitializer} and used as the object of field reads and writes of the class.
+ * The values of the fields are then tracked through the method like local variables, with phis
+ * where the control flow merges, and the reads are replaced by the values. The allocation, the
+ * initializer call and the field accesses are removed.
+ *
+ * <p>Initializers processed concurrently with the method are not used, as whether they have been
+ * found trivial yet depends on the scheduling of the threads.
+ */
+public class ScalarReplacement {
+
+  /**
+   * The field values of the new instance of an instance initializer, which only calls the
+   * constructor of Object and assigns arguments and constants to the fields of its class, each at
+   * most once. The other fields of the class keep their default value.
+   */
+  public static class TrivialInitializer {
+
+    private final Map<DexField, Integer> fieldArguments;
+    private final Map<DexField, Long> fieldConstants;
+
+    private TrivialInitializer(
+        Map<DexField, Integer> fieldArguments, Map<DexField, Long> fieldConstants) {
+      this.fieldArguments = ImmutableMap.copyOf(fieldArguments);
+      this.fieldConstants = ImmutableMap.copyOf(fieldConstants);
+    }
+
+    /** The argument assigned to the field, with the receiver as argument 0, or -1 if none. */
+    public int getArgument(DexField field) {
+      return fieldArguments.getOrDefault(field, -1);
+    }
+
+    /** The constant assigned to the field, or 0 if the field is not assigned a constant. */
+    public long getConstant(DexField field) {
+      return fieldConstants.getOrDefault(field, 0L);
+    }
+  }
+
+  /** Returns the field values of the instance initializer, if it is trivial, otherwise null. */
+  public static TrivialInitializer computeTrivialInitializer(
+      AppInfo appInfo, DexEncodedMethod method, IRCode code) {
+    DexItemFactory factory = appInfo.dexItemFactory;
+    DexType holder = method.method.getHolder();
+    DexClass clazz = appInfo.definitionFor(holder);
+    if (!method.isInstanceInitializer()
+        || clazz == null
+        || clazz.superType != factory.objectType) {
+      return null;
+    }
+    List<Value> arguments = code.collectArguments();
+    Value receiver = arguments.get(0);
+    Map<DexField, Integer> fieldArguments = new IdentityHashMap<>();
+    Map<DexField, Long> fieldConstants = new IdentityHashMap<>();
+    boolean seenObjectInitializer = false;
+    for (BasicBlock block : code.blocks) {
+      if (!block.getPhis().isEmpty() || block.hasCatchHandlers()) {
+        return null;
+      }
+      for (Instruction instruction : block.getInstructions()) {
+        if (instruction.isArgument()
+            || instruction.isConstNumber()
+            || instruction.isGoto()
+            || instruction.isReturn()
+            || instruction.isDebugInstruction()) {
+          continue;
+        }
+        if (instruction.isInvokeDirect()) {
+          DexMethod target = instruction.asInvokeDirect().getInvokedMethod();
+          if (seenObjectInitializer
+              || target.getHolder() != factory.objectType
+              || !factory.isConstructor(target)
+              || instruction.inValues().get(0) != receiver) {
+            return null;
+          }
+          seenObjectInitializer = true;
+          continue;
+        }
+        if (!instruction.isInstancePut()) {
+          return null;
+        }
+        InstancePut put = instruction.asInstancePut();
+        DexEncodedField field = appInfo.lookupInstanceTarget(holder, put.getField());
+        Value value = put.value();
+        if (put.object() != receiver
+            || value == receiver
+            || field == null
+            || field.field.getHolder() != holder
+            || fieldArguments.containsKey(field.field)
+            || fieldConstants.containsKey(field.field)) {
+          return null;
+        }
+        if (value.isArgument()) {
+          fieldArguments.put(field.field, arguments.indexOf(value));
+        } else if (value.isConstNumber()) {
+          fieldConstants.put(
+              field.field, value.getConstInstruction().asConstNumber().getRawValue());
+        } else {
+          return null;
+        }
+      }
+    }
+    return seenObjectInitializer ? new TrivialInitializer(fieldArguments, fieldConstants) : null;
+  }
+
+  private final AppInfo appInfo;
+  private final IRCode code;
+  private final Predicate<DexEncodedMethod> isProcessedConcurrently;
+
+  public ScalarReplacement(
+      AppInfo appInfo, IRCode code, Predicate<DexEncodedMethod> isProcessedConcurrently) {
+    this.appInfo = appInfo;
+    this.code = code;
+    this.isProcessedConcurrently = isProcessedConcurrently;
+  }
+
+  /** Replace the allocations which do not escape and return true if the code was changed. */
+  public boolean run() {
+    List<NewInstance> candidates = new ArrayList<>();
+    for (BasicBlock block : code.blocks) {
+      for (Instruction instruction : block.getInstructions()) {
+        if (instruction.isNewInstance() && isCandidateClass(instruction.asNewInstance().clazz)) {
+          candidates.add(instruction.asNewInstance());
+        }
+      }
+    }
+    boolean changed = false;
+    for (NewInstance newInstance : candidates) {
+      Allocation allocation = analyze(newInstance);
+      if (allocation != null) {
+        allocation.replace();
+        changed = true;
+      }
+    }
+    assert code.isConsistentSSA();
+    return changed;
+  }
+
+  private boolean isCandidateClass(DexType type) {
+    DexClass clazz = appInfo.definitionFor(type);
+    if (clazz == null
+        || !clazz.isProgramClass()
+        || clazz.isInterface()
+        || clazz.accessFlags.isAbstract()
+        || clazz.superType != appInfo.dexItemFactory.objectType
+        || clazz.hasNonTrivialClassInitializer()) {
+      return false;
+    }
+    // Removing the allocation would also remove the call to the finalizer.
+    for (DexEncodedMethod method : clazz.virtualMethods()) {
+      DexMethod finalize = method.method;
+      if (finalize.name.toString().equals("finalize") && finalize.getArity() == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns the uses of the allocation if it does not escape, otherwise null. */
+  private Allocation analyze(NewInstance newInstance) {
+    Value object = newInstance.outValue();
+    if (object.getLocalInfo() != null
+        || object.numberOfPhiUsers() > 0
+        || object.debugUsers() != null && !object.debugUsers().isEmpty()) {
+      return null;
+    }
+    DexType type = newInstance.clazz;
+    Allocation allocation = new Allocation(newInstance);
+    for (Instruction user : object.uniqueUsers()) {
+      if (user.isInvokeDirect()) {
+        InvokeDirect invoke = user.asInvokeDirect();
+        if (allocation.initializer != null
+            || invoke.getBlock() != newInstance.getBlock()
+            || invoke.getReceiver() != object
+            || invoke.inValues().lastIndexOf(object) != 0) {
+          return null;
+        }
+        DexEncodedMethod target = appInfo.lookupDirectTarget(invoke.getInvokedMethod());
+        if (target == null
+            || target.method.getHolder() != type
+            || !target.isInstanceInitializer()
+            || isProcessedConcurrently.test(target)
+            || target.getOptimizationInfo().getTrivialInitializer() == null) {
+          return null;
+        }
+        allocation.initializer = invoke;
+        allocation.initializerInfo = target.getOptimizationInfo().getTrivialInitializer();
+      } else if (user.isInstanceGet()) {
+        InstanceGet get = user.asInstanceGet();
+        if (get.getLocalInfo() != null || !allocation.addField(get.getField())) {
+          return null;
+        }
+        allocation.gets.add(get);
+      } else if (user.isInstancePut()) {
+        InstancePut put = user.asInstancePut();
+        if (put.value() == object || !allocation.addField(put.getField())) {
+          return null;
+        }
+        allocation.puts.add(put);
+      } else {
+        return null;
+      }
+    }
+    if (allocation.initializer == null) {
+      return null;
+    }
+    // All other uses must come after the initialization. Uses in other blocks come after the end
+    // of the block of the allocation.
+    BasicBlock block = newInstance.getBlock();
+    boolean seenInitializer = false;
+    for (Instruction instruction : block.getInstructions()) {
+      if (instruction == allocation.initializer) {
+        seenInitializer = true;
+      } else if (!seenInitializer && instruction.inValues().contains(object)) {
+        return null;
+      }
+    }
+    return allocation;
+  }
+
+  /** A non-escaping allocation and the instructions using it. */
+  private class Allocation {
+
+    final NewInstance newInstance;
+    InvokeDirect initializer = null;
+    TrivialInitializer initializerInfo = null;
+    final List<InstanceGet> gets = new ArrayList<>();
+    final Set<InstancePut> puts = Sets.newIdentityHashSet();
+    // The fields accessed through the allocation, by their index in the tracked values.
+    final Map<DexField, Integer> fields = new IdentityHashMap<>();
+    final List<DexField> fieldList = new ArrayList<>();
+    // The value of each field at the entry and at the exit of blocks. Phis are registered as users
+    // of these maps, so the maps are updated if a trivial phi is removed.
+    final Map<BasicBlock, Map<Integer, Value>> entryValues = new IdentityHashMap<>();
+    final Map<BasicBlock, Map<Integer, Value>> exitValues = new IdentityHashMap<>();
+    final Set<Phi> phis = Sets.newIdentityHashSet();
+
+    Allocation(NewInstance newInstance) {
+      this.newInstance = newInstance;
+    }
+
+    boolean addField(DexField reference) {
+      DexEncodedField field = appInfo.lookupInstanceTarget(reference.getHolder(), reference);
+      if (field == null || field.field.getHolder() != newInstance.clazz) {
+        return false;
+      }
+      if (!fields.containsKey(field.field)) {
+        fields.put(field.field, fieldList.size());
+        fieldList.add(field.field);
+      }
+      return true;
+    }
+
+    void replace() {
+      // The initial values of the fields are defined by the initializer.
+      Map<Integer, Value> initialValues = new HashMap<>();
+      InstructionListIterator iterator = newInstance.getBlock().listIterator();
+      while (iterator.next() != initializer) {
+        // Advance to the initializer.
+      }
+      iterator.previous();
+      for (int i = 0; i < fieldList.size(); i++) {
+        DexField field = fieldList.get(i);
+        int argument = initializerInfo.getArgument(field);
+        if (argument > 0) {
+          initialValues.put(i, initializer.inValues().get(argument));
+        } else {
+          MoveType moveType = MoveType.fromDexType(field.type);
+          Value value = code.createValue(moveType);
+          iterator.add(new ConstNumber(
+              ConstType.fromMoveType(moveType), value, initializerInfo.getConstant(field)));
+          initialValues.put(i, value);
+        }
+      }
+      // Compute the values read before removing the writes.
+      Map<Integer, Value> readValues = new HashMap<>();
+      Set<Instruction> removed = Sets.newIdentityHashSet();
+      removed.add(initializer);
+      removed.addAll(puts);
+      for (int i = 0; i < gets.size(); i++) {
+        InstanceGet get = gets.get(i);
+        removed.add(get);
+        int field = fields.get(lookupField(get.getField()));
+        Value value = readBefore(get, field, initialValues);
+        register(value, readValues);
+        readValues.put(i, value);
+      }
+      for (Phi phi : phis) {
+        phi.clearDefinitionsUsers();
+      }
+      // A value read can be the value of another get of the allocation, for example when one
+      // field is copied into another. Resolve it to the value that get is replaced by.
+      Map<Value, Integer> getIndices = new IdentityHashMap<>();
+      for (int i = 0; i < gets.size(); i++) {
+        getIndices.put(gets.get(i).outValue(), i);
+      }
+      for (int i = 0; i < gets.size(); i++) {
+        Value value = readValues.get(i);
+        while (getIndices.containsKey(value)) {
+          value = readValues.get(getIndices.get(value));
+        }
+        gets.get(i).outValue().replaceUsers(value);
+      }
+      // Remove the users of the allocation before the allocation itself.
+      removeAll(removed);
+      removeAll(Collections.singleton(newInstance));
+    }
+
+    private void removeAll(Set<Instruction> removed) {
+      Set<BasicBlock> blocks = Sets.newIdentityHashSet();
+      for (Instruction instruction : removed) {
+        blocks.add(instruction.getBlock());
+      }
+      for (BasicBlock block : blocks) {
+        InstructionListIterator blockIterator = block.listIterator();
+        while (blockIterator.hasNext()) {
+          if (removed.contains(blockIterator.next())) {
+            blockIterator.removeOrReplaceByDebugLocalRead();
+          }
+        }
+      }
+    }
+
+    private DexField lookupField(DexField reference) {
+      return appInfo.lookupInstanceTarget(reference.getHolder(), reference).field;
+    }
+
+    /** The last value assigned to the field before the instruction in its block, or null. */
+    private Value lastWrite(BasicBlock block, Instruction before, int field,
+        Map<Integer, Value> initialValues) {
+      Value value = null;
+      for (Instruction instruction : block.getInstructions()) {
+        if (instruction == before) {
+          break;
+        }
+        if (instruction == initializer) {
+          value = initialValues.get(field);
+        } else if (instruction.isInstancePut()
+            && puts.contains(instruction)
+            && fields.get(lookupField(instruction.asInstancePut().getField())) == field) {
+          value = instruction.asInstancePut().value();
+        }
+      }
+      return value;
+    }
+
+    private Value readBefore(Instruction instruction, int field,
+        Map<Integer, Value> initialValues) {
+      BasicBlock block = instruction.getBlock();
+      Value value = lastWrite(block, instruction, field, initialValues);
+      return value != null ? value : readAtEntry(block, field, initialValues);
+    }
+
+    private Value readAtExit(BasicBlock block, int field, Map<Integer, Value> initialValues) {
+      Map<Integer, Value> values = exitValues.computeIfAbsent(block, b -> new HashMap<>());
+      Value value = values.get(field);
+      if (value == null) {
+        value = lastWrite(block, null, field, initialValues);
+        if (value == null) {
+          value = readAtEntry(block, field, initialValues);
+        }
+        register(value, values);
+        values.put(field, value);
+      }
+      return value;
+    }
+
+    private Value readAtEntry(BasicBlock block, int field, Map<Integer, Value> initialValues) {
+      // Reads are dominated by the initializer, so the block of the allocation is never entered
+      // before reaching a write.
+      assert block != newInstance.getBlock();
+      Map<Integer, Value> values = entryValues.computeIfAbsent(block, b -> new HashMap<>());
+      Value value = values.get(field);
+      if (value != null) {
+        return value;
+      }
+      List<BasicBlock> predecessors = block.getPredecessors();
+      if (predecessors.size() == 1) {
+        value = readAtExit(predecessors.get(0), field, initialValues);
+        register(value, values);
+        values.put(field, value);
+        return value;
+      }
+      // Register the phi before reading the operands to break cycles.
+      Phi phi = new Phi(code.valueNumberGenerator.next(), block,
+          MoveType.fromDexType(fieldList.get(field).type), null);
+      phis.add(phi);
+      register(phi, values);
+      values.put(field, phi);
+      List<Value> operands = new ArrayList<>(predecessors.size());
+      for (BasicBlock predecessor : predecessors) {
+        operands.add(readAtExit(predecessor, field, initialValues));
+      }
+      // Adding the operands removes the phi if it is trivial and updates the registered maps.
+      phi.addOperands(operands);
+      return values.get(field);
+    }
+
+    private void register(Value value, Map<Integer, Value> values) {
+      if (value.isPhi() && phis.contains(value)) {
+        value.asPhi().addDefinitionsUser(values);
+      }
+    }
+  }
+}
@@ -0,0 +1,346 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexItemFactory.StringBuildingMethods;
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.ir.code.BasicBlock;
+import com.android.tools.r8.ir.code.ConstNumber;
+import com.android.tools.r8.ir.code.ConstString;
+import com.android.tools.r8.ir.code.ConstType;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.InstructionIterator;
+import com.android.tools.r8.ir.code.InstructionListIterator;
+import com.android.tools.r8.ir.code.InvokeDirect;
+import com.android.tools.r8.ir.code.InvokeMethod;
+import com.android.tools.r8.ir.code.InvokeVirtual;
+import com.android.tools.r8.ir.code.MoveType;
+import com.android.tools.r8.ir.code.NewInstance;
+import com.android.tools.r8.ir.code.Value;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Optimizes string building with StringBuilder and StringBuffer instances allocated in the method.
+ *
+ * <p>The uses of a builder in the block of its allocation are evaluated in program order, as
+ * generated for string concatenation: a constructor, a chain of appends, whose results have been
+ * replaced by the receiver by {@link CodeRewriter#rewriteMoveResult}, and calls to toString. Then:
+ * <ul>
+ *   <li>if the builder does not escape and all appended values are constants, each toString is
+ *   replaced by the string built so far, and the builder is removed.</li>
+ *   <li>otherwise adjacent appends of constants are merged into a single append of a string.</li>
+ *   <li>if the builder does not escape, a builder created with the default capacity is created
+ *   with room for the constant part of the string, and the default capacity for the rest, so it
+ *   does not grow while appending.</li>
+ * </ul>
+ * Appended float and double constants are not folded, as they are not formatted the same way on
+ * all Android versions. Blocks with catch handlers are not optimized, as the rewritten code
+ * inserts constant strings, which may throw.
+ */
+public class StringBuilderOptimizer {
+
+  // The capacity of StringBuilder() and StringBuffer().
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private final DexItemFactory dexItemFactory;
+  private final IRCode code;
+
+  public StringBuilderOptimizer(DexItemFactory dexItemFactory, IRCode code) {
+    this.dexItemFactory = dexItemFactory;
+    this.code = code;
+  }
+
+  /**
+   * Optimize all builders and return true if the code was changed.
+   */
+  public boolean run() {
+    List<NewInstance> builders = new ArrayList<>();
+    InstructionIterator iterator = code.instructionIterator();
+    while (iterator.hasNext()) {
+      Instruction instruction = iterator.next();
+      if (instruction.isNewInstance() && getMethods(instruction.asNewInstance()) != null) {
+        builders.add(instruction.asNewInstance());
+      }
+    }
+    boolean changed = false;
+    for (NewInstance newInstance : builders) {
+      changed |= optimize(newInstance, getMethods(newInstance));
+    }
+    return changed;
+  }
+
+  private StringBuildingMethods getMethods(NewInstance newInstance) {
+    if (newInstance.clazz == dexItemFactory.stringBuilderType) {
+      return dexItemFactory.stringBuilderMethods;
+    }
+    if (newInstance.clazz == dexItemFactory.stringBufferType) {
+      return dexItemFactory.stringBufferMethods;
+    }
+    return null;
+  }
+
+  private boolean optimize(NewInstance newInstance, StringBuildingMethods methods) {
+    Value builder = newInstance.outValue();
+    BasicBlock block = newInstance.getBlock();
+    if (builder == null || builder.hasLocalInfo() || block.hasCatchHandlers()) {
+      return false;
+    }
+
+    // Collect the uses of the builder in the block in program order.
+    List<Instruction> uses = new ArrayList<>();
+    boolean seenNewInstance = false;
+    for (Instruction instruction : block.getInstructions()) {
+      if (instruction == newInstance) {
+        seenNewInstance = true;
+      } else if (seenNewInstance && instruction.inValues().contains(builder)) {
+        uses.add(instruction);
+      }
+    }
+    if (uses.isEmpty() || !isConstructor(uses.get(0), builder, methods)) {
+      return false;
+    }
+    InvokeDirect constructor = uses.get(0).asInvokeDirect();
+    String initialValue = null;
+    if (constructor.getInvokedMethod() == methods.defaultConstructor) {
+      initialValue = "";
+    } else if (constructor.getInvokedMethod() == methods.stringConstructor) {
+      Value argument = constructor.inValues().get(1);
+      if (argument.isConstant() && argument.getConstInstruction().isConstString()) {
+        initialValue = argument.getConstInstruction().asConstString().getValue().toString();
+      }
+    }
+
+    // The constant each append appends, or null if it is not constant.
+    Map<InvokeMethod, String> appends = new IdentityHashMap<>();
+    boolean escapes =
+        builder.numberOfPhiUsers() > 0 || builder.uniqueUsers().size() != uses.size();
+    boolean allConstant = initialValue != null;
+    for (int i = 1; i < uses.size(); i++) {
+      Instruction use = uses.get(i);
+      if (isAppend(use, builder, methods)) {
+        String constant = getConstantAppendValue(use.asInvokeMethod(), methods);
+        appends.put(use.asInvokeMethod(), constant);
+        allConstant &= constant != null;
+      } else if (!isToString(use, builder, methods)) {
+        escapes = true;
+      }
+    }
+
+    if (!escapes && allConstant) {
+      foldConstantBuilder(newInstance, uses, initialValue, appends);
+      return true;
+    }
+    boolean changed = mergeConstantAppends(block, builder, appends, methods);
+    if (!escapes && constructor.getInvokedMethod() == methods.defaultConstructor) {
+      changed |= presize(constructor, builder, appends, methods);
+    }
+    return changed;
+  }
+
+  private static boolean isConstructor(
+      Instruction instruction, Value builder, StringBuildingMethods methods) {
+    if (!instruction.isInvokeDirect() || instruction.inValues().get(0) != builder) {
+      return false;
+    }
+    DexMethod method = instruction.asInvokeDirect().getInvokedMethod();
+    return method == methods.defaultConstructor
+        || method == methods.capacityConstructor
+        || method == methods.stringConstructor;
+  }
+
+  private static boolean isAppend(
+      Instruction instruction, Value builder, StringBuildingMethods methods) {
+    if (!instruction.isInvokeVirtual() || instruction.outValue() != null) {
+      return false;
+    }
+    InvokeVirtual invoke = instruction.asInvokeVirtual();
+    // The builder must only be the receiver, e.g. not for builder.append(builder).
+    if (invoke.inValues().lastIndexOf(builder) != 0) {
+      return false;
+    }
+    DexMethod method = invoke.getInvokedMethod();
+    boolean[] isAppend = {false};
+    methods.forEachAppendMethod(append -> isAppend[0] |= append == method);
+    return isAppend[0];
+  }
+
+  private static boolean isToString(
+      Instruction instruction, Value builder, StringBuildingMethods methods) {
+    return instruction.isInvokeVirtual()
+        && instruction.asInvokeVirtual().getInvokedMethod() == methods.toString
+        && instruction.inValues().get(0) == builder;
+  }
+
+  private static String getConstantAppendValue(InvokeMethod append, StringBuildingMethods methods) {
+    DexMethod method = append.getInvokedMethod();
+    Value value = append.inValues().get(1);
+    if (!value.isConstant()) {
+      return null;
+    }
+    if (method == methods.appendString
+        || method == methods.appendObject
+        || method == methods.appendCharSequence) {
+      if (value.getConstInstruction().isConstString()) {
+        return value.getConstInstruction().asConstString().getValue().toString();
+      }
+      return value.isZero() ? "null" : null;
+    }
+    if (!value.getConstInstruction().isConstNumber()) {
+      return null;
+    }
+    long rawValue = value.getConstInstruction().asConstNumber().getRawValue();
+    if (method == methods.appendInt) {
+      return Integer.toString((int) rawValue);
+    }
+    if (method == methods.appendLong) {
+      return Long.toString(rawValue);
+    }
+    if (method == methods.appendChar) {
+      return String.valueOf((char) rawValue);
+    }
+    if (method == methods.appendBoolean) {
+      return rawValue != 0 ? "true" : "false";
+    }
+    return null;
+  }
+
+  private void foldConstantBuilder(NewInstance newInstance, List<Instruction> uses,
+      String initialValue, Map<InvokeMethod, String> appends) {
+    Map<Instruction, String> results = new IdentityHashMap<>();
+    StringBuilder content = new StringBuilder(initialValue);
+    for (int i = 1; i < uses.size(); i++) {
+      Instruction use = uses.get(i);
+      if (appends.containsKey(use)) {
+        content.append(appends.get(use));
+      } else {
+        results.put(use, content.toString());
+      }
+    }
+    Set<Instruction> removed = Sets.newIdentityHashSet();
+    removed.addAll(uses);
+    removed.removeAll(results.keySet());
+    Set<Value> arguments = collectArguments(removed);
+    InstructionListIterator iterator = newInstance.getBlock().listIterator();
+    while (iterator.hasNext()) {
+      Instruction instruction = iterator.next();
+      if (results.containsKey(instruction)) {
+        Value result = instruction.outValue();
+        if (result == null) {
+          iterator.removeOrReplaceByDebugLocalRead();
+        } else {
+          Value value = code.createValue(MoveType.OBJECT, result.getLocalInfo());
+          iterator.replaceCurrentInstruction(
+              new ConstString(value, dexItemFactory.createString(results.get(instruction))));
+        }
+      } else if (removed.contains(instruction)) {
+        iterator.removeOrReplaceByDebugLocalRead();
+      }
+    }
+    // All uses of the builder are gone.
+    iterator = newInstance.getBlock().listIterator(newInstance);
+    iterator.previous();
+    iterator.removeOrReplaceByDebugLocalRead();
+    removeUnusedConstStrings(arguments);
+  }
+
+  private boolean mergeConstantAppends(BasicBlock block, Value builder,
+      Map<InvokeMethod, String> appends, StringBuildingMethods methods) {
+    // Group the appends of constants with only constant instructions in between.
+    Map<Instruction, StringBuilder> merged = new IdentityHashMap<>();
+    Set<Instruction> removed = Sets.newIdentityHashSet();
+    Instruction first = null;
+    for (Instruction instruction : block.getInstructions()) {
+      if (appends.get(instruction) != null) {
+        if (first == null) {
+          first = instruction;
+        } else {
+          merged.computeIfAbsent(first, key -> new StringBuilder(appends.get(key)))
+              .append(appends.get(instruction));
+          removed.add(instruction);
+        }
+      } else if (!instruction.isConstNumber() && !instruction.isConstString()) {
+        first = null;
+      }
+    }
+    if (removed.isEmpty()) {
+      return false;
+    }
+    Set<Value> arguments = collectArguments(removed);
+    arguments.addAll(collectArguments(merged.keySet()));
+    InstructionListIterator iterator = block.listIterator();
+    while (iterator.hasNext()) {
+      Instruction instruction = iterator.next();
+      if (removed.contains(instruction)) {
+        iterator.removeOrReplaceByDebugLocalRead();
+      } else if (merged.containsKey(instruction)) {
+        iterator.previous();
+        Value value = code.createValue(MoveType.OBJECT);
+        iterator.add(new ConstString(
+            value, dexItemFactory.createString(merged.get(instruction).toString())));
+        iterator.next();
+        iterator.replaceCurrentInstruction(
+            new InvokeVirtual(methods.appendString, null, ImmutableList.of(builder, value)));
+      }
+    }
+    removeUnusedConstStrings(arguments);
+    return true;
+  }
+
+  private static Set<Value> collectArguments(Set<Instruction> instructions) {
+    Set<Value> arguments = Sets.newIdentityHashSet();
+    for (Instruction instruction : instructions) {
+      arguments.addAll(instruction.inValues());
+    }
+    return arguments;
+  }
+
+  // The dead code remover keeps const-string instructions, as they may throw, so remove the
+  // strings only used by the rewritten builder code.
+  private static void removeUnusedConstStrings(Set<Value> values) {
+    for (Value value : values) {
+      if (value.isConstant()
+          && value.getConstInstruction().isConstString()
+          && !value.isUsed()
+          && !value.hasLocalInfo()) {
+        Instruction definition = value.definition;
+        InstructionListIterator iterator = definition.getBlock().listIterator(definition);
+        iterator.previous();
+        iterator.remove();
+      }
+    }
+  }
+
+  private boolean presize(InvokeDirect constructor, Value builder,
+      Map<InvokeMethod, String> appends, StringBuildingMethods methods) {
+    int constantLength = 0;
+    boolean hasNonConstantAppends = false;
+    for (String value : appends.values()) {
+      if (value == null) {
+        hasNonConstantAppends = true;
+      } else {
+        constantLength += value.length();
+      }
+    }
+    int capacity = constantLength + (hasNonConstantAppends ? DEFAULT_CAPACITY : 0);
+    if (constantLength == 0 || capacity <= DEFAULT_CAPACITY) {
+      return false;
+    }
+    InstructionListIterator iterator = constructor.getBlock().listIterator(constructor);
+    iterator.previous();
+    Value capacityValue = code.createValue(MoveType.SINGLE);
+    iterator.add(new ConstNumber(ConstType.INT, capacityValue, capacity));
+    iterator.next();
+    iterator.replaceCurrentInstruction(new InvokeDirect(
+        methods.capacityConstructor, null, ImmutableList.of(builder, capacityValue)));
+    return true;
+  }
+}
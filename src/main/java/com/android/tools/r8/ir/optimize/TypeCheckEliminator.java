@@ -0,0 +1,349 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import com.android.tools.r8.graph.AppInfoWithSubtyping;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.ir.code.BasicBlock;
+import com.android.tools.r8.ir.code.CatchHandlers;
+import com.android.tools.r8.ir.code.CheckCast;
+import com.android.tools.r8.ir.code.ConstNumber;
+import com.android.tools.r8.ir.code.ConstType;
+import com.android.tools.r8.ir.code.DominatorTree;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.If;
+import com.android.tools.r8.ir.code.If.Type;
+import com.android.tools.r8.ir.code.InstanceOf;
+import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.InstructionListIterator;
+import com.android.tools.r8.ir.code.InvokeMethod;
+import com.android.tools.r8.ir.code.MoveType;
+import com.android.tools.r8.ir.code.TypeAnalysis;
+import com.android.tools.r8.ir.code.TypeLatticeElement;
+import com.android.tools.r8.ir.code.Value;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Removes the type checks and null checks that are known to succeed.
+ *
+ * <p>The type and nullness of values are taken from the {@link TypeAnalysis} of the method and
+ * refined by the dominating instructions: a value is not null after it has been dereferenced or in
+ * the successor of a null test taken when it is not null, and it is an instance of a type after a
+ * check-cast or in the successor of an instance-of test taken when it is an instance. The
+ * following instructions are rewritten:
+ * <ul>
+ *   <li>a check-cast of a value whose type is a subtype of the cast type, or which is always
+ *   null, is removed. Only the types of the analysis are used, as the verifier must be able to
+ *   establish the same type.</li>
+ *   <li>an instance-of of a value which is always null is replaced by 0, and of a value which is
+ *   not null and an instance of the type by 1.</li>
+ *   <li>a null test of a value which is always null or never null is replaced by a goto.</li>
+ *   <li>a null check by a call to getClass or Objects.requireNonNull of a value which is never
+ *   null is removed.</li>
+ * </ul>
+ * Catch handlers of blocks which can no longer throw are removed, along with the blocks which are
+ * only reachable from them.
+ */
+public class TypeCheckEliminator {
+
+  /**
+   * A value is not null, if {@link #isNonNull}, and an instance of the type, if not null, at the
+   * positions after an instruction in a block, or from the start of the block if there is no
+   * instruction, and in the blocks dominated by the block if {@link #coversDominatedBlocks}.
+   */
+  private static class Fact {
+    final BasicBlock block;
+    final Instruction after;
+    final boolean coversDominatedBlocks;
+    final boolean isNonNull;
+    final DexType type;
+
+    Fact(BasicBlock block, Instruction after, boolean isNonNull, DexType type) {
+      this.block = block;
+      this.after = after;
+      this.coversDominatedBlocks = after == null || !block.hasCatchHandlers();
+      this.isNonNull = isNonNull;
+      this.type = type;
+    }
+  }
+
+  private final AppInfoWithSubtyping appInfo;
+  private final DexItemFactory factory;
+  private final IRCode code;
+  private final TypeAnalysis types;
+  private final DominatorTree dominatorTree;
+  private final Map<Value, List<Fact>> facts = new IdentityHashMap<>();
+  private final Map<Instruction, Integer> positions = new IdentityHashMap<>();
+
+  public TypeCheckEliminator(AppInfoWithSubtyping appInfo, IRCode code) {
+    this.appInfo = appInfo;
+    this.factory = appInfo.dexItemFactory;
+    this.code = code;
+    this.types = new TypeAnalysis(appInfo, code);
+    this.dominatorTree = new DominatorTree(code);
+  }
+
+  /**
+   * Remove the type checks and null checks known to succeed and return true if the code was
+   * changed.
+   */
+  public boolean run() {
+    collectFacts();
+    boolean changed = false;
+    List<BasicBlock> changedBlocks = new ArrayList<>();
+    code.clearMarks();
+    for (BasicBlock block : code.blocks) {
+      if (block.isMarked()) {
+        continue;
+      }
+      if (rewriteBlock(block)) {
+        changed = true;
+        changedBlocks.add(block);
+      }
+    }
+    for (BasicBlock block : changedBlocks) {
+      if (!block.isMarked() && block.hasCatchHandlers() && !block.canThrow()) {
+        removeCatchHandlers(block);
+      }
+    }
+    code.removeMarkedBlocks();
+    assert code.isConsistentSSA();
+    return changed;
+  }
+
+  private void collectFacts() {
+    for (BasicBlock block : code.blocks) {
+      int position = 0;
+      for (Instruction instruction : block.getInstructions()) {
+        positions.put(instruction, position++);
+        Value dereferenced = dereferencedValue(instruction);
+        if (dereferenced != null) {
+          addFact(dereferenced, new Fact(block, instruction, true, null));
+        } else if (instruction.isCheckCast()) {
+          CheckCast cast = instruction.asCheckCast();
+          addFact(cast.object(), new Fact(block, instruction, false, cast.getType()));
+        }
+      }
+      if (block.exit().isIf()) {
+        collectBranchFacts(block.exit().asIf());
+      }
+    }
+  }
+
+  private void collectBranchFacts(If theIf) {
+    if (!theIf.isZeroTest() || (theIf.getType() != Type.EQ && theIf.getType() != Type.NE)) {
+      return;
+    }
+    Value value = theIf.inValues().get(0);
+    if (value.outType() == MoveType.OBJECT) {
+      // The value is not null when the value is not equal to zero.
+      BasicBlock target = theIf.targetFromCondition(1);
+      if (hasSinglePredecessor(target, theIf)) {
+        addFact(value, new Fact(target, null, true, null));
+      }
+    } else if (!value.isPhi() && value.definition.isInstanceOf()) {
+      // The value is an instance when the result of instance-of is not equal to zero.
+      InstanceOf instanceOf = value.definition.asInstanceOf();
+      BasicBlock target = theIf.targetFromCondition(1);
+      if (hasSinglePredecessor(target, theIf)) {
+        addFact(instanceOf.value(), new Fact(target, null, true, instanceOf.type()));
+      }
+    }
+  }
+
+  private static boolean hasSinglePredecessor(BasicBlock target, If theIf) {
+    return theIf.getTrueTarget() != theIf.fallthroughBlock()
+        && target.getPredecessors().size() == 1;
+  }
+
+  private void addFact(Value value, Fact fact) {
+    facts.computeIfAbsent(value, k -> new ArrayList<>()).add(fact);
+  }
+
+  private static Value dereferencedValue(Instruction instruction) {
+    if (instruction.isInvokeMethodWithReceiver()) {
+      return instruction.asInvokeMethodWithReceiver().getReceiver();
+    }
+    if (instruction.isInstanceGet()) {
+      return instruction.asInstanceGet().object();
+    }
+    if (instruction.isInstancePut()) {
+      return instruction.asInstancePut().object();
+    }
+    if (instruction.isArrayGet()) {
+      return instruction.asArrayGet().array();
+    }
+    if (instruction.isArrayPut()) {
+      return instruction.asArrayPut().array();
+    }
+    if (instruction.isArrayLength()) {
+      return instruction.asArrayLength().array();
+    }
+    if (instruction.isMonitor()) {
+      return instruction.inValues().get(0);
+    }
+    return null;
+  }
+
+  private boolean holds(Fact fact, Instruction instruction) {
+    BasicBlock block = instruction.getBlock();
+    if (block == fact.block) {
+      return fact.after == null || positionOf(fact.after) < positionOf(instruction);
+    }
+    return fact.coversDominatedBlocks && dominatorTree.dominatedBy(block, fact.block);
+  }
+
+  // Facts are only queried for the instructions present when the facts were collected.
+  private int positionOf(Instruction instruction) {
+    Integer position = positions.get(instruction);
+    assert position != null;
+    return position;
+  }
+
+  private boolean isNonNullAt(Value value, Instruction instruction) {
+    TypeLatticeElement element = types.getElement(value);
+    if (element.isReference() && !element.isNullable()) {
+      return true;
+    }
+    for (Fact fact : facts.getOrDefault(value, Collections.emptyList())) {
+      if (fact.isNonNull && holds(fact, instruction)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isInstanceAt(Value value, DexType type, Instruction instruction) {
+    TypeLatticeElement element = types.getElement(value);
+    if (element.isReference() && TypeLatticeElement.isSubtype(element.getType(), type, appInfo)) {
+      return true;
+    }
+    for (Fact fact : facts.getOrDefault(value, Collections.emptyList())) {
+      if (fact.type != null
+          && TypeLatticeElement.isSubtype(fact.type, type, appInfo)
+          && holds(fact, instruction)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean rewriteBlock(BasicBlock block) {
+    boolean changed = false;
+    InstructionListIterator iterator = block.listIterator();
+    while (iterator.hasNext()) {
+      Instruction current = iterator.next();
+      if (current.isCheckCast()) {
+        changed |= removeCheckCast(iterator, current.asCheckCast());
+      } else if (current.isInstanceOf()) {
+        changed |= rewriteInstanceOf(iterator, current.asInstanceOf());
+      } else if (current.isInvokeMethod()) {
+        changed |= removeNullCheck(iterator, current.asInvokeMethod());
+      } else if (current.isIf()) {
+        changed |= rewriteNullTest(block, current.asIf());
+      }
+    }
+    return changed;
+  }
+
+  private boolean removeCheckCast(InstructionListIterator iterator, CheckCast cast) {
+    if (cast.getLocalInfo() != null) {
+      return false;
+    }
+    TypeLatticeElement element = types.getElement(cast.object());
+    if (element.isNull()
+        || (element.isReference()
+            && TypeLatticeElement.isSubtype(element.getType(), cast.getType(), appInfo))) {
+      if (cast.outValue() != null) {
+        cast.outValue().replaceUsers(cast.object());
+      }
+      iterator.removeOrReplaceByDebugLocalRead();
+      return true;
+    }
+    return false;
+  }
+
+  private boolean rewriteInstanceOf(InstructionListIterator iterator, InstanceOf instanceOf) {
+    Value value = instanceOf.value();
+    int result;
+    if (types.getElement(value).isNull()) {
+      result = 0;
+    } else if (isNonNullAt(value, instanceOf)
+        && isInstanceAt(value, instanceOf.type(), instanceOf)) {
+      result = 1;
+    } else {
+      return false;
+    }
+    Value dest = code.createValue(MoveType.SINGLE, instanceOf.getLocalInfo());
+    iterator.replaceCurrentInstruction(new ConstNumber(ConstType.INT, dest, result));
+    return true;
+  }
+
+  private boolean removeNullCheck(InstructionListIterator iterator, InvokeMethod invoke) {
+    DexMethod target = invoke.getInvokedMethod();
+    Value outValue = invoke.outValue();
+    if (target == factory.objectMethods.getClass && invoke.isInvokeVirtual()) {
+      if (outValue != null && outValue.isUsed()) {
+        return false;
+      }
+    } else if (target == factory.objectsMethods.requireNonNull && invoke.isInvokeStatic()) {
+      if (outValue != null && outValue.getLocalInfo() != null) {
+        return false;
+      }
+    } else {
+      return false;
+    }
+    Value value = invoke.inValues().get(0);
+    if (!isNonNullAt(value, invoke)) {
+      return false;
+    }
+    if (outValue != null) {
+      outValue.replaceUsers(value);
+    }
+    iterator.removeOrReplaceByDebugLocalRead();
+    return true;
+  }
+
+  private boolean rewriteNullTest(BasicBlock block, If theIf) {
+    if (!theIf.isZeroTest()
+        || theIf.getTrueTarget() == theIf.fallthroughBlock()
+        || (theIf.getType() != Type.EQ && theIf.getType() != Type.NE)) {
+      return false;
+    }
+    Value value = theIf.inValues().get(0);
+    if (value.outType() != MoveType.OBJECT) {
+      return false;
+    }
+    int cond;
+    if (types.getElement(value).isNull()) {
+      cond = 0;
+    } else if (isNonNullAt(value, theIf)) {
+      cond = 1;
+    } else {
+      return false;
+    }
+    BasicBlock target = theIf.targetFromCondition(cond);
+    BasicBlock deadTarget =
+        target == theIf.getTrueTarget() ? theIf.fallthroughBlock() : theIf.getTrueTarget();
+    CodeRewriter.rewriteIfToGoto(dominatorTree, block, theIf, target, deadTarget);
+    return true;
+  }
+
+  private void removeCatchHandlers(BasicBlock block) {
+    CatchHandlers<BasicBlock> handlers = block.getCatchHandlers();
+    for (BasicBlock target : handlers.getUniqueTargets()) {
+      for (BasicBlock removed : block.unlink(target, dominatorTree)) {
+        if (!removed.isMarked()) {
+          removed.mark();
+        }
+      }
+    }
+  }
+}
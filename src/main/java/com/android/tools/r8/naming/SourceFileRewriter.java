@@ -11,7 +11,10 @@ import com.android.tools.r8.graph.DexDebugEvent.SetFile;
 import com.android.tools.r8.graph.DexDebugInfo;
 import com.android.tools.r8.graph.DexString;
 import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.ThreadUtils;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Visit program {@link DexClass}es and replace their sourceFile with the given string.
@@ -28,7 +31,7 @@ public class SourceFileRewriter {
     this.options = options;
   }
 
-  public void run() {
+  public void run(ExecutorService executorService) throws ExecutionException {
     String renameSourceFile = options.proguardConfiguration.getRenameSourceFileAttribute();
     // Return early if a user wants to keep the current source file attribute as-is.
     if (renameSourceFile == null && options.keepAttributes.sourceFile) {
@@ -39,28 +42,31 @@ public class SourceFileRewriter {
         renameSourceFile == null
             ? appInfo.dexItemFactory.createString("")
             : appInfo.dexItemFactory.createString(renameSourceFile);
-    for (DexClass clazz : appInfo.classes()) {
-      clazz.sourceFile = dexRenameSourceFile;
-      clazz.forEachMethod(encodedMethod -> {
-        // Abstract methods do not have code_item.
-        if (encodedMethod.accessFlags.isAbstract()) {
-          return;
-        }
-        Code code = encodedMethod.getCode();
-        // Other kinds of {@link Code} do not have debug_info_item.
-        if (code == null || !code.isDexCode()) {
-          return;
-        }
-        if (code.asDexCode().getDebugInfo() == null) {
-          return;
-        }
-        // Thanks to a single global source file, we can safely remove DBG_SET_FILE entirely.
-        DexDebugInfo dexDebugInfo = code.asDexCode().getDebugInfo();
-        dexDebugInfo.events =
-            Arrays.stream(dexDebugInfo.events)
-                .filter(dexDebugEvent -> !(dexDebugEvent instanceof SetFile))
-                .toArray(DexDebugEvent[]::new);
-      });
-    }
+    ThreadUtils.processItems(
+        appInfo.classes(), clazz -> rewrite(clazz, dexRenameSourceFile), executorService);
+  }
+
+  private void rewrite(DexClass clazz, DexString dexRenameSourceFile) {
+    clazz.sourceFile = dexRenameSourceFile;
+    clazz.forEachMethod(encodedMethod -> {
+      // Abstract methods do not have code_item.
+      if (encodedMethod.accessFlags.isAbstract()) {
+        return;
+      }
+      Code code = encodedMethod.getCode();
+      // Other kinds of {@link Code} do not have debug_info_item.
+      if (code == null || !code.isDexCode()) {
+        return;
+      }
+      if (code.asDexCode().getDebugInfo() == null) {
+        return;
+      }
+      // Thanks to a single global source file, we can safely remove DBG_SET_FILE entirely.
+      DexDebugInfo dexDebugInfo = code.asDexCode().getDebugInfo();
+      dexDebugInfo.events =
+          Arrays.stream(dexDebugInfo.events)
+              .filter(dexDebugEvent -> !(dexDebugEvent instanceof SetFile))
+              .toArray(DexDebugEvent[]::new);
+    });
   }
 }
@@ -3,33 +3,45 @@
 // BSD-style license that can be found in the LICENSE file.
 package com.android.tools.r8.optimize;
 
-import com.google.common.collect.Sets;
-
 import com.android.tools.r8.graph.AppInfoWithSubtyping;
 import com.android.tools.r8.graph.DexApplication;
-import com.android.tools.r8.graph.DexClass;
 import com.android.tools.r8.graph.DexEncodedMethod;
 import com.android.tools.r8.graph.DexMethod;
-import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.graph.DexProgramClass;
 import com.android.tools.r8.logging.Log;
 import com.android.tools.r8.optimize.InvokeSingleTargetExtractor.InvokeKind;
-
+import com.android.tools.r8.utils.ThreadUtils;
+import com.google.common.collect.Sets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 public class VisibilityBridgeRemover {
   private final AppInfoWithSubtyping appInfo;
   private final DexApplication application;
-  private final Set<DexEncodedMethod> unneededVisibilityBridges = Sets.newIdentityHashSet();
 
   public VisibilityBridgeRemover(AppInfoWithSubtyping appInfo, DexApplication application) {
     this.appInfo = appInfo;
     this.application = application;
   }
 
-  private void identifyBridgeMethod(DexEncodedMethod method) {
+  private Set<DexEncodedMethod> identifyBridgeMethods(DexProgramClass clazz) {
+    Set<DexEncodedMethod> unneededVisibilityBridges = null;
+    for (DexEncodedMethod method : clazz.virtualMethods()) {
+      if (isUnneededVisibilityBridge(method)) {
+        if (unneededVisibilityBridges == null) {
+          unneededVisibilityBridges = Sets.newIdentityHashSet();
+        }
+        unneededVisibilityBridges.add(method);
+      }
+    }
+    return unneededVisibilityBridges;
+  }
+
+  private boolean isUnneededVisibilityBridge(DexEncodedMethod method) {
     if (method.accessFlags.isBridge()) {
       InvokeSingleTargetExtractor targetExtractor = new InvokeSingleTargetExtractor();
       method.getCode().registerReachableDefinitions(targetExtractor);
@@ -47,21 +59,12 @@ public class VisibilityBridgeRemover {
               Log.info(getClass(), "Removing visibility forwarding %s -> %s", method.method,
                   targetMethod.method);
             }
-            unneededVisibilityBridges.add(method);
+            return true;
           }
         }
       }
     }
-  }
-
-  private void removeUnneededVisibilityBridges() {
-    Set<DexType> classes = unneededVisibilityBridges.stream()
-        .map(method -> method.method.getHolder())
-        .collect(Collectors.toSet());
-    for (DexType type : classes) {
-      DexClass clazz = appInfo.definitionFor(type);
-      clazz.setVirtualMethods(removeMethods(clazz.virtualMethods(), unneededVisibilityBridges));
-    }
+    return false;
   }
 
   private DexEncodedMethod[] removeMethods(DexEncodedMethod[] methods,
@@ -74,12 +77,18 @@ public class VisibilityBridgeRemover {
     return newMethods.toArray(new DexEncodedMethod[newMethods.size()]);
   }
 
-  public DexApplication run() {
-    for (DexClass clazz : appInfo.classes()) {
-      clazz.forEachMethod(this::identifyBridgeMethod);
-    }
-    if (!unneededVisibilityBridges.isEmpty()) {
-      removeUnneededVisibilityBridges();
+  public DexApplication run(ExecutorService executorService) throws ExecutionException {
+    // All bridges are identified before any are removed, as the removal changes the result of
+    // looking up the targets of other bridges.
+    List<DexProgramClass> classes = application.classes();
+    List<Set<DexEncodedMethod>> unneededVisibilityBridges =
+        ThreadUtils.processItemsWithResults(classes, this::identifyBridgeMethods, executorService);
+    for (int i = 0; i < classes.size(); i++) {
+      Set<DexEncodedMethod> removals = unneededVisibilityBridges.get(i);
+      if (removals != null) {
+        DexProgramClass clazz = classes.get(i);
+        clazz.setVirtualMethods(removeMethods(clazz.virtualMethods(), removals));
+      }
     }
     return application;
   }
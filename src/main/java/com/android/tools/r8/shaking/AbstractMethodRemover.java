@@ -10,12 +10,15 @@ import com.android.tools.r8.graph.DexMethod;
 import com.android.tools.r8.graph.DexType;
 import com.android.tools.r8.logging.Log;
 import com.android.tools.r8.utils.MethodSignatureEquivalence;
+import com.android.tools.r8.utils.ThreadUtils;
 import com.google.common.base.Equivalence;
 import com.google.common.base.Equivalence.Wrapper;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Removes abstract methods if they only shadow methods of the same signature in a superclass.
@@ -25,32 +28,44 @@ import java.util.Set;
  * <p>
  * This optimization is beneficial mostly as it removes superfluous abstract methods that are
  * created by the {@link TreePruner}.
+ * <p>
+ * The subtrees of the direct subclasses of {@code java.lang.Object} are processed in parallel, as
+ * the result for a class only depends on its superclasses.
  */
 public class AbstractMethodRemover {
 
   private final AppInfoWithSubtyping appInfo;
-  private ScopedDexItemSet scope;
 
   public AbstractMethodRemover(AppInfoWithSubtyping appInfo) {
     this.appInfo = appInfo;
   }
 
-  public void run() {
-    assert scope == null;
-    processClass(appInfo.dexItemFactory.objectType);
+  public void run(ExecutorService executorService) throws ExecutionException {
+    DexType objectType = appInfo.dexItemFactory.objectType;
+    // The scope of java.lang.Object is only read by the tasks processing the subtrees.
+    ScopedDexItemSet objectScope = processHolder(objectType, null);
+    List<DexType> subtypes = new ArrayList<>();
+    objectType.forAllExtendsSubtypes(subtypes::add);
+    ThreadUtils.processItems(
+        subtypes, type -> processClass(type, objectScope), executorService);
+  }
+
+  private void processClass(DexType type, ScopedDexItemSet parent) {
+    ScopedDexItemSet scope = processHolder(type, parent);
+    type.forAllExtendsSubtypes(subtype -> processClass(subtype, scope));
   }
 
-  private void processClass(DexType type) {
+  private ScopedDexItemSet processHolder(DexType type, ScopedDexItemSet parent) {
     DexClass holder = appInfo.definitionFor(type);
-    scope = new ScopedDexItemSet(scope);
+    ScopedDexItemSet scope = new ScopedDexItemSet(parent);
     if (holder != null && !holder.isLibraryClass()) {
-      holder.setVirtualMethods(processMethods(holder.virtualMethods()));
+      holder.setVirtualMethods(processMethods(holder.virtualMethods(), scope));
     }
-    type.forAllExtendsSubtypes(this::processClass);
-    scope = scope.getParent();
+    return scope;
   }
 
-  private DexEncodedMethod[] processMethods(DexEncodedMethod[] virtualMethods) {
+  private DexEncodedMethod[] processMethods(
+      DexEncodedMethod[] virtualMethods, ScopedDexItemSet scope) {
     if (virtualMethods == null) {
       return null;
     }
@@ -97,9 +112,5 @@ public class AbstractMethodRemover {
       Wrapper<DexMethod> wrapped = METHOD_EQUIVALENCE.wrap(method);
       return !contains(wrapped) && items.add(wrapped);
     }
-
-    ScopedDexItemSet getParent() {
-      return parent;
-    }
   }
 }
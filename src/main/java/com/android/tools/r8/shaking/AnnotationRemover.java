@@ -14,8 +14,11 @@ import com.android.tools.r8.graph.DexProgramClass;
 import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.InternalOptions.KeepAttributeOptions;
+import com.android.tools.r8.utils.ThreadUtils;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Predicate;
 
 public class AnnotationRemover {
@@ -101,13 +104,15 @@ public class AnnotationRemover {
     return appInfo.liveTypes.contains(annotation.annotation.type);
   }
 
-  public void run() {
+  public void run(ExecutorService executorService) throws ExecutionException {
     keep.ensureValid();
-    for (DexProgramClass clazz : appInfo.classes()) {
-      clazz.annotations = stripAnnotations(clazz.annotations, this::filterAnnotations);
-      clazz.forEachMethod(this::processMethod);
-      clazz.forEachField(this::processField);
-    }
+    ThreadUtils.processItems(appInfo.classes(), this::processClass, executorService);
+  }
+
+  private void processClass(DexProgramClass clazz) {
+    clazz.annotations = stripAnnotations(clazz.annotations, this::filterAnnotations);
+    clazz.forEachMethod(this::processMethod);
+    clazz.forEachField(this::processField);
   }
 
   private void processMethod(DexEncodedMethod method) {
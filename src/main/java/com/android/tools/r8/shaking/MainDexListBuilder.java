@@ -20,11 +20,15 @@ import com.android.tools.r8.graph.DexProto;
 import com.android.tools.r8.graph.DexString;
 import com.android.tools.r8.graph.DexType;
 import com.android.tools.r8.graph.UseRegistry;
+import com.android.tools.r8.utils.ThreadUtils;
 import com.google.common.collect.Maps;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 /**
@@ -38,10 +42,6 @@ public class MainDexListBuilder {
   private final Set<DexType> baseClasses;
   private final AppInfoWithSubtyping appInfo;
   private final Set<DexType> mainDexTypes = new HashSet<>();
-  private final DirectReferencesCollector codeDirectReferenceCollector =
-      new DirectReferencesCollector();
-  private final AnnotationDirectReferenceCollector annotationDirectReferenceCollector =
-      new AnnotationDirectReferenceCollector();
   private final Set<DexType> enumTypes;
   private final Set<DexType> annotationTypes;
   private final Map<DexType, Boolean> annotationTypeContainEnum;
@@ -69,8 +69,8 @@ public class MainDexListBuilder {
     annotationTypeContainEnum = Maps.newHashMapWithExpectedSize(annotationTypes.size());
   }
 
-  public Set<DexType> run() {
-    traceMainDexDirectDependencies();
+  public Set<DexType> run(ExecutorService executorService) throws ExecutionException {
+    traceMainDexDirectDependencies(executorService);
     traceRuntimeAnnotationsWithEnumForMainDex();
     return mainDexTypes.stream().filter(this::isProgramClass).collect(Collectors.toSet());
   }
@@ -138,42 +138,52 @@ public class MainDexListBuilder {
     return clazz != null && clazz.isProgramClass();
   }
 
-  private void traceMainDexDirectDependencies() {
-    for (DexType type : baseClasses) {
-      DexClass clazz = appInfo.definitionFor(type);
-      if (clazz == null) {
-        // Happens for library classes.
-        continue;
-      }
-      addMainDexType(type);
-      // Super and interfaces are live, no need to add them.
-      traceAnnotationsDirectDendencies(clazz.annotations);
-      clazz.forEachField(field -> addMainDexType(field.field.type));
-      clazz.forEachMethod(method -> {
-        traceMethodDirectDependencies(method.method);
-        method.registerReachableDefinitions(codeDirectReferenceCollector);
-      });
+  private void traceMainDexDirectDependencies(ExecutorService executorService)
+      throws ExecutionException {
+    // The direct dependencies of each base class only depend on the class itself, so they are
+    // collected in parallel, which also parses the code of the base classes in parallel.
+    List<Set<DexType>> dependencies = ThreadUtils.processItemsWithResults(
+        baseClasses, this::computeDirectDependencies, executorService);
+    for (Set<DexType> types : dependencies) {
+      mainDexTypes.addAll(types);
     }
   }
 
-  private void traceAnnotationsDirectDendencies(DexAnnotationSet annotations) {
-    annotations.collectIndexedItems(annotationDirectReferenceCollector);
+  private Set<DexType> computeDirectDependencies(DexType type) {
+    Set<DexType> types = new HashSet<>();
+    DexClass clazz = appInfo.definitionFor(type);
+    if (clazz == null) {
+      // Happens for library classes.
+      return types;
+    }
+    types.add(type);
+    // Super and interfaces are live, no need to add them.
+    clazz.annotations.collectIndexedItems(new AnnotationDirectReferenceCollector(types));
+    clazz.forEachField(field -> types.add(field.field.type));
+    DirectReferencesCollector codeDirectReferenceCollector = new DirectReferencesCollector(types);
+    clazz.forEachMethod(method -> {
+      addMethodDirectDependencies(method.method, types);
+      method.registerReachableDefinitions(codeDirectReferenceCollector);
+    });
+    return types;
   }
 
-  private void traceMethodDirectDependencies(DexMethod method) {
+  private static void addMethodDirectDependencies(DexMethod method, Set<DexType> types) {
     DexProto proto = method.proto;
-    addMainDexType(proto.returnType);
-    Collections.addAll(mainDexTypes, proto.parameters.values);
+    types.add(proto.returnType);
+    Collections.addAll(types, proto.parameters.values);
   }
 
   private void addMainDexType(DexType type) {
     mainDexTypes.add(type);
   }
 
-  private class DirectReferencesCollector extends UseRegistry {
+  private static class DirectReferencesCollector extends UseRegistry {
 
+    private final Set<DexType> types;
 
-    private DirectReferencesCollector() {
+    private DirectReferencesCollector(Set<DexType> types) {
+      this.types = types;
     }
 
     @Override
@@ -202,8 +212,8 @@ public class MainDexListBuilder {
     }
 
     protected boolean registerInvoke(DexMethod method) {
-      addMainDexType(method.getHolder());
-      traceMethodDirectDependencies(method);
+      types.add(method.getHolder());
+      addMethodDirectDependencies(method, types);
       return true;
     }
 
@@ -228,42 +238,48 @@ public class MainDexListBuilder {
     }
 
     protected boolean registerFieldAccess(DexField field) {
-      addMainDexType(field.getHolder());
-      addMainDexType(field.type);
+      types.add(field.getHolder());
+      types.add(field.type);
       return true;
     }
 
     @Override
     public boolean registerNewInstance(DexType type) {
-      addMainDexType(type);
+      types.add(type);
       return true;
     }
 
     @Override
     public boolean registerTypeReference(DexType type) {
-      addMainDexType(type);
+      types.add(type);
       return true;
     }
   }
 
-  private class AnnotationDirectReferenceCollector implements IndexedItemCollection {
+  private static class AnnotationDirectReferenceCollector implements IndexedItemCollection {
+
+    private final Set<DexType> types;
+
+    private AnnotationDirectReferenceCollector(Set<DexType> types) {
+      this.types = types;
+    }
 
     @Override
     public boolean addClass(DexProgramClass dexProgramClass) {
-      addMainDexType(dexProgramClass.type);
+      types.add(dexProgramClass.type);
       return false;
     }
 
     @Override
     public boolean addField(DexField field) {
-      addMainDexType(field.getHolder());
-      addMainDexType(field.type);
+      types.add(field.getHolder());
+      types.add(field.type);
       return false;
     }
 
     @Override
     public boolean addMethod(DexMethod method) {
-      addMainDexType(method.getHolder());
+      types.add(method.getHolder());
       addProto(method.proto);
       return false;
     }
@@ -275,14 +291,14 @@ public class MainDexListBuilder {
 
     @Override
     public boolean addProto(DexProto proto) {
-      addMainDexType(proto.returnType);
-      Collections.addAll(mainDexTypes, proto.parameters.values);
+      types.add(proto.returnType);
+      Collections.addAll(types, proto.parameters.values);
       return false;
     }
 
     @Override
     public boolean addType(DexType type) {
-      addMainDexType(type);
+      types.add(type);
       return false;
     }
 
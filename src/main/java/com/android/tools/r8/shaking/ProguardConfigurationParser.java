@@ -16,8 +16,10 @@ import com.android.tools.r8.shaking.ProguardTypeMatcher.MatchSpecificType;
 import com.android.tools.r8.utils.DescriptorUtils;
 import com.android.tools.r8.utils.InternalOptions.PackageObfuscationMode;
 import com.android.tools.r8.utils.LongInterval;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -27,7 +29,12 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 public class ProguardConfigurationParser {
 
@@ -35,6 +42,9 @@ public class ProguardConfigurationParser {
 
   private final DexItemFactory dexItemFactory;
 
+  private final ConcurrentHashMap<SourceKey, ParsedSource> parsedSources =
+      new ConcurrentHashMap<>();
+
   private static final List<String> ignoredSingleArgOptions = ImmutableList
       .of("protomapping",
           "target");
@@ -97,29 +107,183 @@ public class ProguardConfigurationParser {
     parse(ImmutableList.of(source));
   }
 
+  /**
+   * Parse the sources, and the files they include, on the calling thread.
+   */
   public void parse(List<ProguardConfigurationSource> sources)
       throws ProguardRuleParserException, IOException {
+    parse(sources, MoreExecutors.newDirectExecutorService());
+  }
+
+  /**
+   * Parse the sources, and the files they include, concurrently on the executor service. The
+   * parsed options are applied to the configuration in the order they appear in the sources, so
+   * the resulting configuration, warnings and errors are the same as when parsing sequentially.
+   */
+  public void parse(List<ProguardConfigurationSource> sources, ExecutorService executorService)
+      throws ProguardRuleParserException, IOException {
+    List<Future<ParsedSource>> futures = new ArrayList<>(sources.size());
     for (ProguardConfigurationSource source : sources) {
-      new ProguardFileParser(source).parse();
+      futures.add(executorService.submit(
+          () -> parseSource(source, includeChainOf(source), executorService)));
+    }
+    for (Future<ParsedSource> future : futures) {
+      await(future).applyTo(configurationBuilder);
+    }
+  }
+
+  // The files being included when parsing a source, starting with the source itself if it is a
+  // file, used to report include cycles.
+  private static List<Path> includeChainOf(ProguardConfigurationSource source) {
+    if (source instanceof ProguardConfigurationSourceFile) {
+      return ImmutableList.of(
+          canonicalPath(((ProguardConfigurationSourceFile) source).getPath()));
+    }
+    return ImmutableList.of();
+  }
+
+  private static Path canonicalPath(Path path) {
+    return path.toAbsolutePath().normalize();
+  }
+
+  private ParsedSource parseSource(
+      ProguardConfigurationSource source,
+      List<Path> includeChain,
+      ExecutorService executorService) {
+    String contents;
+    try {
+      contents = source.get();
+    } catch (IOException e) {
+      ParsedSource failed = new ParsedSource();
+      failed.fail(e);
+      return failed;
+    }
+    return parseContents(source, contents, includeChain, executorService);
+  }
+
+  private ParsedSource parseContents(
+      ProguardConfigurationSource source,
+      String contents,
+      List<Path> includeChain,
+      ExecutorService executorService) {
+    // Configurations are often aggregated from many libraries that ship identical rule files, so
+    // sources with the same contents and base directory are only parsed once.
+    SourceKey key = new SourceKey(contents, source.getBaseDirectory());
+    ParsedSource parsed = parsedSources.get(key);
+    if (parsed == null) {
+      parsed = new ProguardFileParser(source, contents, includeChain, executorService).parse();
+      // Errors are not shared as the error message refers to the name of the source.
+      if (!parsed.hasErrors) {
+        parsedSources.putIfAbsent(key, parsed);
+      }
+    }
+    return parsed;
+  }
+
+  private static ParsedSource await(Future<ParsedSource> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      throw new RuntimeException("Interrupted while waiting for future.", e);
+    } catch (ExecutionException e) {
+      // Parse errors are recorded in the parsed source, so this is an unexpected exception.
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  private interface ConfigurationUpdate {
+    void apply(Builder builder) throws ProguardRuleParserException, IOException;
+  }
+
+  /**
+   * The result of parsing a single source. Parsing does not modify the configuration builder but
+   * records the updates to apply, including the updates from included files and any error, in the
+   * order they appear in the source.
+   */
+  private static class ParsedSource {
+    private final List<ConfigurationUpdate> updates = new ArrayList<>();
+    private boolean hasErrors = false;
+
+    void add(ConfigurationUpdate update) {
+      updates.add(update);
+    }
+
+    void fail(ProguardRuleParserException e) {
+      hasErrors = true;
+      updates.add(builder -> {
+        throw e;
+      });
+    }
+
+    void fail(IOException e) {
+      hasErrors = true;
+      updates.add(builder -> {
+        throw e;
+      });
+    }
+
+    void applyTo(Builder builder) throws ProguardRuleParserException, IOException {
+      for (ConfigurationUpdate update : updates) {
+        update.apply(builder);
+      }
+    }
+  }
+
+  private static class SourceKey {
+    private final String contents;
+    private final Path baseDirectory;
+
+    SourceKey(String contents, Path baseDirectory) {
+      this.contents = contents;
+      this.baseDirectory = baseDirectory;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof SourceKey)) {
+        return false;
+      }
+      SourceKey o = (SourceKey) other;
+      return contents.equals(o.contents) && baseDirectory.equals(o.baseDirectory);
+    }
+
+    @Override
+    public int hashCode() {
+      return contents.hashCode() * 31 + baseDirectory.hashCode();
     }
   }
 
   private class ProguardFileParser {
     private final String name;
     private final String contents;
+    private final List<Path> includeChain;
+    private final ExecutorService executorService;
+    private final ParsedSource parsed = new ParsedSource();
     private int position = 0;
     private Path baseDirectory;
 
-    ProguardFileParser(ProguardConfigurationSource source) throws IOException {
-      contents = source.get();
+    ProguardFileParser(
+        ProguardConfigurationSource source,
+        String contents,
+        List<Path> includeChain,
+        ExecutorService executorService) {
+      this.contents = contents;
+      this.includeChain = includeChain;
+      this.executorService = executorService;
       baseDirectory = source.getBaseDirectory();
       name = source.getName();
     }
 
-    public void parse() throws ProguardRuleParserException {
-      do {
-        skipWhitespace();
-      } while (parseOption());
+    public ParsedSource parse() {
+      try {
+        do {
+          skipWhitespace();
+        } while (parseOption());
+      } catch (ProguardRuleParserException e) {
+        parsed.fail(e);
+      }
+      return parsed;
     }
 
     private boolean parseOption() throws ProguardRuleParserException {
@@ -147,26 +311,27 @@ public class ProguardConfigurationParser {
       } else if (acceptString("renamesourcefileattribute")) {
         skipWhitespace();
         if (isOptionalArgumentGiven()) {
-          configurationBuilder.setRenameSourceFileAttribute(acceptString());
+          String attribute = acceptString();
+          parsed.add(builder -> builder.setRenameSourceFileAttribute(attribute));
         } else {
-          configurationBuilder.setRenameSourceFileAttribute("");
+          parsed.add(builder -> builder.setRenameSourceFileAttribute(""));
         }
       } else if (acceptString("keepattributes")) {
         parseKeepAttributes();
       } else if (acceptString("keeppackagenames")) {
         ProguardKeepPackageNamesRule rule = parseKeepPackageNamesRule();
-        configurationBuilder.addRule(rule);
+        parsed.add(builder -> builder.addRule(rule));
       } else if (acceptString("checkdiscard")) {
         ProguardCheckDiscardRule rule = parseCheckDiscardRule();
-        configurationBuilder.addRule(rule);
+        parsed.add(builder -> builder.addRule(rule));
       } else if (acceptString("keep")) {
         ProguardKeepRule rule = parseKeepRule();
-        configurationBuilder.addRule(rule);
+        parsed.add(builder -> builder.addRule(rule));
       } else if (acceptString("whyareyoukeeping")) {
         ProguardWhyAreYouKeepingRule rule = parseWhyAreYouKeepingRule();
-        configurationBuilder.addRule(rule);
+        parsed.add(builder -> builder.addRule(rule));
       } else if (acceptString("dontoptimize")) {
-        configurationBuilder.setOptimizing(false);
+        parsed.add(builder -> builder.setOptimizing(false));
       } else if (acceptString("optimizationpasses")) {
         skipWhitespace();
         Integer expectedOptimizationPasses = acceptInteger();
@@ -175,70 +340,78 @@ public class ProguardConfigurationParser {
         }
         warnIgnoringOptions("optimizationpasses");
       } else if (acceptString("dontobfuscate")) {
-        configurationBuilder.setObfuscating(false);
+        parsed.add(builder -> builder.setObfuscating(false));
       } else if (acceptString("dontshrink")) {
-        configurationBuilder.setShrinking(false);
+        parsed.add(builder -> builder.setShrinking(false));
       } else if (acceptString("printusage")) {
-        configurationBuilder.setPrintUsage(true);
+        parsed.add(builder -> builder.setPrintUsage(true));
         skipWhitespace();
         if (isOptionalArgumentGiven()) {
-          configurationBuilder.setPrintUsageFile(parseFileName());
+          Path file = parseFileName();
+          parsed.add(builder -> builder.setPrintUsageFile(file));
         }
       } else if (acceptString("verbose")) {
-        configurationBuilder.setVerbose(true);
+        parsed.add(builder -> builder.setVerbose(true));
       } else if (acceptString("ignorewarnings")) {
-        configurationBuilder.setIgnoreWarnings(true);
+        parsed.add(builder -> builder.setIgnoreWarnings(true));
       } else if (acceptString("dontwarn")) {
         do {
           ProguardTypeMatcher pattern = ProguardTypeMatcher.create(parseClassName(),
               ClassOrType.CLASS, dexItemFactory);
-          configurationBuilder.addDontWarnPattern(pattern);
+          parsed.add(builder -> builder.addDontWarnPattern(pattern));
         } while (acceptChar(','));
       } else if (acceptString("repackageclasses")) {
-        if (configurationBuilder.getPackageObfuscationMode() == PackageObfuscationMode.FLATTEN) {
-          warnOverridingOptions("repackageclasses", "flattenpackagehierarchy");
-        }
+        String packagePrefix = parseOptionalPackagePrefix();
+        parsed.add(builder -> {
+          if (builder.getPackageObfuscationMode() == PackageObfuscationMode.FLATTEN) {
+            warnOverridingOptions("repackageclasses", "flattenpackagehierarchy");
+          }
+          builder.setPackagePrefix(packagePrefix == null ? "" : packagePrefix);
+        });
+      } else if (acceptString("flattenpackagehierarchy")) {
+        // Whether -repackageclasses takes precedence is only known when the options are applied.
+        // If it does, the argument is skipped, otherwise only a quoted argument is allowed.
         skipWhitespace();
-        if (acceptChar('\'')) {
-          configurationBuilder.setPackagePrefix(parsePackageNameOrEmptyString());
-          expectChar('\'');
+        String packagePrefix;
+        ProguardRuleParserException unquotedArgumentError;
+        if (isOptionalArgumentGiven() && !hasNextChar('\'')) {
+          packagePrefix = null;
+          unquotedArgumentError = parseError("Expected char '-'");
+          parsed.hasErrors = true;
+          skipSingleArgument();
         } else {
-          configurationBuilder.setPackagePrefix("");
+          packagePrefix = parseOptionalPackagePrefix();
+          unquotedArgumentError = null;
         }
-      } else if (acceptString("flattenpackagehierarchy")) {
-        if (configurationBuilder.getPackageObfuscationMode() == PackageObfuscationMode.REPACKAGE) {
-          warnOverridingOptions("repackageclasses", "flattenpackagehierarchy");
-          skipWhitespace();
-          if (isOptionalArgumentGiven()) {
-            skipSingleArgument();
-          }
-        } else {
-          skipWhitespace();
-          if (acceptChar('\'')) {
-            configurationBuilder.setFlattenPackagePrefix(parsePackageNameOrEmptyString());
-            expectChar('\'');
+        parsed.add(builder -> {
+          if (builder.getPackageObfuscationMode() == PackageObfuscationMode.REPACKAGE) {
+            warnOverridingOptions("repackageclasses", "flattenpackagehierarchy");
+          } else if (unquotedArgumentError != null) {
+            throw unquotedArgumentError;
           } else {
-            configurationBuilder.setFlattenPackagePrefix("");
+            builder.setFlattenPackagePrefix(packagePrefix == null ? "" : packagePrefix);
           }
-        }
+        });
       } else if (acceptString("allowaccessmodification")) {
-        configurationBuilder.setAllowAccessModification(true);
+        parsed.add(builder -> builder.setAllowAccessModification(true));
       } else if (acceptString("printmapping")) {
-        configurationBuilder.setPrintMapping(true);
+        parsed.add(builder -> builder.setPrintMapping(true));
         skipWhitespace();
         if (isOptionalArgumentGiven()) {
-          configurationBuilder.setPrintMappingFile(parseFileName());
+          Path file = parseFileName();
+          parsed.add(builder -> builder.setPrintMappingFile(file));
         }
       } else if (acceptString("applymapping")) {
-        configurationBuilder.setApplyMappingFile(parseFileName());
+        Path file = parseFileName();
+        parsed.add(builder -> builder.setApplyMappingFile(file));
         // TODO(b/64802420): warn until it is fully implemented.
         warnIgnoringOptions("applymapping");
       } else if (acceptString("assumenosideeffects")) {
         ProguardAssumeNoSideEffectRule rule = parseAssumeNoSideEffectsRule();
-        configurationBuilder.addRule(rule);
+        parsed.add(builder -> builder.addRule(rule));
       } else if (acceptString("assumevalues")) {
         ProguardAssumeValuesRule rule = parseAssumeValuesRule();
-        configurationBuilder.addRule(rule);
+        parsed.add(builder -> builder.addRule(rule));
       } else if (acceptString("include")) {
         skipWhitespace();
         parseInclude();
@@ -246,26 +419,32 @@ public class ProguardConfigurationParser {
         skipWhitespace();
         baseDirectory = parseFileName();
       } else if (acceptString("injars")) {
-        configurationBuilder.addInjars(parseClassPath());
+        List<FilteredClassPath> classPath = parseClassPath();
+        parsed.add(builder -> builder.addInjars(classPath));
       } else if (acceptString("libraryjars")) {
-        configurationBuilder.addLibraryJars(parseClassPath());
+        List<FilteredClassPath> classPath = parseClassPath();
+        parsed.add(builder -> builder.addLibraryJars(classPath));
       } else if (acceptString("printseeds")) {
-        configurationBuilder.setPrintSeeds(true);
+        parsed.add(builder -> builder.setPrintSeeds(true));
         skipWhitespace();
         if (isOptionalArgumentGiven()) {
-          configurationBuilder.setSeedFile(parseFileName());
+          Path file = parseFileName();
+          parsed.add(builder -> builder.setSeedFile(file));
         }
       } else if (acceptString("obfuscationdictionary")) {
-        configurationBuilder.setObfuscationDictionary(parseFileName());
+        Path file = parseFileName();
+        parsed.add(builder -> builder.setObfuscationDictionary(file));
       } else if (acceptString("classobfuscationdictionary")) {
-        configurationBuilder.setClassObfuscationDictionary(parseFileName());
+        Path file = parseFileName();
+        parsed.add(builder -> builder.setClassObfuscationDictionary(file));
       } else if (acceptString("packageobfuscationdictionary")) {
-        configurationBuilder.setPackageObfuscationDictionary(parseFileName());
+        Path file = parseFileName();
+        parsed.add(builder -> builder.setPackageObfuscationDictionary(file));
       } else if (acceptString("alwaysinline")) {
         ProguardAlwaysInlineRule rule = parseAlwaysInlineRule();
-        configurationBuilder.addRule(rule);
+        parsed.add(builder -> builder.addRule(rule));
       } else if (acceptString("useuniqueclassmembernames")) {
-        configurationBuilder.setUseUniqueClassMemberNames(true);
+        parsed.add(builder -> builder.setUseUniqueClassMemberNames(true));
       } else {
         throw parseError("Unknown option");
       }
@@ -273,22 +452,44 @@ public class ProguardConfigurationParser {
     }
 
     private void warnIgnoringOptions(String optionName) {
-      System.out.println("WARNING: Ignoring option: -" + optionName);
+      parsed.add(builder -> System.out.println("WARNING: Ignoring option: -" + optionName));
     }
 
     private void warnOverridingOptions(String optionName, String victim) {
       System.out.println("WARNING: option -" + optionName + " overrides -" + victim);
     }
 
+    private String parseOptionalPackagePrefix() throws ProguardRuleParserException {
+      skipWhitespace();
+      if (!acceptChar('\'')) {
+        return null;
+      }
+      String packagePrefix = parsePackageNameOrEmptyString();
+      expectChar('\'');
+      return packagePrefix;
+    }
+
     private void parseInclude() throws ProguardRuleParserException {
       Path included = parseFileName();
+      Path canonicalIncluded = canonicalPath(included);
+      List<Path> chain = ImmutableList.<Path>builder()
+          .addAll(includeChain).add(canonicalIncluded).build();
+      if (includeChain.contains(canonicalIncluded)) {
+        throw parseError("Cyclic include of file '" + included + "' ("
+            + chain.stream().map(Path::toString).collect(Collectors.joining(" -> ")) + ")");
+      }
+      ProguardConfigurationSource source = new ProguardConfigurationSourceFile(included);
+      String includedContents;
       try {
-        new ProguardFileParser(new ProguardConfigurationSourceFile(included)).parse();
+        includedContents = source.get();
       } catch (FileNotFoundException | NoSuchFileException e) {
         throw parseError("Included file '" + included.toString() + "' not found", e);
       } catch (IOException e) {
         throw parseError("Failed to read included file '" + included.toString() + "'", e);
       }
+      Future<ParsedSource> future = executorService.submit(
+          () -> parseContents(source, includedContents, chain, executorService));
+      parsed.add(builder -> await(future).applyTo(builder));
     }
 
     private boolean acceptArobaseInclude() throws ProguardRuleParserException {
@@ -307,7 +508,7 @@ public class ProguardConfigurationParser {
       if (attributesPatterns.isEmpty()) {
         throw parseError("Expected attribute pattern list");
       }
-      configurationBuilder.addKeepAttributePatterns(attributesPatterns);
+      parsed.add(builder -> builder.addKeepAttributePatterns(attributesPatterns));
     }
 
     private boolean skipFlag(String name) {
@@ -359,7 +560,7 @@ public class ProguardConfigurationParser {
           parseMemberRules(keepRuleBuilder, true);
           return true;
         } catch (ProguardRuleParserException e) {
-          System.out.println(e);
+          parsed.add(builder -> System.out.println(e));
           return false;
         }
       }
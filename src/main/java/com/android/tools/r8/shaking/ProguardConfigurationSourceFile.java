@@ -31,6 +31,10 @@ public class ProguardConfigurationSourceFile implements ProguardConfigurationSou
     return baseDirectory;
   }
 
+  Path getPath() {
+    return path;
+  }
+
   public String getName() {
     return path.toString();
   }
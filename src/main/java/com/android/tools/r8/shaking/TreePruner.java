@@ -14,12 +14,15 @@ import com.android.tools.r8.graph.PresortedComparable;
 import com.android.tools.r8.logging.Log;
 import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
 import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.ThreadUtils;
 import com.google.common.collect.Sets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 
 public class TreePruner {
 
@@ -38,7 +41,7 @@ public class TreePruner {
         ? new UsagePrinter() : UsagePrinter.DONT_PRINT;
   }
 
-  public DexApplication run() {
+  public DexApplication run(ExecutorService executorService) throws ExecutionException {
     application.timing.begin("Pruning application...");
     if (options.debugKeepRules && !options.skipMinification) {
       System.out.println(
@@ -48,57 +51,75 @@ public class TreePruner {
     }
     DexApplication result;
     try {
-      result = removeUnused(application).appendDeadCode(usagePrinter.toByteArray()).build();
+      result = removeUnused(application, executorService)
+          .appendDeadCode(usagePrinter.toByteArray())
+          .build();
     } finally {
       application.timing.end();
     }
     return result;
   }
 
-  private DexApplication.Builder removeUnused(DexApplication application) {
+  private DexApplication.Builder removeUnused(
+      DexApplication application, ExecutorService executorService) throws ExecutionException {
     return application.builder()
-        .replaceProgramClasses(getNewProgramClasses(application.classes()));
+        .replaceProgramClasses(getNewProgramClasses(application.classes(), executorService));
   }
 
-  private List<DexProgramClass> getNewProgramClasses(List<DexProgramClass> classes) {
+  private List<DexProgramClass> getNewProgramClasses(
+      List<DexProgramClass> classes, ExecutorService executorService) throws ExecutionException {
+    // Classes are pruned in parallel, each with its own usage printer. The results are combined
+    // in the original order of the classes, so they do not depend on the scheduling.
+    List<UsagePrinter> classUsagePrinters =
+        ThreadUtils.processItemsWithResults(classes, this::pruneClass, executorService);
     List<DexProgramClass> newClasses = new ArrayList<>();
-    for (DexProgramClass clazz : classes) {
-      if (!appInfo.liveTypes.contains(clazz.type)) {
-        // The class is completely unused and we can remove it.
-        if (Log.ENABLED) {
-          Log.debug(getClass(), "Removing class: " + clazz);
-        }
-        prunedTypes.add(clazz.type);
-        usagePrinter.printUnusedClass(clazz);
-      } else {
+    for (int i = 0; i < classes.size(); i++) {
+      DexProgramClass clazz = classes.get(i);
+      if (appInfo.liveTypes.contains(clazz.type)) {
         newClasses.add(clazz);
-        if (!appInfo.instantiatedTypes.contains(clazz.type) &&
-            (!options.debugKeepRules || !hasDefaultConstructor(clazz))) {
-          // The class is only needed as a type but never instantiated. Make it abstract to reflect
-          // this.
-          if (clazz.accessFlags.isFinal()) {
-            // We cannot mark this class abstract, as it is final (not supported on Android).
-            // However, this might extend an abstract class and we might have removed the
-            // corresponding methods in this class. This might happen if we only keep this
-            // class around for its constants.
-            // For now, we remove the final flag to still be able to mark it abstract.
-            clazz.accessFlags.unsetFinal();
-          }
-          clazz.accessFlags.setAbstract();
-        }
-        // The class is used and must be kept. Remove the unused fields and methods from
-        // the class.
-        usagePrinter.visiting(clazz);
-        clazz.setDirectMethods(reachableMethods(clazz.directMethods(), clazz));
-        clazz.setVirtualMethods(reachableMethods(clazz.virtualMethods(), clazz));
-        clazz.setInstanceFields(reachableFields(clazz.instanceFields()));
-        clazz.setStaticFields(reachableFields(clazz.staticFields()));
-        usagePrinter.visited();
+      } else {
+        prunedTypes.add(clazz.type);
       }
+      usagePrinter.append(classUsagePrinters.get(i));
     }
     return newClasses;
   }
 
+  private UsagePrinter pruneClass(DexProgramClass clazz) {
+    UsagePrinter usagePrinter = this.usagePrinter.newPrinter();
+    if (!appInfo.liveTypes.contains(clazz.type)) {
+      // The class is completely unused and we can remove it.
+      if (Log.ENABLED) {
+        Log.debug(getClass(), "Removing class: " + clazz);
+      }
+      usagePrinter.printUnusedClass(clazz);
+      return usagePrinter;
+    }
+    if (!appInfo.instantiatedTypes.contains(clazz.type) &&
+        (!options.debugKeepRules || !hasDefaultConstructor(clazz))) {
+      // The class is only needed as a type but never instantiated. Make it abstract to reflect
+      // this.
+      if (clazz.accessFlags.isFinal()) {
+        // We cannot mark this class abstract, as it is final (not supported on Android).
+        // However, this might extend an abstract class and we might have removed the
+        // corresponding methods in this class. This might happen if we only keep this
+        // class around for its constants.
+        // For now, we remove the final flag to still be able to mark it abstract.
+        clazz.accessFlags.unsetFinal();
+      }
+      clazz.accessFlags.setAbstract();
+    }
+    // The class is used and must be kept. Remove the unused fields and methods from
+    // the class.
+    usagePrinter.visiting(clazz);
+    clazz.setDirectMethods(reachableMethods(clazz.directMethods(), clazz, usagePrinter));
+    clazz.setVirtualMethods(reachableMethods(clazz.virtualMethods(), clazz, usagePrinter));
+    clazz.setInstanceFields(reachableFields(clazz.instanceFields(), usagePrinter));
+    clazz.setStaticFields(reachableFields(clazz.staticFields(), usagePrinter));
+    usagePrinter.visited();
+    return usagePrinter;
+  }
+
   private boolean hasDefaultConstructor(DexProgramClass clazz) {
     for (DexEncodedMethod method : clazz.directMethods()) {
       if (isDefaultConstructor(method)) {
@@ -123,7 +144,8 @@ public class TreePruner {
         && method.method.proto.parameters.isEmpty();
   }
 
-  private DexEncodedMethod[] reachableMethods(DexEncodedMethod[] methods, DexClass clazz) {
+  private DexEncodedMethod[] reachableMethods(
+      DexEncodedMethod[] methods, DexClass clazz, UsagePrinter usagePrinter) {
     int firstUnreachable = firstUnreachableIndex(methods, appInfo.liveMethods);
     // Return the original array if all methods are used.
     if (firstUnreachable == -1) {
@@ -168,7 +190,8 @@ public class TreePruner {
     return reachableMethods.toArray(new DexEncodedMethod[reachableMethods.size()]);
   }
 
-  private DexEncodedField[] reachableFields(DexEncodedField[] fields) {
+  private DexEncodedField[] reachableFields(
+      DexEncodedField[] fields, UsagePrinter usagePrinter) {
     int firstUnreachable = firstUnreachableIndex(fields, appInfo.liveFields);
     // Return the original array if all fields are used.
     if (firstUnreachable == -1) {
@@ -25,6 +25,17 @@ class UsagePrinter {
     return writer.toString().getBytes(StandardCharsets.UTF_8);
   }
 
+  // Create a printer of the same kind, used for printing a single class on another thread.
+  UsagePrinter newPrinter() {
+    return new UsagePrinter();
+  }
+
+  // Append the output of a printer created with newPrinter().
+  void append(UsagePrinter printer) {
+    assert enclosingClazz == null;
+    writer.append(printer.writer);
+  }
+
   void printUnusedClass(DexProgramClass clazz) {
     writer.append(clazz.toSourceString());
     writer.append('\n');
@@ -91,6 +102,16 @@ class UsagePrinter {
       return null;
     }
 
+    @Override
+    UsagePrinter newPrinter() {
+      return this;
+    }
+
+    @Override
+    void append(UsagePrinter printer) {
+      // Intentionally left empty.
+    }
+
     @Override
     void printUnusedClass(DexProgramClass clazz) {
       // Intentionally left empty.
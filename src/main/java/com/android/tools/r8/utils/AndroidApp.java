@@ -66,6 +66,8 @@ public class AndroidApp {
   private final List<Resource> mainDexListResources;
   private final List<String> mainDexClasses;
   private final Resource mainDexListOutput;
+  private final List<Resource> startupProfileResources;
+  private final List<Resource> inliningProfileResources;
 
   // See factory methods and AndroidApp.Builder below.
   private AndroidApp(
@@ -79,7 +81,9 @@ public class AndroidApp {
       Resource proguardSeeds,
       List<Resource> mainDexListResources,
       List<String> mainDexClasses,
-      Resource mainDexListOutput) {
+      Resource mainDexListOutput,
+      List<Resource> startupProfileResources,
+      List<Resource> inliningProfileResources) {
     this.programResources = programResources;
     this.programResourcesMainDescriptor = programResourcesMainDescriptor;
     this.programFileArchiveReaders = programFileArchiveReaders;
@@ -91,6 +95,8 @@ public class AndroidApp {
     this.mainDexListResources = mainDexListResources;
     this.mainDexClasses = mainDexClasses;
     this.mainDexListOutput = mainDexListOutput;
+    this.startupProfileResources = startupProfileResources;
+    this.inliningProfileResources = inliningProfileResources;
   }
 
   /**
@@ -293,6 +299,34 @@ public class AndroidApp {
     return mainDexListOutput == null ? null : closer.register(mainDexListOutput.getStream());
   }
 
+  /**
+   * True if the startup profile resources exists.
+   */
+  public boolean hasStartupProfile() {
+    return !startupProfileResources.isEmpty();
+  }
+
+  /**
+   * Get the startup profile resources if any.
+   */
+  public List<Resource> getStartupProfileResources() {
+    return startupProfileResources;
+  }
+
+  /**
+   * True if the inlining profile resources exists.
+   */
+  public boolean hasInliningProfile() {
+    return !inliningProfileResources.isEmpty();
+  }
+
+  /**
+   * Get the inlining profile resources if any.
+   */
+  public List<Resource> getInliningProfileResources() {
+    return inliningProfileResources;
+  }
+
   /**
    * Write the dex program resources and proguard resource to @code{output}.
    */
@@ -450,6 +484,8 @@ public class AndroidApp {
     private List<Resource> mainDexListResources = new ArrayList<>();
     private List<String> mainDexListClasses = new ArrayList<>();
     private Resource mainDexListOutput;
+    private List<Resource> startupProfileResources = new ArrayList<>();
+    private List<Resource> inliningProfileResources = new ArrayList<>();
     private boolean ignoreDexInArchive = false;
     private boolean vdexAllowed = false;
 
@@ -469,6 +505,8 @@ public class AndroidApp {
       mainDexListResources = app.mainDexListResources;
       mainDexListClasses = app.mainDexClasses;
       mainDexListOutput = app.mainDexListOutput;
+      startupProfileResources = app.startupProfileResources;
+      inliningProfileResources = app.inliningProfileResources;
     }
 
     /**
@@ -712,6 +750,44 @@ public class AndroidApp {
       return this;
     }
 
+    /**
+     * Add startup profile files.
+     */
+    public Builder addStartupProfileFiles(Path... files) throws IOException {
+      return addStartupProfileFiles(Arrays.asList(files));
+    }
+
+    public Builder addStartupProfileFiles(Collection<Path> files) throws IOException {
+      for (Path file : files) {
+        if (!Files.exists(file)) {
+          throw new FileNotFoundException("Non-existent input file: " + file);
+        }
+        startupProfileResources.add(Resource.fromFile(null, file));
+      }
+      return this;
+    }
+
+    public boolean hasStartupProfile() {
+      return !startupProfileResources.isEmpty();
+    }
+
+    /**
+     * Add inlining profile files.
+     */
+    public Builder addInliningProfileFiles(Path... files) throws IOException {
+      return addInliningProfileFiles(Arrays.asList(files));
+    }
+
+    public Builder addInliningProfileFiles(Collection<Path> files) throws IOException {
+      for (Path file : files) {
+        if (!Files.exists(file)) {
+          throw new FileNotFoundException("Non-existent input file: " + file);
+        }
+        inliningProfileResources.add(Resource.fromFile(null, file));
+      }
+      return this;
+    }
+
     /**
      * Ignore dex resources in input archives.
      *
@@ -748,7 +824,9 @@ public class AndroidApp {
           proguardSeeds,
           mainDexListResources,
           mainDexListClasses,
-          mainDexListOutput);
+          mainDexListOutput,
+          startupProfileResources,
+          inliningProfileResources);
     }
 
     private void addProgramFile(FilteredClassPath filteredClassPath) throws IOException {
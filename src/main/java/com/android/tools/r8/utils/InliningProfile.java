@@ -0,0 +1,144 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.utils;
+
+import com.android.tools.r8.errors.CompilationError;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexMethod;
+import com.google.common.collect.Sets;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The hot methods and call sites of an application, used to inline larger methods where it
+ * matters for performance.
+ *
+ * <p>Each line of an inlining profile is either a hot method, in the form
+ * "Lcom/example/Main;->loop()V", or a hot call site, given as the calling method followed by the
+ * called method, e.g. "Lcom/example/Main;->loop()V Lcom/example/Util;->hash(I)I". All call sites
+ * in a hot method are hot. Flags in front of the first method, as written in ART profiles, are
+ * allowed, and an entry with flags is only hot if the flags include 'H' (e.g.
+ * "HSPLcom/example/Main;->loop()V"). Empty lines and lines starting with '#' are ignored.
+ */
+public class InliningProfile {
+
+  private static final InliningProfile EMPTY =
+      new InliningProfile(Sets.newIdentityHashSet(), new IdentityHashMap<>());
+
+  private final Set<DexMethod> hotMethods;
+  private final Map<DexMethod, Set<DexMethod>> hotCallSites;
+
+  private InliningProfile(
+      Set<DexMethod> hotMethods, Map<DexMethod, Set<DexMethod>> hotCallSites) {
+    this.hotMethods = hotMethods;
+    this.hotCallSites = hotCallSites;
+  }
+
+  public static InliningProfile empty() {
+    return EMPTY;
+  }
+
+  public static Builder builder(DexItemFactory itemFactory) {
+    return new Builder(itemFactory);
+  }
+
+  public boolean isEmpty() {
+    return hotMethods.isEmpty() && hotCallSites.isEmpty();
+  }
+
+  public boolean isHotMethod(DexMethod method) {
+    return hotMethods.contains(method);
+  }
+
+  /** True if some calls from the method are hot. */
+  public boolean hasHotCallSites(DexMethod method) {
+    return isHotMethod(method) || hotCallSites.containsKey(method);
+  }
+
+  /** True if calls from caller to callee are hot. */
+  public boolean isHotCallSite(DexMethod caller, DexMethod callee) {
+    if (isHotMethod(caller)) {
+      return true;
+    }
+    Set<DexMethod> callees = hotCallSites.get(caller);
+    return callees != null && callees.contains(callee);
+  }
+
+  public static class Builder {
+
+    private final DexItemFactory itemFactory;
+    private final Set<DexMethod> hotMethods = Sets.newIdentityHashSet();
+    private final Map<DexMethod, Set<DexMethod>> hotCallSites = new IdentityHashMap<>();
+
+    private Builder(DexItemFactory itemFactory) {
+      this.itemFactory = itemFactory;
+    }
+
+    public synchronized Builder addHotMethod(DexMethod method) {
+      hotMethods.add(method);
+      return this;
+    }
+
+    public synchronized Builder addHotCallSite(DexMethod caller, DexMethod callee) {
+      hotCallSites.computeIfAbsent(caller, key -> Sets.newIdentityHashSet()).add(callee);
+      return this;
+    }
+
+    public Builder parse(InputStream input) {
+      try {
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+          line = line.trim();
+          if (line.length() > 0 && line.charAt(0) != '#') {
+            parseLine(line);
+          }
+        }
+      } catch (IOException e) {
+        throw new CompilationError("Cannot load inlining profile.");
+      }
+      return this;
+    }
+
+    private void parseLine(String line) {
+      String[] methods = line.split("\\s+");
+      if (methods.length > 2) {
+        throw new CompilationError("Illegal inlining profile entry '" + line + "'.");
+      }
+      // Skip the flags of ART profile entries.
+      int start = methods[0].indexOf('L');
+      String flags = start < 0 ? "" : methods[0].substring(0, start);
+      if (start < 0 || !flags.chars().allMatch(Character::isUpperCase)) {
+        throw new CompilationError("Illegal inlining profile entry '" + line + "'.");
+      }
+      DexMethod caller = StartupProfile.parseMethod(methods[0].substring(start), itemFactory);
+      DexMethod callee = methods.length == 1
+          ? null : StartupProfile.parseMethod(methods[1], itemFactory);
+      if (caller == null || (methods.length == 2 && callee == null)) {
+        throw new CompilationError("Illegal inlining profile entry '" + line + "'.");
+      }
+      if (!flags.isEmpty() && flags.indexOf('H') < 0) {
+        // Not a hot method of an ART profile.
+        return;
+      }
+      if (callee == null) {
+        addHotMethod(caller);
+      } else {
+        addHotCallSite(caller, callee);
+      }
+    }
+
+    public InliningProfile build() {
+      return hotMethods.isEmpty() && hotCallSites.isEmpty()
+          ? EMPTY : new InliningProfile(hotMethods, hotCallSites);
+    }
+  }
+}
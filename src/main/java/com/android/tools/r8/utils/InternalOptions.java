@@ -3,6 +3,8 @@
 // BSD-style license that can be found in the LICENSE file.
 package com.android.tools.r8.utils;
 
+import com.android.tools.r8.CompilationCanceledException;
+import com.android.tools.r8.CompilationListener;
 import com.android.tools.r8.DiagnosticsHandler;
 import com.android.tools.r8.dex.Marker;
 import com.android.tools.r8.errors.CompilationError;
@@ -51,6 +53,25 @@ public class InternalOptions {
   public boolean skipClassMerging = true;
   public boolean inlineAccessors = true;
   public boolean removeSwitchMaps = true;
+  // Merge stateless lambda classes implementing the same interface method into shared classes.
+  public boolean mergeLambdaClasses = false;
+  // Replace enums only used through their constants, ordinals and switches by int values.
+  public boolean enableEnumUnboxing = false;
+  // Rewrite interface calls with a single target to virtual calls and make methods not using their
+  // receiver static.
+  public boolean enableDevirtualization = false;
+  // Replace reads of fields that always hold the same constant and remove their writes.
+  public boolean enableConstantFieldPropagation = false;
+  // Remove computations that are available from a dominating instruction.
+  public boolean enableGlobalValueNumbering = true;
+  // Move computations that do not change in a loop out of the loop.
+  public boolean enableLoopInvariantCodeMotion = true;
+  // Replace StringBuilder and StringBuffer chains appending constants by constant strings.
+  public boolean enableStringBuilderOptimization = true;
+  // Remove casts, instance-of checks and null checks that always have the same outcome.
+  public boolean enableTypeCheckElimination = true;
+  // Replace allocations that do not escape their method by the values of their fields.
+  public boolean enableScalarReplacement = true;
   public final OutlineOptions outline = new OutlineOptions();
 
   // Number of threads to use while processing the dex files.
@@ -113,6 +134,12 @@ public class InternalOptions {
 
   public ImmutableList<ProguardConfigurationRule> mainDexKeepRules = ImmutableList.of();
   public boolean minimalMainDex;
+  // Classes and methods used during startup, read with the program input.
+  public StartupProfile startupProfile = StartupProfile.empty();
+  // Hot methods and call sites, read with the program input.
+  public InliningProfile inliningProfile = InliningProfile.empty();
+  // Number of instructions that inlining at hot call sites may add to the program in total.
+  public int hotInliningBudget = 20000;
 
   public String warningInvalidParameterAnnotations = null;
 
@@ -128,6 +155,14 @@ public class InternalOptions {
 
   public DiagnosticsHandler diagnosticsHandler = new DefaultDiagnosticsHandler();
 
+  public CompilationListener compilationListener = new DefaultCompilationListener();
+
+  public void checkCanceled() {
+    if (compilationListener.isCanceled()) {
+      throw new CompilationCanceledException();
+    }
+  }
+
   public void warningInvalidDebugInfo(DexEncodedMethod method, InvalidDebugInfoException e) {
     warningInvalidDebugInfoCount++;
   }
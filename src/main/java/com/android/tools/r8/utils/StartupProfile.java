@@ -0,0 +1,195 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.utils;
+
+import com.android.tools.r8.errors.CompilationError;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.graph.DexString;
+import com.android.tools.r8.graph.DexType;
+import com.google.common.collect.Sets;
+import it.unimi.dsi.fastutil.objects.Reference2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.objectweb.asm.Type;
+
+/**
+ * The classes and methods used during application startup, in the order they are first used.
+ *
+ * <p>Each line of a startup profile is a class descriptor, e.g. "Lcom/example/Main;", or a method
+ * in the form "Lcom/example/Main;->onCreate(Landroid/os/Bundle;)V". Flags in front of the
+ * descriptor, as written in ART profiles (e.g. "HSPLcom/example/Main;->run()V"), are ignored, and
+ * so are empty lines and lines starting with '#'. The holder of a startup method is a startup
+ * class, and so is the class initializer of a startup class.
+ */
+public class StartupProfile {
+
+  public static final int NOT_STARTUP = Integer.MAX_VALUE;
+
+  private static final String METHOD_SEPARATOR = "->";
+
+  private static final StartupProfile EMPTY = new StartupProfile(
+      new Reference2IntLinkedOpenHashMap<>(), Sets.newIdentityHashSet());
+
+  private final Reference2IntMap<DexType> classes;
+  private final Set<DexMethod> methods;
+
+  private StartupProfile(Reference2IntMap<DexType> classes, Set<DexMethod> methods) {
+    this.classes = classes;
+    this.methods = methods;
+    classes.defaultReturnValue(NOT_STARTUP);
+  }
+
+  public static StartupProfile empty() {
+    return EMPTY;
+  }
+
+  public static Builder builder(DexItemFactory itemFactory) {
+    return new Builder(itemFactory);
+  }
+
+  public boolean isEmpty() {
+    return classes.isEmpty();
+  }
+
+  /** The number of startup classes. */
+  public int size() {
+    return classes.size();
+  }
+
+  /** The startup classes in the order they are first used. */
+  public List<DexType> getClasses() {
+    return new ArrayList<>(classes.keySet());
+  }
+
+  public boolean isStartupClass(DexType type) {
+    return classes.containsKey(type);
+  }
+
+  /**
+   * Position of the class in the startup order, or {@link #NOT_STARTUP} if it is not used during
+   * startup.
+   */
+  public int getClassOrder(DexType type) {
+    return classes.getInt(type);
+  }
+
+  public boolean isStartupMethod(DexMethod method, DexItemFactory itemFactory) {
+    return methods.contains(method)
+        || (itemFactory.isClassConstructor(method) && isStartupClass(method.holder));
+  }
+
+  /**
+   * Parse a method in the form "Lcom/example/Main;->run(I)V".
+   *
+   * @return the method, or null if the string is not a well-formed method.
+   */
+  static DexMethod parseMethod(String method, DexItemFactory itemFactory) {
+    int separator = method.indexOf(METHOD_SEPARATOR);
+    if (separator < 0) {
+      return null;
+    }
+    String holder = method.substring(0, separator);
+    if (!DescriptorUtils.isClassDescriptor(holder)) {
+      return null;
+    }
+    String nameAndDescriptor = method.substring(separator + METHOD_SEPARATOR.length());
+    int descriptorStart = nameAndDescriptor.indexOf('(');
+    if (descriptorStart <= 0) {
+      return null;
+    }
+    String name = nameAndDescriptor.substring(0, descriptorStart);
+    String descriptor = nameAndDescriptor.substring(descriptorStart);
+    Type[] argumentTypes;
+    Type returnType;
+    try {
+      argumentTypes = Type.getArgumentTypes(descriptor);
+      returnType = Type.getReturnType(descriptor);
+    } catch (RuntimeException e) {
+      return null;
+    }
+    DexString[] parameters = new DexString[argumentTypes.length];
+    for (int i = 0; i < argumentTypes.length; i++) {
+      parameters[i] = itemFactory.createString(argumentTypes[i].getDescriptor());
+    }
+    return itemFactory.createMethod(
+        itemFactory.createString(holder),
+        itemFactory.createString(name),
+        itemFactory.createString(returnType.getDescriptor()),
+        parameters);
+  }
+
+  public static class Builder {
+
+    private final DexItemFactory itemFactory;
+    private final Reference2IntMap<DexType> classes = new Reference2IntLinkedOpenHashMap<>();
+    private final Set<DexMethod> methods = Sets.newIdentityHashSet();
+
+    private Builder(DexItemFactory itemFactory) {
+      this.itemFactory = itemFactory;
+    }
+
+    public synchronized Builder addClass(DexType type) {
+      if (!classes.containsKey(type)) {
+        classes.put(type, classes.size());
+      }
+      return this;
+    }
+
+    public synchronized Builder addMethod(DexMethod method) {
+      addClass(method.holder);
+      methods.add(method);
+      return this;
+    }
+
+    public Builder parse(InputStream input) {
+      try {
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+          line = line.trim();
+          if (line.length() > 0 && line.charAt(0) != '#') {
+            parseLine(line);
+          }
+        }
+      } catch (IOException e) {
+        throw new CompilationError("Cannot load startup profile.");
+      }
+      return this;
+    }
+
+    private void parseLine(String line) {
+      // Skip the flags of ART profile entries.
+      int start = line.indexOf('L');
+      if (start < 0 || !line.substring(0, start).chars().allMatch(Character::isUpperCase)) {
+        throw new CompilationError("Illegal startup profile entry '" + line + "'.");
+      }
+      if (line.indexOf(METHOD_SEPARATOR, start) < 0) {
+        String holder = line.substring(start);
+        if (!DescriptorUtils.isClassDescriptor(holder)) {
+          throw new CompilationError("Illegal startup profile entry '" + line + "'.");
+        }
+        addClass(itemFactory.createType(holder));
+        return;
+      }
+      DexMethod method = parseMethod(line.substring(start), itemFactory);
+      if (method == null) {
+        throw new CompilationError("Illegal startup profile entry '" + line + "'.");
+      }
+      addMethod(method);
+    }
+
+    public StartupProfile build() {
+      return classes.isEmpty() ? EMPTY : new StartupProfile(classes, methods);
+    }
+  }
+}
@@ -5,14 +5,22 @@ package com.android.tools.r8.utils;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.ToLongFunction;
 
 public class ThreadUtils {
 
+  // Number of batches created per thread when splitting work into batches. Having more batches
+  // than threads allows threads that finish early to pick up batches with underestimated cost.
+  private static final int BATCHES_PER_THREAD = 4;
+
   public static <T> List<T> awaitFutures(Collection<? extends Future<? extends T>> futures)
       throws ExecutionException {
     ArrayList<T> result = new ArrayList<>(futures.size());
@@ -26,6 +34,164 @@ public class ThreadUtils {
     return result;
   }
 
+  /**
+   * Apply {@code consumer} to each of the items on the executor service and wait for all of them
+   * to complete.
+   */
+  public static <T, E extends Exception> void processItems(
+      Iterable<T> items, ThrowingConsumer<T, E> consumer, ExecutorService executorService)
+      throws ExecutionException {
+    List<Future<?>> futures = new ArrayList<>();
+    for (T item : items) {
+      futures.add(executorService.submit(() -> {
+        consumer.accept(item);
+        return null; // we want a Callable not a Runnable to be able to throw
+      }));
+    }
+    awaitFutures(futures);
+  }
+
+  /**
+   * Apply {@code function} to each of the items on the executor service and return the results
+   * in the iteration order of the items.
+   */
+  public static <T, R, E extends Exception> List<R> processItemsWithResults(
+      Collection<T> items, ThrowingFunction<T, R, E> function, ExecutorService executorService)
+      throws ExecutionException {
+    List<Future<R>> futures = new ArrayList<>(items.size());
+    for (T item : items) {
+      futures.add(executorService.submit(() -> function.apply(item)));
+    }
+    return awaitFutures(futures);
+  }
+
+  /**
+   * Apply {@code consumer} to each of the items on the executor service in batches, and wait for
+   * all of them to complete.
+   *
+   * <p>The items are split into batches of roughly the same estimated cost, about {@link
+   * #BATCHES_PER_THREAD} batches per unit of {@code parallelism}. This avoids the overhead of a
+   * task per item when there are many cheap items, while expensive items get a batch of their own.
+   * Time spent is recorded in {@code statistics} if it is not null.
+   */
+  public static <T, E extends Exception> void processItemsInBatches(
+      Collection<T> items,
+      ToLongFunction<T> cost,
+      int parallelism,
+      ThrowingConsumer<T, E> consumer,
+      ExecutorService executorService,
+      WorkStatistics statistics)
+      throws ExecutionException {
+    processItemsInBatches(items, Collections.emptyList(), cost, parallelism, consumer,
+        executorService, statistics);
+  }
+
+  /**
+   * Apply {@code consumer} to the items as {@link #processItemsInBatches}, and to the {@code
+   * sequentialItems} one after another, in their order, in a batch of their own.
+   */
+  public static <T, E extends Exception> void processItemsInBatches(
+      Collection<T> items,
+      List<T> sequentialItems,
+      ToLongFunction<T> cost,
+      int parallelism,
+      ThrowingConsumer<T, E> consumer,
+      ExecutorService executorService,
+      WorkStatistics statistics)
+      throws ExecutionException {
+    long start = System.nanoTime();
+    List<Future<?>> futures =
+        submitItemsInBatches(items, cost, parallelism, consumer, executorService, statistics);
+    if (!sequentialItems.isEmpty()) {
+      futures.add(submitBatch(sequentialItems, consumer, executorService, statistics));
+    }
+    awaitFutures(futures);
+    if (statistics != null) {
+      statistics.recordRound(System.nanoTime() - start, parallelism);
+    }
+  }
+
+  /**
+   * Submit batches applying {@code consumer} to each of the items to the executor service,
+   * without waiting for them to complete. Batches are created as for {@link
+   * #processItemsInBatches}.
+   */
+  public static <T, E extends Exception> List<Future<?>> submitItemsInBatches(
+      Collection<T> items,
+      ToLongFunction<T> cost,
+      int parallelism,
+      ThrowingConsumer<T, E> consumer,
+      ExecutorService executorService,
+      WorkStatistics statistics) {
+    List<List<T>> batches = splitIntoBatches(items, cost, parallelism * BATCHES_PER_THREAD);
+    List<Future<?>> futures = new ArrayList<>(batches.size());
+    for (List<T> batch : batches) {
+      futures.add(submitBatch(batch, consumer, executorService, statistics));
+    }
+    return futures;
+  }
+
+  private static <T, E extends Exception> Future<?> submitBatch(
+      List<T> batch,
+      ThrowingConsumer<T, E> consumer,
+      ExecutorService executorService,
+      WorkStatistics statistics) {
+    return executorService.submit(() -> {
+      long start = System.nanoTime();
+      for (T item : batch) {
+        consumer.accept(item);
+      }
+      if (statistics != null) {
+        statistics.recordBatch(batch.size(), System.nanoTime() - start);
+      }
+      return null; // we want a Callable not a Runnable to be able to throw
+    });
+  }
+
+  /**
+   * Split the items into at most {@code numberOfBatches} consecutive batches of roughly the same
+   * total cost. An item with a cost above the average cost of a batch ends the batch it is in.
+   */
+  public static <T> List<List<T>> splitIntoBatches(
+      Collection<T> items, ToLongFunction<T> cost, int numberOfBatches) {
+    assert numberOfBatches > 0;
+    long totalCost = 0;
+    for (T item : items) {
+      totalCost += Long.max(cost.applyAsLong(item), 1);
+    }
+    long costPerBatch = Long.max((totalCost + numberOfBatches - 1) / numberOfBatches, 1);
+    List<List<T>> batches = new ArrayList<>();
+    List<T> batch = new ArrayList<>();
+    long batchCost = 0;
+    for (T item : items) {
+      batch.add(item);
+      batchCost += Long.max(cost.applyAsLong(item), 1);
+      if (batchCost >= costPerBatch) {
+        batches.add(batch);
+        batch = new ArrayList<>();
+        batchCost = 0;
+      }
+    }
+    if (!batch.isEmpty()) {
+      batches.add(batch);
+    }
+    return batches;
+  }
+
+  /**
+   * Returns the number of threads the executor service runs tasks on, or the number of available
+   * processors if that is not known.
+   */
+  public static int getParallelism(ExecutorService executorService) {
+    if (executorService instanceof ForkJoinPool) {
+      return ((ForkJoinPool) executorService).getParallelism();
+    }
+    if (executorService instanceof ThreadPoolExecutor) {
+      return ((ThreadPoolExecutor) executorService).getMaximumPoolSize();
+    }
+    return Runtime.getRuntime().availableProcessors();
+  }
+
   public static ExecutorService getExecutorService(int threads) {
     if (threads == 1) {
       return Executors.newSingleThreadExecutor();
@@ -37,8 +203,9 @@ public class ThreadUtils {
   public static ExecutorService getExecutorService(InternalOptions options) {
     int threads = options.numberOfThreads;
     if (threads == options.NOT_SPECIFIED) {
-      // This heuristic is based on measurements on a 32 core (hyper-threaded) machine.
-      threads = Integer.min(Runtime.getRuntime().availableProcessors(), 16) / 2;
+      // Parallel phases split their work into batches balanced by estimated cost, so all
+      // available processors can be used.
+      threads = Runtime.getRuntime().availableProcessors();
     }
     // Don't use Executors.newSingleThreadExecutor() when threads == 1, see b/67338394.
     return Executors.newWorkStealingPool(threads);
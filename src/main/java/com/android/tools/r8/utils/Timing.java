@@ -10,16 +10,29 @@ package com.android.tools.r8.utils;
 //     try { ... } finally { t.end(); }
 // or alternatively:
 //     t.scope("My task", () -> { ... });
+// Work that is not a single task, like the total time of many small pieces of work, is added as
+// a completed task by:
+//     t.add("My work", nanos);
 // Finally a report is printed by:
 //     t.report();
+// When created with a CompilationListener the listener is notified when each task begins and
+// ends, and the compilation is canceled when a task begins if the listener requests it.
 
+import com.android.tools.r8.CompilationCanceledException;
+import com.android.tools.r8.CompilationListener;
 import java.util.Stack;
 
 public class Timing {
 
   private final Stack<Node> stack;
+  private final CompilationListener listener;
 
   public Timing(String title) {
+    this(title, new DefaultCompilationListener());
+  }
+
+  public Timing(String title, CompilationListener listener) {
+    this.listener = listener;
     stack = new Stack<>();
     stack.push(new Node("Recorded timings for " + title));
   }
@@ -37,6 +50,12 @@ public class Timing {
       this.stop_time = -1;
     }
 
+    Node(String title, long duration) {
+      this.title = title;
+      this.stop_time = System.nanoTime();
+      this.start_time = stop_time - duration;
+    }
+
     void end() {
       stop_time = System.nanoTime();
       assert duration() >= 0;
@@ -71,14 +90,22 @@ public class Timing {
 
 
   public void begin(String title) {
+    if (listener.isCanceled()) {
+      throw new CompilationCanceledException();
+    }
     Node n = new Node(title);
     stack.peek().sons.add(n);
     stack.push(n);
+    listener.phaseBegin(title);
   }
 
   public void end() {
     stack.peek().end();  // record time.
-    stack.pop();
+    listener.phaseEnd(stack.pop().title);
+  }
+
+  public void add(String title, long nanos) {
+    stack.peek().sons.add(new Node(title, nanos));
   }
 
   public void report() {
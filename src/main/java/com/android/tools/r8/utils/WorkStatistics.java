@@ -0,0 +1,61 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.utils;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics on the work done by a parallel phase split into batches, see {@link
+ * ThreadUtils#processItemsInBatches}.
+ *
+ * <p>The utilization is the time spent processing batches relative to the time the threads were
+ * available for the phase. A low utilization means that the threads were waiting for the last
+ * batches of a round to complete, or that the work was not split into enough batches.
+ */
+public class WorkStatistics {
+
+  private final String name;
+  private final AtomicLong items = new AtomicLong();
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong rounds = new AtomicLong();
+  private final AtomicLong busyTime = new AtomicLong();
+  private final AtomicLong availableTime = new AtomicLong();
+
+  public WorkStatistics(String name) {
+    this.name = name;
+  }
+
+  void recordBatch(int size, long nanos) {
+    items.addAndGet(size);
+    batches.incrementAndGet();
+    busyTime.addAndGet(nanos);
+  }
+
+  void recordRound(long nanos, int parallelism) {
+    rounds.incrementAndGet();
+    availableTime.addAndGet(nanos * parallelism);
+  }
+
+  public long getItems() {
+    return items.get();
+  }
+
+  public long getBatches() {
+    return batches.get();
+  }
+
+  /**
+   * Returns the utilization of the threads in percent, or -1 if no rounds have been recorded.
+   */
+  public long getUtilization() {
+    long available = availableTime.get();
+    return available == 0 ? -1 : busyTime.get() * 100 / available;
+  }
+
+  public void report(PrintStream out) {
+    out.println("- " + name + ": " + items.get() + " items in " + batches.get() + " batches, "
+        + rounds.get() + " rounds, " + getUtilization() + "% utilization");
+  }
+}
@@ -0,0 +1,82 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package gvn;
+
+public class GlobalValueNumbering {
+
+  private static int staticField;
+  private int field;
+  private volatile int volatileField;
+
+  public int repeatedLoads() {
+    return field + field * field;
+  }
+
+  public int loadAfterWrite(int x) {
+    int a = field;
+    field = x;
+    return a + field;
+  }
+
+  public int loadAcrossInvoke() {
+    int a = field;
+    System.out.println();
+    return a + field;
+  }
+
+  public int loadInDominatedBlock(boolean b) {
+    int a = field;
+    if (b) {
+      return a + field;
+    }
+    return a;
+  }
+
+  public int loadInLoopWrittenOnBackEdge(int n) {
+    int sum = field;
+    for (int i = 0; i < n; i++) {
+      sum += field;
+      field = i;
+    }
+    return sum;
+  }
+
+  public int loadInCatchHandler(int[] array) {
+    int a = field;
+    try {
+      field = array.length;
+      array[0] = a;
+    } catch (RuntimeException e) {
+      return a + field;
+    }
+    return a;
+  }
+
+  public int volatileLoads() {
+    return volatileField + volatileField;
+  }
+
+  public static int repeatedStaticLoads() {
+    return staticField + staticField;
+  }
+
+  public static int repeatedArrayLength(int[] array) {
+    return array.length * array.length;
+  }
+
+  public static void main(String[] args) {
+    GlobalValueNumbering instance = new GlobalValueNumbering();
+    instance.field = args.length;
+    System.out.println(instance.repeatedLoads());
+    System.out.println(instance.loadAfterWrite(2));
+    System.out.println(instance.loadAcrossInvoke());
+    System.out.println(instance.loadInDominatedBlock(args.length == 0));
+    System.out.println(instance.loadInLoopWrittenOnBackEdge(3));
+    System.out.println(instance.loadInCatchHandler(new int[args.length]));
+    System.out.println(instance.loadInCatchHandler(null));
+    System.out.println(instance.volatileLoads());
+    System.out.println(repeatedStaticLoads());
+    System.out.println(repeatedArrayLength(new int[args.length]));
+  }
+}
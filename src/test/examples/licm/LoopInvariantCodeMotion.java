@@ -0,0 +1,120 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package licm;
+
+public class LoopInvariantCodeMotion {
+
+  private static int staticField;
+  private final int[] data;
+  private final int scale;
+  private int field;
+  private volatile int volatileField;
+
+  public LoopInvariantCodeMotion(int size) {
+    data = new int[size];
+    scale = size;
+  }
+
+  public int finalFieldLoads() {
+    int sum = 0;
+    for (int i = 0; i < data.length; i++) {
+      sum += data[i] * scale;
+    }
+    return sum;
+  }
+
+  public int fieldNotWrittenInLoop(int count) {
+    int sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += field;
+    }
+    return sum;
+  }
+
+  public int fieldWrittenInLoop(int count) {
+    for (int i = 0; i < count; i++) {
+      field += scale;
+    }
+    return field;
+  }
+
+  public int fieldLoadAcrossInvoke(int count) {
+    int sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += field;
+      System.out.println();
+    }
+    return sum;
+  }
+
+  public int volatileFieldLoads(int count) {
+    int sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += volatileField;
+    }
+    return sum;
+  }
+
+  public static int invariantArithmetic(int[] array, int a, int b) {
+    int sum = 0;
+    for (int i = 0; i < array.length; i++) {
+      sum += array[i] * (a * b) + (a >> b);
+    }
+    return sum;
+  }
+
+  public static int throwingArithmeticInBody(int count, int a, int b) {
+    int sum = 0;
+    for (int i = 0; i < count; i++) {
+      System.out.println();
+      sum += a / b;
+    }
+    return sum;
+  }
+
+  public int fieldWrittenOnBackEdge(int count) {
+    int sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += field;
+      field = i;
+    }
+    return sum;
+  }
+
+  public static int throwingArithmeticInTry(int count, int a, int b) {
+    int sum = 0;
+    try {
+      for (int i = 0; i < count; i++) {
+        sum += a / b;
+      }
+    } catch (ArithmeticException e) {
+      return -1;
+    }
+    return sum;
+  }
+
+  public static int throwingArithmeticInLoopNotEntered(int count, int a, int b) {
+    int sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += a / b;
+    }
+    return sum;
+  }
+
+  public static void main(String[] args) {
+    LoopInvariantCodeMotion instance = new LoopInvariantCodeMotion(args.length + 3);
+    System.out.println(instance.finalFieldLoads());
+    System.out.println(instance.fieldNotWrittenInLoop(3));
+    System.out.println(instance.fieldWrittenInLoop(3));
+    System.out.println(instance.fieldLoadAcrossInvoke(3));
+    System.out.println(instance.volatileFieldLoads(3));
+    System.out.println(invariantArithmetic(instance.data, 2, 3));
+    System.out.println(throwingArithmeticInBody(2, 7, args.length + 1));
+    System.out.println(instance.fieldWrittenOnBackEdge(4));
+    System.out.println(throwingArithmeticInTry(3, 7, args.length));
+    System.out.println(throwingArithmeticInTry(3, 7, args.length + 2));
+    System.out.println(throwingArithmeticInLoopNotEntered(args.length, 7, args.length));
+    System.out.println(staticField);
+  }
+}
@@ -0,0 +1,110 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package scalarreplacement;
+
+public class ScalarReplacement {
+
+  public static Object escaped;
+
+  public static class Pair {
+    public int first;
+    public long second;
+
+    public Pair(int first, long second) {
+      this.first = first;
+      this.second = second;
+    }
+  }
+
+  public static class Point {
+    public int x;
+    public int y;
+
+    public Point(int x, int y) {
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  public static class Counter {
+    public int count;
+  }
+
+  public static class Escaping {
+    public static Escaping last;
+    public int value;
+
+    public Escaping(int value) {
+      this.value = value;
+      last = this;
+    }
+  }
+
+  public static long sum(int first, long second) {
+    Pair pair = new Pair(first, second);
+    return pair.first + pair.second;
+  }
+
+  public static long copyField(int x, int y) {
+    Point point = new Point(x, y);
+    point.x = point.y;
+    return point.x + point.y;
+  }
+
+  public static long loop(int count) {
+    Counter counter = new Counter();
+    for (int i = 0; i < count; i++) {
+      if (i % 3 == 0) {
+        counter.count += i;
+      } else {
+        counter.count++;
+      }
+    }
+    return counter.count;
+  }
+
+  public static long escapesToField(int first) {
+    Pair pair = new Pair(first, first);
+    escaped = pair;
+    return pair.first;
+  }
+
+  public static long previousValueInLoop(int count) {
+    Counter counter = new Counter();
+    long sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum = sum * 31 + counter.count;
+      counter.count = i;
+    }
+    return sum;
+  }
+
+  public static long readInHandler(int[] array) {
+    Counter counter = new Counter();
+    try {
+      counter.count = 1;
+      counter.count += array[0];
+      counter.count = 10;
+    } catch (RuntimeException e) {
+      return counter.count;
+    }
+    return counter.count;
+  }
+
+  public static long escapesInInitializer(int value) {
+    Escaping escaping = new Escaping(value);
+    return escaping.value;
+  }
+
+  public static void main(String[] args) {
+    System.out.println(sum(1, 2));
+    System.out.println(copyField(1, 2));
+    System.out.println(loop(10));
+    System.out.println(previousValueInLoop(5));
+    System.out.println(readInHandler(new int[] {2}) + " " + readInHandler(new int[0]));
+    System.out.println(escapesToField(3) + " " + ((Pair) escaped).second);
+    System.out.println(escapesInInitializer(4));
+    System.out.println(Escaping.last.value);
+  }
+}
@@ -0,0 +1,45 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package stringbuilders;
+
+public class StringBuilders {
+
+  private static final int VERSION = 3;
+
+  public static String constant() {
+    return "version " + VERSION + '/' + true + " build " + 12L + " of " + null;
+  }
+
+  public static String constantWithIntermediateResult() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("ab");
+    String first = builder.toString();
+    builder.append('c').append(1);
+    return first + builder.toString();
+  }
+
+  public static String message(String tag, int value) {
+    return "[" + tag + "] " + "has a fairly long value of " + value + " units";
+  }
+
+  public static String loop(int count) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      builder.append(i);
+    }
+    return builder.toString();
+  }
+
+  public static String buffer() {
+    return new StringBuffer("x").append("y").append(2).toString();
+  }
+
+  public static void main(String[] args) {
+    System.out.println(constant());
+    System.out.println(constantWithIntermediateResult());
+    System.out.println(message("tag", args.length));
+    System.out.println(loop(args.length + 5));
+    System.out.println(buffer());
+  }
+}
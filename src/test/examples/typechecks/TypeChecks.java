@@ -0,0 +1,95 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package typechecks;
+
+public class TypeChecks {
+
+  public static class Base {
+    public int value = 1;
+  }
+
+  public static class Sub extends Base {
+    public int extra = 2;
+  }
+
+  public static int castToSupertype(Sub sub, int value) {
+    Base base = sub;
+    // The cast always succeeds.
+    return ((Sub) base).extra + value;
+  }
+
+  public static int castOfNewInstance(boolean flag, int value) {
+    Object object = flag ? new Sub() : new Base();
+    return ((Base) object).value + value;
+  }
+
+  public static int castOfObject(Object object, int value) {
+    return ((Sub) object).extra + value;
+  }
+
+  public static int instanceOfAfterCheck(Object object, int value) {
+    if (object instanceof Sub) {
+      // The second check always succeeds.
+      if (object instanceof Base) {
+        return value;
+      }
+      return -value;
+    }
+    return 0;
+  }
+
+  public static int nullTestAfterDereference(Base base, int value) {
+    int result = base.value;
+    // The test always fails.
+    if (base == null) {
+      return value;
+    }
+    return result;
+  }
+
+  public static int nullTestOfParameter(Base base, int value) {
+    if (base == null) {
+      return value;
+    }
+    return base.value;
+  }
+
+  public static int nullTestInHandler(Base base, int value) {
+    try {
+      value += base.value;
+    } catch (NullPointerException e) {
+      // The dereference may have thrown because base is null.
+      if (base == null) {
+        return -1;
+      }
+    }
+    return value;
+  }
+
+  public static int nullTestInLoop(Base first, Base second, int count) {
+    int sum = first.value;
+    Base current = first;
+    for (int i = 0; i < count; i++) {
+      // The first value has been dereferenced, but not the second.
+      if (current == null) {
+        sum--;
+      } else {
+        sum += current.value;
+      }
+      current = second;
+    }
+    return sum;
+  }
+
+  public static void main(String[] args) {
+    System.out.println(castToSupertype(new Sub(), 1));
+    System.out.println(castOfNewInstance(args.length == 0, 2));
+    System.out.println(castOfObject(new Sub(), 3));
+    System.out.println(instanceOfAfterCheck(new Sub(), 4));
+    System.out.println(nullTestAfterDereference(new Base(), 5));
+    System.out.println(nullTestOfParameter(null, 6));
+    System.out.println(nullTestInHandler(null, 7) + " " + nullTestInHandler(new Sub(), 7));
+    System.out.println(nullTestInLoop(new Base(), null, args.length + 3));
+  }
+}
@@ -0,0 +1,135 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+
+package com.android.tools.r8;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.android.tools.r8.CompilationListener.Counter;
+import com.android.tools.r8.utils.FileUtils;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.Test;
+
+public class CompilationListenerTest extends TestBase {
+
+  private static final Path INPUT_JAR =
+      Paths.get(ToolHelper.EXAMPLES_BUILD_DIR, "minification" + FileUtils.JAR_EXTENSION);
+  private static final Path PROGUARD_FLAGS =
+      Paths.get(ToolHelper.EXAMPLES_DIR, "minification", "keep-rules.txt");
+
+  private static class RecordingListener implements CompilationListener {
+    final List<String> phases = new ArrayList<>();
+    final Stack<String> open = new Stack<>();
+    final Map<Counter, Long> counters = new ConcurrentHashMap<>();
+    final String cancelInPhase;
+    volatile boolean canceled = false;
+
+    RecordingListener(String cancelInPhase) {
+      this.cancelInPhase = cancelInPhase;
+    }
+
+    @Override
+    public synchronized void phaseBegin(String phase) {
+      phases.add(phase);
+      open.push(phase);
+      if (phase.equals(cancelInPhase)) {
+        canceled = true;
+      }
+    }
+
+    @Override
+    public synchronized void phaseEnd(String phase) {
+      assertEquals(open.pop(), phase);
+    }
+
+    @Override
+    public void counter(Counter counter, long value) {
+      counters.put(counter, value);
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return canceled;
+    }
+  }
+
+  private R8Command r8Command(CompilationListener listener)
+      throws CompilationException, IOException {
+    return R8Command.builder()
+        .addLibraryFiles(Paths.get(ToolHelper.getDefaultAndroidJar()))
+        .addProgramFiles(INPUT_JAR)
+        .addProguardConfigurationFiles(PROGUARD_FLAGS)
+        .setCompilationListener(listener)
+        .build();
+  }
+
+  private D8Command d8Command(CompilationListener listener)
+      throws CompilationException, IOException {
+    return D8Command.builder()
+        .addLibraryFiles(Paths.get(ToolHelper.getDefaultAndroidJar()))
+        .addProgramFiles(INPUT_JAR)
+        .setCompilationListener(listener)
+        .build();
+  }
+
+  @Test
+  public void r8ReportsPhasesAndCounters() throws IOException, CompilationException {
+    RecordingListener listener = new RecordingListener(null);
+    R8.run(r8Command(listener));
+    assertTrue(listener.open.isEmpty());
+    assertTrue(listener.phases.contains("Strip unused code"));
+    assertTrue(listener.phases.contains("IR conversion phase 1"));
+    assertTrue(listener.counters.get(Counter.METHODS_PROCESSED) > 0);
+    assertTrue(listener.counters.containsKey(Counter.METHODS_INLINED));
+    assertEquals(0L, (long) listener.counters.get(Counter.METHODS_REMAINING));
+    assertTrue(listener.counters.containsKey(Counter.OUTLINES_CREATED));
+  }
+
+  @Test
+  public void d8ReportsPhasesAndCounters() throws IOException, CompilationException {
+    RecordingListener listener = new RecordingListener(null);
+    D8.run(d8Command(listener));
+    assertTrue(listener.open.isEmpty());
+    assertFalse(listener.phases.isEmpty());
+    assertTrue(listener.counters.get(Counter.METHODS_PROCESSED) > 0);
+    assertFalse(listener.counters.containsKey(Counter.METHODS_INLINED));
+    assertFalse(listener.counters.containsKey(Counter.OUTLINES_CREATED));
+  }
+
+  @Test
+  public void r8CanBeCanceled() throws IOException, CompilationException {
+    RecordingListener listener = new RecordingListener("Build call graph");
+    try {
+      R8.run(r8Command(listener));
+      fail("Expected compilation to be canceled");
+    } catch (CompilationCanceledException e) {
+      // Expected.
+    }
+    assertFalse(listener.phases.contains("IR conversion phase 1"));
+    assertFalse(listener.counters.containsKey(Counter.METHODS_PROCESSED));
+  }
+
+  @Test
+  public void d8CanBeCanceled() throws IOException, CompilationException {
+    RecordingListener listener = new RecordingListener(null);
+    listener.canceled = true;
+    try {
+      D8.run(d8Command(listener));
+      fail("Expected compilation to be canceled");
+    } catch (CompilationCanceledException e) {
+      // Expected.
+    }
+    assertTrue(listener.phases.isEmpty());
+  }
+}
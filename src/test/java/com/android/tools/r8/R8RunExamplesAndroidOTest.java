@@ -4,6 +4,8 @@
 
 package com.android.tools.r8;
 
+import static org.junit.Assert.assertFalse;
+
 import com.android.tools.r8.ToolHelper.DexVm;
 import com.android.tools.r8.dex.Constants;
 import com.android.tools.r8.utils.AndroidApiLevel;
@@ -11,6 +13,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -47,6 +50,23 @@ public class R8RunExamplesAndroidOTest extends RunExamplesAndroidOTest<R8Command
         .run();
   }
 
+  @Test
+  public void lambdaDesugaringWithMerging() throws Throwable {
+    test("lambdadesugaring-with-merging", "lambdadesugaring", "LambdaDesugaring")
+        .withMinApiLevel(AndroidApiLevel.K.getLevel())
+        .withOptionConsumer(options -> options.mergeLambdaClasses = true)
+        .withDexCheck(inspector -> {
+          List<String> groups = new ArrayList<>();
+          inspector.forAllClasses(clazz -> {
+            if (clazz.getOriginalDescriptor().contains("-$$LambdaGroup$")) {
+              groups.add(clazz.getOriginalDescriptor());
+            }
+          });
+          assertFalse(groups.isEmpty());
+        })
+        .run();
+  }
+
   class R8TestRunner extends TestRunner<R8TestRunner> {
 
     R8TestRunner(String testName, String packageName, String mainClass) {
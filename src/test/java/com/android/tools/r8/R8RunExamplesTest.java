@@ -75,6 +75,10 @@ public class R8RunExamplesTest {
         "barray.BArray",
         "bridge.BridgeMethod",
         "cse.CommonSubexpressionElimination",
+        "gvn.GlobalValueNumbering",
+        "licm.LoopInvariantCodeMotion",
+        "typechecks.TypeChecks",
+        "scalarreplacement.ScalarReplacement",
         "constants.Constants",
         "controlflow.ControlFlow",
         "conversions.Conversions",
@@ -91,6 +95,7 @@ public class R8RunExamplesTest {
         "regalloc.RegAlloc",
         "returns.Returns",
         "staticfield.StaticField",
+        "stringbuilders.StringBuilders",
         "stringbuilding.StringBuilding",
         "switches.Switches",
         "sync.Sync",
@@ -4,6 +4,8 @@
 package com.android.tools.r8.bisect;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import com.android.tools.r8.ToolHelper;
 import com.android.tools.r8.bisect.BisectOptions.Result;
@@ -17,8 +19,16 @@ import com.android.tools.r8.utils.DexInspector;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.Timing;
 import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -32,12 +42,107 @@ public class BisectTest {
 
   // Set during build to more easily inspect later.
   private MethodSignature erroneousMethodSignature = null;
+  private DexApplication appGood = null;
+  private DexApplication appBad = null;
 
   @Rule
   public TemporaryFolder temp = ToolHelper.getTemporaryFolderForTest();
 
   @Test
   public void bisect() throws Exception {
+    runBisect(1);
+  }
+
+  @Test
+  public void bisectConcurrently() throws Exception {
+    runBisect(3);
+  }
+
+  @Test
+  public void resumeConcurrentBisection() throws Exception {
+    buildApplications();
+    File stateFile = temp.newFile("bisect.state");
+
+    // Stop the bisection in its third round, which checks a single bad class. The state file then
+    // holds the results of the second round, which split the classes into four ranges.
+    BisectState state = new BisectState(appGood, appBad, stateFile);
+    try {
+      Bisect.run(state, (application, candidate) -> () -> {
+        if (countBadClasses(application) == 1) {
+          throw new RuntimeException("Stopping bisection");
+        }
+        return command(application);
+      }, 3);
+      fail("Expected the bisection to stop");
+    } catch (ExecutionException e) {
+      // Expected.
+    }
+
+    // Resuming from the state file only needs the third round to find the bad class.
+    BisectState resumed = new BisectState(appGood, appBad, stateFile);
+    resumed.read();
+    AtomicInteger runs = new AtomicInteger();
+    DexProgramClass clazz = Bisect.run(resumed, (application, candidate) -> () -> {
+      runs.incrementAndGet();
+      return command(application);
+    }, 3);
+    assertEquals(ERRONEOUS_CLASS, clazz.type.toString());
+    assertEquals(1, runs.get());
+  }
+
+  @Test
+  public void bisectConcurrentlyWritingCandidates() throws Exception {
+    buildApplications();
+    Path output = temp.newFolder().toPath();
+    ExecutorService executor = Executors.newWorkStealingPool();
+    try {
+      BisectState state = new BisectState(appGood, appBad, null);
+      DexProgramClass clazz = Bisect.run(state, (application, candidate) -> {
+        Path directory = Files.createDirectories(output.resolve("candidate" + candidate));
+        Bisect.writeApp(application, directory, executor);
+        return () -> {
+          Path file = directory.resolve("classes.dex");
+          checkSortedIds(Files.readAllBytes(file));
+          return command(new DexInspector(file));
+        };
+      }, 3);
+      assertEquals(ERRONEOUS_CLASS, clazz.type.toString());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  // Check that the string and type ids of a dex file are sorted. All strings are ASCII, so their
+  // order is the order of their bytes.
+  private static void checkSortedIds(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    int stringIdsSize = buffer.getInt(0x38);
+    int stringIdsOffset = buffer.getInt(0x3c);
+    String previous = null;
+    for (int i = 0; i < stringIdsSize; i++) {
+      int dataOffset = buffer.getInt(stringIdsOffset + i * 4);
+      // Skip the uleb128 length.
+      while ((bytes[dataOffset] & 0x80) != 0) {
+        dataOffset++;
+      }
+      dataOffset++;
+      int end = dataOffset;
+      while (bytes[end] != 0) {
+        end++;
+      }
+      String string = new String(bytes, dataOffset, end - dataOffset, StandardCharsets.US_ASCII);
+      assertTrue(previous + " < " + string, previous == null || previous.compareTo(string) < 0);
+      previous = string;
+    }
+    int typeIdsSize = buffer.getInt(0x40);
+    int typeIdsOffset = buffer.getInt(0x44);
+    for (int i = 1; i < typeIdsSize; i++) {
+      assertTrue(buffer.getInt(typeIdsOffset + (i - 1) * 4)
+          < buffer.getInt(typeIdsOffset + i * 4));
+    }
+  }
+
+  private void buildApplications() throws Exception {
     InternalOptions options = new InternalOptions();
     Timing timing = new Timing("bisect-test");
 
@@ -49,7 +154,7 @@ public class BisectTest {
           "void", VALID_METHOD, ImmutableList.of(), 0, "return-void");
     }
     AndroidApp inputGood = AndroidApp.fromDexProgramData(builderGood.compile());
-    DexApplication appGood = new ApplicationReader(inputGood, options, timing).read();
+    appGood = new ApplicationReader(inputGood, options, timing).read();
 
     // Build "bad" application with a method "foo" in "F".
     SmaliBuilder builderBad = new SmaliBuilder();
@@ -64,12 +169,17 @@ public class BisectTest {
       }
     }
     AndroidApp inputBad = AndroidApp.fromDexProgramData(builderBad.compile());
-    DexApplication appBad = new ApplicationReader(inputBad, options, timing).read();
+    appBad = new ApplicationReader(inputBad, options, timing).read();
+  }
 
+  private void runBisect(int jobs) throws Exception {
+    buildApplications();
     ExecutorService executor = Executors.newWorkStealingPool();
     try {
       BisectState state = new BisectState(appGood, appBad, null);
-      DexProgramClass clazz = Bisect.run(state, this::command, temp.newFolder().toPath(), executor);
+      DexProgramClass clazz = jobs == 1
+          ? Bisect.run(state, this::command, temp.newFolder().toPath(), executor)
+          : Bisect.run(state, (application, candidate) -> () -> command(application), jobs);
       System.out.println("Found bad class: " + clazz);
       assertEquals(clazz.type.toString(), ERRONEOUS_CLASS);
     } finally {
@@ -77,8 +187,22 @@ public class BisectTest {
     }
   }
 
+  // Number of classes of the application taken from the "bad" application.
+  private int countBadClasses(DexApplication application) {
+    int count = 0;
+    for (DexProgramClass clazz : application.classes()) {
+      if (appBad.definitionFor(clazz.type) == clazz) {
+        count++;
+      }
+    }
+    return count;
+  }
+
   private Result command(DexApplication application) {
-    DexInspector inspector = new DexInspector(application);
+    return command(new DexInspector(application));
+  }
+
+  private Result command(DexInspector inspector) {
     if (inspector
         .clazz(ERRONEOUS_CLASS)
         .method(erroneousMethodSignature.returnType,
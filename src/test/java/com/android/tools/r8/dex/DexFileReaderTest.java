@@ -0,0 +1,117 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.dex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.android.tools.r8.Resource;
+import com.android.tools.r8.graph.AppInfo;
+import com.android.tools.r8.graph.ClassKind;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexClass;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.naming.NamingLens;
+import com.android.tools.r8.smali.SmaliTestBase;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.android.tools.r8.utils.Timing;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class DexFileReaderTest extends SmaliTestBase {
+
+  // Enough classes for several ranges of at least 256 class definitions.
+  private static final int CLASSES = 1000;
+
+  private static byte[] input;
+
+  @BeforeClass
+  public static void compileInput() throws Exception {
+    SmaliBuilder builder = new SmaliBuilder();
+    for (int i = 0; i < CLASSES; i++) {
+      builder.addClass(String.format("Class%04d", i));
+      builder.addDefaultConstructor();
+      builder.addStaticMethod("int", "method", ImmutableList.of(), 1,
+          "const-string v0, \"string" + i + "\"",
+          "invoke-virtual {v0}, Ljava/lang/String;->length()I",
+          "move-result v0",
+          "return v0");
+    }
+    input = builder.compile();
+  }
+
+  private static List<DexType> readClassTypes(int tasks) throws Exception {
+    DexFileReader reader = new DexFileReader(
+        new DexFile(new ByteArrayInputStream(input)), ClassKind.PROGRAM, new DexItemFactory());
+    DexFileReader.populateIndexTables(reader);
+    ExecutorService executor = ThreadUtils.getExecutorService(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      List<List<DexClass>> ranges = reader.readClassDefs(executor, futures, tasks);
+      ThreadUtils.awaitFutures(futures);
+      assertEquals(tasks, ranges.size());
+      List<DexType> types = new ArrayList<>();
+      for (List<DexClass> range : ranges) {
+        range.forEach(clazz -> types.add(clazz.type));
+      }
+      return types;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static byte[] readAndWrite(int threads) throws Exception {
+    InternalOptions options = new InternalOptions();
+    ExecutorService executor = ThreadUtils.getExecutorService(threads);
+    try {
+      DexApplication application =
+          new ApplicationReader(AndroidApp.fromDexProgramData(input), options,
+              new Timing("DexFileReaderTest")).read(executor);
+      assertEquals(CLASSES, application.classes().size());
+      ApplicationWriter writer = new ApplicationWriter(application, new AppInfo(application),
+          options, null, null, NamingLens.getIdentityLens(), null);
+      List<Resource> output = writer.write(executor).getDexProgramResourcesForOutput();
+      assertEquals(1, output.size());
+      try (InputStream stream = output.get(0).getStream()) {
+        return ByteStreams.toByteArray(stream);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void rangesKeepFileOrder() throws Exception {
+    List<DexType> expected = readClassTypes(1);
+    assertEquals(CLASSES, expected.size());
+    for (int tasks : new int[]{2, 3, 7}) {
+      for (int i = 0; i < 5; i++) {
+        List<DexType> types = readClassTypes(tasks);
+        assertEquals(expected.size(), types.size());
+        for (int j = 0; j < expected.size(); j++) {
+          assertEquals(expected.get(j).toDescriptorString(), types.get(j).toDescriptorString());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void concurrentReadingIsDeterministic() throws Exception {
+    byte[] expected = readAndWrite(1);
+    for (int i = 0; i < 5; i++) {
+      assertArrayEquals(expected, readAndWrite(4));
+    }
+  }
+}
@@ -75,6 +75,19 @@ public class DexStringTest {
     }
   }
 
+  @Test
+  public void testDecode() {
+    DexItemFactory factory = new DexItemFactory();
+    String[] strings = {
+        "", "a", "Ljava/lang/Object;", "\u0000", "a\u0000a", "\u007f", "\u0080", "a\u07ffa",
+        "\u0800", "a\ud800\udc00a", "\uffff"
+    };
+    for (String string : strings) {
+      DexString dexString = factory.createString(string);
+      assertEquals(string, dexString.toString());
+    }
+  }
+
   private void check(int expected, DexString s1, DexString s2) {
     assertEquals(s1.dump() + " " + s2.dump(),
         expected, Integer.signum(s1.toString().compareTo(s2.toString())));
@@ -0,0 +1,266 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.dex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.Resource;
+import com.android.tools.r8.code.ConstString;
+import com.android.tools.r8.code.Instruction;
+import com.android.tools.r8.code.ReturnVoid;
+import com.android.tools.r8.errors.DexOverflowException;
+import com.android.tools.r8.graph.AppInfo;
+import com.android.tools.r8.graph.Code;
+import com.android.tools.r8.graph.DexAccessFlags;
+import com.android.tools.r8.graph.DexAnnotationSet;
+import com.android.tools.r8.graph.DexAnnotationSetRefList;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexCode;
+import com.android.tools.r8.graph.DexCode.Try;
+import com.android.tools.r8.graph.DexCode.TryHandler;
+import com.android.tools.r8.graph.DexEncodedField;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexProgramClass;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.graph.DexTypeList;
+import com.android.tools.r8.graph.DirectMappedDexApplication;
+import com.android.tools.r8.graph.LazyDexCode;
+import com.android.tools.r8.naming.NamingLens;
+import com.android.tools.r8.smali.SmaliTestBase;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.android.tools.r8.utils.Timing;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import org.antlr.runtime.RecognitionException;
+import org.junit.Test;
+
+public class LazyDexCodeTest extends SmaliTestBase {
+
+  private byte[] compileTestClass()
+      throws IOException, RecognitionException, DexOverflowException, ExecutionException {
+    SmaliBuilder builder = new SmaliBuilder(DEFAULT_CLASS_NAME);
+    builder.addStaticField("field", "I");
+    builder.addStaticMethod("int", "strings", ImmutableList.of(), 1,
+        "const-string v0, \"b-string\"",
+        "const-string v0, \"a-string\"",
+        "new-instance v0, Ljava/lang/Object;",
+        "invoke-direct {v0}, Ljava/lang/Object;-><init>()V",
+        "sget v0, LTest;->field:I",
+        "packed-switch v0, :switch_data",
+        ":label_1",
+        "const/4 v0, 1",
+        "return v0",
+        ":label_2",
+        "const/4 v0, 2",
+        "return v0",
+        ":switch_data",
+        ".packed-switch 0x0",
+        "  :label_1",
+        "  :label_2",
+        ".end packed-switch");
+    builder.addStaticMethod("int[]", "array", ImmutableList.of(), 1,
+        "const/4 v0, 3",
+        "new-array v0, v0, [I",
+        "fill-array-data v0, :array_data",
+        "return-object v0",
+        ":array_data",
+        ".array-data 4",
+        "  1 2 3",
+        ".end array-data");
+    builder.addStaticMethod("long", "sparse", ImmutableList.of("int"), 2,
+        "sparse-switch p0, :switch_data",
+        "const-wide v0, 0x123456789L",
+        "return-wide v0",
+        ":label_1",
+        "const-wide/16 v0, 1",
+        "return-wide v0",
+        ":switch_data",
+        ".sparse-switch",
+        "  0x1 -> :label_1",
+        "  0x100 -> :label_1",
+        ".end sparse-switch");
+    builder.addStaticMethod("int", "handler", ImmutableList.of(), 1,
+        ":try_start",
+        "invoke-static {}, LTest;->strings()I",
+        "move-result v0",
+        ":try_end",
+        ".catch Ljava/lang/RuntimeException; {:try_start .. :try_end} :catch",
+        "return v0",
+        ":catch",
+        "const/4 v0, 0",
+        "return v0");
+    return builder.compile();
+  }
+
+  private byte[] compileOtherClass()
+      throws IOException, RecognitionException, DexOverflowException, ExecutionException {
+    // Strings and types sorting before the ones of the test class, so merging the two files
+    // changes all indices.
+    SmaliBuilder builder = new SmaliBuilder("Other");
+    builder.addStaticMethod("void", "method", ImmutableList.of(), 1,
+        "const-string v0, \"0-string\"",
+        "new-instance v0, LA;",
+        "invoke-static {}, LTest;->handler()I",
+        "return-void");
+    return builder.compile();
+  }
+
+  private static List<DexEncodedMethod> methods(DexApplication application) {
+    List<DexEncodedMethod> methods = new ArrayList<>();
+    for (DexProgramClass clazz : application.classes()) {
+      clazz.forEachMethod(methods::add);
+    }
+    return methods;
+  }
+
+  private static DexEncodedMethod method(DexApplication application, String name) {
+    for (DexEncodedMethod method : methods(application)) {
+      if (method.method.name.toString().equals(name)) {
+        return method;
+      }
+    }
+    throw new AssertionError("No method " + name);
+  }
+
+  private static byte[] write(DexApplication application, InternalOptions options)
+      throws IOException, ExecutionException, DexOverflowException {
+    ApplicationWriter writer = new ApplicationWriter(application, new AppInfo(application),
+        options, null, null, NamingLens.getIdentityLens(), null);
+    ExecutorService executor = ThreadUtils.getExecutorService(options);
+    try {
+      List<Resource> output = writer.write(executor).getDexProgramResourcesForOutput();
+      assertEquals(1, output.size());
+      try (InputStream stream = output.get(0).getStream()) {
+        return ByteStreams.toByteArray(stream);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void decodeOnDemand() throws Exception {
+    DexApplication application =
+        buildApplication(AndroidApp.fromDexProgramData(compileTestClass()), new InternalOptions());
+    for (DexEncodedMethod method : methods(application)) {
+      Code code = method.getCodeWithoutDecoding();
+      assertTrue(code.isLazyDexCode());
+      assertFalse(code.asLazyDexCode().isDecoded());
+    }
+    DexEncodedMethod strings = method(application, "strings");
+    LazyDexCode lazyCode = strings.getCodeWithoutDecoding().asLazyDexCode();
+    assertEquals("b-string", strings.getHighestSortingString().toString());
+    int estimatedSize = lazyCode.estimatedSizeForInlining();
+    assertFalse(lazyCode.isDecoded());
+    DexCode code = strings.getCode().asDexCode();
+    assertTrue(lazyCode.isDecoded());
+    assertSame(code, strings.getCodeWithoutDecoding());
+    assertEquals(code.instructions.length, estimatedSize);
+    assertEquals(code.highestSortingString, strings.getHighestSortingString());
+    // The code of the other methods is still not decoded.
+    for (DexEncodedMethod method : methods(application)) {
+      if (method != strings) {
+        assertFalse(method.getCodeWithoutDecoding().asLazyDexCode().isDecoded());
+      }
+    }
+  }
+
+  @Test
+  public void estimatedSizeMatchesDecodedCode() throws Exception {
+    DexApplication application =
+        buildApplication(AndroidApp.fromDexProgramData(compileTestClass()), new InternalOptions());
+    for (DexEncodedMethod method : methods(application)) {
+      int estimatedSize = method.getCodeWithoutDecoding().estimatedSizeForInlining();
+      assertEquals(method.getCode().asDexCode().instructions.length, estimatedSize);
+    }
+  }
+
+  @Test
+  public void undecodedOutputIsByteIdentical() throws Exception {
+    AndroidApp input = AndroidApp.fromDexProgramData(compileTestClass(), compileOtherClass());
+
+    InternalOptions undecodedOptions = new InternalOptions();
+    DexApplication undecoded = buildApplication(input, undecodedOptions);
+    // Writing removes the code from the methods, so hold on to it to check it was not decoded.
+    List<LazyDexCode> lazyCodes = new ArrayList<>();
+    for (DexEncodedMethod method : methods(undecoded)) {
+      lazyCodes.add(method.getCodeWithoutDecoding().asLazyDexCode());
+    }
+    byte[] undecodedOutput = write(undecoded, undecodedOptions);
+    for (LazyDexCode lazyCode : lazyCodes) {
+      assertFalse(lazyCode.isDecoded());
+    }
+
+    InternalOptions decodedOptions = new InternalOptions();
+    DexApplication decoded = buildApplication(input, decodedOptions);
+    for (DexEncodedMethod method : methods(decoded)) {
+      assertTrue(method.getCode().isDexCode());
+    }
+    byte[] decodedOutput = write(decoded, decodedOptions);
+
+    assertArrayEquals(decodedOutput, undecodedOutput);
+  }
+
+  private static DexProgramClass classWithSharedCode(DexItemFactory factory) {
+    DexType type = factory.createType("LShared;");
+    DexCode code = new DexCode(1, 0, 0,
+        new Instruction[]{new ConstString(0, factory.createString("shared")), new ReturnVoid()},
+        new Try[0], new TryHandler[0], null, factory.createString("shared"));
+    DexEncodedMethod[] methods = new DexEncodedMethod[2];
+    for (int i = 0; i < methods.length; i++) {
+      methods[i] = new DexEncodedMethod(
+          factory.createMethod(type, factory.createProto(factory.voidType), "method" + i),
+          new DexAccessFlags(Constants.ACC_PUBLIC | Constants.ACC_STATIC),
+          DexAnnotationSet.empty(), DexAnnotationSetRefList.empty(), code);
+    }
+    return new DexProgramClass(type, Resource.Kind.DEX, new DexAccessFlags(Constants.ACC_PUBLIC),
+        factory.objectType, DexTypeList.empty(), null, DexAnnotationSet.empty(),
+        DexEncodedField.EMPTY_ARRAY, DexEncodedField.EMPTY_ARRAY, methods,
+        DexEncodedMethod.EMPTY_ARRAY, Collections.emptyList());
+  }
+
+  private DexApplication readSharedCode(byte[] input) {
+    return buildApplication(AndroidApp.fromDexProgramData(input), new InternalOptions());
+  }
+
+  @Test
+  public void sharedCodeItem() throws Exception {
+    InternalOptions options = new InternalOptions();
+    DexApplication application =
+        DirectMappedDexApplication.builder(options.itemFactory, new Timing("LazyDexCodeTest"))
+            .addProgramClass(classWithSharedCode(options.itemFactory))
+            .build();
+    byte[] input = write(application, options);
+
+    // Writing the undecoded code keeps the code item shared.
+    DexApplication read = readSharedCode(input);
+    DexEncodedMethod[] methods = read.classes().get(0).directMethods();
+    LazyDexCode lazyCode = methods[0].getCodeWithoutDecoding().asLazyDexCode();
+    assertSame(lazyCode, methods[1].getCodeWithoutDecoding());
+    assertArrayEquals(input, write(read, options));
+    assertFalse(lazyCode.isDecoded());
+
+    // Decoding through one method makes the other one use the same decoded code.
+    read = readSharedCode(input);
+    methods = read.classes().get(0).directMethods();
+    DexCode code = methods[0].getCode().asDexCode();
+    assertSame(code, methods[1].getCodeWithoutDecoding());
+    assertSame(code, methods[1].getCode());
+    assertArrayEquals(input, write(read, options));
+  }
+}
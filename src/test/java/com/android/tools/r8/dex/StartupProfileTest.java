@@ -0,0 +1,169 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.dex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.Resource;
+import com.android.tools.r8.Resource.Kind;
+import com.android.tools.r8.code.ConstString;
+import com.android.tools.r8.code.Instruction;
+import com.android.tools.r8.code.ReturnVoid;
+import com.android.tools.r8.errors.CompilationError;
+import com.android.tools.r8.graph.AppInfo;
+import com.android.tools.r8.graph.DexAccessFlags;
+import com.android.tools.r8.graph.DexAnnotationSet;
+import com.android.tools.r8.graph.DexAnnotationSetRefList;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexCode;
+import com.android.tools.r8.graph.DexCode.Try;
+import com.android.tools.r8.graph.DexCode.TryHandler;
+import com.android.tools.r8.graph.DexEncodedField;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.graph.DexProgramClass;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.graph.DexTypeList;
+import com.android.tools.r8.graph.DirectMappedDexApplication;
+import com.android.tools.r8.naming.NamingLens;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.StartupProfile;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.android.tools.r8.utils.Timing;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import org.junit.Test;
+
+public class StartupProfileTest {
+
+  private final DexItemFactory dexItemFactory = new DexItemFactory();
+
+  private StartupProfile parse(String... lines) {
+    String profile = String.join("\n", lines);
+    return StartupProfile.builder(dexItemFactory)
+        .parse(new ByteArrayInputStream(profile.getBytes(StandardCharsets.UTF_8)))
+        .build();
+  }
+
+  private DexType type(String name) {
+    return dexItemFactory.createType("L" + name + ";");
+  }
+
+  private DexMethod method(String holder, String name) {
+    return dexItemFactory.createMethod(
+        type(holder), dexItemFactory.createProto(dexItemFactory.voidType), name);
+  }
+
+  private DexProgramClass makeClass(String name) {
+    DexType type = type(name);
+    Instruction[] instructions = new Instruction[] {
+        new ConstString(0, dexItemFactory.createString("string-of-" + name)),
+        new ReturnVoid()
+    };
+    DexCode code = new DexCode(1, 0, 0, instructions, new Try[0], new TryHandler[0], null, null);
+    DexEncodedMethod method = new DexEncodedMethod(method(name, "run"),
+        new DexAccessFlags(Constants.ACC_PUBLIC), DexAnnotationSet.empty(),
+        DexAnnotationSetRefList.empty(), code);
+    return new DexProgramClass(type, Kind.DEX, new DexAccessFlags(Constants.ACC_PUBLIC),
+        dexItemFactory.objectType, DexTypeList.empty(), null, DexAnnotationSet.empty(),
+        DexEncodedField.EMPTY_ARRAY, DexEncodedField.EMPTY_ARRAY, DexEncodedMethod.EMPTY_ARRAY,
+        new DexEncodedMethod[]{method}, ImmutableList.of());
+  }
+
+  private static int indexOf(byte[] bytes, String string) {
+    byte[] pattern = string.getBytes(StandardCharsets.UTF_8);
+    outer:
+    for (int i = 0; i <= bytes.length - pattern.length; i++) {
+      for (int j = 0; j < pattern.length; j++) {
+        if (bytes[i + j] != pattern[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  @Test
+  public void parseClassesAndMethods() {
+    StartupProfile profile = parse(
+        "# Startup profile",
+        "Lcom/example/Main;",
+        "",
+        "HSPLcom/example/Util;->run()V",
+        "Lcom/example/Main;->onCreate()V");
+    assertEquals(
+        ImmutableList.of(type("com/example/Main"), type("com/example/Util")),
+        profile.getClasses());
+    assertEquals(0, profile.getClassOrder(type("com/example/Main")));
+    assertEquals(1, profile.getClassOrder(type("com/example/Util")));
+    assertEquals(StartupProfile.NOT_STARTUP, profile.getClassOrder(type("com/example/Other")));
+    assertTrue(profile.isStartupMethod(method("com/example/Util", "run"), dexItemFactory));
+    assertTrue(profile.isStartupMethod(method("com/example/Main", "onCreate"), dexItemFactory));
+    assertTrue(profile.isStartupMethod(method("com/example/Main", "<clinit>"), dexItemFactory));
+    assertFalse(profile.isStartupMethod(method("com/example/Main", "onStop"), dexItemFactory));
+    assertFalse(profile.isStartupMethod(method("com/example/Other", "<clinit>"), dexItemFactory));
+  }
+
+  @Test
+  public void parseEmpty() {
+    assertTrue(parse("# Nothing", "").isEmpty());
+  }
+
+  @Test(expected = CompilationError.class)
+  public void parseIllegalEntry() {
+    parse("com/example/Main.class");
+  }
+
+  @Test(expected = CompilationError.class)
+  public void parseIllegalMethod() {
+    parse("Lcom/example/Main;->run");
+  }
+
+  @Test
+  public void startupDataFirst() throws Exception {
+    DexApplication.Builder builder = DirectMappedDexApplication
+        .builder(dexItemFactory, new Timing("StartupProfileTest"));
+    for (String name : new String[] {"A", "B", "C", "D"}) {
+      builder.addProgramClass(makeClass(name));
+    }
+    DexApplication application = builder.build();
+
+    InternalOptions options = new InternalOptions(dexItemFactory);
+    options.startupProfile = parse("LD;", "LB;->run()V");
+    ApplicationWriter writer = new ApplicationWriter(application, new AppInfo(application),
+        options, null, null, NamingLens.getIdentityLens(), null);
+    ExecutorService executorService = ThreadUtils.getExecutorService(options);
+    AndroidApp output;
+    try {
+      output = writer.write(executorService);
+    } finally {
+      executorService.shutdown();
+    }
+    List<Resource> resources = output.getDexProgramResourcesForOutput();
+    assertEquals(1, resources.size());
+    byte[] bytes;
+    try (InputStream input = resources.get(0).getStream()) {
+      bytes = ByteStreams.toByteArray(input);
+    }
+    // The string data of the startup classes is written first, in startup order.
+    int d = indexOf(bytes, "string-of-D");
+    int b = indexOf(bytes, "string-of-B");
+    int a = indexOf(bytes, "string-of-A");
+    int c = indexOf(bytes, "string-of-C");
+    assertTrue(d > 0 && b > 0 && a > 0 && c > 0);
+    assertTrue(d < b);
+    assertTrue(b < a);
+    assertTrue(b < c);
+  }
+}
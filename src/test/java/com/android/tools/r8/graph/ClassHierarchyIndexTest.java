@@ -0,0 +1,138 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.Resource.Kind;
+import com.android.tools.r8.dex.Constants;
+import com.android.tools.r8.utils.DescriptorUtils;
+import com.android.tools.r8.utils.Timing;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClassHierarchyIndexTest {
+
+  private final DexItemFactory factory = new DexItemFactory();
+  private final DexApplication.Builder<?> builder =
+      DirectMappedDexApplication.builder(factory, new Timing("ClassHierarchyIndexTest"));
+
+  private DexType a;
+  private DexType b;
+  private DexType c;
+  private DexType d;
+  private DexType e;
+  private DexType i;
+  private DexType j;
+  private DexType missing;
+  private DexType f;
+
+  private DexType type(String name) {
+    return factory.createType(DescriptorUtils.javaTypeToDescriptor(name));
+  }
+
+  private DexType addClass(String name, int flags, DexType superType, DexType... interfaces) {
+    DexType type = type(name);
+    DexTypeList interfaceList =
+        interfaces.length == 0 ? DexTypeList.empty() : new DexTypeList(interfaces);
+    builder.addProgramClass(new DexProgramClass(type, Kind.DEX, new DexAccessFlags(flags),
+        superType, interfaceList, null, DexAnnotationSet.empty(),
+        DexEncodedField.EMPTY_ARRAY, DexEncodedField.EMPTY_ARRAY, DexEncodedMethod.EMPTY_ARRAY,
+        DexEncodedMethod.EMPTY_ARRAY));
+    return type;
+  }
+
+  @Before
+  public void buildHierarchy() {
+    int iface = Constants.ACC_PUBLIC | Constants.ACC_INTERFACE | Constants.ACC_ABSTRACT;
+    a = addClass("A", Constants.ACC_PUBLIC, factory.objectType);
+    b = addClass("B", Constants.ACC_PUBLIC, a);
+    c = addClass("C", Constants.ACC_PUBLIC, b);
+    i = addClass("I", iface, factory.objectType);
+    j = addClass("J", iface, factory.objectType, i);
+    d = addClass("D", Constants.ACC_PUBLIC, a, j);
+    e = addClass("E", Constants.ACC_PUBLIC, d);
+    missing = type("Missing");
+    f = addClass("F", Constants.ACC_PUBLIC, missing, i);
+  }
+
+  private static Set<DexType> collect(ClassHierarchyIndex index, DexType type) {
+    Set<DexType> result = new HashSet<>();
+    index.forEachSubtype(type, result::add);
+    return result;
+  }
+
+  @Test
+  public void classIntervals() {
+    ClassHierarchyIndex index = ClassHierarchyIndex.build(builder.build().toDirect());
+    assertTrue(index.isSubtype(c, a));
+    assertTrue(index.isSubtype(c, b));
+    assertTrue(index.isSubtype(e, a));
+    assertTrue(index.isSubtype(a, a));
+    assertFalse(index.isSubtype(a, c));
+    assertFalse(index.isSubtype(e, b));
+    assertFalse(index.isSubtype(c, d));
+    assertTrue(index.isSubtype(f, missing));
+    assertTrue(index.isSubtype(f, factory.objectType));
+    assertEquals(ImmutableSet.of(b, c, d, e), index.subtypes(a));
+    assertEquals(ImmutableSet.of(b, c, d, e), collect(index, a));
+    assertTrue(index.subtypes(c).isEmpty());
+  }
+
+  @Test
+  public void interfaces() {
+    ClassHierarchyIndex index = ClassHierarchyIndex.build(builder.build().toDirect());
+    assertTrue(index.isInterface(i));
+    assertFalse(index.isInterface(a));
+    assertTrue(index.isSubtype(j, i));
+    assertTrue(index.isSubtype(d, i));
+    assertTrue(index.isSubtype(e, j));
+    assertTrue(index.isSubtype(f, i));
+    assertTrue(index.isSubtype(i, factory.objectType));
+    assertFalse(index.isSubtype(i, j));
+    assertFalse(index.isSubtype(f, j));
+    assertFalse(index.isSubtype(j, a));
+    assertEquals(ImmutableSet.of(j, d, e, f), index.subtypes(i));
+    assertEquals(ImmutableSet.of(j, d, e, f), collect(index, i));
+    assertEquals(ImmutableSet.of(d, e), index.subtypes(j));
+  }
+
+  @Test
+  public void missingTypesAreNotReportedAsSubtypes() {
+    ClassHierarchyIndex index = ClassHierarchyIndex.build(builder.build().toDirect());
+    Set<DexType> objectSubtypes = index.subtypes(factory.objectType);
+    assertEquals(ImmutableSet.of(a, b, c, d, e, f, i, j), objectSubtypes);
+    assertEquals(objectSubtypes, collect(index, factory.objectType));
+    assertFalse(objectSubtypes.contains(missing));
+    assertEquals(ImmutableSet.of(f), index.subtypes(missing));
+  }
+
+  @Test
+  public void sizesMatchIteration() {
+    ClassHierarchyIndex index = ClassHierarchyIndex.build(builder.build().toDirect());
+    for (DexType type : ImmutableList.of(factory.objectType, a, b, c, d, e, f, i, j, missing)) {
+      Set<DexType> subtypes = index.subtypes(type);
+      assertEquals(type.toSourceString(), collect(index, type).size(), subtypes.size());
+      assertEquals(type.toSourceString(), subtypes.size() == 0, subtypes.isEmpty());
+      // The counts of interfaces are cached after the first query.
+      assertEquals(type.toSourceString(), subtypes.size(), index.subtypes(type).size());
+    }
+  }
+
+  @Test
+  public void appInfoQueries() {
+    AppInfoWithSubtyping appInfo = new AppInfoWithSubtyping(builder.build().toDirect());
+    assertTrue(appInfo.getMissingClasses().contains(missing));
+    assertTrue(e.isSubtypeOf(i, appInfo));
+    assertFalse(c.isSubtypeOf(i, appInfo));
+    assertTrue(appInfo.subtypes(i).contains(f));
+    assertFalse(appInfo.subtypes(j).contains(f));
+  }
+}
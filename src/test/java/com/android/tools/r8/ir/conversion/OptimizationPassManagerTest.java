@@ -0,0 +1,147 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.conversion;
+
+import static com.android.tools.r8.ir.conversion.OptimizationPassManager.introduces;
+import static com.android.tools.r8.ir.conversion.OptimizationPassManager.requiresAny;
+import static org.junit.Assert.assertEquals;
+
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.InstructionIterator;
+import com.android.tools.r8.ir.code.ValueNumberGenerator;
+import com.android.tools.r8.ir.conversion.OptimizationPassManager.Kind;
+import com.android.tools.r8.smali.SmaliTestBase;
+import com.android.tools.r8.utils.InternalOptions;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class OptimizationPassManagerTest extends SmaliTestBase {
+
+  private final List<String> events = new ArrayList<>();
+
+  /**
+   * Code with an add and a return, and no other instructions than the arguments.
+   */
+  private IRCode code() throws Exception {
+    SmaliBuilder builder = new SmaliBuilder(DEFAULT_CLASS_NAME);
+    MethodSignature signature = builder.addStaticMethod(
+        "int",
+        DEFAULT_METHOD_NAME,
+        ImmutableList.of("int", "int"),
+        1,
+        "    add-int             v0, p0, p1",
+        "    return              v0"
+    );
+    InternalOptions options = new InternalOptions();
+    DexApplication application = buildApplication(builder, options);
+    DexEncodedMethod method = getMethod(application, signature);
+    return method.buildIR(new ValueNumberGenerator(), options);
+  }
+
+  private static List<String> instructionNames(IRCode code) {
+    List<String> names = new ArrayList<>();
+    InstructionIterator iterator = code.instructionIterator();
+    while (iterator.hasNext()) {
+      names.add(iterator.next().getClass().getSimpleName());
+    }
+    return names;
+  }
+
+  private OptimizationPassManager.CodePass pass(String name, boolean changes) {
+    return code -> {
+      events.add(name);
+      return changes;
+    };
+  }
+
+  private OptimizationPassManager.LocalRewrite rewrite(String name, boolean rewrites) {
+    return (iterator, current) -> {
+      events.add(name + " " + current.getClass().getSimpleName());
+      return rewrites;
+    };
+  }
+
+  private void run(OptimizationPassManager manager) throws Exception {
+    manager.run(code(), method -> false);
+  }
+
+  @Test
+  public void skipsPassWithoutRequiredKinds() throws Exception {
+    run(new OptimizationPassManager()
+        .add("casts", requiresAny(Kind.CHECK_CAST), introduces(), pass("casts", true))
+        .add("binops", requiresAny(Kind.BINOP), introduces(), pass("binops", false))
+        .add("invokes", requiresAny(Kind.INVOKE, Kind.CHECK_CAST), introduces(),
+            pass("invokes", true)));
+    assertEquals(ImmutableList.of("binops"), events);
+  }
+
+  @Test
+  public void addsKindsIntroducedByChangingPass() throws Exception {
+    run(new OptimizationPassManager()
+        .add("unchanged", requiresAny(Kind.BINOP), introduces(Kind.INVOKE),
+            pass("unchanged", false))
+        .add("invokes", requiresAny(Kind.INVOKE), introduces(), pass("invokes", false))
+        .add("changed", requiresAny(Kind.BINOP), introduces(Kind.CHECK_CAST),
+            pass("changed", true))
+        .add("casts", requiresAny(Kind.CHECK_CAST), introduces(), pass("casts", false)));
+    // Only the kinds introduced by a pass that changed the code are added.
+    assertEquals(ImmutableList.of("unchanged", "changed", "casts"), events);
+  }
+
+  @Test
+  public void fusesConsecutiveLocalRewrites() throws Exception {
+    IRCode code = code();
+    new OptimizationPassManager()
+        .addLocal("first", requiresAny(Kind.BINOP), introduces(), rewrite("first", false))
+        .addLocal("casts", requiresAny(Kind.CHECK_CAST), introduces(), rewrite("casts", false))
+        .addLocal("second", requiresAny(Kind.BINOP), introduces(), rewrite("second", false))
+        .run(code, method -> false);
+    // Each instruction is visited by all applicable rewrites before the next instruction.
+    List<String> expected = new ArrayList<>();
+    for (String instruction : instructionNames(code)) {
+      expected.add("first " + instruction);
+      expected.add("second " + instruction);
+    }
+    assertEquals(expected, events);
+  }
+
+  @Test
+  public void fusedTraversalStopsAtRewrittenInstruction() throws Exception {
+    IRCode code = code();
+    new OptimizationPassManager()
+        .addLocal("first", requiresAny(Kind.BINOP), introduces(), rewrite("first", true))
+        .addLocal("second", requiresAny(Kind.BINOP), introduces(), rewrite("second", false))
+        .run(code, method -> false);
+    // The second rewrite does not see an instruction that the first rewrite reported rewritten.
+    List<String> expected = new ArrayList<>();
+    for (String instruction : instructionNames(code)) {
+      expected.add("first " + instruction);
+    }
+    assertEquals(expected, events);
+  }
+
+  @Test
+  public void passSeparatesLocalRewrites() throws Exception {
+    IRCode code = code();
+    new OptimizationPassManager()
+        .addLocal("first", requiresAny(Kind.BINOP), introduces(), rewrite("first", false))
+        .add("pass", requiresAny(Kind.BINOP), introduces(), pass("pass", false))
+        .addLocal("second", requiresAny(Kind.BINOP), introduces(), rewrite("second", false))
+        .run(code, method -> false);
+    List<String> expected = new ArrayList<>();
+    List<String> instructions = instructionNames(code);
+    for (String instruction : instructions) {
+      expected.add("first " + instruction);
+    }
+    expected.add("pass");
+    for (String instruction : instructions) {
+      expected.add("second " + instruction);
+    }
+    assertEquals(expected, events);
+  }
+}
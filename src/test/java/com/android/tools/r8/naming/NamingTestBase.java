@@ -27,6 +27,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.function.BiConsumer;
 import org.junit.Before;
 
@@ -65,13 +66,14 @@ abstract class NamingTestBase {
     ProguardConfiguration configuration =
         ToolHelper.loadProguardConfiguration(dexItemFactory, configPaths);
     InternalOptions options = new InternalOptions(configuration);
+    ExecutorService executorService = ThreadUtils.getExecutorService(options);
 
     if (options.proguardConfiguration.isAccessModificationAllowed()) {
-      ClassAndMemberPublicizer.run(program);
+      ClassAndMemberPublicizer.run(program, executorService);
     }
 
     RootSet rootSet = new RootSetBuilder(program, appInfo, configuration.getRules())
-        .run(ThreadUtils.getExecutorService(options));
+        .run(executorService);
     Enqueuer enqueuer = new Enqueuer(appInfo);
     appInfo = enqueuer.traceApplication(rootSet, timing);
     return new Minifier(appInfo.withLiveness(), rootSet, options).run(timing);
@@ -0,0 +1,100 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.rewrite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.TestBase;
+import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.code.Instruction;
+import com.android.tools.r8.shaking.FilteredClassPath;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.DexInspector.ClassSubject;
+import com.android.tools.r8.utils.DexInspector.MethodSubject;
+import com.android.tools.r8.utils.InternalOptions;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import org.junit.Assume;
+
+/**
+ * Base class for tests of IR optimizations compiling a test class with a main method and the
+ * classes it uses with R8. All members of the test class are kept, so that the instructions of
+ * its methods can be inspected.
+ *
+ * <p>Optimizations that are enabled by default are tested on an example in src/test/examples,
+ * which R8RunExamplesTest also runs. Tests of optimizations that need options compile classes
+ * from the test class path and use {@link #checkOutput} to run them.
+ */
+public abstract class OptimizationTestBase extends TestBase {
+
+  protected static String keepAllMembers(Class<?> clazz) {
+    return keepAllMembers(clazz.getCanonicalName());
+  }
+
+  protected static String keepAllMembers(String className) {
+    return "-keep class " + className + " { *; }\n-dontobfuscate";
+  }
+
+  /**
+   * Compile the example jar of the package of the class, keeping all members of the class.
+   */
+  protected AndroidApp compileExample(String className) throws Exception {
+    String jarFile = className.substring(0, className.lastIndexOf('.')) + ".jar";
+    AndroidApp.Builder builder = AndroidApp.builder();
+    builder.addLibraryFiles(FilteredClassPath.unfiltered(ToolHelper.getDefaultAndroidJar()));
+    builder.addProgramFiles(
+        FilteredClassPath.unfiltered(Paths.get(ToolHelper.EXAMPLES_BUILD_DIR).resolve(jarFile)));
+    return compileWithR8(builder.build(), keepAllMembers(className));
+  }
+
+  /**
+   * Compile the classes keeping all members of the first class.
+   */
+  protected AndroidApp compile(List<Class> classes) throws Exception {
+    return compileWithR8(classes, keepAllMembers(classes.get(0)));
+  }
+
+  /**
+   * Compile the classes keeping all members of the first class.
+   */
+  protected AndroidApp compile(List<Class> classes, Consumer<InternalOptions> optionsConsumer)
+      throws Exception {
+    return compileWithR8(classes, keepAllMembers(classes.get(0)), optionsConsumer);
+  }
+
+  protected static Instruction[] instructions(
+      ClassSubject clazz, String returnType, String name, String... parameters) {
+    MethodSubject method = clazz.method(returnType, name, Arrays.asList(parameters));
+    assertTrue(method.isPresent());
+    return method.getMethod().getCode().asDexCode().instructions;
+  }
+
+  /**
+   * Count the instructions that are instances of any of the instruction classes.
+   */
+  protected static int count(Instruction[] instructions, Class<?>... instructionClasses) {
+    int count = 0;
+    for (Instruction instruction : instructions) {
+      for (Class<?> instructionClass : instructionClasses) {
+        if (instructionClass.isInstance(instruction)) {
+          count++;
+          break;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Check that the compiled application prints the same as the main class on the JVM.
+   */
+  protected void checkOutput(AndroidApp app, Class<?> mainClass) throws Exception {
+    Assume.assumeTrue("Skipping run because ART is not supported",
+        ToolHelper.artSupported());
+    assertEquals(runOnJava(mainClass), runOnArt(app, mainClass));
+  }
+}
@@ -0,0 +1,75 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.rewrite.devirtualize;
+
+public class ClassWithServiceCalls {
+
+  public interface Service {
+    int compute(int value);
+  }
+
+  public static class ServiceImpl implements Service {
+
+    private final int scale;
+
+    public ServiceImpl(int scale) {
+      this.scale = scale;
+    }
+
+    @Override
+    public int compute(int value) {
+      int result = 0;
+      for (int i = 0; i < value; i++) {
+        result += scale * i;
+      }
+      return result + hash(value);
+    }
+
+    // Does not use this.
+    public int hash(int value) {
+      int result = value;
+      for (int i = 0; i < 4; i++) {
+        result = result * 31 + (result >>> 7);
+      }
+      return result;
+    }
+  }
+
+  public static int callInterface(Service service, int value) {
+    return service.compute(value);
+  }
+
+  public static int callInterfaceTwice(Service service, int value) {
+    return service.compute(value) + service.compute(value + 1);
+  }
+
+  public static int callHash(ServiceImpl service, int value) {
+    return service.hash(value) + service.hash(value + 1);
+  }
+
+  public static int callInterfaceInTry(Service service, int value) {
+    try {
+      return service.compute(value);
+    } catch (NullPointerException e) {
+      return -1;
+    }
+  }
+
+  public static int callHashInTry(ServiceImpl service, int value) {
+    try {
+      return service.hash(value);
+    } catch (NullPointerException e) {
+      return -1;
+    }
+  }
+
+  public static void main(String[] args) {
+    ServiceImpl service = new ServiceImpl(args.length);
+    System.out.println(callInterface(service, 3) + callInterfaceTwice(service, 4));
+    System.out.println(callHash(service, 5));
+    // Calls on null still throw after devirtualization.
+    System.out.println(callInterfaceInTry(service, 2) + " " + callInterfaceInTry(null, 2));
+    System.out.println(callHashInTry(service, 2) + " " + callHashInTry(null, 2));
+  }
+}
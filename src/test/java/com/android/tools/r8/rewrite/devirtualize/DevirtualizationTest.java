@@ -0,0 +1,86 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.rewrite.devirtualize;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.code.CheckCast;
+import com.android.tools.r8.code.Instruction;
+import com.android.tools.r8.code.InvokeInterface;
+import com.android.tools.r8.code.InvokeStatic;
+import com.android.tools.r8.code.InvokeVirtual;
+import com.android.tools.r8.rewrite.OptimizationTestBase;
+import com.android.tools.r8.rewrite.devirtualize.ClassWithServiceCalls.Service;
+import com.android.tools.r8.rewrite.devirtualize.ClassWithServiceCalls.ServiceImpl;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.DexInspector;
+import com.android.tools.r8.utils.DexInspector.ClassSubject;
+import com.android.tools.r8.utils.DexInspector.MethodSubject;
+import com.google.common.collect.ImmutableList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class DevirtualizationTest extends OptimizationTestBase {
+
+  private AndroidApp compile(boolean devirtualize) throws Exception {
+    return compile(
+        ImmutableList.of(ClassWithServiceCalls.class, Service.class, ServiceImpl.class),
+        options -> options.enableDevirtualization = devirtualize);
+  }
+
+  @Test
+  public void interfaceCallsAreDevirtualized() throws Exception {
+    ClassSubject clazz = new DexInspector(compile(true)).clazz(ClassWithServiceCalls.class);
+    String service = Service.class.getTypeName();
+    Instruction[] single = instructions(clazz, "int", "callInterface", service, "int");
+    assertEquals(0, count(single, InvokeInterface.class));
+    assertEquals(1, count(single, CheckCast.class));
+    assertEquals(1, count(single, InvokeVirtual.class));
+    assertEquals(ServiceImpl.class.getTypeName(), Arrays.stream(single)
+        .filter(InvokeVirtual.class::isInstance)
+        .map(instruction -> ((InvokeVirtual) instruction).getMethod().holder.toSourceString())
+        .findFirst().get());
+    Instruction[] twice = instructions(clazz, "int", "callInterfaceTwice", service, "int");
+    assertEquals(0, count(twice, InvokeInterface.class));
+    assertEquals(2, count(twice, InvokeVirtual.class));
+  }
+
+  @Test
+  public void methodsWithoutReceiverUseAreMadeStatic() throws Exception {
+    DexInspector inspector = new DexInspector(compile(true));
+    ClassSubject impl = inspector.clazz(ServiceImpl.class);
+    List<String> parameters = ImmutableList.of("int");
+    MethodSubject hash = impl.method("int", "hash", parameters);
+    assertTrue(hash.isPresent());
+    assertTrue(hash.isStatic());
+    MethodSubject compute = impl.method("int", "compute", parameters);
+    assertTrue(compute.isPresent());
+    assertFalse(compute.isStatic());
+    // The calls are static, and the receiver is checked for null once.
+    Instruction[] calls = instructions(inspector.clazz(ClassWithServiceCalls.class), "int",
+        "callHash", ServiceImpl.class.getTypeName(), "int");
+    assertEquals(2, count(calls, InvokeStatic.class));
+    assertEquals(1, count(calls, InvokeVirtual.class));
+  }
+
+  @Test
+  public void disabledByDefault() throws Exception {
+    DexInspector inspector = new DexInspector(compile(false));
+    Instruction[] single = instructions(inspector.clazz(ClassWithServiceCalls.class), "int",
+        "callInterface", Service.class.getTypeName(), "int");
+    assertEquals(1, count(single, InvokeInterface.class));
+    MethodSubject hash = inspector.clazz(ServiceImpl.class)
+        .method("int", "hash", ImmutableList.of("int"));
+    assertTrue(hash.isPresent());
+    assertFalse(hash.isStatic());
+  }
+
+  @Test
+  public void outputIsUnchanged() throws Exception {
+    checkOutput(compile(true), ClassWithServiceCalls.class);
+  }
+}
@@ -0,0 +1,111 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.rewrite.enumunboxing;
+
+public class ClassWithEnums {
+
+  // Used in a switch, through values() and compared with null.
+  public enum Day {
+    MONDAY, TUESDAY, WEDNESDAY
+  }
+
+  // Used in arrays.
+  public enum Level {
+    LOW, HIGH
+  }
+
+  // Looked up by name with valueOf().
+  public enum Named {
+    FIRST, SECOND
+  }
+
+  // Passed to a method which would collide with another method when unboxed.
+  public enum Mode {
+    ON, OFF
+  }
+
+  public static String describe(Day day) {
+    switch (day) {
+      case MONDAY:
+        return "start";
+      case WEDNESDAY:
+        return "middle";
+      default:
+        return "other";
+    }
+  }
+
+  public static int sumOfOrdinals() {
+    int sum = 0;
+    for (Day day : Day.values()) {
+      sum += day.ordinal() + 1;
+    }
+    return sum;
+  }
+
+  public static Day nextDay(Day day) {
+    if (day == null) {
+      return null;
+    }
+    Day[] days = Day.values();
+    return days[(day.ordinal() + 1) % days.length];
+  }
+
+  public static Level[] levels(int count) {
+    Level[] levels = new Level[count];
+    for (int i = 0; i < count; i++) {
+      levels[i] = i % 3 == 0 ? Level.HIGH : (i % 3 == 1 ? Level.LOW : null);
+    }
+    return levels;
+  }
+
+  public static int countHigh(Level[] levels) {
+    int count = 0;
+    for (Level level : levels) {
+      if (level == Level.HIGH) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public static int countNull(Level[] levels) {
+    int count = 0;
+    for (int i = 0; i < levels.length; i++) {
+      if (levels[i] == null) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public static int lookup(String name) {
+    return Named.valueOf(name).ordinal();
+  }
+
+  public static int select(Mode mode) {
+    return mode.ordinal();
+  }
+
+  public static int select(int mode) {
+    return mode + 10;
+  }
+
+  public static void main(String[] args) {
+    for (Day day : Day.values()) {
+      System.out.println(day.ordinal() + " " + describe(day) + " " + nextDay(day).ordinal());
+    }
+    System.out.println(nextDay(null) == null);
+    System.out.println(sumOfOrdinals());
+    Level[] levels = levels(args.length + 7);
+    System.out.println(levels.length + " " + countHigh(levels) + " " + countNull(levels));
+    System.out.println(lookup("SECOND"));
+    try {
+      lookup("THIRD");
+    } catch (IllegalArgumentException e) {
+      System.out.println("no constant THIRD");
+    }
+    System.out.println(select(args.length == 0 ? Mode.OFF : Mode.ON) + select(args.length));
+  }
+}
@@ -0,0 +1,136 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.rewrite.enumunboxing;
+
+import com.android.tools.r8.CompilationException;
+import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.naming.ClassNameMapper;
+import com.android.tools.r8.naming.MemberNaming.FieldSignature;
+import com.android.tools.r8.naming.MemberNaming.MethodSignature;
+import com.android.tools.r8.naming.MemberNaming.Signature;
+import com.android.tools.r8.naming.ProguardMapReader;
+import com.android.tools.r8.rewrite.OptimizationTestBase;
+import com.android.tools.r8.rewrite.enumunboxing.ClassWithEnums.Day;
+import com.android.tools.r8.rewrite.enumunboxing.ClassWithEnums.Level;
+import com.android.tools.r8.rewrite.enumunboxing.ClassWithEnums.Mode;
+import com.android.tools.r8.rewrite.enumunboxing.ClassWithEnums.Named;
+import com.android.tools.r8.shaking.FilteredClassPath;
+import com.android.tools.r8.shaking.ProguardRuleParserException;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.DexInspector;
+import com.android.tools.r8.utils.DexInspector.ClassSubject;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EnumUnboxingTest extends OptimizationTestBase {
+
+  private static final String JAR_FILE = "switchmaps.jar";
+  private static final String PG_CONFIG =
+      "-keep class switchmaps.Switches { public static void main(...); } " +
+          "-dontobfuscate";
+
+  @Test
+  public void checkEnumUnboxed()
+      throws IOException, ProguardRuleParserException, ExecutionException, CompilationException {
+    AndroidApp.Builder builder = AndroidApp.builder();
+    builder.addLibraryFiles(
+        FilteredClassPath.unfiltered(ToolHelper.getDefaultAndroidJar()));
+    builder.addProgramFiles(
+        FilteredClassPath.unfiltered(Paths.get(ToolHelper.EXAMPLES_BUILD_DIR).resolve(JAR_FILE)));
+    AndroidApp result = compileWithR8(builder.build(), PG_CONFIG,
+        options -> options.enableEnumUnboxing = true);
+    DexInspector inspector = new DexInspector(result);
+
+    // Days is only used through its constants, values() and switches.
+    ClassSubject days = inspector.clazz("switchmaps.Days");
+    Assert.assertTrue(days.isPresent());
+    Assert.assertFalse(days.field("switchmaps.Days", "MONDAY").isPresent());
+    Assert.assertFalse(days.method("void", "<clinit>", ImmutableList.of()).isPresent());
+    Assert.assertTrue(days.method("int[]", "values", ImmutableList.of()).isPresent());
+
+    // Colors has an instance field and overrides toString().
+    ClassSubject colors = inspector.clazz("switchmaps.Colors");
+    Assert.assertTrue(colors.field("switchmaps.Colors", "RED").isPresent());
+  }
+
+  private AndroidApp compileClassWithEnums(boolean obfuscate) throws Exception {
+    AndroidApp.Builder builder = AndroidApp.builder();
+    for (Class<?> clazz :
+        ImmutableList.of(ClassWithEnums.class, Day.class, Level.class, Named.class, Mode.class)) {
+      builder.addProgramFiles(
+          FilteredClassPath.unfiltered(ToolHelper.getClassFileForTestClass(clazz)));
+    }
+    // The switch on Day uses the switch map in the synthetic class ClassWithEnums$1.
+    builder.addProgramFiles(FilteredClassPath.unfiltered(
+        ToolHelper.getClassFileForTestClass(ClassWithEnums.class)
+            .resolveSibling("ClassWithEnums$1.class")));
+    // Keep only the main method, as kept members using an enum keep it boxed.
+    return compileWithR8(builder.build(),
+        keepMainProguardConfiguration(ClassWithEnums.class, false, obfuscate),
+        options -> options.enableEnumUnboxing = true);
+  }
+
+  private static boolean isUnboxed(DexInspector inspector, Class<?> enumClass, String constant) {
+    ClassSubject clazz = inspector.clazz(enumClass);
+    return !clazz.isPresent() || !clazz.field(enumClass.getTypeName(), constant).isPresent();
+  }
+
+  @Test
+  public void checkEnumUses() throws Exception {
+    AndroidApp app = compileClassWithEnums(false);
+    DexInspector inspector = new DexInspector(app);
+
+    // Day is used in a switch, through values() and compared with null.
+    Assert.assertTrue(isUnboxed(inspector, Day.class, "MONDAY"));
+    Assert.assertTrue(inspector.clazz(Day.class)
+        .method("int[]", "values", ImmutableList.of()).isPresent());
+    // Level is stored in and loaded from arrays.
+    Assert.assertTrue(isUnboxed(inspector, Level.class, "HIGH"));
+    // Named is looked up with valueOf().
+    Assert.assertFalse(isUnboxed(inspector, Named.class, "SECOND"));
+    // Unboxing Mode would make select(Mode) collide with select(int).
+    Assert.assertFalse(isUnboxed(inspector, Mode.class, "OFF"));
+
+    checkOutput(app, ClassWithEnums.class);
+  }
+
+  @Test
+  public void checkMappingOfUnboxedSignatures() throws Exception {
+    AndroidApp app = compileClassWithEnums(true);
+    Assert.assertTrue(app.hasProguardMap());
+    ClassNameMapper mapper;
+    try (InputStream map = app.getProguardMap()) {
+      mapper = ProguardMapReader.mapperFromInputStream(map);
+    }
+    DexInspector inspector = new DexInspector(app);
+
+    // The mapping has the signatures of the unboxed program, so no member mentions Day or Level
+    // and every renamed method is found from its mapped signature.
+    List<String> unboxed = ImmutableList.of(Day.class.getTypeName(), Level.class.getTypeName());
+    mapper.forAllClassNamings(naming -> naming.forAllMemberNaming(member -> {
+      Signature signature = member.getOriginalSignature();
+      if (member.isMethodNaming()) {
+        MethodSignature method = (MethodSignature) signature;
+        Assert.assertFalse(signature.toString(), unboxed.contains(method.type));
+        for (String parameter : method.parameters) {
+          Assert.assertFalse(signature.toString(), unboxed.contains(parameter));
+        }
+        ClassSubject clazz = inspector.clazz(naming.originalName);
+        Assert.assertTrue(
+            clazz.method(method.type, method.name, Arrays.asList(method.parameters)).isPresent());
+      } else {
+        Assert.assertFalse(signature.toString(),
+            unboxed.contains(((FieldSignature) signature).type));
+      }
+    }));
+    checkOutput(app, ClassWithEnums.class);
+  }
+}
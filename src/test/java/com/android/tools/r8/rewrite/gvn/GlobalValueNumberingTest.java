@@ -0,0 +1,54 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.rewrite.gvn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.code.ArrayLength;
+import com.android.tools.r8.code.Iget;
+import com.android.tools.r8.code.Sget;
+import com.android.tools.r8.rewrite.OptimizationTestBase;
+import com.android.tools.r8.utils.DexInspector;
+import com.android.tools.r8.utils.DexInspector.ClassSubject;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GlobalValueNumberingTest extends OptimizationTestBase {
+
+  private static final String CLASS_NAME = "gvn.GlobalValueNumbering";
+
+  private ClassSubject clazz;
+
+  @Before
+  public void compile() throws Exception {
+    clazz = new DexInspector(compileExample(CLASS_NAME)).clazz(CLASS_NAME);
+    assertTrue(clazz.isPresent());
+  }
+
+  private int count(Class<?> instructionClass, String name, String... parameters) {
+    return count(instructions(clazz, "int", name, parameters), instructionClass);
+  }
+
+  @Test
+  public void redundantLoadsAreRemoved() {
+    assertEquals(1, count(Iget.class, "repeatedLoads"));
+    assertEquals(1, count(Sget.class, "repeatedStaticLoads"));
+    assertEquals(1, count(Iget.class, "loadInDominatedBlock", "boolean"));
+    assertEquals(1, count(ArrayLength.class, "repeatedArrayLength", "int[]"));
+  }
+
+  @Test
+  public void loadsAreKeptAcrossWritesAndInvokes() {
+    assertEquals(2, count(Iget.class, "loadAfterWrite", "int"));
+    assertEquals(2, count(Iget.class, "loadAcrossInvoke"));
+    assertEquals(2, count(Iget.class, "volatileLoads"));
+  }
+
+  @Test
+  public void loadsAreKeptAcrossBackEdgesAndExceptionalEdges() {
+    assertEquals(2, count(Iget.class, "loadInLoopWrittenOnBackEdge", "int"));
+    assertEquals(2, count(Iget.class, "loadInCatchHandler", "int[]"));
+  }
+}
@@ -0,0 +1,87 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.rewrite.hotinlining;
+
+public class ClassWithHotCalls {
+
+  public static class Failure extends RuntimeException {
+    public final int value;
+
+    public Failure(int value) {
+      this.value = value;
+    }
+  }
+
+  public static int failures;
+
+  // Too large for simple inlining, and has no normal exit.
+  public static void fail(int value) {
+    failures += value;
+    failures *= 3;
+    failures ^= value;
+    throw new Failure(failures);
+  }
+
+  // Too large for simple inlining.
+  public static int mix(int value) {
+    int result = value * 31 + 7;
+    result ^= result >>> 3;
+    result += value % 5;
+    return result * failures;
+  }
+
+  public static int failInTry(int count) {
+    int caught = 0;
+    for (int i = 0; i < count; i++) {
+      try {
+        fail(i);
+      } catch (Failure e) {
+        caught++;
+      }
+    }
+    return caught;
+  }
+
+  public static int mixAll(int count) {
+    int sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += mix(i);
+    }
+    return sum;
+  }
+
+  public static int mixOdd(int count) {
+    int sum = 0;
+    for (int i = 1; i < count; i += 2) {
+      sum += mix(i);
+    }
+    return sum;
+  }
+
+  public static int mixEven(int count) {
+    int sum = 0;
+    for (int i = 0; i < count; i += 2) {
+      sum += mix(i);
+    }
+    return sum;
+  }
+
+  public static void main(String[] args) {
+    // More than two call sites of each method, so they are not inlined as single or dual callers.
+    System.out.println(failInTry(3));
+    System.out.println(mixAll(3));
+    System.out.println(mixOdd(5) + mixEven(5));
+    System.out.println(mix(1) + mix(2) + mix(3));
+    try {
+      fail(4);
+    } catch (Failure e) {
+      System.out.println(e.value);
+    }
+    try {
+      fail(5);
+    } catch (Failure e) {
+      System.out.println(e.value);
+    }
+  }
+}
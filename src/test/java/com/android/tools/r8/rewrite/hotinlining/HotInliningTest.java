@@ -0,0 +1,124 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.rewrite.hotinlining;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.CompilationListener;
+import com.android.tools.r8.Resource;
+import com.android.tools.r8.code.InvokeStatic;
+import com.android.tools.r8.rewrite.OptimizationTestBase;
+import com.android.tools.r8.rewrite.hotinlining.ClassWithHotCalls.Failure;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.DexInspector;
+import com.android.tools.r8.utils.DexInspector.ClassSubject;
+import com.android.tools.r8.utils.InliningProfile;
+import com.android.tools.r8.utils.InternalOptions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.junit.Test;
+
+public class HotInliningTest extends OptimizationTestBase {
+
+  private static String hotMethod(String name) {
+    return "L" + ClassWithHotCalls.class.getName().replace('.', '/') + ";->" + name + "(I)I";
+  }
+
+  private static class BudgetListener implements CompilationListener {
+    final AtomicLong used = new AtomicLong();
+
+    @Override
+    public void counter(Counter counter, long value) {
+      if (counter == Counter.HOT_INLINING_BUDGET_USED) {
+        used.set(value);
+      }
+    }
+  }
+
+  private AndroidApp compile(String hotMethod, BudgetListener listener) throws Exception {
+    return compile(hotMethod, listener, options -> {});
+  }
+
+  private AndroidApp compile(
+      String profile, BudgetListener listener, Consumer<InternalOptions> optionsConsumer)
+      throws Exception {
+    return compile(ImmutableList.of(ClassWithHotCalls.class, Failure.class), options -> {
+      options.inliningProfile = InliningProfile.builder(options.itemFactory)
+          .parse(new ByteArrayInputStream(profile.getBytes(StandardCharsets.UTF_8)))
+          .build();
+      options.compilationListener = listener;
+      optionsConsumer.accept(options);
+    });
+  }
+
+  private static byte[] dexBytes(AndroidApp app) throws Exception {
+    List<Resource> resources = app.getDexProgramResources();
+    assertEquals(1, resources.size());
+    try (InputStream stream = resources.get(0).getStream()) {
+      return ByteStreams.toByteArray(stream);
+    }
+  }
+
+  private static int countInvokes(AndroidApp app, String name) throws Exception {
+    ClassSubject clazz = new DexInspector(app).clazz(ClassWithHotCalls.class);
+    return count(instructions(clazz, "int", name, "int"), InvokeStatic.class);
+  }
+
+  @Test
+  public void hotInlineUsesBudget() throws Exception {
+    BudgetListener listener = new BudgetListener();
+    AndroidApp app = compile(hotMethod("mixAll"), listener);
+    assertEquals(0, countInvokes(app, "mixAll"));
+    assertTrue(listener.used.get() > 0);
+    checkOutput(app, ClassWithHotCalls.class);
+  }
+
+  @Test
+  public void rejectedHotInlineDoesNotUseBudget() throws Exception {
+    // The target has no normal exit and the call is in a try block, so the inliner rejects it
+    // after the oracle has accepted it.
+    BudgetListener listener = new BudgetListener();
+    AndroidApp app = compile(hotMethod("failInTry"), listener);
+    assertEquals(1, countInvokes(app, "failInTry"));
+    assertEquals(0, listener.used.get());
+    checkOutput(app, ClassWithHotCalls.class);
+  }
+
+  @Test
+  public void budgetUseDoesNotDependOnThreads() throws Exception {
+    String profile = String.join("\n", hotMethod("mixAll"), hotMethod("mixOdd"),
+        hotMethod("mixEven"));
+    BudgetListener listener = new BudgetListener();
+    compile(profile, listener);
+    long used = listener.used.get();
+    assertTrue(used > 0);
+    // The three callers of mix are processed in the same round, and compete for a budget that is
+    // enough for inlining at two of them.
+    int budget = (int) (used * 2 / 3);
+    Consumer<InternalOptions> sequential = options -> {
+      options.hotInliningBudget = budget;
+      options.numberOfThreads = 1;
+    };
+    Consumer<InternalOptions> concurrent = options -> {
+      options.hotInliningBudget = budget;
+      options.numberOfThreads = 4;
+    };
+    byte[] expected = dexBytes(compile(profile, new BudgetListener(), sequential));
+    for (int i = 0; i < 5; i++) {
+      AndroidApp app = compile(profile, listener, concurrent);
+      assertEquals(budget, listener.used.get());
+      assertEquals(1, countInvokes(app, "mixAll") + countInvokes(app, "mixOdd")
+          + countInvokes(app, "mixEven"));
+      assertArrayEquals(expected, dexBytes(app));
+    }
+  }
+}
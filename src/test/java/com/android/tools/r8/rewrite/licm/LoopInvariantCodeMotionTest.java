@@ -0,0 +1,100 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.rewrite.licm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.code.ArrayLength;
+import com.android.tools.r8.code.DivInt;
+import com.android.tools.r8.code.DivInt2Addr;
+import com.android.tools.r8.code.Goto;
+import com.android.tools.r8.code.Iget;
+import com.android.tools.r8.code.IgetObject;
+import com.android.tools.r8.code.Instruction;
+import com.android.tools.r8.code.MulInt;
+import com.android.tools.r8.code.MulInt2Addr;
+import com.android.tools.r8.code.ShrInt;
+import com.android.tools.r8.code.ShrInt2Addr;
+import com.android.tools.r8.rewrite.OptimizationTestBase;
+import com.android.tools.r8.utils.DexInspector;
+import com.android.tools.r8.utils.DexInspector.ClassSubject;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LoopInvariantCodeMotionTest extends OptimizationTestBase {
+
+  private static final String CLASS_NAME = "licm.LoopInvariantCodeMotion";
+
+  private ClassSubject clazz;
+
+  @Before
+  public void compile() throws Exception {
+    clazz = new DexInspector(compileExample(CLASS_NAME)).clazz(CLASS_NAME);
+    assertTrue(clazz.isPresent());
+  }
+
+  // Count the instructions of the classes in the loop of a method with a single loop.
+  private int countInLoop(String name, List<String> parameters, Class<?>... instructionClasses) {
+    Instruction[] instructions =
+        instructions(clazz, "int", name, parameters.toArray(new String[parameters.size()]));
+    // The loop is from the target of the backward goto to the goto.
+    int loopStart = -1;
+    int loopEnd = -1;
+    for (Instruction instruction : instructions) {
+      if (instruction instanceof Goto && ((Goto) instruction).AA < 0) {
+        loopStart = instruction.getOffset() + ((Goto) instruction).AA;
+        loopEnd = instruction.getOffset();
+      }
+    }
+    assertTrue(loopStart >= 0);
+    List<Instruction> inLoop = new ArrayList<>();
+    for (Instruction instruction : instructions) {
+      if (loopStart <= instruction.getOffset() && instruction.getOffset() < loopEnd) {
+        inLoop.add(instruction);
+      }
+    }
+    return count(inLoop.toArray(new Instruction[inLoop.size()]), instructionClasses);
+  }
+
+  @Test
+  public void invariantInstructionsAreMoved() {
+    List<String> none = Collections.emptyList();
+    List<String> count = ImmutableList.of("int");
+    assertEquals(0, countInLoop("finalFieldLoads", none, Iget.class, IgetObject.class));
+    assertEquals(0, countInLoop("finalFieldLoads", none, ArrayLength.class));
+    assertEquals(0, countInLoop("fieldNotWrittenInLoop", count, Iget.class));
+    List<String> arithmetic = ImmutableList.of("int[]", "int", "int");
+    assertEquals(0, countInLoop("invariantArithmetic", arithmetic,
+        ShrInt.class, ShrInt2Addr.class));
+    // Only the multiplication with the array element is left.
+    assertEquals(1, countInLoop("invariantArithmetic", arithmetic,
+        MulInt.class, MulInt2Addr.class));
+  }
+
+  @Test
+  public void instructionsAreKeptInLoop() {
+    List<String> count = ImmutableList.of("int");
+    // The final field scale is still moved.
+    assertEquals(1, countInLoop("fieldWrittenInLoop", count, Iget.class));
+    assertEquals(1, countInLoop("fieldWrittenOnBackEdge", count, Iget.class));
+    assertEquals(1, countInLoop("fieldLoadAcrossInvoke", count, Iget.class));
+    assertEquals(1, countInLoop("volatileFieldLoads", count, Iget.class));
+  }
+
+  @Test
+  public void throwingInstructionsAreKeptInLoop() {
+    List<String> arithmetic = ImmutableList.of("int", "int", "int");
+    assertEquals(1, countInLoop("throwingArithmeticInBody", arithmetic,
+        DivInt.class, DivInt2Addr.class));
+    assertEquals(1, countInLoop("throwingArithmeticInTry", arithmetic,
+        DivInt.class, DivInt2Addr.class));
+    assertEquals(1, countInLoop("throwingArithmeticInLoopNotEntered", arithmetic,
+        DivInt.class, DivInt2Addr.class));
+  }
+}
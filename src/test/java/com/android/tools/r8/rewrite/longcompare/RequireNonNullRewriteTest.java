@@ -10,6 +10,7 @@ import com.android.tools.r8.D8Command;
 import com.android.tools.r8.ToolHelper;
 import com.android.tools.r8.ToolHelper.ArtCommandBuilder;
 import com.android.tools.r8.ToolHelper.ProcessResult;
+import com.android.tools.r8.utils.AndroidApiLevel;
 import com.android.tools.r8.utils.DexInspector;
 import com.android.tools.r8.utils.DexInspector.ClassSubject;
 import com.android.tools.r8.utils.DexInspector.InstructionSubject;
@@ -37,6 +38,7 @@ public class RequireNonNullRewriteTest {
     D8.run(
         D8Command.builder()
             .setMode(mode)
+            .setMinApiLevel(AndroidApiLevel.J.getLevel())
             .addProgramFiles(intputPath)
             .setOutputPath(outputPath)
             .build());
@@ -86,7 +88,11 @@ public class RequireNonNullRewriteTest {
     Iterator<InvokeInstructionSubject> iterator =
         methodSubject.iterateInstructions(InstructionSubject::isInvoke);
     Assert.assertTrue(iterator.hasNext());
-    Assert.assertEquals("getClass", iterator.next().invokedMethod().name.toString());
+    // Objects.requireNonNull is not available before API level 19, and is rewritten to a call to
+    // Object.getClass.
+    InvokeInstructionSubject invoke = iterator.next();
+    Assert.assertEquals("getClass", invoke.invokedMethod().name.toString());
+    Assert.assertTrue(invoke.holder().is("java.lang.Object"));
     Assert.assertFalse(iterator.hasNext());
 
     runTest(inputPath, dexPath);
@@ -0,0 +1,54 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.rewrite.scalarreplacement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.code.NewInstance;
+import com.android.tools.r8.rewrite.OptimizationTestBase;
+import com.android.tools.r8.utils.DexInspector;
+import com.android.tools.r8.utils.DexInspector.ClassSubject;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScalarReplacementTest extends OptimizationTestBase {
+
+  private static final String CLASS_NAME = "scalarreplacement.ScalarReplacement";
+
+  private ClassSubject clazz;
+
+  @Before
+  public void compile() throws Exception {
+    clazz = new DexInspector(compileExample(CLASS_NAME)).clazz(CLASS_NAME);
+    assertTrue(clazz.isPresent());
+  }
+
+  private int countAllocations(String name, String... parameters) {
+    return count(instructions(clazz, "long", name, parameters), NewInstance.class);
+  }
+
+  @Test
+  public void nonEscapingAllocationsAreRemoved() {
+    assertEquals(0, countAllocations("sum", "int", "long"));
+    assertEquals(0, countAllocations("copyField", "int", "int"));
+  }
+
+  @Test
+  public void fieldsReadInCatchHandlersAreReplaced() {
+    assertEquals(0, countAllocations("readInHandler", "int[]"));
+  }
+
+  @Test
+  public void fieldsUpdatedInLoopsAreReplaced() {
+    assertEquals(0, countAllocations("loop", "int"));
+    assertEquals(0, countAllocations("previousValueInLoop", "int"));
+  }
+
+  @Test
+  public void escapingAllocationsAreKept() {
+    assertEquals(1, countAllocations("escapesToField", "int"));
+    assertEquals(1, countAllocations("escapesInInitializer", "int"));
+  }
+}
@@ -0,0 +1,135 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.rewrite.staticvalues;
+
+public class ClassWithConstantFields {
+
+  public static class Model {
+    public static int defaultMode = 7;
+
+    public int id;
+    public int mode = 3;
+    public boolean debug;
+    public Object extra;
+    public int writeOnly;
+    public int changed = 1;
+
+    public Model(int id) {
+      this.id = id;
+      this.debug = false;
+      this.writeOnly = id;
+    }
+
+    public Model() {
+      this(0);
+    }
+
+    public void change(int value) {
+      changed = value;
+    }
+  }
+
+  public static class Base {
+    public int value() {
+      return 0;
+    }
+
+    public Base() {
+      value();
+    }
+  }
+
+  public static class Sub extends Base {
+    // May be read before it is assigned, by the call in the constructor of Base.
+    public int late = 5;
+
+    @Override
+    public int value() {
+      return late;
+    }
+  }
+
+  public static class Early {
+    // The class initializer reads second before it is assigned.
+    public static int first = readSecond();
+    public static int second = 5;
+
+    public static int readSecond() {
+      return second;
+    }
+  }
+
+  public static class Derived {
+    public static int base = 3;
+    // The class initializer reads base.
+    public static int derived = base + 1;
+  }
+
+  public static int readMode(Model model) {
+    return model.mode;
+  }
+
+  public static int readDebug(Model model) {
+    return model.debug ? 1 : 0;
+  }
+
+  public static int readExtra(Model model) {
+    return model.extra == null ? 2 : 3;
+  }
+
+  public static int readDefaultMode(Model model) {
+    return Model.defaultMode;
+  }
+
+  public static int readId(Model model) {
+    return model.id;
+  }
+
+  public static int readModeInHandler(Model model, int[] array) {
+    try {
+      return array[0];
+    } catch (RuntimeException e) {
+      return model.mode;
+    }
+  }
+
+  public static int readChangedInLoop(Model model, int count) {
+    int sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += model.changed;
+      model.change(i);
+    }
+    return sum;
+  }
+
+  public static int readChanged(Model model) {
+    return model.changed;
+  }
+
+  public static int readLate(Sub sub) {
+    return sub.late;
+  }
+
+  public static int readEarlyFirst() {
+    return Early.first;
+  }
+
+  public static int readEarlySecond() {
+    return Early.second;
+  }
+
+  public static int readDerived() {
+    return Derived.derived;
+  }
+
+  public static void main(String[] args) {
+    Model model = new Model(args.length);
+    model.change(args.length);
+    System.out.println(readMode(model) + readDebug(model) + readExtra(model) + readId(model)
+        + readDefaultMode(model) + readChanged(new Model()));
+    System.out.println(readLate(new Sub()));
+    System.out.println(readModeInHandler(model, null) + " " + readChangedInLoop(new Model(), 3));
+    System.out.println(readEarlyFirst() + " " + readEarlySecond() + " " + readDerived());
+  }
+}
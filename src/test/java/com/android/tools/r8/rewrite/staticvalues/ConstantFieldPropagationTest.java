@@ -0,0 +1,91 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.rewrite.staticvalues;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.code.Iget;
+import com.android.tools.r8.code.IgetBoolean;
+import com.android.tools.r8.code.IgetObject;
+import com.android.tools.r8.code.Sget;
+import com.android.tools.r8.rewrite.OptimizationTestBase;
+import com.android.tools.r8.rewrite.staticvalues.ClassWithConstantFields.Base;
+import com.android.tools.r8.rewrite.staticvalues.ClassWithConstantFields.Derived;
+import com.android.tools.r8.rewrite.staticvalues.ClassWithConstantFields.Early;
+import com.android.tools.r8.rewrite.staticvalues.ClassWithConstantFields.Model;
+import com.android.tools.r8.rewrite.staticvalues.ClassWithConstantFields.Sub;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.DexInspector;
+import com.android.tools.r8.utils.DexInspector.ClassSubject;
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConstantFieldPropagationTest extends OptimizationTestBase {
+
+  private AndroidApp app;
+  private DexInspector inspector;
+  private ClassSubject clazz;
+
+  @Before
+  public void compile() throws Exception {
+    app = compile(
+        ImmutableList.of(ClassWithConstantFields.class, Model.class, Base.class, Sub.class,
+            Early.class, Derived.class),
+        options -> options.enableConstantFieldPropagation = true);
+    inspector = new DexInspector(app);
+    clazz = inspector.clazz(ClassWithConstantFields.class);
+  }
+
+  private int countFieldReads(String name, String... parameters) {
+    return count(instructions(clazz, "int", name, parameters),
+        Iget.class, IgetBoolean.class, IgetObject.class, Sget.class);
+  }
+
+  @Test
+  public void readsOfConstantFieldsAreReplaced() {
+    String model = Model.class.getTypeName();
+    assertEquals(0, countFieldReads("readMode", model));
+    assertEquals(0, countFieldReads("readDebug", model));
+    assertEquals(0, countFieldReads("readExtra", model));
+    assertEquals(0, countFieldReads("readDefaultMode", model));
+    assertEquals(0, countFieldReads("readModeInHandler", model, "int[]"));
+  }
+
+  @Test
+  public void readsOfOtherFieldsAreKept() {
+    String model = Model.class.getTypeName();
+    assertEquals(1, countFieldReads("readId", model));
+    assertEquals(1, countFieldReads("readChanged", model));
+    assertEquals(1, countFieldReads("readLate", Sub.class.getTypeName()));
+    assertEquals(1, countFieldReads("readChangedInLoop", model, "int"));
+  }
+
+  @Test
+  public void readsOfFieldsReadInClassInitializerAreKept() {
+    assertEquals(1, countFieldReads("readEarlyFirst"));
+    assertEquals(1, countFieldReads("readEarlySecond"));
+    assertEquals(1, countFieldReads("readDerived"));
+  }
+
+  @Test
+  public void constantAndWriteOnlyFieldsAreRemoved() {
+    ClassSubject model = inspector.clazz(Model.class);
+    assertTrue(model.isPresent());
+    assertFalse(model.field("int", "mode").isPresent());
+    assertFalse(model.field("boolean", "debug").isPresent());
+    assertFalse(model.field("java.lang.Object", "extra").isPresent());
+    assertFalse(model.field("int", "writeOnly").isPresent());
+    assertFalse(model.field("int", "defaultMode").isPresent());
+    assertTrue(model.field("int", "id").isPresent());
+    assertTrue(model.field("int", "changed").isPresent());
+  }
+
+  @Test
+  public void outputIsUnchanged() throws Exception {
+    checkOutput(app, ClassWithConstantFields.class);
+  }
+}
@@ -28,6 +28,7 @@ import com.android.tools.r8.utils.DexInspector;
 import com.android.tools.r8.utils.DexInspector.MethodSubject;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.StringUtils;
+import com.google.common.collect.ImmutableList;
 import org.junit.Test;
 
 public class StaticValuesTest extends SmaliTestBase {
@@ -537,6 +538,115 @@ public class StaticValuesTest extends SmaliTestBase {
     assertEquals(StringUtils.lines("Test2", "org.example.Test2"), result);
   }
 
+  @Test
+  public void testPutsComputedFromOwnFields() throws Exception {
+    SmaliBuilder builder = new SmaliBuilder(DEFAULT_CLASS_NAME);
+
+    builder.addStaticField("intField", "I");
+    builder.addStaticField("intField2", "I");
+    builder.addStaticField("longField", "J");
+    builder.addStaticField("stringField", "Ljava/lang/String;");
+    builder.addStaticField("stringField2", "Ljava/lang/String;");
+
+    builder.addStaticInitializer(
+        2,
+        "const               v0, 3",
+        "sput                v0, LTest;->intField:I",
+        "sget                v0, LTest;->intField:I",
+        "mul-int/lit8        v0, v0, 4",
+        "sput                v0, LTest;->intField2:I",
+        "sget                v0, LTest;->intField2:I",
+        "int-to-long         v0, v0",
+        "sput-wide           v0, LTest;->longField:J",
+        "const-string        v0, \"5\"",
+        "sput-object         v0, LTest;->stringField:Ljava/lang/String;",
+        "sget-object         v0, LTest;->stringField:Ljava/lang/String;",
+        "sput-object         v0, LTest;->stringField2:Ljava/lang/String;",
+        "return-void"
+    );
+    builder.addMainMethod(
+        3,
+        "sget-object         v0, Ljava/lang/System;->out:Ljava/io/PrintStream;",
+        "sget                v1, LTest;->intField2:I",
+        "invoke-virtual      { v0, v1 }, Ljava/io/PrintStream;->println(I)V",
+        "sget-wide           v1, LTest;->longField:J",
+        "invoke-virtual      { v0, v1, v2 }, Ljava/io/PrintStream;->println(J)V",
+        "sget-object         v1, LTest;->stringField2:Ljava/lang/String;",
+        "invoke-virtual      { v0, v1 }, Ljava/io/PrintStream;->println(Ljava/lang/String;)V",
+        "return-void"
+    );
+
+    InternalOptions options = new InternalOptions();
+    DexApplication originalApplication = buildApplication(builder, options);
+    DexApplication processedApplication = processApplication(originalApplication, options);
+
+    DexInspector inspector = new DexInspector(processedApplication);
+    // Test is running without tree-shaking, so the empty <clinit> is not removed.
+    assertTrue(
+        inspector.clazz("Test").clinit().getMethod().getCode().asDexCode().isEmptyVoidMethod());
+
+    DexValue value;
+    value = inspector.clazz("Test").field("int", "intField2").getStaticValue();
+    assertTrue(value instanceof DexValueInt);
+    assertEquals(12, ((DexValueInt) value).getValue());
+
+    value = inspector.clazz("Test").field("long", "longField").getStaticValue();
+    assertTrue(value instanceof DexValueLong);
+    assertEquals(12, ((DexValueLong) value).getValue());
+
+    value = inspector.clazz("Test").field("java.lang.String", "stringField2").getStaticValue();
+    assertTrue(value instanceof DexValueString);
+    assertEquals(("5"), ((DexValueString) value).getValue().toString());
+
+    String result = runArt(processedApplication, options);
+
+    assertEquals(StringUtils.lines("12", "12", "5"), result);
+  }
+
+  @Test
+  public void getAfterInvoke() throws Exception {
+    SmaliBuilder builder = new SmaliBuilder(DEFAULT_CLASS_NAME);
+
+    builder.addStaticField("intField", "I");
+    builder.addStaticField("intField2", "I");
+
+    builder.addStaticInitializer(
+        1,
+        "const               v0, 3",
+        "sput                v0, LTest;->intField:I",
+        "invoke-static       { }, LTest;->update()V",
+        "sget                v0, LTest;->intField:I",
+        "sput                v0, LTest;->intField2:I",
+        "return-void"
+    );
+    builder.addStaticMethod("void", "update", ImmutableList.of(),
+        1,
+        "const               v0, 4",
+        "sput                v0, LTest;->intField:I",
+        "return-void"
+    );
+    builder.addMainMethod(
+        2,
+        "sget-object         v0, Ljava/lang/System;->out:Ljava/io/PrintStream;",
+        "sget                v1, LTest;->intField2:I",
+        "invoke-virtual      { v0, v1 }, Ljava/io/PrintStream;->println(I)V",
+        "return-void"
+    );
+
+    InternalOptions options = new InternalOptions();
+    DexApplication originalApplication = buildApplication(builder, options);
+    DexApplication processedApplication = processApplication(originalApplication, options);
+
+    DexInspector inspector = new DexInspector(processedApplication);
+    // The read of intField after the invoke is not replaced by the constant put before it.
+    DexValue value = inspector.clazz("Test").field("int", "intField2").getStaticValue();
+    assertFalse(value instanceof DexValueInt && ((DexValueInt) value).getValue() == 3);
+
+    String result = runArt(processedApplication, options);
+
+    assertEquals(StringUtils.lines("4"), result);
+  }
+
   @Test
   public void fieldOnOtherClass() throws Exception {
     SmaliBuilder builder = new SmaliBuilder(DEFAULT_CLASS_NAME);
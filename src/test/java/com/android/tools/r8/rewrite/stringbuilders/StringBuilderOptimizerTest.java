@@ -0,0 +1,102 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.rewrite.stringbuilders;
+
+import com.android.tools.r8.CompilationException;
+import com.android.tools.r8.TestBase;
+import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.code.ConstString;
+import com.android.tools.r8.code.Instruction;
+import com.android.tools.r8.code.InvokeDirect;
+import com.android.tools.r8.code.NewInstance;
+import com.android.tools.r8.graph.DexCode;
+import com.android.tools.r8.shaking.FilteredClassPath;
+import com.android.tools.r8.shaking.ProguardRuleParserException;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.DexInspector;
+import com.android.tools.r8.utils.DexInspector.ClassSubject;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StringBuilderOptimizerTest extends TestBase {
+
+  private static final String JAR_FILE = "stringbuilders.jar";
+  private static final String PG_CONFIG =
+      "-keep class stringbuilders.StringBuilders { *; } " +
+          "-dontobfuscate";
+
+  private static DexCode code(ClassSubject clazz, String name, String... parameters) {
+    return clazz.method("java.lang.String", name, ImmutableList.copyOf(parameters))
+        .getMethod().getCode().asDexCode();
+  }
+
+  private static boolean allocates(DexCode code) {
+    for (Instruction instruction : code.instructions) {
+      if (instruction instanceof NewInstance) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static List<String> strings(DexCode code) {
+    List<String> strings = new ArrayList<>();
+    for (Instruction instruction : code.instructions) {
+      if (instruction instanceof ConstString) {
+        strings.add(((ConstString) instruction).getString().toString());
+      }
+    }
+    return strings;
+  }
+
+  private static String constructor(DexCode code) {
+    for (Instruction instruction : code.instructions) {
+      if (instruction instanceof InvokeDirect) {
+        return ((InvokeDirect) instruction).getMethod().proto.toDescriptorString();
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void checkStringBuildersOptimized()
+      throws IOException, ProguardRuleParserException, ExecutionException, CompilationException {
+    AndroidApp.Builder builder = AndroidApp.builder();
+    builder.addLibraryFiles(
+        FilteredClassPath.unfiltered(ToolHelper.getDefaultAndroidJar()));
+    builder.addProgramFiles(
+        FilteredClassPath.unfiltered(Paths.get(ToolHelper.EXAMPLES_BUILD_DIR).resolve(JAR_FILE)));
+    AndroidApp result = compileWithR8(builder.build(), PG_CONFIG);
+    ClassSubject clazz = new DexInspector(result).clazz("stringbuilders.StringBuilders");
+    Assert.assertTrue(clazz.isPresent());
+
+    // Builders of constants are replaced by the string.
+    DexCode constant = code(clazz, "constant");
+    Assert.assertFalse(allocates(constant));
+    Assert.assertEquals(
+        ImmutableList.of("version 3/true build 12 of null"), strings(constant));
+    DexCode intermediate = code(clazz, "constantWithIntermediateResult");
+    Assert.assertFalse(allocates(intermediate));
+    Assert.assertEquals(ImmutableList.of("ababc1"), strings(intermediate));
+    DexCode buffer = code(clazz, "buffer");
+    Assert.assertFalse(allocates(buffer));
+    Assert.assertEquals(ImmutableList.of("xy2"), strings(buffer));
+
+    // Adjacent constants are appended at once to a builder with room for the constants.
+    DexCode message = code(clazz, "message", "java.lang.String", "int");
+    Assert.assertTrue(allocates(message));
+    Assert.assertEquals(
+        ImmutableList.of("[", "] has a fairly long value of ", " units"), strings(message));
+    Assert.assertEquals("(I)V", constructor(message));
+
+    // Builders with unknown content keep the default capacity.
+    Assert.assertEquals("()V", constructor(code(clazz, "loop", "int")));
+  }
+}
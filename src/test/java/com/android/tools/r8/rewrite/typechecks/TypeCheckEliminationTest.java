@@ -0,0 +1,74 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.rewrite.typechecks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.code.CheckCast;
+import com.android.tools.r8.code.IfEqz;
+import com.android.tools.r8.code.IfNez;
+import com.android.tools.r8.code.InstanceOf;
+import com.android.tools.r8.code.Instruction;
+import com.android.tools.r8.rewrite.OptimizationTestBase;
+import com.android.tools.r8.utils.DexInspector;
+import com.android.tools.r8.utils.DexInspector.ClassSubject;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TypeCheckEliminationTest extends OptimizationTestBase {
+
+  private static final String CLASS_NAME = "typechecks.TypeChecks";
+  private static final String BASE = CLASS_NAME + "$Base";
+  private static final String SUB = CLASS_NAME + "$Sub";
+
+  private ClassSubject clazz;
+
+  @Before
+  public void compile() throws Exception {
+    clazz = new DexInspector(compileExample(CLASS_NAME)).clazz(CLASS_NAME);
+    assertTrue(clazz.isPresent());
+  }
+
+  private Instruction[] instructions(String name, String... parameters) {
+    return instructions(clazz, "int", name, parameters);
+  }
+
+  private static int countNullTests(Instruction[] instructions) {
+    return count(instructions, IfEqz.class, IfNez.class);
+  }
+
+  @Test
+  public void castsKnownToSucceedAreRemoved() {
+    assertEquals(0, count(instructions("castToSupertype", SUB, "int"),
+        CheckCast.class));
+    assertEquals(0, count(instructions("castOfNewInstance", "boolean", "int"),
+        CheckCast.class));
+  }
+
+  @Test
+  public void castsOfUnknownTypesAreKept() {
+    assertEquals(1, count(instructions("castOfObject", "java.lang.Object", "int"),
+        CheckCast.class));
+  }
+
+  @Test
+  public void instanceOfKnownToSucceedIsRemoved() {
+    Instruction[] instructions = instructions("instanceOfAfterCheck", "java.lang.Object", "int");
+    assertEquals(1, count(instructions, InstanceOf.class));
+    assertEquals(1, countNullTests(instructions));
+  }
+
+  @Test
+  public void nullTestsOfDereferencedValuesAreRemoved() {
+    assertEquals(0, countNullTests(instructions("nullTestAfterDereference", BASE, "int")));
+    assertEquals(1, countNullTests(instructions("nullTestOfParameter", BASE, "int")));
+  }
+
+  @Test
+  public void nullTestsOfValuesNotDereferencedOnAllPathsAreKept() {
+    assertEquals(1, countNullTests(instructions("nullTestInHandler", BASE, "int")));
+    assertEquals(1, countNullTests(instructions("nullTestInLoop", BASE, BASE, "int")));
+  }
+}
@@ -47,6 +47,10 @@ public class ProguardConfigurationParserTest extends TestBase {
       INVALID_PROGUARD_DIR + "including-1.flags";
   private static final String INVALID_INCLUDING_2 =
       INVALID_PROGUARD_DIR + "including-2.flags";
+  private static final String INVALID_INCLUDING_CYCLE =
+      INVALID_PROGUARD_DIR + "including-cycle-1.flags";
+  private static final String INVALID_INCLUDING_SELF =
+      INVALID_PROGUARD_DIR + "including-self.flags";
   private static final String LIBRARY_JARS =
       VALID_PROGUARD_DIR + "library-jars.flags";
   private static final String LIBRARY_JARS_WIN =
@@ -405,6 +409,34 @@ public class ProguardConfigurationParserTest extends TestBase {
     }
   }
 
+  @Test
+  public void parseInvalidIncludingCycle() throws IOException {
+    try {
+      new ProguardConfigurationParser(new DexItemFactory())
+          .parse(Paths.get(INVALID_INCLUDING_CYCLE));
+      fail();
+    } catch (ProguardRuleParserException e) {
+      String message = e.getMessage();
+      assertTrue(message, message.contains("Cyclic include"));
+      assertTrue(message, message.contains("3")); // line
+      assertTrue(message, message.contains("including-cycle-2.flags")); // file in error
+      assertTrue(message, message.contains("including-cycle-1.flags")); // included file
+    }
+  }
+
+  @Test
+  public void parseInvalidIncludingSelf() throws IOException {
+    try {
+      new ProguardConfigurationParser(new DexItemFactory())
+          .parse(Paths.get(INVALID_INCLUDING_SELF));
+      fail();
+    } catch (ProguardRuleParserException e) {
+      String message = e.getMessage();
+      assertTrue(message, message.contains("Cyclic include"));
+      assertTrue(message, message.contains("including-self.flags"));
+    }
+  }
+
   @Test
   public void parseLibraryJars() throws IOException, ProguardRuleParserException {
     ProguardConfigurationParser parser = new ProguardConfigurationParser(new DexItemFactory());
@@ -680,4 +712,41 @@ public class ProguardConfigurationParserTest extends TestBase {
     config = parser.getConfig();
     assertTrue(config.isUseUniqueClassMemberNames());
   }
+
+  @Test
+  public void parseMultipleSourcesInOrder() throws Exception {
+    ProguardConfigurationParser parser = new ProguardConfigurationParser(new DexItemFactory());
+    parser.parse(ImmutableList.of(
+        new ProguardConfigurationSourceStrings(ImmutableList.of(
+            "-keep class A",
+            "-repackageclasses 'a'")),
+        new ProguardConfigurationSourceStrings(ImmutableList.of(
+            "-flattenpackagehierarchy 'b'",
+            "-keep class B")),
+        new ProguardConfigurationSourceStrings(ImmutableList.of(
+            "-keep class A",
+            "-repackageclasses 'a'"))));
+    ProguardConfiguration config = parser.getConfig();
+    assertEquals(PackageObfuscationMode.REPACKAGE, config.getPackageObfuscationMode());
+    assertEquals("a", config.getPackagePrefix());
+    List<ProguardConfigurationRule> rules = config.getRules();
+    assertEquals(3, rules.size());
+    assertEquals("A", rules.get(0).getClassNames().toString());
+    assertEquals("B", rules.get(1).getClassNames().toString());
+    assertEquals("A", rules.get(2).getClassNames().toString());
+  }
+
+  @Test
+  public void parseMultipleSourcesReportsFirstError() throws Exception {
+    try {
+      ProguardConfigurationParser parser = new ProguardConfigurationParser(new DexItemFactory());
+      parser.parse(ImmutableList.of(
+          new ProguardConfigurationSourceStrings(ImmutableList.of("-keep class A")),
+          new ProguardConfigurationSourceStrings(ImmutableList.of("-unknownoption1")),
+          new ProguardConfigurationSourceStrings(ImmutableList.of("-unknownoption2"))));
+      fail();
+    } catch (ProguardRuleParserException e) {
+      assertTrue(e.getMessage().contains("unknownoption1"));
+    }
+  }
 }
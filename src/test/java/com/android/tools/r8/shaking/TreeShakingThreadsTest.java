@@ -0,0 +1,102 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.shaking;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.android.tools.r8.R8Command;
+import com.android.tools.r8.Resource;
+import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.utils.AndroidApp;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Checks that the passes between tracing and IR conversion, which process classes concurrently,
+ * give the same output for any number of threads. The configuration turns on the optional passes:
+ * access modification, source file renaming and printing of the removed members.
+ */
+@RunWith(Parameterized.class)
+public class TreeShakingThreadsTest {
+
+  private static final String ANDROID_JAR = ToolHelper.getDefaultAndroidJar();
+
+  private final String test;
+
+  @Rule
+  public TemporaryFolder temp = ToolHelper.getTemporaryFolderForTest();
+
+  @Parameters(name = "test: {0}")
+  public static Collection<String> data() {
+    return Arrays.asList("shaking2", "shaking4", "annotationremoval", "minification");
+  }
+
+  public TreeShakingThreadsTest(String test) {
+    this.test = test;
+  }
+
+  /** The dex files, the mapping and the usage output of a compilation. */
+  private List<byte[]> compile(int threads) throws Exception {
+    Path out = temp.newFolder().toPath();
+    Path usage = out.resolve("usage.txt");
+    R8Command command =
+        R8Command.builder()
+            .addProgramFiles(Paths.get(ToolHelper.EXAMPLES_BUILD_DIR, test + ".jar"))
+            .addProguardConfigurationFiles(
+                Paths.get(ToolHelper.EXAMPLES_DIR, test, "keep-rules.txt"))
+            .addProguardConfigurationConsumer(builder -> {
+              builder.setAllowAccessModification(true);
+              builder.setRenameSourceFileAttribute("SourceFile");
+              builder.addKeepAttributePatterns(ImmutableList.of("SourceFile"));
+              builder.setPrintUsage(true);
+              builder.setPrintUsageFile(usage);
+            })
+            .addLibraryFiles(Paths.get(ANDROID_JAR))
+            .build();
+    AndroidApp app = ToolHelper.runR8(command, options -> options.numberOfThreads = threads);
+    List<byte[]> output = new ArrayList<>();
+    for (Resource resource : app.getDexProgramResources()) {
+      output.add(readAll(resource.getStream()));
+    }
+    if (app.hasProguardMap()) {
+      output.add(readAll(app.getProguardMap()));
+    }
+    output.add(Files.readAllBytes(usage));
+    return output;
+  }
+
+  private static byte[] readAll(InputStream stream) throws IOException {
+    try (InputStream input = stream) {
+      return ByteStreams.toByteArray(input);
+    }
+  }
+
+  @Test
+  public void sameOutputForAnyNumberOfThreads() throws Exception {
+    List<byte[]> expected = compile(1);
+    for (int i = 0; i < 3; i++) {
+      List<byte[]> output = compile(4);
+      assertEquals(expected.size(), output.size());
+      for (int j = 0; j < expected.size(); j++) {
+        assertArrayEquals("Output " + j, expected.get(j), output.get(j));
+      }
+    }
+  }
+}
@@ -16,9 +16,14 @@ import com.android.tools.r8.utils.Smali;
 import com.android.tools.r8.utils.Timing;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.antlr.runtime.RecognitionException;
 import org.junit.Test;
 
@@ -409,4 +414,28 @@ public class SmaliDisassembleTest extends SmaliTestBase {
 
     roundTripRawSmali(expected);
   }
+
+  @Test
+  public void parallelWriteHasSameOutput() throws ExecutionException {
+    SmaliBuilder builder = new SmaliBuilder();
+    for (int i = 0; i < 100; i++) {
+      builder.addClass("Test" + i);
+      builder.addStaticMethod("int", "method", ImmutableList.of("int"), 1,
+          "    const/4 v0, " + (i % 8),
+          "    add-int/2addr v0, p0",
+          "    return v0");
+    }
+    DexApplication application = buildApplication(builder);
+    assertEquals(100, Iterables.size(application.classes()));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ExecutorService executor = Executors.newWorkStealingPool(4);
+    try (PrintStream ps = new PrintStream(bytes)) {
+      new SmaliWriter(application, new InternalOptions()).write(ps, executor);
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(SmaliWriter.smali(application, new InternalOptions()),
+        new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+  }
 }
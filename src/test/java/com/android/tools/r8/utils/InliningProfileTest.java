@@ -0,0 +1,87 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.R8Command;
+import com.android.tools.r8.errors.CompilationError;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexMethod;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class InliningProfileTest {
+
+  private final DexItemFactory dexItemFactory = new DexItemFactory();
+
+  private InliningProfile parse(String... lines) {
+    String profile = String.join("\n", lines);
+    return InliningProfile.builder(dexItemFactory)
+        .parse(new ByteArrayInputStream(profile.getBytes(StandardCharsets.UTF_8)))
+        .build();
+  }
+
+  private DexMethod method(String holder, String name) {
+    return dexItemFactory.createMethod(dexItemFactory.createType("L" + holder + ";"),
+        dexItemFactory.createProto(dexItemFactory.voidType), name);
+  }
+
+  @Test
+  public void parseHotMethodsAndCallSites() {
+    InliningProfile profile = parse(
+        "# Inlining profile",
+        "Lcom/example/Main;->loop()V",
+        "",
+        "Lcom/example/Main;->draw()V   Lcom/example/Util;->hash()V",
+        "HSPLcom/example/Util;->run()V",
+        "SPLcom/example/Util;->init()V");
+    DexMethod loop = method("com/example/Main", "loop");
+    DexMethod draw = method("com/example/Main", "draw");
+    DexMethod run = method("com/example/Util", "run");
+    DexMethod init = method("com/example/Util", "init");
+    DexMethod hash = method("com/example/Util", "hash");
+    assertTrue(profile.isHotMethod(loop));
+    assertTrue(profile.isHotMethod(run));
+    assertFalse(profile.isHotMethod(init));
+    assertFalse(profile.isHotMethod(draw));
+    // All call sites in a hot method are hot.
+    assertTrue(profile.isHotCallSite(loop, hash));
+    assertTrue(profile.isHotCallSite(loop, init));
+    // Otherwise only the listed call sites are hot.
+    assertTrue(profile.isHotCallSite(draw, hash));
+    assertFalse(profile.isHotCallSite(draw, run));
+    assertFalse(profile.isHotCallSite(init, hash));
+  }
+
+  @Test
+  public void parseEmpty() {
+    assertTrue(parse("# Nothing", "").isEmpty());
+    assertTrue(parse("SPLcom/example/Util;->init()V").isEmpty());
+  }
+
+  @Test(expected = CompilationError.class)
+  public void parseClassEntry() {
+    parse("Lcom/example/Main;");
+  }
+
+  @Test(expected = CompilationError.class)
+  public void parseIllegalCallee() {
+    parse("Lcom/example/Main;->run()V Lcom/example/Util;->hash");
+  }
+
+  @Test(expected = CompilationError.class)
+  public void parseTooManyMethods() {
+    parse("Lcom/example/Main;->a()V Lcom/example/Main;->b()V Lcom/example/Main;->c()V");
+  }
+
+  @Test
+  public void hotInliningBudgetOption() throws Exception {
+    R8Command command = R8Command.parse(new String[] {"--hot-inlining-budget", "123"}).build();
+    assertEquals(123, command.getHotInliningBudget());
+  }
+}
@@ -0,0 +1,73 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+
+package com.android.tools.r8.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class ThreadUtilsTest {
+
+  private static List<Integer> range(int n) {
+    return IntStream.range(0, n).boxed().collect(Collectors.toList());
+  }
+
+  @Test
+  public void cheapItemsAreBatched() {
+    List<List<Integer>> batches = ThreadUtils.splitIntoBatches(range(1000), item -> 1, 8);
+    assertEquals(8, batches.size());
+    List<Integer> concatenated = new ArrayList<>();
+    for (List<Integer> batch : batches) {
+      assertEquals(125, batch.size());
+      concatenated.addAll(batch);
+    }
+    assertEquals(range(1000), concatenated);
+  }
+
+  @Test
+  public void expensiveItemsEndBatches() {
+    List<Integer> items = ImmutableList.of(1, 1, 100, 1, 1, 1, 100, 1);
+    List<List<Integer>> batches = ThreadUtils.splitIntoBatches(items, item -> item, 4);
+    assertEquals(ImmutableList.of(
+        ImmutableList.of(1, 1, 100),
+        ImmutableList.of(1, 1, 1, 100),
+        ImmutableList.of(1)), batches);
+  }
+
+  @Test
+  public void fewerItemsThanBatches() {
+    List<List<Integer>> batches = ThreadUtils.splitIntoBatches(range(3), item -> 0, 16);
+    assertEquals(3, batches.size());
+    assertTrue(ThreadUtils.splitIntoBatches(ImmutableList.of(), item -> 1, 16).isEmpty());
+  }
+
+  @Test
+  public void processItemsInBatches() throws ExecutionException {
+    ExecutorService executor = Executors.newWorkStealingPool(4);
+    try {
+      Set<Integer> processed = ConcurrentHashMap.newKeySet();
+      WorkStatistics statistics = new WorkStatistics("test");
+      ThreadUtils.processItemsInBatches(
+          range(1000), item -> item % 10, 4, processed::add, executor, statistics);
+      assertEquals(1000, processed.size());
+      assertEquals(1000, statistics.getItems());
+      assertTrue(statistics.getBatches() <= 16);
+      assertTrue(statistics.getUtilization() >= 0);
+    } finally {
+      executor.shutdown();
+    }
+  }
+}